@@ -13,15 +13,45 @@ repositories {
     mavenCentral()
 }
 
+// Micro benchmarks live in their own source set so that they are neither part of the plugin nor of the unit tests
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations.named(jmh.implementationConfigurationName) {
+    extendsFrom(configurations.implementation.get())
+}
+
+// End-to-end scale tests, which build generated projects through TestKit. They reuse the corpus generator of the
+// benchmarks and are only run by the perfTest task
+val perfTest: SourceSet by sourceSets.creating {
+    compileClasspath += jmh.output
+    runtimeClasspath += jmh.output
+}
+
+configurations.named(perfTest.implementationConfigurationName) {
+    extendsFrom(configurations.implementation.get())
+}
+
 dependencies {
     implementation("commons-io","commons-io","2.20.0")
     implementation("org.jetbrains", "annotations", "26.0.2")
     testImplementation("org.junit.jupiter", "junit-jupiter-api", "6.0.0")
     testRuntimeOnly("org.junit.jupiter", "junit-jupiter-engine", "6.0.0")
     testRuntimeOnly("org.junit.platform", "junit-platform-launcher", "6.0.0")
+    "jmhImplementation"(gradleApi())
+    "jmhImplementation"("org.openjdk.jmh", "jmh-core", "1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh", "jmh-generator-annprocess", "1.37")
+    "perfTestImplementation"(gradleTestKit())
+    "perfTestImplementation"("org.junit.jupiter", "junit-jupiter-api", "6.0.0")
+    "perfTestRuntimeOnly"("org.junit.jupiter", "junit-jupiter-engine", "6.0.0")
+    "perfTestRuntimeOnly"("org.junit.platform", "junit-platform-launcher", "6.0.0")
 }
 
 gradlePlugin {
+    testSourceSets(perfTest)
+
     plugins {
         create("gnu-cobol") {
             id = "de.living-mainframe.gnu-cobol"
@@ -39,6 +69,45 @@ tasks.test {
     useJUnitPlatform()
 }
 
+// Runs all benchmarks, a subset can be selected with a regular expression, e.g. -Pjmh.includes=SourceScanner
+// The corpus sizes of the analyzer benchmarks can be overridden with e.g. -Pjmh.corpusSizes=100,20000 and the
+// profilers with -Pjmh.profilers=gc,stack
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH micro benchmarks"
+    group = "verification"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args(providers.gradleProperty("jmh.includes").getOrElse(".*"))
+    providers.gradleProperty("jmh.profilers").getOrElse("gc").split(",").filter { it.isNotBlank() }.forEach {
+        args("-prof", it)
+    }
+    providers.gradleProperty("jmh.corpusSizes").orNull?.let { args("-p", "corpusSize=$it") }
+    args("-rf", "json", "-rff", layout.buildDirectory.file("reports/jmh/results.json").get().asFile.absolutePath)
+    doFirst {
+        layout.buildDirectory.dir("reports/jmh").get().asFile.mkdirs()
+    }
+}
+
+// Builds a generated project with 10000 programs and a stub compiler, the size can be changed with
+// e.g. -Pperf.programs=1000. The results are appended to build/reports/perf/scale.csv
+tasks.register<Test>("perfTest") {
+    description = "Runs the end-to-end scale tests"
+    group = "verification"
+    testClassesDirs = perfTest.output.classesDirs
+    classpath = perfTest.runtimeClasspath
+    useJUnitPlatform()
+    systemProperty("perf.programs", providers.gradleProperty("perf.programs").getOrElse("10000"))
+    systemProperty("perf.compileSeconds", providers.gradleProperty("perf.compileSeconds").getOrElse("0.01"))
+    systemProperty("perf.reportDirectory", layout.buildDirectory.dir("reports/perf").get().asFile.absolutePath)
+    // The TestKit daemon inherits the PATH of the test, the stub compiler is written to this directory by the test
+    val pathDirectory = layout.buildDirectory.dir("perf/bin").get().asFile
+    systemProperty("perf.pathDirectory", pathDirectory.absolutePath)
+    systemProperty("perf.testKitDirectory", layout.buildDirectory.dir("perf/testkit").get().asFile.absolutePath)
+    environment("PATH", pathDirectory.absolutePath + File.pathSeparator + System.getenv("PATH"))
+    testLogging.showStandardStreams = true
+    shouldRunAfter(tasks.test)
+}
+
 tasks.jacocoTestReport {
     dependsOn(tasks.test) // tests are required to run before generating the report
 }
@@ -0,0 +1,94 @@
+package de.livingmainframe.plugins.cobol.jmh;
+
+import de.livingmainframe.plugins.cobol.core.CobolSourceAnalyzer;
+import de.livingmainframe.plugins.cobol.core.CopybookDependencyGraph;
+import de.livingmainframe.plugins.cobol.core.CopybookIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steps of the source analysis on generated corpora of different sizes: analyzing a single program,
+ * listing the include directory, looking up a copybook and resolving the dependencies of all programs. Run with
+ * {@code -prof gc} (the default of the jmh task) to also report the allocation rate.
+ * <p>
+ * The corpus is generated once per corpus size in the temporary directory, so the file system cache is warm and the
+ * scores reflect the analysis rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int corpusSize;
+
+    private CobolCorpusGenerator.Corpus corpus;
+    private CopybookIndex copybookIndex;
+    private List<File> programs;
+    private List<String> copybookNames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() throws IOException {
+        corpus = CobolCorpusGenerator.ofSize(corpusSize).generate(Files.createTempDirectory("cobol-corpus"));
+        copybookIndex = CopybookIndex.of(List.of(corpus.includeDirectory()));
+        programs = corpus.programs();
+        copybookNames = corpus.copybookNames();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() {
+        corpus.delete();
+    }
+
+    /**
+     * Scans one program and looks up its copybooks, without following the copybooks of copybooks
+     */
+    @Benchmark
+    public Object analyzeSource() {
+        File program = programs.get(next++ % programs.size());
+        return new CobolSourceAnalyzer(program).analyzeSource(copybookIndex);
+    }
+
+    /**
+     * Lists the include directory, which happens once per build for every set of include directories
+     */
+    @Benchmark
+    public Object buildCopybookIndex() {
+        return CopybookIndex.of(List.of(corpus.includeDirectory()));
+    }
+
+    @Benchmark
+    public Object findCopybook() {
+        return copybookIndex.find(copybookNames.get(next++ % copybookNames.size()));
+    }
+
+    /**
+     * Resolves the transitive copybooks of all programs on a single thread with an empty dependency graph, as the
+     * analysis task does on a clean build. The score is the number of complete resolutions per second
+     */
+    @Benchmark
+    public Object resolveDependencies() {
+        return CobolSourceAnalyzer.analyzeSources(programs, new CopybookDependencyGraph(copybookIndex), 1);
+    }
+}
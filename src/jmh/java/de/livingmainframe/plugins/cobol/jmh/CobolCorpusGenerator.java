@@ -0,0 +1,143 @@
+package de.livingmainframe.plugins.cobol.jmh;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic corpus of fixed-format COBOL programs and copybooks. The corpus is derived from a seed, so the
+ * same parameters always produce the same files and benchmark runs can be compared.
+ * <p>
+ * The copy density is the share of lines that contain a COPY statement, the exec density the share of lines that
+ * contain an EXEC SQL or EXEC CICS statement. Some copybooks include other copybooks, so resolving the dependencies
+ * of a program has to follow chains of copybooks.
+ */
+public final class CobolCorpusGenerator {
+
+    private final int programs;
+    private final int copybooks;
+    private final int linesPerProgram;
+    private final double copyDensity;
+    private final double execDensity;
+    private final long seed;
+
+    /**
+     * @param programs        The number of programs
+     * @param copybooks       The number of copybooks, at least 1
+     * @param linesPerProgram The number of lines of every program
+     * @param copyDensity     The share of the program lines that contain a COPY statement, between 0 and 1
+     * @param execDensity     The share of the program lines that contain an EXEC statement, between 0 and 1
+     * @param seed            The seed of the random generator
+     */
+    public CobolCorpusGenerator(int programs, int copybooks, int linesPerProgram, double copyDensity,
+                                double execDensity, long seed) {
+        this.programs = programs;
+        this.copybooks = Math.max(1, copybooks);
+        this.linesPerProgram = linesPerProgram;
+        this.copyDensity = copyDensity;
+        this.execDensity = execDensity;
+        this.seed = seed;
+    }
+
+    /**
+     * A corpus with one copybook per ten programs, 500 lines per program, a COPY statement on 2% and an EXEC statement
+     * on 5% of the lines
+     *
+     * @param programs The number of programs
+     * @return The generator
+     */
+    public static CobolCorpusGenerator ofSize(int programs) {
+        return new CobolCorpusGenerator(programs, Math.max(10, programs / 10), 500, 0.02, 0.05, 42);
+    }
+
+    /**
+     * The generated corpus
+     *
+     * @param directory          The directory that contains the corpus
+     * @param programs           The programs, sorted by name
+     * @param includeDirectory   The directory that contains the copybooks
+     * @param copybookNames      The names of the copybooks as used in COPY statements
+     */
+    public record Corpus(File directory, List<File> programs, File includeDirectory, List<String> copybookNames) {
+
+        public void delete() {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    public Corpus generate(Path directory) throws IOException {
+        Random random = new Random(seed);
+        Path sourceDirectory = Files.createDirectories(directory.resolve("src"));
+        Path includeDirectory = Files.createDirectories(directory.resolve("copy"));
+
+        List<String> copybookNames = new ArrayList<>(copybooks);
+        for (int i = 0; i < copybooks; i++) {
+            copybookNames.add(String.format("CPY%05d", i));
+        }
+
+        for (int i = 0; i < copybooks; i++) {
+            List<String> lines = new ArrayList<>();
+            lines.add(line(1, "*", "COPYBOOK " + copybookNames.get(i)));
+            lines.add(line(2, " ", "   01  " + copybookNames.get(i) + "-REC."));
+            for (int j = 0; j < 20; j++) {
+                lines.add(line(lines.size() + 1, " ", String.format("       05  FIELD-%02d PIC X(%d).", j,
+                        1 + random.nextInt(80))));
+            }
+            // Every fourth copybook includes a copybook with a higher number, so the chains never form a cycle
+            if (i % 4 == 0 && i + 1 < copybooks) {
+                int included = i + 1 + random.nextInt(Math.min(10, copybooks - i - 1));
+                lines.add(line(lines.size() + 1, " ", "   COPY " + copybookNames.get(included) + "."));
+            }
+            write(includeDirectory.resolve(copybookNames.get(i) + ".cpy"), lines);
+        }
+
+        List<File> programFiles = new ArrayList<>(programs);
+        for (int i = 0; i < programs; i++) {
+            String programName = String.format("PGM%05d", i);
+            List<String> lines = new ArrayList<>(linesPerProgram);
+            lines.add(line(1, " ", "IDENTIFICATION DIVISION."));
+            lines.add(line(2, " ", "PROGRAM-ID. " + programName + "."));
+            lines.add(line(3, " ", "DATA DIVISION."));
+            lines.add(line(4, " ", "WORKING-STORAGE SECTION."));
+            while (lines.size() < linesPerProgram) {
+                int lineNumber = lines.size() + 1;
+                double kind = random.nextDouble();
+                if (kind < copyDensity) {
+                    lines.add(line(lineNumber, " ", "   COPY " + copybookNames.get(random.nextInt(copybooks)) + "."));
+                } else if (kind < copyDensity + execDensity) {
+                    lines.add(line(lineNumber, " ", random.nextBoolean() ? "    EXEC SQL SELECT 1 INTO :WS-X FROM " +
+                            "SYSIBM.SYSDUMMY1 END-EXEC." : "    EXEC CICS RETURN END-EXEC."));
+                } else if (kind < copyDensity + execDensity + 0.1) {
+                    lines.add(line(lineNumber, "*", "COMMENT COPY NOTHING EXEC SQL NOTHING"));
+                } else {
+                    lines.add(line(lineNumber, " ", String.format("    MOVE WS-FIELD-%d TO WS-OTHER-%d.", lineNumber,
+                            random.nextInt(1000))));
+                }
+            }
+            Path programFile = sourceDirectory.resolve(programName + ".cbl");
+            write(programFile, lines);
+            programFiles.add(programFile.toFile());
+        }
+
+        return new Corpus(directory.toFile(), programFiles, includeDirectory.toFile(), copybookNames);
+    }
+
+    /*
+    Columns 1-6 are the sequence number, column 7 the indicator and columns 8-72 the code
+     */
+    private static String line(int lineNumber, String indicator, String code) {
+        String text = String.format("%06d%s %s", lineNumber % 1_000_000, indicator, code);
+        return text.length() > 72 ? text.substring(0, 72) : text;
+    }
+
+    private static void write(Path file, List<String> lines) throws IOException {
+        Files.write(file, lines, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,119 @@
+package de.livingmainframe.plugins.cobol.jmh;
+
+import de.livingmainframe.plugins.cobol.core.CobolSourceScanner;
+import de.livingmainframe.plugins.cobol.core.SourceCodeAnalysisResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the throughput of the single-pass {@link CobolSourceScanner} with the regular expressions that were used
+ * by the CobolSourceAnalyzer before. Both variants read the same in-memory program, so the score (lines per
+ * millisecond) only reflects the scanning itself and not the file system.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SourceScannerBenchmark {
+
+    private static final int LINES = 10_000;
+
+    private static final Pattern copyRegexPattern =
+            Pattern.compile("^.{6}(?!\\*).\\s*COPY ([A-Za-z0-9-]{1,8})(?:\\.|\\s|$)");
+    private static final Pattern execSqlIncludeRegexPattern =
+            Pattern.compile("^.{6}(?!\\*).\\s*EXEC SQL\\s*INCLUDE\\s*([A-Za-z0-9-]{1,8})\\s*END-EXEC(?:\\.|\\s|$)");
+    private static final Pattern execSqlRegexPattern = Pattern.compile("^.{6}(?!\\*).\\s*EXEC SQL");
+    private static final Pattern execCicsRegexPattern = Pattern.compile("^.{6}(?!\\*).\\s*EXEC CICS");
+
+    private byte[] source;
+
+    @Setup
+    public void generateSource() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            String sequenceNumber = String.format("%06d", i);
+            switch (i % 10) {
+                case 0 -> builder.append(sequenceNumber).append(" COPY CPY").append(i % 500).append('.');
+                case 1 -> builder.append(sequenceNumber).append("*    THIS IS A COMMENT LINE COPY NOTHING");
+                case 2 -> builder.append(sequenceNumber).append("     EXEC SQL INCLUDE DCL").append(i % 100)
+                        .append(" END-EXEC.");
+                case 3 -> builder.append(sequenceNumber).append("     EXEC CICS RETURN END-EXEC.");
+                default -> builder.append(sequenceNumber).append("     MOVE WS-FIELD-").append(i)
+                        .append(" TO WS-OTHER-FIELD-").append(i).append('.');
+            }
+            builder.append('\n');
+        }
+        source = builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void singlePassScanner(Blackhole blackhole) {
+        SourceCodeAnalysisResult analysisResult = new SourceCodeAnalysisResult();
+        List<String> includeNames = new ArrayList<>();
+        new CobolSourceScanner(true, true).scan(ByteBuffer.wrap(source), analysisResult, includeNames);
+        blackhole.consume(analysisResult);
+        blackhole.consume(includeNames);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void regularExpressions(Blackhole blackhole) throws IOException {
+        SourceCodeAnalysisResult analysisResult = new SourceCodeAnalysisResult();
+        List<String> includeNames = new ArrayList<>();
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(source),
+                StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                Matcher copyRegexMatcher = copyRegexPattern.matcher(line);
+                while (copyRegexMatcher.find()) {
+                    includeNames.add(copyRegexMatcher.group(1));
+                }
+                if (!analysisResult.isDb2()) {
+                    Matcher execSqlRegexMatcher = execSqlRegexPattern.matcher(line);
+                    while (execSqlRegexMatcher.find()) {
+                        analysisResult.setDb2(true);
+                    }
+                }
+                if (analysisResult.isDb2()) {
+                    Matcher execSqlIncludeRegexMatcher = execSqlIncludeRegexPattern.matcher(line);
+                    while (execSqlIncludeRegexMatcher.find()) {
+                        includeNames.add(execSqlIncludeRegexMatcher.group(1));
+                    }
+                }
+                if (!analysisResult.isCics()) {
+                    Matcher execCicsRegexMatcher = execCicsRegexPattern.matcher(line);
+                    while (execCicsRegexMatcher.find()) {
+                        analysisResult.setCics(true);
+                    }
+                }
+            }
+        }
+        blackhole.consume(analysisResult);
+        blackhole.consume(includeNames);
+    }
+}
@@ -0,0 +1,73 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Determines the programs affected by a set of changed files through the {@link CopybookUsageIndex}. A changed program
+ * affects itself, a changed copybook the programs that depend on it directly or through other copybooks.
+ * <p>
+ * A deleted copybook is missing from the index that was written after it was deleted, so the index of the previous
+ * analysis is looked up as well. Only programs that still exist are reported.
+ */
+public final class ChangeImpact {
+
+    private ChangeImpact() {
+    }
+
+    /**
+     * @param usageIndex         The current usage index
+     * @param previousUsageIndex The usage index of the previous analysis or null if there was none
+     * @param changedPaths       The manifest paths of the changed files
+     * @return The manifest paths of the affected programs, sorted
+     */
+    public static @NotNull Set<String> getAffectedPrograms(@NotNull CopybookUsageIndex usageIndex,
+                                                           @Nullable CopybookUsageIndex previousUsageIndex,
+                                                           @NotNull Collection<String> changedPaths) {
+        Set<String> affectedPrograms = new TreeSet<>();
+        for (String changedPath : changedPaths) {
+            if (usageIndex.getProgram(changedPath) != null) {
+                affectedPrograms.add(changedPath);
+            }
+            affectedPrograms.addAll(usageIndex.getPrograms(changedPath));
+            if (previousUsageIndex != null) {
+                previousUsageIndex.getPrograms(changedPath).stream()
+                        .filter(program -> usageIndex.getProgram(program) != null).forEach(affectedPrograms::add);
+            }
+        }
+        return affectedPrograms;
+    }
+
+    /**
+     * Converts a file passed with --changed, relative to the project directory or absolute, to its manifest path
+     *
+     * @param projectDirectory The absolute and normalized project directory
+     * @param changedFile      The changed file
+     * @return The manifest path or null if the value is blank
+     */
+    public static @Nullable String toManifestPath(@NotNull Path projectDirectory, @NotNull String changedFile) {
+        if (changedFile.isBlank()) {
+            return null;
+        }
+        return DependencyManifest.toManifestPath(projectDirectory, projectDirectory.resolve(changedFile.trim())
+                .toFile());
+    }
+
+    /**
+     * Splits the output of git diff --name-only -z, which separates the paths with NUL characters so that paths with
+     * special characters aren't quoted
+     *
+     * @param output The output of git
+     * @return The changed paths
+     */
+    public static @NotNull List<String> parseGitChangedFiles(@NotNull String output) {
+        return Arrays.stream(output.split("\0")).filter(path -> !path.isBlank()).toList();
+    }
+}
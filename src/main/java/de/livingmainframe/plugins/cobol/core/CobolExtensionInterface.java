@@ -2,6 +2,7 @@ package de.livingmainframe.plugins.cobol.core;
 
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
 
 import java.nio.file.Path;
 
@@ -22,6 +23,158 @@ public interface CobolExtensionInterface {
      */
     ListProperty<Path> getSourceIncludePaths();
 
+    /**
+     * The name of the charset the sources and copybooks are encoded in, e.g. IBM-1047 for sources that were
+     * transferred from z/OS without conversion. Defaults to the platform's default charset. The charset of individual
+     * programs can be overridden in a module group.
+     *
+     * @return The name of the charset
+     */
+    Property<String> getSourceEncoding();
+
+    /**
+     * The maximum number of compiler processes that run at the same time, independent of the number of Gradle
+     * workers. Defaults to the number of available processors. The compiles that wait start longest first.
+     *
+     * @return The maximum number of parallel compiles
+     */
+    Property<Integer> getMaxParallelCompiles();
+
+    /**
+     * The memory in megabytes that the compiler processes may use at the same time. If it is set, the compiles are
+     * limited by their memory, which is estimated from the size of the program and its copybooks, instead of by
+     * maxParallelCompiles. The compiles that don't fit wait and start longest first. Not set by default.
+     *
+     * @return The memory budget in megabytes
+     */
+    Property<Integer> getCompileMemoryBudget();
+
+    /**
+     * The maximum number of programs that the compileCobol task passes to a single compiler process. Defaults to 50.
+     *
+     * @return The batch size
+     */
+    Property<Integer> getCompileBatchSize();
+
+    /**
+     * How the compiler is called: "none" starts it from the Gradle daemon, "process" starts it from a separate worker
+     * process. Defaults to "none".
+     *
+     * @return The isolation mode of the compiles
+     */
+    Property<String> getCompileIsolation();
+
+    /**
+     * The directory that contains the compiler executable, e.g. to use a different version of the compiler than the
+     * one on the PATH. A relative path is resolved against the project directory. If it isn't set, the compiler is
+     * searched on the PATH.
+     *
+     * @return The directory of the compiler executable
+     */
+    Property<Path> getCompilerDirectory();
+
+    /**
+     * Whether the build tasks fingerprint the programs and copybooks by their semantic content instead of their bytes.
+     * Changes of the sequence number area (columns 1-6), the identification area (columns 73-80) and the text of
+     * comment lines then don't make the build tasks out of date. Programs whose compiler options select free or
+     * variable format, or whose sources contain a >>SOURCE or $SET SOURCEFORMAT directive, are always fingerprinted by
+     * their bytes. Defaults to true.
+     *
+     * @return True to use semantic fingerprints
+     */
+    Property<Boolean> getSemanticFingerprints();
+
+    /**
+     * Whether the build tasks look a program up in a local compile cache before they compile it. The key of a program
+     * is the hash of its preprocessed source, its compiler options and the compiler version, so the cache also hits
+     * when the build task is out of date but the expanded program didn't change. Only supported by compilers that can
+     * preprocess a program without compiling it, i.e. GnuCOBOL. Defaults to false.
+     *
+     * @return True to use the compile cache
+     */
+    Property<Boolean> getCompileCache();
+
+    /**
+     * Whether every program is translated to C by a separate task before its build task compiles the C source. The
+     * stages are up-to-date checked and cached separately, so a change that results in the same C source skips the C
+     * compile. Only supported by compilers that generate C, i.e. GnuCOBOL. Defaults to false.
+     *
+     * @return True to translate the programs separately
+     */
+    Property<Boolean> getSeparateTranslation();
+
+    /**
+     * What the build tasks create: "executable" for a standalone executable per program, "module" for a module per
+     * program that the runtime loads when the program is called, or "object" for an object file per program. In the
+     * latter two modes, the linkCobol task links the object files into executables in build/cobol/bin, or collects the
+     * modules in build/cobol/lib, which can be put on the COB_LIBRARY_PATH. Modules are only supported by GnuCOBOL.
+     * Defaults to "executable".
+     *
+     * @return The name of the compile mode
+     */
+    Property<String> getCompileMode();
+
+    /**
+     * The names of the programs that the buildReachable task builds, together with all programs they call statically.
+     * Each entry point is linked with its call tree into one executable in build/cobol/reachable. The Gradle property
+     * entry, e.g. -Pentry=PAYROLL,INVOICE, takes precedence. Defaults to no entry points.
+     *
+     * @return The names of the entry points
+     */
+    ListProperty<String> getEntryPoints();
+
+    /**
+     * Where the build tasks compile the programs: "none" for a compiler process on this machine, "local" for a
+     * workspace directory on this machine, e.g. one that a container with the compiler mounts, or "shell" for a
+     * workspace on a remote machine that is reached through a shell, see remoteShell. Only changed programs and
+     * copybooks are transferred into the workspace. Defaults to "none".
+     *
+     * @return The name of the compile transport
+     */
+    Property<String> getCompileTransport();
+
+    /**
+     * The directory of the workspace. For the "shell" transport it is the absolute path on the remote machine and
+     * required, for the "local" transport a relative path is resolved against the project directory. Defaults to
+     * build/cobol/workspace for the "local" transport.
+     *
+     * @return The path of the workspace
+     */
+    Property<String> getCompileWorkspace();
+
+    /**
+     * The command that opens a shell on the remote machine, e.g. ["ssh", "-T", "user@host"]. The shell must read
+     * commands from its standard input and must not convert between character sets. Required for the "shell"
+     * transport.
+     *
+     * @return The command and its arguments
+     */
+    ListProperty<String> getRemoteShell();
+
+    /**
+     * The maximum number of sessions that are opened to the remote machine. Every session compiles one program at a
+     * time and is reused for all programs of the build. Defaults to 4.
+     *
+     * @return The maximum number of sessions
+     */
+    Property<Integer> getCompileSessions();
+
+    /**
+     * The directory of the compile cache. Defaults to caches/cobol-compile in the Gradle user home, so that all
+     * checkouts and worktrees on the same machine share the cache.
+     *
+     * @return The directory of the compile cache
+     */
+    Property<Path> getCompileCacheDirectory();
+
+    /**
+     * The maximum size of the compile cache in megabytes. The least recently used programs are deleted when a build
+     * finishes and the cache is larger. Defaults to 1024.
+     *
+     * @return The maximum size in megabytes
+     */
+    Property<Integer> getCompileCacheSize();
+
     /**
      * Allows the configuration of environment variables that are passed to the compiler
      *
@@ -45,4 +198,11 @@ public interface CobolExtensionInterface {
      * @return Name of the compiler implementation class
      */
     Class<?> getCobolCompilerClass();
+
+    /**
+     * The name of the compiler executable, which is used to determine the version of the compiler
+     *
+     * @return Name of the compiler executable as found on the $PATH
+     */
+    String getCobolCompilerExecutableName();
 }
@@ -1,44 +1,144 @@
 package de.livingmainframe.plugins.cobol.core;
 
+import de.livingmainframe.plugins.cobol.core.compiler.CobolCompilerExecutable;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileCostModel;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileMode;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileOrderValueSource;
+import de.livingmainframe.plugins.cobol.core.compiler.CompilerVersionValueSource;
 import de.livingmainframe.plugins.cobol.core.dsl.ModuleGroup;
 import de.livingmainframe.plugins.cobol.core.dsl.ModuleOptions;
+import de.livingmainframe.plugins.cobol.core.services.BuildMetricsService;
+import de.livingmainframe.plugins.cobol.core.services.CobolAnalysisService;
+import de.livingmainframe.plugins.cobol.core.services.CompileCacheService;
+import de.livingmainframe.plugins.cobol.core.services.CompileSessionService;
+import de.livingmainframe.plugins.cobol.core.services.CompileSchedulerService;
+import de.livingmainframe.plugins.cobol.core.services.CompilerSlotService;
+import de.livingmainframe.plugins.cobol.core.tasks.AnalyzeSourcesTask;
+import de.livingmainframe.plugins.cobol.core.tasks.BuildReachableTask;
+import de.livingmainframe.plugins.cobol.core.tasks.CompileCobolTask;
 import de.livingmainframe.plugins.cobol.core.tasks.DynamicBuildTask;
+import de.livingmainframe.plugins.cobol.core.tasks.ImpactAnalysisTask;
+import de.livingmainframe.plugins.cobol.core.tasks.LinkCobolTask;
+import de.livingmainframe.plugins.cobol.core.tasks.TranslateCobolTask;
+import org.gradle.api.Action;
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.problems.ProblemGroup;
 import org.gradle.api.problems.ProblemId;
 import org.gradle.api.problems.Problems;
 import org.gradle.api.problems.Severity;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.tasks.TaskProvider;
 import org.jetbrains.annotations.NotNull;
 
 import javax.inject.Inject;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 // The Gradle Problems API is still work in progress and thus marked as incubating / unstable.
 // With the official release of the API the warnings should not be suppressed anymore.
 public abstract class CobolPlugin implements Plugin<Project> {
 
     public static final ProblemGroup PROBLEM_GROUP = ProblemGroup.create("cobol-base-plugin", "COBOL Base Plugin");
+    public static final String ANALYZE_TASK_NAME = "analyzeCobolSources";
+    public static final String COMPILE_TASK_NAME = "compileCobol";
+    public static final String IMPACT_TASK_NAME = "cobolImpact";
+    public static final String LINK_TASK_NAME = "linkCobol";
+    public static final String REACHABLE_TASK_NAME = "buildReachable";
+
+    private final Map<String, Provider<List<File>>> analyzedSourceIncludes = new HashMap<>();
 
     @Inject
     protected abstract Problems getProblems();
 
+    @Inject
+    protected abstract ProviderFactory getProviders();
+
     @Override
     public void apply(@NotNull Project project) {
         NamedDomainObjectContainer<ModuleGroup> moduleGroups = project.container(ModuleGroup.class);
         project.getExtensions().add("moduleGroups", moduleGroups);
 
-        project.afterEvaluate(target -> configureBuildTasks(target, moduleGroups));
+        Provider<CobolAnalysisService> analysisService =
+                project.getGradle().getSharedServices().registerIfAbsent(CobolAnalysisService.NAME,
+                        CobolAnalysisService.class, spec -> {
+                        });
+
+        // The variant plugins create the extension before they apply this plugin
+        CobolExtensionInterface cobolExtension = (CobolExtensionInterface) project.getExtensions().getByName("cobol");
+        Provider<CompilerSlotService> compilerSlotService =
+                project.getGradle().getSharedServices().registerIfAbsent(CompilerSlotService.NAME,
+                        CompilerSlotService.class,
+                        spec -> spec.getMaxParallelUsages().set(cobolExtension.getMaxParallelCompiles()));
+        // The report is written to the project that registers the service first, usually the root project
+        Provider<BuildMetricsService> metricsService =
+                project.getGradle().getSharedServices().registerIfAbsent(BuildMetricsService.NAME,
+                        BuildMetricsService.class, spec -> spec.getParameters().getReportDirectory()
+                                .set(project.getLayout().getBuildDirectory().dir("reports/cobol")));
+        // The compile cache is shared by all builds on the machine, like the other caches in the Gradle user home
+        Path projectDirectory = project.getLayout().getProjectDirectory().getAsFile().toPath();
+        cobolExtension.getCompileCacheDirectory().convention(project.getGradle().getGradleUserHomeDir().toPath()
+                .resolve("caches/cobol-compile"));
+        Provider<CompileCacheService> compileCacheService =
+                project.getGradle().getSharedServices().registerIfAbsent(CompileCacheService.NAME,
+                        CompileCacheService.class, spec -> {
+                            spec.getParameters().getCacheDirectory().fileProvider(cobolExtension
+                                    .getCompileCacheDirectory()
+                                    .map(directory -> projectDirectory.resolve(directory).toFile()));
+                            spec.getParameters().getMaxSize().set(cobolExtension.getCompileCacheSize()
+                                    .map(size -> size * 1024L * 1024L));
+                        });
+        // The workspace of a remote shell is a path on the remote machine, which isn't resolved
+        Provider<CompileSessionService> compileSessionService =
+                project.getGradle().getSharedServices().registerIfAbsent(CompileSessionService.NAME,
+                        CompileSessionService.class, spec -> {
+                            spec.getParameters().getTransport().set(cobolExtension.getCompileTransport());
+                            spec.getParameters().getShellCommand().set(cobolExtension.getRemoteShell());
+                            spec.getParameters().getWorkspace().set(cobolExtension.getCompileTransport()
+                                    .zip(cobolExtension.getCompileWorkspace(), (transport, workspace) ->
+                                            transport.equals("shell") ? workspace :
+                                                    projectDirectory.resolve(workspace).toString())
+                                    .orElse(project.getLayout().getBuildDirectory().dir("cobol/workspace")
+                                            .map(directory -> directory.getAsFile().getAbsolutePath())));
+                            spec.getParameters().getMaxSessions().set(cobolExtension.getCompileSessions());
+                        });
+
+        File historyFile = getCompileHistoryFile(project);
+        project.getGradle().getSharedServices().registerIfAbsent(CompileSchedulerService.NAME,
+                CompileSchedulerService.class, spec -> {
+                    spec.getParameters().getHistoryFile().set(historyFile);
+                    spec.getParameters().getMaxParallelCompiles().set(cobolExtension.getMaxParallelCompiles());
+                    spec.getParameters().getMemoryBudget().set(cobolExtension.getCompileMemoryBudget()
+                            .map(budget -> budget * 1024L * 1024L));
+                });
+
+        project.afterEvaluate(target -> {
+            long startTime = System.nanoTime();
+            configureBuildTasks(target, moduleGroups, analysisService, compilerSlotService, compileCacheService,
+                    compileSessionService);
+            metricsService.get().recordConfiguration(target.getPath(), System.nanoTime() - startTime);
+        });
     }
 
-    private void configureBuildTasks(Project target, NamedDomainObjectContainer<ModuleGroup> moduleGroups) {
+    private void configureBuildTasks(Project target, NamedDomainObjectContainer<ModuleGroup> moduleGroups,
+                                     Provider<CobolAnalysisService> analysisService,
+                                     Provider<CompilerSlotService> compilerSlotService,
+                                     Provider<CompileCacheService> compileCacheService,
+                                     Provider<CompileSessionService> compileSessionService) {
         CobolExtensionInterface cobolExtension = (CobolExtensionInterface) target.getExtensions().getByName("cobol");
 
         HashMap<String, ModuleOptions> moduleOptions = new HashMap<>();
@@ -46,12 +146,20 @@ public abstract class CobolPlugin implements Plugin<Project> {
             moduleOptions.putAll(moduleGroup.getFlatModules());
         }
 
+        // The include directories are resolved against the project directory, so the analysis can share the index
+        // with other projects of the same build
+        Path projectDirectory = target.getLayout().getProjectDirectory().getAsFile().toPath().toAbsolutePath().normalize();
+        List<File> sourceIncludeDirectories =
+                cobolExtension.getSourceIncludePaths().get().stream().map(path -> projectDirectory.resolve(path).toFile()).toList();
+        // An unsupported encoding is reported while configuring instead of failing the analysis task
+        getCharset(cobolExtension.getSourceEncoding().get());
+
         List<File> sourcePaths = cobolExtension.getSourcePaths().get().stream().map(Path::toFile).toList();
+        List<File> buildFiles = new ArrayList<>();
         for (File sourcePath : sourcePaths) {
             // It is required that the source path points to a relative directory inside the project directory
             // For further processing the full path is used
-            Path projectSourcePath =
-                    target.getLayout().getProjectDirectory().getAsFile().toPath().resolve(sourcePath.toPath());
+            Path projectSourcePath = projectDirectory.resolve(sourcePath.toPath());
             File projectSrcDirectory = projectSourcePath.toFile();
             if (!projectSrcDirectory.exists()) {
                 ProblemId problemId = ProblemId.create("src-directory-existence", "The source directory doesn't " +
@@ -89,41 +197,432 @@ public abstract class CobolPlugin implements Plugin<Project> {
                 });
             }
 
-            for (File buildFile : filesInSourceDirectory) {
-                String buildFileName = getFileNameWithoutExtension(buildFile);
-                File outputDirectory = target.getLayout().getBuildDirectory().dir(buildFileName).get().getAsFile();
-
-                CobolSourceAnalyzer cobolSourceAnalyzer = new CobolSourceAnalyzer(buildFile);
-                List<File> sourceIncludeDirectories =
-                        new ArrayList<>(cobolExtension.getSourceIncludePaths().get().stream().map(Path::toFile).toList());
-                final SourceCodeAnalysisResult analysisResult =
-                        cobolSourceAnalyzer.analyzeSource(sourceIncludeDirectories);
-
-                Logger logger = target.getLogger();
-                logger.info("Identified {} to use Db2: {}, CICS: {}", buildFileName, analysisResult.isDb2(),
-                        analysisResult.isCics());
-
-                final ModuleOptions options;
-                if (moduleOptions.get(buildFile.toString()) == null) {
-                    options = new ModuleOptions(target.getObjects());
-                } else {
-                    options = moduleOptions.get(buildFile.toString());
-                }
+            // listFiles() doesn't guarantee any order, sorting makes the task registration reproducible
+            Arrays.sort(filesInSourceDirectory, Comparator.comparing(File::getName));
+            buildFiles.addAll(Arrays.asList(filesInSourceDirectory));
+        }
 
-                options.setCics(analysisResult.isCics());
-                options.setDb2(analysisResult.isDb2());
+        // Programs of a module group may use a different charset than the rest of the project
+        Map<String, String> programEncodings = new HashMap<>();
+        for (File buildFile : buildFiles) {
+            ModuleOptions options = moduleOptions.get(buildFile.toString());
+            if (options != null && options.getSourceEncoding() != null) {
+                programEncodings.put(DependencyManifest.toManifestPath(projectDirectory, buildFile),
+                        getCharset(options.getSourceEncoding()).name());
+            }
+        }
 
-                target.getTasks().register(String.format("build-%s", buildFileName), DynamicBuildTask.class, task -> {
-                    task.getBuildFile().set(buildFile);
-                    task.getOutputDirectory().set(outputDirectory);
-                    task.setCobolCompilerExecutable(cobolExtension.getCobolCompilerClass());
-                    task.setEnvironmentVariables(cobolExtension.getEnvironmentVariables().get());
-                    task.setModuleOptions(options);
-                    task.getSourceIncludeDependencies().setFrom(analysisResult.getSourceDependencies());
+        // The sources are only listed here. Reading them is left to the analysis task, which writes the dependencies
+        // of all programs to a manifest that the build tasks read when they are executed
+        TaskProvider<AnalyzeSourcesTask> analyzeTask = target.getTasks().register(ANALYZE_TASK_NAME,
+                AnalyzeSourcesTask.class, task -> {
+                    task.getSources().from(buildFiles);
+                    task.getSourceIncludes().from(sourceIncludeDirectories);
+                    task.getSourceIncludePaths().set(cobolExtension.getSourceIncludePaths().get().stream().map(Path::toString).toList());
+                    task.getSourceEncoding().set(cobolExtension.getSourceEncoding());
+                    task.getProgramEncodings().set(programEncodings);
+                    task.getProjectDirectory().set(target.getLayout().getProjectDirectory());
+                    task.getManifestFile().set(target.getLayout().getBuildDirectory().file("cobol/dependencies.tsv"));
+                    task.getUsageIndexFile().set(target.getLayout().getBuildDirectory().file("cobol/copybook-usage.bin"));
+                    task.getPreviousUsageIndexFile().set(target.getLayout().getBuildDirectory()
+                            .file("cobol/copybook-usage.previous.bin"));
+                    task.getScanStateFile().set(target.getLayout().getBuildDirectory().file("cobol/scan-state.tsv"));
                     task.setGroup(cobolExtension.getGradleTaskGroupName());
                 });
-                target.getLogger().info("Build file: {}, output directory: {}", buildFile, outputDirectory);
+        Provider<DependencyManifest> dependencyManifest = analyzeTask.flatMap(AnalyzeSourcesTask::getManifestFile)
+                .map(manifestFile -> analysisService.get().getDependencyManifest(manifestFile.getAsFile()));
+
+        String compileIsolation = cobolExtension.getCompileIsolation().get();
+        if (!compileIsolation.equals("none") && !compileIsolation.equals("process")) {
+            ProblemId problemId = ProblemId.create("unsupported-compile-isolation", "The compile isolation is not " +
+                    "supported", PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new IllegalArgumentException("The compile isolation is not " +
+                    "supported"), problemId, problemSpec -> {
+                problemSpec.details(String.format("The compile isolation %s is not supported", compileIsolation));
+                problemSpec.solution("Use either \"none\" or \"process\"");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+
+        Provider<String> compilerDirectory = cobolExtension.getCompilerDirectory()
+                .map(directory -> projectDirectory.resolve(directory).toString());
+        String compilerExecutableName = cobolExtension.getCobolCompilerExecutableName();
+
+        // The version is only determined when a build task is executed
+        Provider<String> compilerVersion = getProviders().of(CompilerVersionValueSource.class,
+                spec -> spec.getParameters().getCompilerExecutable().set(compilerDirectory
+                        .map(directory -> Path.of(directory, compilerExecutableName).toString())
+                        .orElse(compilerExecutableName)));
+
+        // The programs are only translated separately if the compiler generates C
+        boolean separateTranslation = cobolExtension.getSeparateTranslation().get();
+        if (separateTranslation && CobolCompilerExecutable.newInstance(cobolExtension.getCobolCompilerClass().getName(),
+                Path.of("program.cbl"), projectDirectory).getTranslateCommand(Path.of("program.c")).isEmpty()) {
+            ProblemId problemId = ProblemId.create("unsupported-separate-translation", "The compiler doesn't " +
+                    "support a separate translation", PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new IllegalArgumentException("The compiler doesn't support " +
+                    "a separate translation"), problemId, problemSpec -> {
+                problemSpec.details(String.format("%s doesn't translate programs to C",
+                        cobolExtension.getCobolCompilerExecutableName()));
+                problemSpec.solution("Set separateTranslation to false");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+
+        String compileTransport = getCompileTransport(cobolExtension, separateTranslation);
+
+        String compileModeName = cobolExtension.getCompileMode().get();
+        CompileMode compileMode = getCompileMode(compileModeName);
+        if (!CobolCompilerExecutable.newInstance(cobolExtension.getCobolCompilerClass().getName(),
+                Path.of("program.cbl"), projectDirectory).supportsCompileMode(compileMode)) {
+            ProblemId problemId = ProblemId.create("unsupported-compile-mode", "The compile mode is not supported by " +
+                    "the compiler", PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new IllegalArgumentException("The compile mode is not " +
+                    "supported by the compiler"), problemId, problemSpec -> {
+                problemSpec.details(String.format("%s doesn't support the compile mode %s",
+                        cobolExtension.getCobolCompilerExecutableName(), compileModeName));
+                problemSpec.solution("Use either \"executable\" or \"object\"");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+
+        // The lambdas below are stored in the configuration cache, which is why they only capture files and strings
+        List<FileCollection> compiledPrograms = new ArrayList<>();
+        Map<String, File> programs = new LinkedHashMap<>();
+        Map<String, TaskProvider<? extends Task>> buildTasks = new HashMap<>();
+        Map<String, TaskProvider<? extends Task>> translateTasks = new HashMap<>();
+        File projectDirectoryFile = projectDirectory.toFile();
+        Logger logger = target.getLogger();
+        for (File buildFile : buildFiles) {
+            String buildFileName = getFileNameWithoutExtension(buildFile);
+            String buildTaskName = String.format("build-%s", buildFileName);
+            File outputDirectory = target.getLayout().getBuildDirectory().dir(buildFileName).get().getAsFile();
+            String manifestPath = DependencyManifest.toManifestPath(projectDirectory, buildFile);
+            Provider<DependencyManifest.Program> program =
+                    dependencyManifest.map(manifest -> manifest.getProgram(manifestPath));
+            Provider<List<File>> sourceIncludes = program.map(dependencies -> dependencies.sourceDependencies()
+                    .stream().map(path -> DependencyManifest.fromManifestPath(projectDirectoryFile.toPath(), path))
+                    .toList());
+            analyzedSourceIncludes.put(buildTaskName, sourceIncludes);
+
+            final ModuleOptions options;
+            if (moduleOptions.get(buildFile.toString()) == null) {
+                options = new ModuleOptions(target.getObjects());
+            } else {
+                options = moduleOptions.get(buildFile.toString());
+            }
+
+            // The translate task and the build task share all settings of the compile
+            Action<DynamicBuildTask> configureCompile = task -> {
+                task.getBuildFile().set(buildFile);
+                task.getProgramPath().set(manifestPath);
+                task.setCobolCompilerExecutable(cobolExtension.getCobolCompilerClass());
+                task.getEnvironmentVariables().set(cobolExtension.getEnvironmentVariables());
+                task.getCompilerVersion().set(compilerVersion);
+                task.getCompilerDirectory().set(compilerDirectory);
+                task.setModuleOptions(options);
+                task.getDb2().set(program.map(DependencyManifest.Program::db2));
+                task.getCics().set(program.map(DependencyManifest.Program::cics));
+                task.getSourceIncludeDependencies().from(sourceIncludes);
+                // The copybooks are internal, the tasks that produce them still have to run first
+                task.dependsOn(task.getSourceIncludeDependencies());
+                task.getSemanticFingerprints().set(cobolExtension.getSemanticFingerprints());
+                task.getProgramEncoding().set(programEncodings.getOrDefault(manifestPath,
+                        cobolExtension.getSourceEncoding().get()));
+                task.usesService(analysisService);
+                // Compiles in worker processes can't reach the scheduler, Gradle limits them instead
+                if (compileIsolation.equals("process")) {
+                    task.usesService(compilerSlotService);
+                }
+                task.getCompileIsolation().set(compileIsolation);
+                task.getCompileMode().set(compileModeName);
+                task.setGroup(cobolExtension.getGradleTaskGroupName());
+            };
+
+            TaskProvider<TranslateCobolTask> translateTask = null;
+            if (separateTranslation) {
+                translateTask = target.getTasks().register(String.format("translate-%s", buildFileName),
+                        TranslateCobolTask.class, task -> {
+                            configureCompile.execute(task);
+                            task.getOutputDirectory().set(target.getLayout().getBuildDirectory()
+                                    .dir("cobol/translated/" + buildFileName));
+                        });
+            }
+            TaskProvider<TranslateCobolTask> translatedBy = translateTask;
+            TaskProvider<DynamicBuildTask> buildTask = target.getTasks().register(buildTaskName,
+                    DynamicBuildTask.class, task -> {
+                        configureCompile.execute(task);
+                        task.getOutputDirectory().set(outputDirectory);
+                        if (translatedBy != null) {
+                            task.getTranslatedSourceDirectory().set(translatedBy
+                                    .flatMap(DynamicBuildTask::getOutputDirectory));
+                            task.dependsOn(translatedBy);
+                        } else {
+                            task.getCompileCache().set(cobolExtension.getCompileCache());
+                            task.usesService(compileCacheService);
+                            task.getCompileTransport().set(compileTransport);
+                            task.getRootDirectory().set(target.getRootDir());
+                            task.usesService(compileSessionService);
+                        }
+                    });
+            programs.put(manifestPath, buildFile);
+            buildTasks.put(manifestPath, buildTask);
+            if (translateTask != null) {
+                translateTasks.put(manifestPath, translateTask);
+            }
+            logger.info("Build file: {}, output directory: {}", buildFile, outputDirectory);
+
+            if (compileMode != CompileMode.EXECUTABLE) {
+                CobolCompilerExecutable compilerExecutable = CobolCompilerExecutable.newInstance(
+                        cobolExtension.getCobolCompilerClass().getName(), buildFile.toPath(), outputDirectory.toPath());
+                compilerExecutable.setCompileMode(compileMode);
+                compiledPrograms.add(target.files(compilerExecutable.getOutputFile()).builtBy(buildTaskName));
+            }
+        }
+
+        // The compiles that took longest in earlier builds start first, so that they don't delay the end of the build
+        orderLongestFirst(target, buildTasks, programs, separateTranslation ? CompileCostModel.COMPILE_TRANSLATED :
+                CompileCostModel.COMPILE);
+        orderLongestFirst(target, translateTasks, programs, CompileCostModel.TRANSLATE);
+
+        // Object files are linked into executables and modules are collected into one directory by a separate task
+        if (compileMode != CompileMode.EXECUTABLE) {
+            Map<String, List<String>> linkCompilerOptions = new HashMap<>();
+            for (File buildFile : buildFiles) {
+                ModuleOptions options = moduleOptions.get(buildFile.toString());
+                if (options != null && !options.getCompilerOptions().isEmpty()) {
+                    linkCompilerOptions.put(getFileNameWithoutExtension(buildFile),
+                            List.copyOf(options.getCompilerOptions()));
+                }
+            }
+            target.getTasks().register(LINK_TASK_NAME, LinkCobolTask.class, task -> {
+                task.getCompiledPrograms().from(compiledPrograms);
+                task.getCompileMode().set(compileModeName);
+                task.setCobolCompilerExecutable(cobolExtension.getCobolCompilerClass());
+                task.getEnvironmentVariables().set(cobolExtension.getEnvironmentVariables());
+                task.getCompilerVersion().set(compilerVersion);
+                task.getCompilerDirectory().set(compilerDirectory);
+                task.getCompilerOptions().set(linkCompilerOptions);
+                task.getDependencyManifest().set(analyzeTask.flatMap(AnalyzeSourcesTask::getManifestFile));
+                task.getOutputDirectory().set(target.getLayout().getBuildDirectory()
+                        .dir(compileMode == CompileMode.OBJECT ? "cobol/bin" : "cobol/lib"));
+                task.setDescription(compileMode == CompileMode.OBJECT ? "Links the object files of all programs " +
+                        "into executables" : "Collects the modules of all programs into one directory");
+                task.setGroup(cobolExtension.getGradleTaskGroupName());
+            });
+        }
+
+        // The aggregate task compiles the same programs as the build tasks, but passes many programs to each compiler
+        // process
+        Map<String, List<String>> programCompilerOptions = new HashMap<>();
+        for (File buildFile : buildFiles) {
+            ModuleOptions options = moduleOptions.get(buildFile.toString());
+            if (options != null && !options.getCompilerOptions().isEmpty()) {
+                programCompilerOptions.put(DependencyManifest.toManifestPath(projectDirectory, buildFile),
+                        List.copyOf(options.getCompilerOptions()));
+            }
+        }
+        Provider<List<File>> allSourceIncludes = dependencyManifest.map(manifest -> manifest.getPrograms().stream()
+                .flatMap(program -> program.sourceDependencies().stream()).distinct()
+                .map(path -> DependencyManifest.fromManifestPath(projectDirectoryFile.toPath(), path)).toList());
+        analyzedSourceIncludes.put(COMPILE_TASK_NAME, allSourceIncludes);
+
+        target.getTasks().register(COMPILE_TASK_NAME, CompileCobolTask.class, task -> {
+            task.getSources().from(buildFiles);
+            task.getSourceIncludeDependencies().from(allSourceIncludes);
+            task.getAnalyzedSourceIncludes().from(allSourceIncludes);
+            task.getDependencyManifest().set(analyzeTask.flatMap(AnalyzeSourcesTask::getManifestFile));
+            task.getProjectDirectory().set(target.getLayout().getProjectDirectory());
+            task.setCobolCompilerExecutable(cobolExtension.getCobolCompilerClass());
+            task.getEnvironmentVariables().set(cobolExtension.getEnvironmentVariables());
+            task.getCompilerVersion().set(compilerVersion);
+            task.getCompilerDirectory().set(compilerDirectory);
+            task.getCompilerOptions().set(programCompilerOptions);
+            task.getBatchSize().set(cobolExtension.getCompileBatchSize());
+            task.getOutputDirectory().set(target.getLayout().getBuildDirectory().dir("cobol/programs"));
+            task.getUsageIndexFile().set(target.getLayout().getBuildDirectory().file("cobol/compiled-programs.bin"));
+            task.usesService(analysisService);
+            task.setGroup(cobolExtension.getGradleTaskGroupName());
+        });
+
+        // The call trees are only known after the analysis task ran, so the task can't depend on the build tasks of the
+        // reachable programs. It compiles each entry point together with the programs it calls instead
+        Provider<List<String>> entryPoints = getProviders().gradleProperty("entry")
+                .map(entries -> Arrays.stream(entries.split(",")).map(String::trim).filter(entry -> !entry.isEmpty())
+                        .toList())
+                .orElse(cobolExtension.getEntryPoints());
+        Provider<Map<String, List<String>>> callTrees = dependencyManifest.zip(entryPoints, (manifest, entries) -> {
+            ProgramCallGraph callGraph = new ProgramCallGraph(manifest);
+            Map<String, List<String>> trees = new LinkedHashMap<>();
+            for (String entry : entries) {
+                List<DependencyManifest.Program> callTree = callGraph.getCallTree(entry);
+                if (!callTree.isEmpty()) {
+                    trees.put(ProgramCallGraph.getProgramName(entry),
+                            callTree.stream().map(DependencyManifest.Program::path).toList());
+                }
             }
+            return trees;
+        });
+        Provider<List<File>> reachableSourceIncludes = dependencyManifest.zip(callTrees, (manifest, trees) -> trees
+                .values().stream().flatMap(List::stream).distinct().map(manifest::getProgram)
+                .flatMap(program -> program.sourceDependencies().stream()).distinct()
+                .map(path -> DependencyManifest.fromManifestPath(projectDirectoryFile.toPath(), path)).toList());
+        analyzedSourceIncludes.put(REACHABLE_TASK_NAME, reachableSourceIncludes);
+
+        target.getTasks().register(REACHABLE_TASK_NAME, BuildReachableTask.class, task -> {
+            task.getEntryPoints().set(entryPoints);
+            task.getCallTrees().set(callTrees);
+            task.getSources().from(callTrees.map(trees -> trees.values().stream().flatMap(List::stream).distinct()
+                    .map(path -> DependencyManifest.fromManifestPath(projectDirectoryFile.toPath(), path)).toList()));
+            task.getSourceIncludeDependencies().from(reachableSourceIncludes);
+            task.getDependencyManifest().set(analyzeTask.flatMap(AnalyzeSourcesTask::getManifestFile));
+            task.getProjectDirectory().set(target.getLayout().getProjectDirectory());
+            task.setCobolCompilerExecutable(cobolExtension.getCobolCompilerClass());
+            task.getEnvironmentVariables().set(cobolExtension.getEnvironmentVariables());
+            task.getCompilerVersion().set(compilerVersion);
+            task.getCompilerDirectory().set(compilerDirectory);
+            task.getCompilerOptions().set(programCompilerOptions);
+            task.getOutputDirectory().set(target.getLayout().getBuildDirectory().dir("cobol/reachable"));
+            task.usesService(compilerSlotService);
+            task.setDescription("Links the programs reachable from the entry points passed with -Pentry statically " +
+                    "into one executable per entry point");
+            task.setGroup(cobolExtension.getGradleTaskGroupName());
+        });
+
+        String buildTaskPrefix = target.getPath().equals(":") ? ":build-" : target.getPath() + ":build-";
+        target.getTasks().register(IMPACT_TASK_NAME, ImpactAnalysisTask.class, task -> {
+            task.getUsageIndexFile().set(analyzeTask.flatMap(AnalyzeSourcesTask::getUsageIndexFile));
+            task.getPreviousUsageIndexFile().set(analyzeTask.flatMap(AnalyzeSourcesTask::getPreviousUsageIndexFile));
+            task.getProjectDirectory().set(target.getLayout().getProjectDirectory());
+            task.getBuildTaskPrefix().set(buildTaskPrefix);
+            task.getReportFile().set(target.getLayout().getBuildDirectory().file("reports/cobol/impact.txt"));
+            task.doNotTrackState("Changed files may come from git");
+            task.setDescription("Lists the programs affected by the files passed with --changed or --git-range");
+            task.setGroup(cobolExtension.getGradleTaskGroupName());
+        });
+    }
+
+    /**
+     * Returns the copybooks that a build task depends on according to the analysis of the sources. Plugins can use
+     * this to process the copybooks before they are passed to the compiler, without referencing the build task itself
+     *
+     * @param buildTaskName The name of the build task
+     * @return The copybooks of the program, or an empty provider if there is no such build task
+     */
+    public Provider<List<File>> getAnalyzedSourceIncludes(String buildTaskName) {
+        Provider<List<File>> sourceIncludes = analyzedSourceIncludes.get(buildTaskName);
+        return sourceIncludes == null ? getProviders().provider(List::of) : sourceIncludes;
+    }
+
+    private @NotNull CompileMode getCompileMode(String compileModeName) {
+        try {
+            return CompileMode.fromName(compileModeName);
+        } catch (IllegalArgumentException e) {
+            ProblemId problemId = ProblemId.create("unknown-compile-mode", "The compile mode is unknown",
+                    PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(e, problemId, problemSpec -> {
+                problemSpec.details(String.format("The compile mode %s is unknown", compileModeName));
+                problemSpec.solution("Use either \"executable\", \"module\" or \"object\"");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+    }
+
+    /*
+    The separate translation and the compile cache run the compiler locally. The compile cache is skipped by the build
+    tasks, a separately translated program couldn't be compiled at all
+     */
+    private @NotNull String getCompileTransport(CobolExtensionInterface cobolExtension, boolean separateTranslation) {
+        String compileTransport = cobolExtension.getCompileTransport().get();
+        if (!List.of("none", "local", "shell").contains(compileTransport)) {
+            ProblemId problemId = ProblemId.create("unknown-compile-transport", "The compile transport is unknown",
+                    PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new IllegalArgumentException("The compile transport is " +
+                    "unknown"), problemId, problemSpec -> {
+                problemSpec.details(String.format("The compile transport %s is unknown", compileTransport));
+                problemSpec.solution("Use either \"none\", \"local\" or \"shell\"");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+        if (compileTransport.equals("shell") && (cobolExtension.getRemoteShell().getOrElse(List.of()).isEmpty() ||
+                !cobolExtension.getCompileWorkspace().isPresent())) {
+            ProblemId problemId = ProblemId.create("incomplete-remote-shell", "The remote shell is not configured",
+                    PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new IllegalArgumentException("The remote shell is not " +
+                    "configured"), problemId, problemSpec -> {
+                problemSpec.details("The shell transport requires the command that opens the shell and the " +
+                        "workspace on the remote machine");
+                problemSpec.solution("Set remoteShell, e.g. listOf(\"ssh\", \"-T\", \"user@host\"), and " +
+                        "compileWorkspace");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+        if (compileTransport.equals("shell") && cobolExtension.getCompilerDirectory().isPresent() &&
+                !cobolExtension.getCompilerDirectory().get().isAbsolute()) {
+            ProblemId problemId = ProblemId.create("relative-remote-compiler-directory", "The compiler directory " +
+                    "is relative", PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new IllegalArgumentException("The compiler directory is " +
+                    "relative"), problemId, problemSpec -> {
+                problemSpec.details(String.format("The compiler directory %s can't be resolved on the remote machine",
+                        cobolExtension.getCompilerDirectory().get()));
+                problemSpec.solution("Set the absolute path of the compiler directory on the remote machine");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+        if (!compileTransport.equals("none") && separateTranslation) {
+            ProblemId problemId = ProblemId.create("unsupported-transport-translation", "The compile transport " +
+                    "doesn't support a separate translation", PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new IllegalArgumentException("The compile transport doesn't " +
+                    "support a separate translation"), problemId, problemSpec -> {
+                problemSpec.details(String.format("Separately translated programs can't be compiled with the " +
+                        "compile transport %s", compileTransport));
+                problemSpec.solution("Set either separateTranslation to false or compileTransport to \"none\"");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+        return compileTransport;
+    }
+
+    private @NotNull Charset getCharset(String sourceEncoding) {
+        try {
+            return Charset.forName(sourceEncoding);
+        } catch (IllegalArgumentException e) {
+            ProblemId problemId = ProblemId.create("unsupported-source-encoding", "The source encoding is not " +
+                    "supported", PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(e, problemId, problemSpec -> {
+                problemSpec.details(String.format("The source encoding %s is not supported by the JVM",
+                        sourceEncoding));
+                problemSpec.solution("Specify the name of a charset that is supported by the JVM, e.g. IBM-1047");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+    }
+
+    /*
+    The history is kept in the root project, where it survives a clean build
+     */
+    private static File getCompileHistoryFile(Project project) {
+        return project.getRootDir().toPath().resolve(".gradle/cobol/compile-history.tsv").toFile();
+    }
+
+    /*
+    Gradle starts the tasks that are ready in the order of the chain. Unlike mustRunAfter, a task whose predecessor
+    can't run yet, e.g. as it waits for its copybooks, isn't held back
+     */
+    private void orderLongestFirst(Project target, Map<String, TaskProvider<? extends Task>> tasks,
+                                   Map<String, File> programs, String stage) {
+        if (tasks.size() < 2) {
+            return;
+        }
+        List<String> order = getProviders().of(CompileOrderValueSource.class, spec -> {
+            spec.getParameters().getHistoryFile().set(getCompileHistoryFile(target));
+            spec.getParameters().getProjectPath().set(target.getPath());
+            spec.getParameters().getStage().set(stage);
+            spec.getParameters().getPrograms().set(programs);
+        }).get();
+        for (int i = 1; i < order.size(); i++) {
+            TaskProvider<? extends Task> previous = tasks.get(order.get(i - 1));
+            tasks.get(order.get(i)).configure(task -> task.shouldRunAfter(previous));
         }
     }
 
@@ -1,57 +1,36 @@
 package de.livingmainframe.plugins.cobol.core;
 
-import org.jetbrains.annotations.NotNull;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 public class CobolSourceAnalyzer {
 
-    /*
-    This regular expression is flawed in the following ways:
-    1) It accepts a hyphen as the first and last character which isn't allowed with IBM
-    2) It only accepts 1-8 characters instead of 1-30
-    3) It doesn't make any distinction between IBM and GNU Cobol
-     */
-    private static final String copyRegex = "^.{6}(?!\\*).\\s*COPY ([A-Za-z0-9-]{1,8})(?:\\.|\\s|$)";
-    private static final Pattern copyRegexPattern = Pattern.compile(copyRegex);
-
-    /*
-    This is regular expression also has flaws. It currently covers the following cases:
-    1) The EXEC SQL INCLUDE statement is on one line
-    2) There are line breaks between EXEC SQL, INCLUDE, the dependency name and END-EXEC
-    In case the source code contains characters in the suffix or prefix area the regular
-    won't find a result
-    TODO: Enhance RegEx to ignore text in the suffix and prefix area of the program
-     */
-    private static final String execSqlIncludeRegex = "^.{6}(?!\\*).\\s*EXEC SQL\\s*INCLUDE\\s*([A-Za-z0-9-]{1,8})" +
-            "\\s*END-EXEC(?:\\.|\\s|$)";
-    private static final Pattern execSqlIncludeRegexPattern = Pattern.compile(execSqlIncludeRegex);
+    private static final Logger logger = Logging.getLogger(CobolSourceAnalyzer.class);
 
     /*
-    This regular expression searches for EXEC SQL commands which can be anywhere in the source but cannot be comment
-    lines
+    Mapping a file has a fixed overhead that only pays off for larger files. Smaller files are read into a buffer
      */
-    private static final String execSqlRegex = "^.{6}(?!\\*).\\s*EXEC SQL";
-    private static final Pattern execSqlRegexPattern = Pattern.compile(execSqlRegex);
-
-    /*
-    Similarly to EXEC SQL we search for EXEC CICS statements
-     */
-    private static final String execCicsRegex = "^.{6}(?!\\*).\\s*EXEC CICS";
-    private static final Pattern execCicsRegexPattern = Pattern.compile(execCicsRegex);
+    private static final long MEMORY_MAPPING_THRESHOLD = 256 * 1024;
 
     private final File buildFile;
     private boolean analyzeDb2Usage = true;
     private boolean analyzeCicsUsage = true;
+    private Charset charset = Charset.defaultCharset();
 
     /**
      * Utility class that scan source files and returns information like dependencies and whether the program uses
@@ -64,88 +43,137 @@ public class CobolSourceAnalyzer {
     }
 
     public SourceCodeAnalysisResult analyzeSource(List<File> sourceIncludeDirectories) {
+        return analyzeSource(CopybookIndex.of(sourceIncludeDirectories));
+    }
+
+    /**
+     * Analyzes the source file and resolves its dependencies through an existing copybook index. This avoids listing
+     * the include directories again for every analyzed source file.
+     *
+     * @param copybookIndex The index of all available copybooks
+     * @return The result of the analysis
+     */
+    public SourceCodeAnalysisResult analyzeSource(CopybookIndex copybookIndex) {
         SourceCodeAnalysisResult analysisResult = new SourceCodeAnalysisResult();
 
         List<String> sourceDependencyNames = new ArrayList<>();
-        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(buildFile))) {
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                Matcher copyRegexMatcher = copyRegexPattern.matcher(line);
-                while (copyRegexMatcher.find()) {
-                    String includeName = copyRegexMatcher.group(1);
-                    sourceDependencyNames.add(includeName);
-                }
-                if (analyzeDb2Usage) {
-
-                    // First, we check if the current line includes any EXEC SQL
-                    // After the first occurrence we don't check again
-                    if (!analysisResult.isDb2()) {
-                        Matcher execSqlRegexMatcher = execSqlRegexPattern.matcher(line);
-                        while (execSqlRegexMatcher.find()) {
-                            analysisResult.setDb2(true);
-                        }
-                    }
-
-                    // We only need to execute this in case we have identified that the program uses Db2
-                    // This avoids unnecessary line reads because the previous 'if' will find the first line that
-                    // identifies a program as Db2
-                    if (analysisResult.isDb2()) {
-                        // TODO Change to buffered reading because EXEC SQL INCLUDE statements that span multiple rows
-                        //  cannot be detected
-                        Matcher execSqlIncludeRegexMatcher = execSqlIncludeRegexPattern.matcher(line);
-                        while (execSqlIncludeRegexMatcher.find()) {
-                            String includeName = execSqlIncludeRegexMatcher.group(1);
-                            sourceDependencyNames.add(includeName);
-                        }
-                    }
-                }
-
-                if (analyzeCicsUsage && !analysisResult.isCics()) {
-                    Matcher execCicsRegexMatcher = execCicsRegexPattern.matcher(line);
-                    while (execCicsRegexMatcher.find()) {
-                        analysisResult.setCics(true);
-                    }
-                }
+        try (FileChannel fileChannel = FileChannel.open(buildFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer source = readSource(fileChannel);
+            Charset scannerCharset = charset;
+            if (!CobolSourceScanner.supportsByteScanning(charset)) {
+                // Only charsets like UTF-16 need to be transcoded, all others are scanned without decoding them
+                source = StandardCharsets.UTF_8.encode(charset.decode(source));
+                scannerCharset = StandardCharsets.UTF_8;
             }
+            new CobolSourceScanner(analyzeDb2Usage, analyzeCicsUsage, scannerCharset).scan(source, analysisResult,
+                    sourceDependencyNames);
         } catch (IOException e) {
-            System.err.println("An error occurred reading the file: " + e);
+            // The file is treated as empty, its dependencies and Db2 or CICS usage are missing from the result
+            logger.warn("Unable to read {}: {}", buildFile, e.getMessage());
         }
 
-        List<File> sourceDependencies = findSourceDependencies(sourceDependencyNames, sourceIncludeDirectories);
+        List<File> sourceDependencies = findSourceDependencies(sourceDependencyNames, copybookIndex);
         analysisResult.setSourceDependencies(sourceDependencies);
+        analysisResult.setSourceDependencyNames(sourceDependencyNames);
 
         return analysisResult;
     }
 
-    private List<File> findSourceDependencies(List<String> sourceDependencyNames, List<File> sourceIncludeDirectories) {
+    private static ByteBuffer readSource(FileChannel fileChannel) throws IOException {
+        long size = fileChannel.size();
+        if (size > MEMORY_MAPPING_THRESHOLD) {
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        ByteBuffer source = ByteBuffer.allocate((int) size);
+        while (source.hasRemaining() && fileChannel.read(source) >= 0) {
+            // Read until the buffer is full or the end of the file is reached
+        }
+        return source.flip();
+    }
+
+    private List<File> findSourceDependencies(List<String> sourceDependencyNames, CopybookIndex copybookIndex) {
         List<File> sourceDependencies = new ArrayList<>();
 
-        Map<String, File> cacheDirectoryListing = cacheDirectoryListing(sourceIncludeDirectories);
         for (String sourceDependencyName : sourceDependencyNames) {
-            sourceDependencyName = sourceDependencyName.toLowerCase();
-            if (cacheDirectoryListing.containsKey(sourceDependencyName)) {
-                sourceDependencies.add(cacheDirectoryListing.get(sourceDependencyName));
+            File sourceDependency = copybookIndex.find(sourceDependencyName);
+            if (sourceDependency != null) {
+                sourceDependencies.add(sourceDependency);
             }
         }
 
         return sourceDependencies;
     }
 
-    private @NotNull Map<String, File> cacheDirectoryListing(@NotNull List<File> sourceIncludeDirectories) {
-        Map<String, File> cacheDirectoryListing = new LinkedHashMap<>();
-        for (File sourceIncludeDirectory : sourceIncludeDirectories) {
-            File[] directoryListing = sourceIncludeDirectory.listFiles();
-            if (directoryListing != null) {
-                for (File file : directoryListing) {
-                    if (file.isFile()) {
-                        //TODO: Make the file extension configurable
-                        //TODO: Evaluate whether toLowerCase() is actually desired
-                        cacheDirectoryListing.putIfAbsent(file.getName().replace(".cpy", "").toLowerCase(), file);
-                    }
-                }
+    /**
+     * Analyzes many source files in parallel on a bounded pool of threads. The results are returned in the same order
+     * as the source files were passed in, independent of the order in which the analyses finish.
+     *
+     * @param buildFiles      The source files to analyze
+     * @param dependencyGraph The dependency graph that resolves the copybooks transitively, shared by all analyses
+     * @param parallelism     The maximum number of source files that are analyzed at the same time
+     * @return The analysis results, the n-th result belongs to the n-th source file
+     */
+    public static List<SourceCodeAnalysisResult> analyzeSources(List<File> buildFiles,
+                                                                CopybookDependencyGraph dependencyGraph,
+                                                                int parallelism) {
+        return analyzeSources(buildFiles, dependencyGraph, buildFile -> dependencyGraph.getCharset(), parallelism);
+    }
+
+    /**
+     * Analyzes many source files in parallel on a bounded pool of threads. The results are returned in the same order
+     * as the source files were passed in, independent of the order in which the analyses finish.
+     *
+     * @param buildFiles      The source files to analyze
+     * @param dependencyGraph The dependency graph that resolves the copybooks transitively, shared by all analyses
+     * @param charsets        Returns the charset of each source file
+     * @param parallelism     The maximum number of source files that are analyzed at the same time
+     * @return The analysis results, the n-th result belongs to the n-th source file
+     */
+    public static List<SourceCodeAnalysisResult> analyzeSources(List<File> buildFiles,
+                                                                CopybookDependencyGraph dependencyGraph,
+                                                                Function<File, Charset> charsets,
+                                                                int parallelism) {
+        if (buildFiles.size() < 2 || parallelism < 2) {
+            return buildFiles.stream().map(buildFile -> resolve(dependencyGraph, buildFile,
+                    charsets.apply(buildFile))).toList();
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(parallelism, buildFiles.size()));
+        try {
+            List<Future<SourceCodeAnalysisResult>> futures = new ArrayList<>(buildFiles.size());
+            for (File buildFile : buildFiles) {
+                Charset charset = charsets.apply(buildFile);
+                futures.add(executorService.submit(() -> resolve(dependencyGraph, buildFile, charset)));
+            }
+
+            List<SourceCodeAnalysisResult> analysisResults = new ArrayList<>(buildFiles.size());
+            for (Future<SourceCodeAnalysisResult> future : futures) {
+                analysisResults.add(future.get());
+            }
+            return analysisResults;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("The source analysis was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
         }
-        return cacheDirectoryListing;
+    }
+
+    /*
+    The duration includes waiting for copybooks that another thread is scanning at the same time
+     */
+    private static SourceCodeAnalysisResult resolve(CopybookDependencyGraph dependencyGraph, File buildFile,
+                                                    Charset charset) {
+        long startTime = System.nanoTime();
+        SourceCodeAnalysisResult analysisResult = dependencyGraph.resolve(buildFile, charset);
+        analysisResult.setAnalysisDuration(System.nanoTime() - startTime);
+        return analysisResult;
     }
 
     public void setAnalyzeDb2Usage(boolean analyzeDb2Usage) {
@@ -155,4 +183,13 @@ public class CobolSourceAnalyzer {
     public void setAnalyzeCicsUsage(boolean analyzeCicsUsage) {
         this.analyzeCicsUsage = analyzeCicsUsage;
     }
+
+    /**
+     * The charset the source file is encoded in. By default, the platform's default charset is used
+     *
+     * @param charset The charset of the source file
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
 }
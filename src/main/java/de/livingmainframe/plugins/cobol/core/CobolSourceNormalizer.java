@@ -0,0 +1,174 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Hashes the semantic content of a fixed-format COBOL source, so that changes which don't affect the compiled program
+ * don't make the build tasks out of date:
+ * <ul>
+ *     <li>Columns 1-6 (sequence number area) and columns 73-80 (identification area) are ignored</li>
+ *     <li>Lines with a '*' or '/' in column 7 (indicator area) are comment lines, only the fact that there is a line
+ *     is hashed</li>
+ *     <li>Trailing blanks and line terminators (LF, CRLF or NEL) are ignored</li>
+ * </ul>
+ * Lines are never removed from the hash. Adding or removing a line, including a comment line, changes the line
+ * numbers the compiler reports and writes into listings and debug information, so it is treated as a change.
+ * <p>
+ * The columns are determined the same way as by the {@link CobolSourceScanner}, i.e. by counting bytes.
+ * <p>
+ * In free or variable format, the sequence and identification areas contain code. Sources that select their format
+ * with a directive (>>SOURCE or $SET SOURCEFORMAT) are therefore hashed byte by byte, and compiles whose options select
+ * a different format than fixed must not use the semantic hashes at all, see {@link #isFixedFormat(List)}.
+ */
+public final class CobolSourceNormalizer {
+
+    private static final int INDICATOR_COLUMN = 7;
+    private static final int LAST_COLUMN = 72;
+
+    /**
+     * The prefix of the hashes of sources that select their format and are therefore hashed byte by byte
+     */
+    public static final String BYTES_PREFIX = "bytes:";
+
+    private static final List<String> FORMAT_DIRECTIVES = List.of(">>SOURCE", "SOURCEFORMAT");
+
+    private CobolSourceNormalizer() {
+    }
+
+    /**
+     * Whether the compiler options leave the programs in fixed format, i.e. select neither free nor variable format
+     * with -free, -F or -fformat
+     *
+     * @param compilerOptions The compiler options of the program
+     * @return True if the sources are compiled in fixed format
+     */
+    public static boolean isFixedFormat(@NotNull List<String> compilerOptions) {
+        for (int i = 0; i < compilerOptions.size(); i++) {
+            String compilerOption = compilerOptions.get(i);
+            if (compilerOption.equals("-free") || compilerOption.equals("--free") || compilerOption.equals("-F")) {
+                return false;
+            }
+            String format = null;
+            if (compilerOption.startsWith("-fformat=") || compilerOption.startsWith("--fformat=")) {
+                format = compilerOption.substring(compilerOption.indexOf('=') + 1);
+            } else if ((compilerOption.equals("-fformat") || compilerOption.equals("--fformat")) &&
+                    i + 1 < compilerOptions.size()) {
+                format = compilerOptions.get(i + 1);
+            }
+            if (format != null && !format.equalsIgnoreCase("fixed")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param file    The program or copybook
+     * @param charset The charset of the file
+     * @return The SHA-256 hash of the semantic content as a hexadecimal string, prefixed with {@link #BYTES_PREFIX}
+     * if the file selects its format and was hashed byte by byte
+     * @throws IOException If the file can't be read
+     */
+    public static @NotNull String hash(@NotNull File file, @NotNull Charset charset) throws IOException {
+        return hash(Files.readAllBytes(file.toPath()), charset);
+    }
+
+    public static @NotNull String hash(byte @NotNull [] source, @NotNull Charset charset) {
+        if (!CobolSourceScanner.supportsByteScanning(charset)) {
+            ByteBuffer transcoded = StandardCharsets.UTF_8.encode(charset.decode(ByteBuffer.wrap(source)));
+            source = new byte[transcoded.remaining()];
+            transcoded.get(source);
+            charset = StandardCharsets.UTF_8;
+        }
+        byte[] asciiCharacters = CobolSourceScanner.getAsciiCharacters(charset);
+
+        MessageDigest digest = newDigest();
+        if (selectsFormat(source, asciiCharacters)) {
+            return BYTES_PREFIX + HexFormat.of().formatHex(digest.digest(source));
+        }
+
+        // The content of the current line from the indicator area up to the last non-blank character
+        byte[] line = new byte[LAST_COLUMN - INDICATOR_COLUMN + 1];
+        int length = 0;
+        int column = 0;
+        boolean comment = false;
+        for (byte b : source) {
+            byte character = asciiCharacters[b & 0xFF];
+            if (character == '\n') {
+                updateLine(digest, line, length, comment);
+                length = 0;
+                column = 0;
+                comment = false;
+                continue;
+            }
+            if (character == '\r') {
+                continue;
+            }
+            column++;
+            if (column == INDICATOR_COLUMN) {
+                comment = character == '*' || character == '/';
+            }
+            if (column >= INDICATOR_COLUMN && column <= LAST_COLUMN && !comment) {
+                line[column - INDICATOR_COLUMN] = b;
+                if (character != ' ') {
+                    length = column - INDICATOR_COLUMN + 1;
+                }
+            }
+        }
+        if (column > 0) {
+            updateLine(digest, line, length, comment);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hashes a file byte by byte, for sources that can't be hashed semantically
+     *
+     * @param file The program or copybook
+     * @return The SHA-256 hash prefixed with {@link #BYTES_PREFIX}
+     * @throws IOException If the file can't be read
+     */
+    public static @NotNull String hashBytes(@NotNull File file) throws IOException {
+        return BYTES_PREFIX + HexFormat.of().formatHex(newDigest().digest(Files.readAllBytes(file.toPath())));
+    }
+
+    /*
+    The directives are searched anywhere in the source, ignoring case. A comment that mentions one only costs the
+    semantic hash of the file
+     */
+    private static boolean selectsFormat(byte[] source, byte[] asciiCharacters) {
+        byte[] upperCaseSource = new byte[source.length];
+        for (int i = 0; i < source.length; i++) {
+            byte character = asciiCharacters[source[i] & 0xFF];
+            upperCaseSource[i] = character >= 'a' && character <= 'z' ? (byte) (character - ('a' - 'A')) : character;
+        }
+        String text = new String(upperCaseSource, StandardCharsets.ISO_8859_1);
+        return FORMAT_DIRECTIVES.stream().anyMatch(text::contains);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+    }
+
+    private static void updateLine(MessageDigest digest, byte[] line, int length, boolean comment) {
+        if (!comment) {
+            digest.update(line, 0, length);
+        }
+        digest.update((byte) '\n');
+    }
+}
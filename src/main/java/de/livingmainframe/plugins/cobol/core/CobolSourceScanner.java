@@ -0,0 +1,531 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hand-written scanner for fixed-format COBOL source that finds COPY and EXEC SQL INCLUDE statements, EXEC SQL and EXEC
+ * CICS blocks as well as the targets of static CALL statements in a single pass over the bytes of a file.
+ * <p>
+ * The scanner follows the reference format:
+ * <ul>
+ *     <li>Columns 1-6 (sequence number area) and columns 73-80 (identification area) are ignored</li>
+ *     <li>Lines with a '*' or '/' in column 7 (indicator area) are comment lines and are skipped, as well as
+ *     everything that follows a floating comment indicator '*&gt;'</li>
+ *     <li>A '-' in column 7 continues the word or alphanumeric literal of the previous line</li>
+ *     <li>Statements may span multiple lines, e.g. an EXEC SQL INCLUDE where the name is on the next line</li>
+ *     <li>Keywords are matched case-insensitively and never inside alphanumeric literals</li>
+ * </ul>
+ * Apart from the names of the found copybooks and programs the scanner doesn't allocate any objects per line. The
+ * bytes aren't decoded. Instead, every byte value is translated through a table that is created once per charset.
+ * This works for all single-byte charsets, including EBCDIC code pages like IBM-1047 or IBM-037, and for multibyte
+ * charsets that are ASCII compatible like UTF-8 (see {@link #supportsByteScanning(Charset)}).
+ * <p>
+ * Instances keep the state of the current scan and must not be shared between threads.
+ */
+public final class CobolSourceScanner {
+
+    private static final int INDICATOR_COLUMN = 7;
+    private static final int LAST_COLUMN = 72;
+    /*
+    COBOL user-defined words are at most 30 characters long. Longer words can't be a copybook name or one of the
+    keywords we look for, so only their length is tracked. The regular expressions this scanner replaced only matched
+    names of up to 8 characters, the length of a z/OS member name, which excluded copybooks with longer names on other
+    platforms
+     */
+    private static final int MAX_WORD_LENGTH = 30;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /*
+    Classification of every ASCII character, so that the main loop only needs one lookup per character. For other
+    charsets the table is translated into a table per charset
+     */
+    private static final byte SEPARATOR = 0;
+    private static final byte WORD = 1;
+    private static final byte SPACE = 2;
+    private static final byte QUOTE = 3;
+    private static final byte ASTERISK = 4;
+    private static final byte NEWLINE = 5;
+    private static final byte IGNORED = 6;
+    private static final byte[] CHARACTER_CLASSES = new byte[128];
+    private static final ConcurrentMap<Charset, byte[][]> CHARSET_TABLES = new ConcurrentHashMap<>();
+
+    static {
+        for (int c = 'A'; c <= 'Z'; c++) {
+            CHARACTER_CLASSES[c] = WORD;
+            CHARACTER_CLASSES[c + ('a' - 'A')] = WORD;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            CHARACTER_CLASSES[c] = WORD;
+        }
+        CHARACTER_CLASSES['-'] = WORD;
+        CHARACTER_CLASSES['_'] = WORD;
+        CHARACTER_CLASSES[' '] = SPACE;
+        CHARACTER_CLASSES['\t'] = SPACE;
+        CHARACTER_CLASSES['\''] = QUOTE;
+        CHARACTER_CLASSES['"'] = QUOTE;
+        CHARACTER_CLASSES['*'] = ASTERISK;
+        CHARACTER_CLASSES['\n'] = NEWLINE;
+        CHARACTER_CLASSES['\r'] = IGNORED;
+    }
+
+    private static final byte[] COPY = keyword("COPY");
+    private static final byte[] EXEC = keyword("EXEC");
+    private static final byte[] SQL = keyword("SQL");
+    private static final byte[] CICS = keyword("CICS");
+    private static final byte[] INCLUDE = keyword("INCLUDE");
+    private static final byte[] END_EXEC = keyword("END-EXEC");
+    private static final byte[] CALL = keyword("CALL");
+
+    private enum State {
+        /* Regular COBOL code */
+        CODE,
+        /* After COPY, the next word is the name of the copybook */
+        COPY_NAME,
+        /* After CALL, the next word is either a literal with the name of the program or an identifier */
+        CALL_TARGET,
+        /* After EXEC, the next word is the name of the sub-language */
+        EXEC_LANGUAGE,
+        /* The first word after EXEC SQL */
+        EXEC_SQL_STATEMENT,
+        /* After EXEC SQL INCLUDE, the next word is the name of the copybook */
+        SQL_INCLUDE_NAME,
+        /* Inside an EXEC block until END-EXEC */
+        EXEC_BLOCK
+    }
+
+    private final boolean analyzeDb2Usage;
+    private final boolean analyzeCicsUsage;
+    private final byte[] asciiCharacters;
+    private final byte[] characterClasses;
+
+    private final byte[] word = new byte[MAX_WORD_LENGTH];
+    private int wordLength;
+    private boolean inWord;
+    private byte literalQuote;
+    private boolean pendingQuote;
+    private boolean pendingAsterisk;
+    private boolean awaitingIndicator;
+    private boolean continuationPending;
+    private int column;
+    private boolean skipLine;
+
+    private State state;
+    private SourceCodeAnalysisResult analysisResult;
+    private List<String> includeNames;
+    private List<String> calledPrograms;
+
+    /**
+     * @param analyzeDb2Usage  Whether EXEC SQL blocks and EXEC SQL INCLUDE statements should be reported
+     * @param analyzeCicsUsage Whether EXEC CICS blocks should be reported
+     */
+    public CobolSourceScanner(boolean analyzeDb2Usage, boolean analyzeCicsUsage) {
+        this(analyzeDb2Usage, analyzeCicsUsage, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param analyzeDb2Usage  Whether EXEC SQL blocks and EXEC SQL INCLUDE statements should be reported
+     * @param analyzeCicsUsage Whether EXEC CICS blocks should be reported
+     * @param charset          The charset of the scanned bytes, it must support byte scanning
+     */
+    public CobolSourceScanner(boolean analyzeDb2Usage, boolean analyzeCicsUsage, @NotNull Charset charset) {
+        if (!supportsByteScanning(charset)) {
+            throw new IllegalArgumentException(String.format("The charset %s can't be scanned byte by byte", charset));
+        }
+        this.analyzeDb2Usage = analyzeDb2Usage;
+        this.analyzeCicsUsage = analyzeCicsUsage;
+        byte[][] tables = CHARSET_TABLES.computeIfAbsent(charset, CobolSourceScanner::createCharsetTables);
+        this.asciiCharacters = tables[0];
+        this.characterClasses = tables[1];
+    }
+
+    /**
+     * Checks whether a charset can be scanned without decoding it. That is the case for all single-byte charsets and
+     * for multibyte charsets that encode ASCII characters the same as ASCII. Sources in other charsets (e.g., UTF-16)
+     * must be transcoded first.
+     *
+     * @param charset The charset of the source
+     * @return true if the bytes can be scanned directly
+     */
+    public static boolean supportsByteScanning(@NotNull Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        if (charset.newEncoder().maxBytesPerChar() == 1.0f) {
+            return true;
+        }
+        String asciiCharacters = " -'\"*\n0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        return Arrays.equals(asciiCharacters.getBytes(StandardCharsets.US_ASCII), asciiCharacters.getBytes(charset));
+    }
+
+    /**
+     * Returns the ASCII character of every byte value of a charset, or 0 if the byte has no ASCII equivalent. NEL is
+     * translated to a line feed
+     *
+     * @param charset A charset that supports byte scanning
+     * @return The table, indexed by the unsigned byte value
+     */
+    static byte[] getAsciiCharacters(@NotNull Charset charset) {
+        return CHARSET_TABLES.computeIfAbsent(charset, CobolSourceScanner::createCharsetTables)[0];
+    }
+
+    /*
+    Decodes every single byte value once. The first table contains the ASCII character of a byte (or 0 if it has no
+    ASCII equivalent), the second table the class of the character. EBCDIC uses NEL (U+0085) to terminate lines
+     */
+    private static byte[][] createCharsetTables(Charset charset) {
+        byte[] asciiCharacters = new byte[256];
+        byte[] characterClasses = new byte[256];
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        for (int b = 0; b < 256; b++) {
+            char c;
+            try {
+                CharBuffer decoded = decoder.reset().decode(ByteBuffer.wrap(new byte[]{(byte) b}));
+                c = decoded.length() == 1 ? decoded.get(0) : 0;
+            } catch (CharacterCodingException e) {
+                c = 0;
+            }
+            if (c == '\u0085') {
+                c = '\n';
+            }
+            if (c < 128) {
+                asciiCharacters[b] = (byte) c;
+                characterClasses[b] = CHARACTER_CLASSES[c];
+            }
+        }
+        return new byte[][]{asciiCharacters, characterClasses};
+    }
+
+    /**
+     * Scans the source from the position to the limit of the buffer. The position of the buffer isn't changed.
+     *
+     * @param source         The bytes of the source file
+     * @param analysisResult Receives whether the source uses Db2 or CICS and the programs it calls statically
+     * @param includeNames   Receives the names of all copybooks in the order they occur in the source
+     */
+    public void scan(@NotNull ByteBuffer source, @NotNull SourceCodeAnalysisResult analysisResult,
+                     @NotNull List<String> includeNames) {
+        begin(analysisResult, includeNames);
+        if (source.hasArray()) {
+            scan(source.array(), source.arrayOffset() + source.position(), source.remaining());
+        } else {
+            // Reading single bytes from a direct buffer is a lot slower than reading from an array, so the buffer is
+            // copied in chunks. The scanner keeps its state between the chunks
+            byte[] chunk = new byte[Math.min(CHUNK_SIZE, source.remaining())];
+            for (int position = source.position(); position < source.limit(); position += chunk.length) {
+                int length = Math.min(chunk.length, source.limit() - position);
+                source.get(position, chunk, 0, length);
+                scan(chunk, 0, length);
+            }
+        }
+        end();
+    }
+
+    private void begin(SourceCodeAnalysisResult analysisResult, List<String> includeNames) {
+        this.analysisResult = analysisResult;
+        this.includeNames = includeNames;
+        this.calledPrograms = null;
+        this.state = State.CODE;
+        this.wordLength = 0;
+        this.inWord = false;
+        this.literalQuote = 0;
+        this.pendingQuote = false;
+        this.pendingAsterisk = false;
+        this.awaitingIndicator = false;
+        this.continuationPending = false;
+        this.column = 0;
+        this.skipLine = false;
+    }
+
+    private void end() {
+        pendingQuote = false;
+        finishToken();
+        if (calledPrograms != null) {
+            analysisResult.setCalledPrograms(List.copyOf(calledPrograms));
+        }
+        this.analysisResult = null;
+        this.includeNames = null;
+        this.calledPrograms = null;
+    }
+
+    private void scan(byte[] source, int offset, int length) {
+        int limit = offset + length;
+        for (int i = offset; i < limit; i++) {
+            int index = source[i] & 0xFF;
+            byte characterClass = characterClasses[index];
+            if (characterClass == NEWLINE) {
+                endOfLine();
+                continue;
+            }
+            if (characterClass == IGNORED) {
+                continue;
+            }
+            byte b = asciiCharacters[index];
+
+            column++;
+            if (skipLine || column > LAST_COLUMN) {
+                // Nothing of interest until the end of the line
+                skipLine = true;
+                while (i + 1 < limit && characterClasses[source[i + 1] & 0xFF] != NEWLINE) {
+                    i++;
+                }
+                continue;
+            }
+            if (column < INDICATOR_COLUMN) {
+                continue;
+            }
+            if (column == INDICATOR_COLUMN) {
+                indicator(b);
+                continue;
+            }
+
+            if (continuationPending) {
+                // The continued word or literal resumes at the first non-blank character of the continuation line.
+                // For literals this character is a quote which isn't part of the literal itself
+                if (characterClass == SPACE) {
+                    continue;
+                }
+                continuationPending = false;
+                if (literalQuote != 0 && b == literalQuote) {
+                    continue;
+                }
+            }
+
+            if (pendingAsterisk) {
+                pendingAsterisk = false;
+                if (b == '>') {
+                    // Floating comment indicator, the rest of the line is a comment
+                    skipLine = true;
+                    continue;
+                }
+            }
+
+            if (literalQuote != 0) {
+                scanLiteral(b, characterClass);
+            } else if (characterClass == WORD) {
+                appendToWord(b);
+            } else if (characterClass == QUOTE) {
+                finishToken();
+                literalQuote = b;
+                inWord = true;
+            } else {
+                finishToken();
+                pendingAsterisk = characterClass == ASTERISK;
+            }
+        }
+    }
+
+    /*
+    A word or literal that is still open at the end of a line is only finished once the indicator area of the next
+    line shows that it isn't a continuation line. This keeps the scanner free of any lookahead
+     */
+    private void endOfLine() {
+        if (pendingQuote) {
+            pendingQuote = false;
+            finishToken();
+        }
+        if (awaitingIndicator) {
+            // The line was too short to have an indicator area
+            awaitingIndicator = false;
+            finishToken();
+        }
+        awaitingIndicator = inWord;
+        pendingAsterisk = false;
+        continuationPending = false;
+        column = 0;
+        skipLine = false;
+    }
+
+    private void indicator(byte b) {
+        if (awaitingIndicator) {
+            awaitingIndicator = false;
+            if (b == '-') {
+                continuationPending = true;
+            } else {
+                finishToken();
+            }
+        }
+        skipLine = b == '*' || b == '/';
+    }
+
+    private void scanLiteral(byte b, byte characterClass) {
+        if (pendingQuote) {
+            pendingQuote = false;
+            if (b == literalQuote) {
+                // Two quotes in a row represent one quote inside the literal
+                appendToWord(b);
+                return;
+            }
+            finishToken();
+            if (characterClass == QUOTE) {
+                literalQuote = b;
+                inWord = true;
+            } else if (characterClass == WORD) {
+                appendToWord(b);
+            }
+        } else if (b == literalQuote) {
+            pendingQuote = true;
+        } else {
+            appendToWord(b);
+        }
+    }
+
+    private void appendToWord(byte b) {
+        if (wordLength < MAX_WORD_LENGTH) {
+            word[wordLength] = b;
+        }
+        wordLength++;
+        inWord = true;
+    }
+
+    private void finishToken() {
+        if (!inWord) {
+            return;
+        }
+        boolean literal = literalQuote != 0;
+        inWord = false;
+        literalQuote = 0;
+        onToken(literal);
+        wordLength = 0;
+    }
+
+    private void onToken(boolean literal) {
+        switch (state) {
+            case CODE -> {
+                if (literal) {
+                    return;
+                }
+                if (wordEquals(COPY)) {
+                    state = State.COPY_NAME;
+                } else if (wordEquals(CALL)) {
+                    state = State.CALL_TARGET;
+                } else if (wordEquals(EXEC)) {
+                    state = State.EXEC_LANGUAGE;
+                }
+            }
+            case COPY_NAME -> {
+                if (isValidName(literal)) {
+                    includeNames.add(currentWord());
+                }
+                state = State.CODE;
+            }
+            case CALL_TARGET -> {
+                // CALL identifier is resolved when the program runs
+                if (literal && isValidProgramName()) {
+                    addCalledProgram(currentWord());
+                }
+                state = State.CODE;
+            }
+            case EXEC_LANGUAGE -> {
+                if (wordEquals(SQL)) {
+                    if (analyzeDb2Usage) {
+                        analysisResult.setDb2(true);
+                    }
+                    state = State.EXEC_SQL_STATEMENT;
+                } else {
+                    if (analyzeCicsUsage && wordEquals(CICS)) {
+                        analysisResult.setCics(true);
+                    }
+                    state = wordEquals(END_EXEC) ? State.CODE : State.EXEC_BLOCK;
+                }
+            }
+            case EXEC_SQL_STATEMENT -> {
+                if (analyzeDb2Usage && !literal && wordEquals(INCLUDE)) {
+                    state = State.SQL_INCLUDE_NAME;
+                } else {
+                    state = !literal && wordEquals(END_EXEC) ? State.CODE : State.EXEC_BLOCK;
+                }
+            }
+            case SQL_INCLUDE_NAME -> {
+                if (!literal && wordEquals(END_EXEC)) {
+                    state = State.CODE;
+                    return;
+                }
+                if (isValidName(literal)) {
+                    includeNames.add(currentWord());
+                }
+                state = State.EXEC_BLOCK;
+            }
+            case EXEC_BLOCK -> {
+                if (!literal && wordEquals(END_EXEC)) {
+                    state = State.CODE;
+                }
+            }
+        }
+    }
+
+    /*
+    User-defined words consist of letters, digits and hyphens but must not start or end with a hyphen. Literals are
+    taken as they are, as long as they aren't empty or too long
+     */
+    private boolean isValidName(boolean literal) {
+        if (wordLength == 0 || wordLength > MAX_WORD_LENGTH) {
+            return false;
+        }
+        return literal || (word[0] != '-' && word[wordLength - 1] != '-');
+    }
+
+    /*
+    Program names are used as file names by the compiler and the build tasks, so literals that contain anything but
+    letters, digits, hyphens and underscores aren't treated as calls of a program of the project
+     */
+    private boolean isValidProgramName() {
+        if (wordLength == 0 || wordLength > MAX_WORD_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < wordLength; i++) {
+            if (word[i] < 0 || CHARACTER_CLASSES[word[i]] != WORD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addCalledProgram(String programName) {
+        if (calledPrograms == null) {
+            // Most programs don't call any other program, the list is only allocated for those that do
+            calledPrograms = new ArrayList<>();
+        }
+        if (!calledPrograms.contains(programName)) {
+            calledPrograms.add(programName);
+        }
+    }
+
+    private boolean wordEquals(byte[] keyword) {
+        if (wordLength != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < wordLength; i++) {
+            byte b = word[i];
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String currentWord() {
+        return new String(word, 0, wordLength, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] keyword(String keyword) {
+        return keyword.getBytes(StandardCharsets.US_ASCII);
+    }
+}
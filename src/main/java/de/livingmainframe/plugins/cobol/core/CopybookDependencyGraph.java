@@ -0,0 +1,250 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dependency graph between programs and copybooks, including the edges from copybooks to the copybooks they include
+ * themselves (nested COPY or EXEC SQL INCLUDE statements).
+ * <p>
+ * Every copybook (and program) is scanned at most once during the lifetime of the graph, no matter how many programs
+ * include it. Results of earlier scans can be added to avoid scanning unchanged files again, either explicitly or
+ * through a {@link SourceScanCache} that is consulted before a file is scanned. The graph is safe to be used from
+ * multiple threads.
+ */
+public class CopybookDependencyGraph {
+
+    private final CopybookIndex copybookIndex;
+    private final Charset charset;
+    private final ConcurrentMap<File, SourceCodeAnalysisResult> analysisResults = new ConcurrentHashMap<>();
+    // Copybooks that are included by programs with a different charset are scanned once per charset
+    private final ConcurrentMap<Charset, ConcurrentMap<File, SourceCodeAnalysisResult>> otherCharsetResults =
+            new ConcurrentHashMap<>();
+    private final Set<List<File>> cycles = ConcurrentHashMap.newKeySet();
+    private final SourceScanCache scanCache;
+    private final AtomicInteger scannedFiles = new AtomicInteger();
+
+    public CopybookDependencyGraph(CopybookIndex copybookIndex) {
+        this(copybookIndex, Charset.defaultCharset());
+    }
+
+    /**
+     * @param copybookIndex The index used to find the copybooks
+     * @param charset       The default charset of the programs and their copybooks
+     */
+    public CopybookDependencyGraph(CopybookIndex copybookIndex, Charset charset) {
+        this(copybookIndex, charset, null);
+    }
+
+    /**
+     * @param copybookIndex The index used to find the copybooks
+     * @param charset       The default charset of the programs and their copybooks
+     * @param scanCache     The scan results of earlier builds, or null to scan every file
+     */
+    public CopybookDependencyGraph(CopybookIndex copybookIndex, Charset charset, @Nullable SourceScanCache scanCache) {
+        this.copybookIndex = copybookIndex;
+        this.charset = charset;
+        this.scanCache = scanCache;
+    }
+
+    public CopybookIndex getCopybookIndex() {
+        return copybookIndex;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Analyzes a program and resolves all of its copybooks transitively
+     *
+     * @param buildFile The program to analyze
+     * @return The analysis result. The source dependencies contain the full transitive closure of copybooks, Db2 and
+     * CICS usage as well as static calls are also detected when they only occur in one of the copybooks
+     */
+    public SourceCodeAnalysisResult resolve(@NotNull File buildFile) {
+        return resolve(buildFile, charset);
+    }
+
+    /**
+     * Analyzes a program that uses a different charset than the other programs, e.g. one of a module group, and
+     * resolves all of its copybooks transitively. The copybooks are read with the charset of the program as well.
+     *
+     * @param buildFile       The program to analyze
+     * @param programCharset  The charset of the program and its copybooks
+     * @return The analysis result, see {@link #resolve(File)}
+     */
+    public SourceCodeAnalysisResult resolve(@NotNull File buildFile, @NotNull Charset programCharset) {
+        SourceCodeAnalysisResult programAnalysisResult = getAnalysisResult(buildFile, programCharset);
+
+        boolean db2 = programAnalysisResult.isDb2();
+        boolean cics = programAnalysisResult.isCics();
+        Set<String> calledPrograms = new LinkedHashSet<>(programAnalysisResult.getCalledPrograms());
+        Set<File> closure = new LinkedHashSet<>();
+        List<File> path = new ArrayList<>();
+        Set<File> pathMembers = new HashSet<>();
+
+        for (File copybook : programAnalysisResult.getSourceDependencies()) {
+            collect(copybook, programCharset, closure, path, pathMembers);
+        }
+        for (File copybook : closure) {
+            SourceCodeAnalysisResult copybookAnalysisResult = getCopybookAnalysisResult(copybook, programCharset);
+            db2 |= copybookAnalysisResult.isDb2();
+            cics |= copybookAnalysisResult.isCics();
+            calledPrograms.addAll(copybookAnalysisResult.getCalledPrograms());
+        }
+
+        SourceCodeAnalysisResult analysisResult = new SourceCodeAnalysisResult(cics, db2, List.copyOf(closure));
+        analysisResult.setCalledPrograms(List.copyOf(calledPrograms));
+        return analysisResult;
+    }
+
+    /**
+     * Returns the copybooks that are directly included by a copybook
+     *
+     * @param copybook The copybook file as found in the copybook index
+     * @return The directly included copybooks
+     */
+    public List<File> getCopybookDependencies(@NotNull File copybook) {
+        return getAnalysisResult(copybook, charset).getSourceDependencies();
+    }
+
+    /**
+     * Adds the result of an earlier scan of a file, e.g. from a previous build. The file won't be scanned again
+     * unless it has already been scanned by this graph. The names are resolved through the copybook index of this
+     * graph.
+     *
+     * @param file                  The program or copybook that was scanned
+     * @param db2                   Whether the file contains EXEC SQL statements
+     * @param cics                  Whether the file contains EXEC CICS statements
+     * @param sourceDependencyNames The names of the directly included copybooks
+     */
+    public void addAnalysisResult(@NotNull File file, boolean db2, boolean cics,
+                                  @NotNull List<String> sourceDependencyNames) {
+        addAnalysisResult(file, db2, cics, List.of(), sourceDependencyNames);
+    }
+
+    /**
+     * Adds the result of an earlier scan of a file that calls other programs, see
+     * {@link #addAnalysisResult(File, boolean, boolean, List)}
+     *
+     * @param file                  The program or copybook that was scanned
+     * @param db2                   Whether the file contains EXEC SQL statements
+     * @param cics                  Whether the file contains EXEC CICS statements
+     * @param calledPrograms        The names of the programs that are called with a literal
+     * @param sourceDependencyNames The names of the directly included copybooks
+     */
+    public void addAnalysisResult(@NotNull File file, boolean db2, boolean cics, @NotNull List<String> calledPrograms,
+                                  @NotNull List<String> sourceDependencyNames) {
+        List<File> sourceDependencies = new ArrayList<>();
+        for (String sourceDependencyName : sourceDependencyNames) {
+            File sourceDependency = copybookIndex.find(sourceDependencyName);
+            if (sourceDependency != null) {
+                sourceDependencies.add(sourceDependency);
+            }
+        }
+        SourceCodeAnalysisResult analysisResult = new SourceCodeAnalysisResult(cics, db2, sourceDependencies);
+        analysisResult.setSourceDependencyNames(List.copyOf(sourceDependencyNames));
+        analysisResult.setCalledPrograms(List.copyOf(calledPrograms));
+        analysisResults.putIfAbsent(file, analysisResult);
+    }
+
+    /**
+     * Returns the result of scanning a single file without resolving its copybooks transitively
+     *
+     * @param file The program or copybook
+     * @return The scan result or null if the file hasn't been scanned (or added) yet
+     */
+    public @Nullable SourceCodeAnalysisResult getScannedAnalysisResult(@NotNull File file) {
+        return analysisResults.get(file);
+    }
+
+    /**
+     * All cycles that were found while resolving programs so far. Each cycle is a list of copybooks where the last
+     * copybook includes the first one again, starting with the smallest copybook.
+     *
+     * @return The cycles between copybooks
+     */
+    public Set<List<File>> getCycles() {
+        return Set.copyOf(cycles);
+    }
+
+    /**
+     * @return The number of files that were actually read, i.e. neither added nor found in the scan cache
+     */
+    public int getScannedFiles() {
+        return scannedFiles.get();
+    }
+
+    private void collect(File copybook, Charset copybookCharset, Set<File> closure, List<File> path,
+                         Set<File> pathMembers) {
+        if (pathMembers.contains(copybook)) {
+            cycles.add(normalizeCycle(path.subList(path.indexOf(copybook), path.size())));
+            return;
+        }
+        if (!closure.add(copybook)) {
+            // Already visited through a different path, all of its dependencies are part of the closure
+            return;
+        }
+
+        path.add(copybook);
+        pathMembers.add(copybook);
+        for (File nestedCopybook : getCopybookAnalysisResult(copybook, copybookCharset).getSourceDependencies()) {
+            collect(nestedCopybook, copybookCharset, closure, path, pathMembers);
+        }
+        pathMembers.remove(copybook);
+        path.removeLast();
+    }
+
+    /*
+    A cycle is found from whichever of its copybooks a program includes first, so it is rotated to start at its
+    smallest copybook. Otherwise the same cycle would be reported once per copybook it was entered through
+     */
+    private static List<File> normalizeCycle(List<File> cycle) {
+        int start = cycle.indexOf(Collections.min(cycle));
+        List<File> normalizedCycle = new ArrayList<>(cycle.subList(start, cycle.size()));
+        normalizedCycle.addAll(cycle.subList(0, start));
+        return List.copyOf(normalizedCycle);
+    }
+
+    /*
+    The scans of the charset of the graph are the ones that can be added and are returned by getScannedAnalysisResult
+     */
+    private SourceCodeAnalysisResult getCopybookAnalysisResult(File copybook, Charset copybookCharset) {
+        if (copybookCharset.equals(charset)) {
+            return getAnalysisResult(copybook, charset);
+        }
+        return otherCharsetResults.computeIfAbsent(copybookCharset, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(copybook, file -> scanOrLookUp(file, copybookCharset));
+    }
+
+    private SourceCodeAnalysisResult getAnalysisResult(File sourceFile, Charset sourceCharset) {
+        return analysisResults.computeIfAbsent(sourceFile, file -> scanOrLookUp(file, sourceCharset));
+    }
+
+    private SourceCodeAnalysisResult scanOrLookUp(File file, Charset sourceCharset) {
+        if (scanCache == null) {
+            return scan(file, sourceCharset);
+        }
+        return scanCache.scan(file, sourceCharset, copybookIndex, () -> scan(file, sourceCharset));
+    }
+
+    private SourceCodeAnalysisResult scan(File sourceFile, Charset sourceCharset) {
+        scannedFiles.incrementAndGet();
+        CobolSourceAnalyzer analyzer = new CobolSourceAnalyzer(sourceFile);
+        analyzer.setCharset(sourceCharset);
+        return analyzer.analyzeSource(copybookIndex);
+    }
+}
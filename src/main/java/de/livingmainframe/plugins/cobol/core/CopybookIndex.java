@@ -0,0 +1,68 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup table of all source includes (copybooks) that exist in a list of include directories. The
+ * directories are listed exactly once when the index is created. If the same copybook exists in multiple
+ * directories, the first directory in the list wins (this mirrors how the compilers search their include paths).
+ * <p>
+ * Instances don't change after creation and can safely be shared between threads and source analyses.
+ */
+public final class CopybookIndex {
+
+    private final List<File> sourceIncludeDirectories;
+    private final Map<String, File> copybooks;
+
+    private CopybookIndex(List<File> sourceIncludeDirectories, Map<String, File> copybooks) {
+        this.sourceIncludeDirectories = sourceIncludeDirectories;
+        this.copybooks = copybooks;
+    }
+
+    /**
+     * Lists all given directories and creates the index from it
+     *
+     * @param sourceIncludeDirectories The directories containing copybooks in the order they should be searched
+     * @return The index of all copybooks found in the directories
+     */
+    public static @NotNull CopybookIndex of(@NotNull List<File> sourceIncludeDirectories) {
+        Map<String, File> copybooks = new HashMap<>();
+        for (File sourceIncludeDirectory : sourceIncludeDirectories) {
+            File[] directoryListing = sourceIncludeDirectory.listFiles();
+            if (directoryListing != null) {
+                for (File file : directoryListing) {
+                    if (file.isFile()) {
+                        //TODO: Make the file extension configurable
+                        //TODO: Evaluate whether toLowerCase() is actually desired
+                        copybooks.putIfAbsent(file.getName().replace(".cpy", "").toLowerCase(), file);
+                    }
+                }
+            }
+        }
+        return new CopybookIndex(List.copyOf(sourceIncludeDirectories), Map.copyOf(copybooks));
+    }
+
+    /**
+     * Looks up a copybook by the name that is used in the source code (e.g., in a COPY statement)
+     *
+     * @param copybookName The name of the copybook, case is ignored
+     * @return The copybook file or null if none of the directories contains the copybook
+     */
+    public @Nullable File find(@NotNull String copybookName) {
+        return copybooks.get(copybookName.toLowerCase());
+    }
+
+    public List<File> getSourceIncludeDirectories() {
+        return sourceIncludeDirectories;
+    }
+
+    public int size() {
+        return copybooks.size();
+    }
+}
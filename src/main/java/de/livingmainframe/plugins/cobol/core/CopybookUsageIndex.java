@@ -0,0 +1,170 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The reverse of the dependency manifest: for every copybook the programs that depend on it. The index is stored in a
+ * compact binary format, in which every path is only written once, so that looking up the programs affected by a
+ * change doesn't require reading or resolving any source.
+ * <p>
+ * The index also contains the programs with their flags and copybooks, so that it can be compared to a newer manifest
+ * to find the programs whose dependencies changed.
+ */
+public final class CopybookUsageIndex {
+
+    private static final int MAGIC = 0x43424958;
+    private static final int VERSION = 1;
+
+    private final Map<String, DependencyManifest.Program> programs;
+    private final Map<String, Set<String>> programsByCopybook;
+
+    private CopybookUsageIndex(Map<String, DependencyManifest.Program> programs,
+                               Map<String, Set<String>> programsByCopybook) {
+        this.programs = programs;
+        this.programsByCopybook = programsByCopybook;
+    }
+
+    public static @NotNull CopybookUsageIndex of(@NotNull Collection<DependencyManifest.Program> programs) {
+        Map<String, DependencyManifest.Program> programsByPath = new TreeMap<>();
+        Map<String, Set<String>> programsByCopybook = new HashMap<>();
+        for (DependencyManifest.Program program : programs) {
+            // The index isn't written with the called programs, they don't change how a program is compiled
+            programsByPath.put(program.path(), program.calledPrograms().isEmpty() ? program :
+                    new DependencyManifest.Program(program.path(), program.db2(), program.cics(),
+                            program.sourceDependencies()));
+            for (String copybook : program.sourceDependencies()) {
+                programsByCopybook.computeIfAbsent(copybook, key -> new TreeSet<>()).add(program.path());
+            }
+        }
+        return new CopybookUsageIndex(programsByPath, programsByCopybook);
+    }
+
+    public static @NotNull CopybookUsageIndex of(@NotNull DependencyManifest dependencyManifest) {
+        return of(dependencyManifest.getPrograms());
+    }
+
+    /**
+     * Returns the programs that depend on a copybook, directly or through other copybooks
+     *
+     * @param copybookPath The manifest path of the copybook
+     * @return The manifest paths of the programs, sorted
+     */
+    public @NotNull Set<String> getPrograms(@NotNull String copybookPath) {
+        return Collections.unmodifiableSet(programsByCopybook.getOrDefault(copybookPath, Set.of()));
+    }
+
+    public @Nullable DependencyManifest.Program getProgram(@NotNull String programPath) {
+        return programs.get(programPath);
+    }
+
+    public @NotNull Collection<DependencyManifest.Program> getPrograms() {
+        return Collections.unmodifiableCollection(programs.values());
+    }
+
+    public boolean isCopybook(@NotNull String path) {
+        return programsByCopybook.containsKey(path);
+    }
+
+    /*
+    Layout: magic, version, the table of all paths, the programs (path index, flags, copybook indexes) and the
+    copybooks (path index, program indexes)
+     */
+    public void write(@NotNull File indexFile) throws IOException {
+        Map<String, Integer> pathIndexes = new LinkedHashMap<>();
+        for (DependencyManifest.Program program : programs.values()) {
+            pathIndexes.putIfAbsent(program.path(), pathIndexes.size());
+            for (String copybook : program.sourceDependencies()) {
+                pathIndexes.putIfAbsent(copybook, pathIndexes.size());
+            }
+        }
+
+        try (DataOutputStream output =
+                     new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile.toPath())))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(pathIndexes.size());
+            for (String path : pathIndexes.keySet()) {
+                output.writeUTF(path);
+            }
+
+            output.writeInt(programs.size());
+            for (DependencyManifest.Program program : programs.values()) {
+                output.writeInt(pathIndexes.get(program.path()));
+                output.writeByte((program.db2() ? 1 : 0) | (program.cics() ? 2 : 0));
+                output.writeInt(program.sourceDependencies().size());
+                for (String copybook : program.sourceDependencies()) {
+                    output.writeInt(pathIndexes.get(copybook));
+                }
+            }
+
+            output.writeInt(programsByCopybook.size());
+            for (Map.Entry<String, Set<String>> copybook : programsByCopybook.entrySet()) {
+                output.writeInt(pathIndexes.get(copybook.getKey()));
+                output.writeInt(copybook.getValue().size());
+                for (String program : copybook.getValue()) {
+                    output.writeInt(pathIndexes.get(program));
+                }
+            }
+        }
+    }
+
+    public static @NotNull CopybookUsageIndex read(@NotNull File indexFile) throws IOException {
+        try (DataInputStream input =
+                     new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException(String.format("%s is not a copybook usage index of version %d", indexFile,
+                        VERSION));
+            }
+            String[] paths = new String[input.readInt()];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = input.readUTF();
+            }
+
+            Map<String, DependencyManifest.Program> programs = new TreeMap<>();
+            int programCount = input.readInt();
+            for (int i = 0; i < programCount; i++) {
+                String path = paths[input.readInt()];
+                int flags = input.readByte();
+                int copybookCount = input.readInt();
+                List<String> copybooks = new ArrayList<>(copybookCount);
+                for (int j = 0; j < copybookCount; j++) {
+                    copybooks.add(paths[input.readInt()]);
+                }
+                programs.put(path, new DependencyManifest.Program(path, (flags & 1) != 0, (flags & 2) != 0,
+                        List.copyOf(copybooks)));
+            }
+
+            Map<String, Set<String>> programsByCopybook = new HashMap<>();
+            int usedCopybookCount = input.readInt();
+            for (int i = 0; i < usedCopybookCount; i++) {
+                String copybook = paths[input.readInt()];
+                Set<String> copybookPrograms = new TreeSet<>();
+                int count = input.readInt();
+                for (int j = 0; j < count; j++) {
+                    copybookPrograms.add(paths[input.readInt()]);
+                }
+                programsByCopybook.put(copybook, copybookPrograms);
+            }
+            return new CopybookUsageIndex(programs, programsByCopybook);
+        }
+    }
+}
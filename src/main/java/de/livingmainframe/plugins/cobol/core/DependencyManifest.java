@@ -0,0 +1,159 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The result of analyzing all programs of a project: the copybooks each program depends on (transitively), whether
+ * the program uses Db2 or CICS and which programs it calls statically.
+ * <p>
+ * The manifest is stored as a text file with one program per line. The fields are separated by tabs: the path of the
+ * program, the flags ('D' for Db2, 'C' for CICS, '-' otherwise), the names of the called programs separated by commas
+ * ('-' if there are none) and the paths of all copybooks. All paths are relative to the project directory if
+ * possible, so that the manifest can be reused from a different location. Manifests of the first version, which don't
+ * contain the called programs, can still be read.
+ */
+public final class DependencyManifest {
+
+    private static final String HEADER = "# COBOL dependency manifest v2";
+    private static final String HEADER_V1 = "# COBOL dependency manifest v1";
+
+    /**
+     * @param path               The path of the program, relative to the project directory
+     * @param db2                Whether the program or one of its copybooks uses Db2
+     * @param cics               Whether the program or one of its copybooks uses CICS
+     * @param calledPrograms     The names of the programs that the program or one of its copybooks calls statically
+     * @param sourceDependencies The paths of all copybooks that the program depends on
+     */
+    public record Program(String path, boolean db2, boolean cics, List<String> calledPrograms,
+                          List<String> sourceDependencies) {
+
+        public Program(String path, boolean db2, boolean cics, List<String> sourceDependencies) {
+            this(path, db2, cics, List.of(), sourceDependencies);
+        }
+    }
+
+    private final Map<String, Program> programs;
+
+    public DependencyManifest(@NotNull Collection<Program> programs) {
+        Map<String, Program> sortedPrograms = new TreeMap<>();
+        for (Program program : programs) {
+            sortedPrograms.put(program.path(), program);
+        }
+        this.programs = Collections.unmodifiableMap(sortedPrograms);
+    }
+
+    public @Nullable Program getProgram(@NotNull String path) {
+        return programs.get(path);
+    }
+
+    public Collection<Program> getPrograms() {
+        return programs.values();
+    }
+
+    public static @NotNull DependencyManifest read(@NotNull File manifestFile) throws IOException {
+        List<Program> programs = new ArrayList<>();
+        boolean calls = true;
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals(HEADER_V1)) {
+                    calls = false;
+                }
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < (calls ? 3 : 2)) {
+                    throw new IOException(String.format("Invalid line in %s: %s", manifestFile, line));
+                }
+                List<String> calledPrograms = calls ? parseCalledPrograms(fields[2]) : List.of();
+                programs.add(new Program(fields[0], fields[1].indexOf('D') >= 0, fields[1].indexOf('C') >= 0,
+                        calledPrograms, List.of(Arrays.copyOfRange(fields, calls ? 3 : 2, fields.length))));
+            }
+        }
+        return new DependencyManifest(programs);
+    }
+
+    public void write(@NotNull File manifestFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Program program : programs.values()) {
+                writer.write(program.path());
+                writer.write('\t');
+                writer.write(program.db2() ? 'D' : '-');
+                writer.write(program.cics() ? 'C' : '-');
+                writer.write('\t');
+                writer.write(formatCalledPrograms(program.calledPrograms()));
+                for (String sourceDependency : program.sourceDependencies()) {
+                    writer.write('\t');
+                    writer.write(sourceDependency);
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Formats the names of called programs as a single field of the manifest
+     *
+     * @param calledPrograms The names of the called programs
+     * @return The names separated by commas, or '-' if there are none
+     */
+    public static @NotNull String formatCalledPrograms(@NotNull List<String> calledPrograms) {
+        return calledPrograms.isEmpty() ? "-" : String.join(",", calledPrograms);
+    }
+
+    /**
+     * Parses a field written by {@link #formatCalledPrograms(List)}
+     *
+     * @param field The field of the manifest
+     * @return The names of the called programs
+     */
+    public static @NotNull List<String> parseCalledPrograms(@NotNull String field) {
+        return field.equals("-") || field.isEmpty() ? List.of() : List.of(field.split(","));
+    }
+
+    /**
+     * Converts a file to the path that is stored in the manifest
+     *
+     * @param projectDirectory The project directory
+     * @param file             The file to convert
+     * @return The path relative to the project directory with '/' as separator, or the absolute path if the file is
+     * outside the project directory
+     */
+    public static @NotNull String toManifestPath(@NotNull Path projectDirectory, @NotNull File file) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(projectDirectory)) {
+            return path.toString();
+        }
+        return projectDirectory.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Converts a path that is stored in the manifest back to a file
+     *
+     * @param projectDirectory The project directory
+     * @param manifestPath     The path from the manifest
+     * @return The file
+     */
+    public static @NotNull File fromManifestPath(@NotNull Path projectDirectory, @NotNull String manifestPath) {
+        return projectDirectory.resolve(manifestPath).toFile();
+    }
+}
@@ -0,0 +1,109 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.apache.commons.io.FilenameUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The static calls between the programs of a project, built from the called programs in the
+ * {@link DependencyManifest}. A program is known by the name of its file without the extension, which is how the
+ * compiled programs are named and found by the runtime. Names are compared case-insensitively.
+ * <p>
+ * Calls of programs that aren't part of the project, e.g. the library routines of the compiler or programs of other
+ * projects, can't be followed and are reported as unresolved.
+ */
+public final class ProgramCallGraph {
+
+    private final Map<String, DependencyManifest.Program> programs = new HashMap<>();
+
+    public ProgramCallGraph(@NotNull DependencyManifest dependencyManifest) {
+        for (DependencyManifest.Program program : dependencyManifest.getPrograms()) {
+            programs.putIfAbsent(getProgramName(program.path()), program);
+        }
+    }
+
+    /**
+     * @param path The path of a program or the name it is called by
+     * @return The name of the program in upper case, without directories and extension
+     */
+    public static @NotNull String getProgramName(@NotNull String path) {
+        return FilenameUtils.getBaseName(path).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @param programName The name of the program, in any case
+     * @return The program or null if the project contains no program with that name
+     */
+    public @Nullable DependencyManifest.Program getProgram(@NotNull String programName) {
+        return programs.get(getProgramName(programName));
+    }
+
+    /**
+     * Returns the programs that an entry point calls directly or indirectly, including the entry point itself. The
+     * entry point is the first program of the tree, the called programs follow in the order they are first reached
+     * (breadth first). Recursive calls are only followed once
+     *
+     * @param entryPoint The name of the program that is started
+     * @return The programs of the call tree or an empty list if the entry point isn't a program of the project
+     */
+    public @NotNull List<DependencyManifest.Program> getCallTree(@NotNull String entryPoint) {
+        return getReachablePrograms(List.of(entryPoint));
+    }
+
+    /**
+     * Returns the programs that are reachable from any of the entry points, including the entry points themselves. Entry
+     * points that aren't programs of the project are ignored
+     *
+     * @param entryPoints The names of the programs that are started
+     * @return The reachable programs without duplicates, in the order they are first reached
+     */
+    public @NotNull List<DependencyManifest.Program> getReachablePrograms(@NotNull Collection<String> entryPoints) {
+        Map<String, DependencyManifest.Program> reachablePrograms = new LinkedHashMap<>();
+        Deque<DependencyManifest.Program> queue = new ArrayDeque<>();
+        for (String entryPoint : entryPoints) {
+            DependencyManifest.Program program = getProgram(entryPoint);
+            if (program != null && reachablePrograms.putIfAbsent(program.path(), program) == null) {
+                queue.add(program);
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (String calledProgramName : queue.poll().calledPrograms()) {
+                DependencyManifest.Program calledProgram = getProgram(calledProgramName);
+                if (calledProgram != null && reachablePrograms.putIfAbsent(calledProgram.path(), calledProgram) == null) {
+                    queue.add(calledProgram);
+                }
+            }
+        }
+        return new ArrayList<>(reachablePrograms.values());
+    }
+
+    /**
+     * Returns the calls of a set of programs that can't be resolved to a program of the project
+     *
+     * @param programs The calling programs, e.g. a call tree
+     * @return The names of the called programs as they are written in the source code
+     */
+    public @NotNull Set<String> getUnresolvedCalls(@NotNull Collection<DependencyManifest.Program> programs) {
+        Set<String> unresolvedCalls = new LinkedHashSet<>();
+        for (DependencyManifest.Program program : programs) {
+            for (String calledProgramName : program.calledPrograms()) {
+                if (getProgram(calledProgramName) == null) {
+                    unresolvedCalls.add(calledProgramName);
+                }
+            }
+        }
+        return unresolvedCalls;
+    }
+}
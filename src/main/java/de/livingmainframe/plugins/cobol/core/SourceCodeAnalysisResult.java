@@ -19,6 +19,9 @@ public class SourceCodeAnalysisResult {
     private boolean cics;
     private boolean db2;
     private List<File> sourceDependencies;
+    private List<String> sourceDependencyNames = List.of();
+    private List<String> calledPrograms = List.of();
+    private long analysisDuration = -1;
 
     public SourceCodeAnalysisResult() {
         this.cics = false;
@@ -40,7 +43,54 @@ public class SourceCodeAnalysisResult {
         return db2;
     }
 
+    /**
+     * The copybooks the analyzed file depends on. For programs that were resolved through a
+     * {@link CopybookDependencyGraph} this is the transitive closure, including copybooks of copybooks.
+     *
+     * @return The copybook files
+     */
     public List<File> getSourceDependencies() {
         return sourceDependencies;
     }
+
+    /**
+     * The names of the copybooks as they are used in the source code, including those that couldn't be found
+     *
+     * @return The names of the directly included copybooks
+     */
+    public List<String> getSourceDependencyNames() {
+        return sourceDependencyNames;
+    }
+
+    public void setSourceDependencyNames(List<String> sourceDependencyNames) {
+        this.sourceDependencyNames = sourceDependencyNames;
+    }
+
+    /**
+     * The programs that are called with a literal, i.e. CALL 'PROGRAM' or CALL "PROGRAM". Calls through an identifier
+     * are only resolved when the program runs and aren't part of the list
+     *
+     * @return The names of the called programs as they are written in the source code, without duplicates
+     */
+    public List<String> getCalledPrograms() {
+        return calledPrograms;
+    }
+
+    public void setCalledPrograms(List<String> calledPrograms) {
+        this.calledPrograms = calledPrograms;
+    }
+
+    /**
+     * How long the analysis of the file took when it was analyzed through
+     * {@link CobolSourceAnalyzer#analyzeSources(List, CopybookDependencyGraph, int)}
+     *
+     * @return The duration in nanoseconds, -1 if it wasn't measured
+     */
+    public long getAnalysisDuration() {
+        return analysisDuration;
+    }
+
+    public void setAnalysisDuration(long analysisDuration) {
+        this.analysisDuration = analysisDuration;
+    }
 }
@@ -0,0 +1,145 @@
+package de.livingmainframe.plugins.cobol.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the scan results of programs and copybooks and the copybook indexes between builds, so a build only scans the
+ * files that changed since an earlier build. A scan result is reused as long as the modification time and the size of
+ * the file are the same, a copybook index as long as the modification times of its directories are the same, which
+ * change when a copybook is added, removed or renamed.
+ * <p>
+ * A file that is modified within the resolution of the modification time after it was scanned keeps its modification
+ * time. Results of files that were modified shortly before they were scanned are therefore not reused, the next build
+ * scans them again.
+ * <p>
+ * The scan results contain the names of the included copybooks. If the copybook index changed, the names are resolved
+ * again through the new index instead of scanning the file again. The cache is safe to be used from multiple threads.
+ */
+public final class SourceScanCache {
+
+    // Covers file systems that store the modification time in seconds or, like FAT, in two seconds
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private final int maxEntries;
+    private final ConcurrentMap<ScanKey, Scan> scans = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<File>, IndexedDirectories> copybookIndexes = new ConcurrentHashMap<>();
+
+    private record ScanKey(File file, Charset charset) {
+    }
+
+    private record Scan(long lastModified, long length, long scanTime, CopybookIndex copybookIndex,
+                        SourceCodeAnalysisResult analysisResult) {
+    }
+
+    private record IndexedDirectories(List<Long> lastModified, long listTime, CopybookIndex copybookIndex) {
+    }
+
+    /**
+     * @param maxEntries The number of scan results after which the cache is cleared, which bounds its memory in a
+     *                   long-running daemon
+     */
+    public SourceScanCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the scan result of a file if it didn't change since it was scanned, or scans it otherwise
+     *
+     * @param file          The program or copybook
+     * @param charset       The charset the file is scanned with
+     * @param copybookIndex The index that resolves the names of the included copybooks
+     * @param scanner       Scans the file and resolves the names through the given index
+     * @return The scan result, which must not be modified
+     */
+    public @NotNull SourceCodeAnalysisResult scan(@NotNull File file, @NotNull Charset charset,
+                                                  @NotNull CopybookIndex copybookIndex,
+                                                  @NotNull Supplier<SourceCodeAnalysisResult> scanner) {
+        ScanKey key = new ScanKey(file, charset);
+        // The stamp is taken before the file is read, so a change during the scan is detected by the next build
+        long scanTime = System.currentTimeMillis();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Scan scan = scans.get(key);
+        if (scan != null && scan.lastModified() == lastModified && scan.length() == length &&
+                isStable(lastModified, scan.scanTime())) {
+            if (scan.copybookIndex() == copybookIndex) {
+                return scan.analysisResult();
+            }
+            SourceCodeAnalysisResult analysisResult = resolve(scan.analysisResult(), copybookIndex);
+            scans.put(key, new Scan(lastModified, length, scan.scanTime(), copybookIndex, analysisResult));
+            return analysisResult;
+        }
+
+        SourceCodeAnalysisResult analysisResult = scanner.get();
+        // A file that doesn't exist or can't be read has no modification time, its empty result isn't kept
+        if (lastModified != 0) {
+            if (scans.size() >= maxEntries) {
+                scans.clear();
+            }
+            scans.put(key, new Scan(lastModified, length, scanTime, copybookIndex, analysisResult));
+        }
+        return analysisResult;
+    }
+
+    /**
+     * Returns the index of the copybooks in the given directories. The directories are only listed again if one of
+     * them changed since they were listed
+     *
+     * @param sourceIncludeDirectories The include directories in the order they are searched
+     * @return The copybook index
+     */
+    public @NotNull CopybookIndex getCopybookIndex(@NotNull List<File> sourceIncludeDirectories) {
+        List<File> key = List.copyOf(sourceIncludeDirectories);
+        long listTime = System.currentTimeMillis();
+        List<Long> lastModified = new ArrayList<>(key.size());
+        for (File sourceIncludeDirectory : key) {
+            lastModified.add(sourceIncludeDirectory.lastModified());
+        }
+        IndexedDirectories indexedDirectories = copybookIndexes.get(key);
+        if (indexedDirectories != null && indexedDirectories.lastModified().equals(lastModified) &&
+                lastModified.stream().allMatch(time -> isStable(time, indexedDirectories.listTime()))) {
+            return indexedDirectories.copybookIndex();
+        }
+
+        CopybookIndex copybookIndex = CopybookIndex.of(key);
+        if (copybookIndexes.size() >= maxEntries) {
+            copybookIndexes.clear();
+        }
+        copybookIndexes.put(key, new IndexedDirectories(List.copyOf(lastModified), listTime, copybookIndex));
+        return copybookIndex;
+    }
+
+    /**
+     * @return The number of files whose scan results are kept
+     */
+    public int size() {
+        return scans.size();
+    }
+
+    private static boolean isStable(long lastModified, long readTime) {
+        return lastModified + MODIFICATION_TIME_RESOLUTION < readTime;
+    }
+
+    private static SourceCodeAnalysisResult resolve(SourceCodeAnalysisResult scan, CopybookIndex copybookIndex) {
+        List<File> sourceDependencies = new ArrayList<>();
+        for (String sourceDependencyName : scan.getSourceDependencyNames()) {
+            File sourceDependency = copybookIndex.find(sourceDependencyName);
+            if (sourceDependency != null) {
+                sourceDependencies.add(sourceDependency);
+            }
+        }
+        SourceCodeAnalysisResult analysisResult = new SourceCodeAnalysisResult(scan.isCics(), scan.isDb2(),
+                List.copyOf(sourceDependencies));
+        analysisResult.setSourceDependencyNames(scan.getSourceDependencyNames());
+        analysisResult.setCalledPrograms(scan.getCalledPrograms());
+        return analysisResult;
+    }
+}
@@ -4,6 +4,7 @@ import de.livingmainframe.plugins.cobol.core.dsl.ModuleOptions;
 import org.apache.commons.io.FilenameUtils;
 import org.jetbrains.annotations.NotNull;
 
+import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -18,12 +19,34 @@ public abstract class CobolCompilerExecutable {
     private List<Path> sourceIncludePaths;
     private Map<String, String> environmentVariables = new LinkedHashMap<>();
     private ModuleOptions moduleOptions;
+    private CompileMode compileMode = CompileMode.EXECUTABLE;
 
     public CobolCompilerExecutable(Path buildFile, Path outputDirectory) {
         this.buildFile = buildFile;
         this.outputDirectory = outputDirectory;
     }
 
+    /**
+     * Creates an instance of a compiler implementation by the name of its class. The class must have a constructor
+     * that takes the build file and the output directory
+     *
+     * @param className       The fully qualified name of the class that extends CobolCompilerExecutable
+     * @param buildFile       The program to compile
+     * @param outputDirectory The directory to write the compiled program to
+     * @return The compiler executable
+     */
+    public static CobolCompilerExecutable newInstance(String className, Path buildFile, Path outputDirectory) {
+        try {
+            Class<?> cobolCompilerExecutableClass = Class.forName(className, true,
+                    CobolCompilerExecutable.class.getClassLoader());
+            return (CobolCompilerExecutable) cobolCompilerExecutableClass.getDeclaredConstructor(Path.class,
+                    Path.class).newInstance(buildFile, outputDirectory);
+        } catch (InvocationTargetException | NoSuchMethodException | IllegalAccessException |
+                 InstantiationException | ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private String getModuleName() {
         return FilenameUtils.getBaseName(buildFile.toString());
     }
@@ -53,15 +76,269 @@ public abstract class CobolCompilerExecutable {
     public List<String> getBuildCommand() {
         List<String> command = new ArrayList<>();
         command.add(getFullyQualifiedCompilerExecutablePath());
+        command.addAll(getProgramTypeOptions());
+        command.addAll(getCustomCompilerOptions());
+        command.addAll(getModuleCompilerOptions());
+        command.addAll(getDb2CompilerOptions());
+        command.addAll(getCicsCompilerOptions());
+        command.addAll(generateSourceIncludePathArguments());
+        command.addAll(generateCompileOnlyArguments());
+        command.addAll(generateOutputArguments());
+        command.add(buildFile.toString());
+        return command;
+    }
+
+    /**
+     * Builds the command that compiles several programs into object files with a single compiler process. The object
+     * files are written to the working directory of the process and are named like the programs with the extension .o
+     * <p>
+     * All programs must share the same options as this executable, i.e. module options, Db2 and CICS.
+     *
+     * @param buildFiles The programs to compile
+     * @return The command to compile all programs
+     */
+    public List<String> getBatchCompileCommand(@NotNull List<Path> buildFiles) {
+        List<String> command = new ArrayList<>();
+        command.add(getFullyQualifiedCompilerExecutablePath());
+        command.addAll(getProgramTypeOptions());
+        command.addAll(getCustomCompilerOptions());
+        command.addAll(getModuleCompilerOptions());
+        command.addAll(getDb2CompilerOptions());
+        command.addAll(getCicsCompilerOptions());
+        command.addAll(generateSourceIncludePathArguments());
+        command.add("-c");
+        buildFiles.forEach(buildFile -> command.add(buildFile.toString()));
+        return command;
+    }
+
+    /**
+     * Builds the command that links the object file of this executable's program, created by a batch compile, into the
+     * output directory. The same command compiles and links the C source created by the
+     * {@link #getTranslateCommand(Path) translation}
+     *
+     * @param objectFile The object file or the translated C source of the program
+     * @return The command to link the program
+     */
+    public List<String> getLinkCommand(@NotNull Path objectFile) {
+        List<String> command = new ArrayList<>();
+        command.add(getFullyQualifiedCompilerExecutablePath());
+        command.addAll(getProgramTypeOptions());
+        command.addAll(getCustomCompilerOptions());
+        command.addAll(getModuleCompilerOptions());
+        command.addAll(getDb2CompilerOptions());
+        command.addAll(getCicsCompilerOptions());
+        command.addAll(generateCompileOnlyArguments());
+        command.addAll(generateOutputArguments());
+        command.add(objectFile.toString());
+        return command;
+    }
+
+    /**
+     * Builds the command that compiles this executable's program together with the programs it calls into a single
+     * executable. The calls between the programs are resolved when the executable is linked instead of when it runs.
+     * The program of this executable is the main program, the module options apply to all programs
+     *
+     * @param calledBuildFiles The programs that are called by the main program, directly or indirectly
+     * @return The command to compile and link the call tree
+     */
+    public List<String> getStaticLinkCommand(@NotNull List<Path> calledBuildFiles) {
+        List<String> command = new ArrayList<>();
+        command.add(getFullyQualifiedCompilerExecutablePath());
+        command.addAll(getProgramTypeOptions());
         command.addAll(getCustomCompilerOptions());
+        command.addAll(getModuleCompilerOptions());
         command.addAll(getDb2CompilerOptions());
         command.addAll(getCicsCompilerOptions());
         command.addAll(generateSourceIncludePathArguments());
+        command.addAll(getStaticCallOptions());
         command.addAll(generateOutputArguments());
         command.add(buildFile.toString());
+        calledBuildFiles.forEach(calledBuildFile -> command.add(calledBuildFile.toString()));
+        return command;
+    }
+
+    /**
+     * Builds the command that writes the program with all copybooks expanded to the standard output, without
+     * compiling it. The command is used to look the program up in the {@link CompileResultCache}
+     *
+     * @return The command or an empty list if the compiler doesn't support preprocessing
+     */
+    public List<String> getPreprocessCommand() {
+        if (getPreprocessOptions().isEmpty()) {
+            return List.of();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(getFullyQualifiedCompilerExecutablePath());
+        command.addAll(getProgramTypeOptions());
+        command.addAll(getCustomCompilerOptions());
+        command.addAll(getModuleCompilerOptions());
+        command.addAll(getDb2CompilerOptions());
+        command.addAll(getCicsCompilerOptions());
+        command.addAll(generateSourceIncludePathArguments());
+        command.addAll(getPreprocessOptions());
+        command.add(buildFile.toString());
         return command;
     }
 
+    /**
+     * Builds the command that only translates the program to C, without compiling the C source. The compiler writes
+     * the C source to the given file and the headers it includes next to it
+     *
+     * @param translatedSource The file the C source is written to
+     * @return The command or an empty list if the compiler doesn't support a separate translation
+     */
+    public List<String> getTranslateCommand(@NotNull Path translatedSource) {
+        if (getTranslateOptions().isEmpty()) {
+            return List.of();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(getFullyQualifiedCompilerExecutablePath());
+        command.addAll(getProgramTypeOptions());
+        command.addAll(getCustomCompilerOptions());
+        command.addAll(getModuleCompilerOptions());
+        command.addAll(getDb2CompilerOptions());
+        command.addAll(getCicsCompilerOptions());
+        command.addAll(generateSourceIncludePathArguments());
+        command.addAll(getTranslateOptions());
+        command.add("-o");
+        command.add(translatedSource.toString());
+        command.add(buildFile.toString());
+        return command;
+    }
+
+    /**
+     * The name of the C source that the translation creates for a program
+     *
+     * @param buildFile The program
+     * @return The file name of the C source
+     */
+    public static String getTranslatedSourceFileName(@NotNull Path buildFile) {
+        return FilenameUtils.getBaseName(buildFile.toString()) + ".c";
+    }
+
+    /**
+     * The options that determine the compiled program besides its expanded source. They contain no paths, so that
+     * the same program compiled in different checkouts has the same key in the {@link CompileResultCache}
+     *
+     * @return The name of the compiler executable and its options
+     */
+    public List<String> getCompileOptions() {
+        List<String> options = new ArrayList<>();
+        options.add(getNameOfCompilerExecutable());
+        options.addAll(getProgramTypeOptions());
+        options.addAll(getCustomCompilerOptions());
+        options.addAll(getModuleCompilerOptions());
+        options.addAll(getDb2CompilerOptions());
+        options.addAll(getCicsCompilerOptions());
+        options.addAll(generateCompileOnlyArguments());
+        return options;
+    }
+
+    /**
+     * @return The file the build command writes the compiled program to, depending on the compile mode
+     */
+    public Path getOutputFile() {
+        return switch (compileMode) {
+            case EXECUTABLE -> outputDirectory.resolve(getModuleName());
+            case MODULE -> outputDirectory.resolve(getModuleName() + "." + getModuleExtension());
+            case OBJECT -> outputDirectory.resolve(getModuleName() + ".o");
+        };
+    }
+
+    public CompileMode getCompileMode() {
+        return compileMode;
+    }
+
+    /**
+     * Sets what the build command creates. The batch compile always creates object files, independent of the mode
+     *
+     * @param compileMode The compile mode
+     */
+    public void setCompileMode(@NotNull CompileMode compileMode) {
+        this.compileMode = compileMode;
+    }
+
+    /**
+     * Whether the compiler can create programs of the given mode. All compilers can create executables and object
+     * files, modules are only supported if the compiler overrides this method
+     *
+     * @param compileMode The compile mode
+     * @return True if the compile mode is supported
+     */
+    public boolean supportsCompileMode(@NotNull CompileMode compileMode) {
+        return compileMode != CompileMode.MODULE;
+    }
+
+    /**
+     * The options that determine the type of the created program, e.g. an executable or a module. They precede all
+     * other options. The default is no option
+     *
+     * @return The options for the compile mode
+     */
+    protected List<String> getProgramTypeOptions() {
+        return List.of();
+    }
+
+    /**
+     * @return The file extension of modules that the runtime loads, without the dot
+     */
+    protected String getModuleExtension() {
+        return "so";
+    }
+
+    /**
+     * The options that make the compiler only run its preprocessor. Compilers that don't support this return an
+     * empty list, which is the default
+     *
+     * @return The preprocessor options
+     */
+    protected List<String> getPreprocessOptions() {
+        return List.of();
+    }
+
+    /**
+     * The options that make the compiler only translate a program to C. Compilers that don't generate C return an
+     * empty list, which is the default
+     *
+     * @return The translation options
+     */
+    protected List<String> getTranslateOptions() {
+        return List.of();
+    }
+
+    /**
+     * The options that make the compiler resolve CALL statements with a literal when the program is linked. The
+     * default is no option, for compilers that call statically by default
+     *
+     * @return The options for static calls
+     */
+    protected List<String> getStaticCallOptions() {
+        return List.of();
+    }
+
+    /**
+     * The name of the object file that a batch compile creates for a program
+     *
+     * @param buildFile The program
+     * @return The file name of the object file
+     */
+    public static String getObjectFileName(@NotNull Path buildFile) {
+        return FilenameUtils.getBaseName(buildFile.toString()) + ".o";
+    }
+
+    /**
+     * The compiler options of the module group the program belongs to. They follow the options of the compiler
+     * implementation, so that they can override them
+     *
+     * @return The options from the module group or an empty list
+     */
+    private @NotNull List<String> getModuleCompilerOptions() {
+        if (moduleOptions == null) {
+            return List.of();
+        }
+        return moduleOptions.getCompilerOptions();
+    }
+
     private @NotNull List<String> generateSourceIncludePathArguments() {
         List<String> arguments = new ArrayList<>();
         if (sourceIncludePaths != null && !sourceIncludePaths.isEmpty()) {
@@ -71,10 +348,14 @@ public abstract class CobolCompilerExecutable {
         return arguments;
     }
 
+    private @NotNull List<String> generateCompileOnlyArguments() {
+        return compileMode == CompileMode.OBJECT ? List.of("-c") : List.of();
+    }
+
     private @NotNull List<String> generateOutputArguments() {
         List<String> arguments = new ArrayList<>();
         arguments.add("-o");
-        arguments.add(outputDirectory.resolve(getModuleName()).toString());
+        arguments.add(getOutputFile().toString());
         return arguments;
     }
 
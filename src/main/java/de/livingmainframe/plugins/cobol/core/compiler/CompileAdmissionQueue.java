@@ -0,0 +1,143 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which of the waiting compiles starts next. The compile with the longest estimated duration starts first, in
+ * the order of arrival if two compiles take equally long. Without a memory budget at most maxParallelCompiles compiles
+ * run at the same time. With a memory budget as many compiles run as their estimated memory fits into the budget, a
+ * single compile always runs even if it exceeds the budget.
+ * <p>
+ * Only the head of the queue may start, so a short compile doesn't overtake a long one that waits for memory. The
+ * order only matters while compiles wait, which they only do if more threads call {@link #admit} than may run.
+ */
+public class CompileAdmissionQueue {
+
+    private static final Logger logger = Logging.getLogger(CompileAdmissionQueue.class);
+
+    /**
+     * A compile that was admitted. Closing it lets the next compile start
+     */
+    public interface Admission extends AutoCloseable {
+
+        /**
+         * @return How long the compile waited before it was admitted, in nanoseconds
+         */
+        long getWaitTime();
+
+        @Override
+        void close();
+    }
+
+    private record Request(String name, long duration, long memory, long sequence) {
+    }
+
+    private final int maxParallelCompiles;
+    private final Long memoryBudget;
+    private final PriorityQueue<Request> waiting = new PriorityQueue<>(Comparator
+            .comparingLong(Request::duration).reversed().thenComparingLong(Request::sequence));
+    private long sequence;
+    private int running;
+    private long runningMemory;
+
+    /**
+     * @param maxParallelCompiles The maximum number of compiles that run at the same time without a memory budget
+     * @param memoryBudget        The memory available to the compilers in bytes, or null to limit the number of
+     *                            compiles instead
+     */
+    public CompileAdmissionQueue(int maxParallelCompiles, @Nullable Long memoryBudget) {
+        this.maxParallelCompiles = maxParallelCompiles;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Waits until the compile may start
+     *
+     * @param name     The name of the compile for the log
+     * @param duration The estimated duration of the compile in nanoseconds
+     * @param memory   The estimated memory of the compile in bytes
+     * @return The admission, which has to be closed when the compile finished
+     * @throws InterruptedException If the build was cancelled while the compile waited
+     */
+    public synchronized @NotNull Admission admit(@NotNull String name, long duration, long memory)
+            throws InterruptedException {
+        long startTime = System.nanoTime();
+        Request request = new Request(name, duration, memory, sequence++);
+        waiting.add(request);
+        try {
+            while (waiting.peek() != request || !fits(request)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            waiting.remove(request);
+            notifyAll();
+            throw e;
+        }
+        waiting.poll();
+        running++;
+        runningMemory += memory;
+        // The next compile in the queue may fit as well
+        notifyAll();
+        long waitTime = System.nanoTime() - startTime;
+        logger.debug("Admitted {} with an estimated duration of {} ms and {} MB after {} ms", name,
+                duration / 1_000_000, memory / (1024 * 1024), waitTime / 1_000_000);
+        return new Admission() {
+            private boolean closed;
+
+            @Override
+            public long getWaitTime() {
+                return waitTime;
+            }
+
+            @Override
+            public void close() {
+                synchronized (CompileAdmissionQueue.this) {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    running--;
+                    runningMemory -= memory;
+                    CompileAdmissionQueue.this.notifyAll();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Whether the compiles are limited by their memory instead of their number
+     */
+    public boolean isMemoryLimited() {
+        return memoryBudget != null;
+    }
+
+    /**
+     * @return The number of compiles that wait to be admitted
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @return The number of compiles that were admitted and not closed yet
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    private boolean fits(Request request) {
+        if (running == 0) {
+            return true;
+        }
+        if (memoryBudget != null) {
+            return runningMemory + request.memory() <= memoryBudget;
+        }
+        return running < maxParallelCompiles;
+    }
+}
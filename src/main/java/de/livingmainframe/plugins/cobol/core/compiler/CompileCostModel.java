@@ -0,0 +1,255 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Estimates how long the compile of a program takes and how much memory the compiler needs, so that the longest
+ * compiles can be started first and only as many compiles run at the same time as fit into the memory of the machine.
+ * <p>
+ * The work of a compile is estimated from the size of the program and of the copybooks it includes transitively, as
+ * the compiler processes the expanded program. The size stands in for the line count, the lines of fixed-format
+ * sources have about the same length. Db2 and CICS programs are preprocessed first, which adds to the work.
+ * <p>
+ * The durations of successful compiles are recorded in a history file, separately for every stage of the compile. A
+ * program that was compiled before is estimated by its recorded duration, any other program by its work and the ratio
+ * of the recorded durations to the recorded work of the stage, which calibrates the estimate to the compiler and the
+ * machine.
+ * <p>
+ * The compiles are ordered by the binary order of magnitude of their durations. The magnitude of a program is recorded
+ * with its duration and only changes if the duration differs by more than a factor of two from its range, so the order
+ * doesn't change with the variance of the durations, which would discard the cached configuration.
+ */
+public class CompileCostModel {
+
+    /**
+     * The duration of a unit of work as long as no compile was recorded, 100 KB of source take about a second
+     */
+    public static final long DEFAULT_NANOS_PER_UNIT = 10_000;
+
+    /**
+     * The compile of a program into an executable, object or module
+     */
+    public static final String COMPILE = "compile";
+
+    /**
+     * The translation of a program to C, see {@link #COMPILE_TRANSLATED}
+     */
+    public static final String TRANSLATE = "translate";
+
+    /**
+     * The compile of a program that was translated to C before
+     */
+    public static final String COMPILE_TRANSLATED = "compile-translated";
+
+    // Every copybook is searched in the include directories and opened, independent of its size
+    private static final long COPYBOOK_UNITS = 4096;
+    private static final double DB2_FACTOR = 1.5;
+    private static final double CICS_FACTOR = 1.3;
+    // cobc and the C compiler it calls need a base amount of memory and about 256 bytes per byte of expanded source
+    private static final long BASE_MEMORY = 64L * 1024 * 1024;
+    private static final long MEMORY_PER_UNIT = 256;
+
+    private final Map<String, Sample> samples = new HashMap<>();
+    private final Map<String, Long> totalWork = new HashMap<>();
+    private final Map<String, Long> totalDuration = new HashMap<>();
+
+    /*
+    The magnitude is the binary order of magnitude of the duration that the order of the compiles is based on. It only
+    follows the duration once that left the range of the magnitude by more than a factor of two
+     */
+    private record Sample(long work, long duration, int magnitude) {
+    }
+
+    /**
+     * Estimates the work of compiling a program
+     *
+     * @param sourceSize   The size of the program in bytes
+     * @param copybooks    The number of copybooks the program includes transitively
+     * @param copybookSize The total size of these copybooks in bytes
+     * @param db2          Whether the program uses Db2
+     * @param cics         Whether the program uses CICS
+     * @return The work in units of about a byte of expanded source
+     */
+    public static long estimateWork(long sourceSize, int copybooks, long copybookSize, boolean db2, boolean cics) {
+        double work = sourceSize + copybookSize + copybooks * COPYBOOK_UNITS;
+        if (db2) {
+            work *= DB2_FACTOR;
+        }
+        if (cics) {
+            work *= CICS_FACTOR;
+        }
+        return Math.max(1, (long) work);
+    }
+
+    /**
+     * Estimates the work of compiling a program from the sizes of its files
+     *
+     * @param buildFile      The program
+     * @param sourceIncludes The copybooks the program includes transitively
+     * @param db2            Whether the program uses Db2
+     * @param cics           Whether the program uses CICS
+     * @return The work, see {@link #estimateWork(long, int, long, boolean, boolean)}
+     */
+    public static long estimateWork(@NotNull File buildFile, @NotNull Collection<File> sourceIncludes, boolean db2,
+                                    boolean cics) {
+        long copybookSize = sourceIncludes.stream().mapToLong(File::length).sum();
+        return estimateWork(buildFile.length(), sourceIncludes.size(), copybookSize, db2, cics);
+    }
+
+    /**
+     * @param work The estimated work of a compile
+     * @return The estimated peak memory of the compiler in bytes
+     */
+    public static long estimateMemory(long work) {
+        return BASE_MEMORY + work * MEMORY_PER_UNIT;
+    }
+
+    /**
+     * Estimates the duration of a compile from the history or, if the program wasn't compiled before, from its work
+     *
+     * @param projectPath The path of the project of the program, e.g. ":"
+     * @param program     The manifest path of the program
+     * @param stage       The stage of the compile, e.g. {@link #COMPILE}
+     * @param work        The estimated work of the compile
+     * @return The estimated duration in nanoseconds
+     */
+    public synchronized long estimateDuration(@NotNull String projectPath, @NotNull String program,
+                                              @NotNull String stage, long work) {
+        Sample sample = samples.get(getKey(projectPath, program, stage));
+        if (sample != null) {
+            return sample.duration();
+        }
+        return (long) (work * getNanosPerUnit(stage));
+    }
+
+    /**
+     * @param stage The stage of the compile
+     * @return The average duration of a unit of work of the recorded compiles of the stage
+     */
+    public synchronized double getNanosPerUnit(@NotNull String stage) {
+        long work = totalWork.getOrDefault(stage, 0L);
+        if (work == 0) {
+            return DEFAULT_NANOS_PER_UNIT;
+        }
+        return (double) totalDuration.get(stage) / work;
+    }
+
+    /**
+     * Orders the programs of a project by the estimated duration of a stage, longest first. The durations are compared
+     * by their binary order of magnitude, programs of the same magnitude are ordered by their manifest paths
+     *
+     * @param projectPath The path of the project of the programs
+     * @param stage       The stage of the compile
+     * @param work        The manifest paths of the programs mapped to their estimated work
+     * @return The manifest paths, longest first
+     */
+    public synchronized @NotNull List<String> orderLongestFirst(@NotNull String projectPath, @NotNull String stage,
+                                                                @NotNull Map<String, Long> work) {
+        Map<String, Integer> magnitudes = new HashMap<>();
+        work.forEach((program, programWork) -> {
+            Sample sample = samples.get(getKey(projectPath, program, stage));
+            magnitudes.put(program, sample != null ? sample.magnitude() :
+                    getMagnitude(estimateDuration(projectPath, program, stage, programWork)));
+        });
+        return work.keySet().stream().sorted(Comparator.<String>comparingInt(magnitudes::get).reversed()
+                .thenComparing(Comparator.naturalOrder())).toList();
+    }
+
+    /**
+     * Records the duration of a successful compile, which replaces the previous duration of the program in the stage
+     *
+     * @param projectPath The path of the project of the program
+     * @param program     The manifest path of the program
+     * @param stage       The stage of the compile, e.g. {@link #COMPILE}
+     * @param work        The estimated work of the compile
+     * @param duration    The duration of the compile in nanoseconds
+     */
+    public synchronized void record(@NotNull String projectPath, @NotNull String program, @NotNull String stage,
+                                    long work, long duration) {
+        String key = getKey(projectPath, program, stage);
+        Sample previous = samples.get(key);
+        int magnitude = getMagnitude(duration);
+        // The range of a magnitude m is [2^m, 2^(m+1)), the previous magnitude is kept within [2^(m-1), 2^(m+2))
+        if (previous != null && magnitude >= previous.magnitude() - 1 && magnitude <= previous.magnitude() + 1) {
+            magnitude = previous.magnitude();
+        }
+        add(key, stage, new Sample(work, duration, magnitude));
+    }
+
+    private void add(String key, String stage, Sample sample) {
+        Sample previous = samples.put(key, sample);
+        if (previous != null) {
+            totalWork.merge(stage, -previous.work(), Long::sum);
+            totalDuration.merge(stage, -previous.duration(), Long::sum);
+        }
+        totalWork.merge(stage, sample.work(), Long::sum);
+        totalDuration.merge(stage, sample.duration(), Long::sum);
+    }
+
+    /**
+     * Reads the history. A missing file or malformed lines are ignored, the history only influences the order of the
+     * compiles
+     *
+     * @param historyFile The history file
+     * @return The cost model with the recorded compiles
+     * @throws IOException If the file exists but can't be read
+     */
+    public static @NotNull CompileCostModel read(@NotNull File historyFile) throws IOException {
+        CompileCostModel costModel = new CompileCostModel();
+        if (!historyFile.isFile()) {
+            return costModel;
+        }
+        List<String> lines = Files.readAllLines(historyFile.toPath(), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            if (fields.length != 6) {
+                continue;
+            }
+            try {
+                costModel.add(getKey(fields[0], fields[1], fields[2]), fields[2], new Sample(Long.parseLong(fields[3]),
+                        Long.parseLong(fields[4]), Integer.parseInt(fields[5])));
+            } catch (NumberFormatException e) {
+                // A line of a different format, e.g. of a future version
+            }
+        }
+        return costModel;
+    }
+
+    /**
+     * Writes the history, one compile per line with the project path, the manifest path, the stage, the work, the
+     * duration and its magnitude separated by tabs
+     *
+     * @param historyFile The history file
+     * @throws IOException If the file can't be written
+     */
+    public synchronized void write(@NotNull File historyFile) throws IOException {
+        Files.createDirectories(historyFile.toPath().toAbsolutePath().getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(historyFile.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Sample> sample : new TreeMap<>(samples).entrySet()) {
+                writer.write(sample.getKey() + '\t' + sample.getValue().work() + '\t' + sample.getValue().duration() +
+                        '\t' + sample.getValue().magnitude());
+                writer.newLine();
+            }
+        }
+    }
+
+    private static int getMagnitude(long duration) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(duration, 1));
+    }
+
+    private static String getKey(String projectPath, String program, String stage) {
+        return projectPath + '\t' + program + '\t' + stage;
+    }
+}
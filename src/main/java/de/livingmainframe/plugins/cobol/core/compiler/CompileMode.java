@@ -0,0 +1,43 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+
+/**
+ * What the build task of a program creates
+ */
+public enum CompileMode {
+
+    /**
+     * A standalone executable, which is the default
+     */
+    EXECUTABLE,
+
+    /**
+     * A module that is loaded by the runtime when the program is called, e.g. from a directory on the
+     * COB_LIBRARY_PATH
+     */
+    MODULE,
+
+    /**
+     * An object file, which the link task links into an executable
+     */
+    OBJECT;
+
+    /**
+     * @param name The name of the mode as used in the build script, e.g. "module"
+     * @return The mode
+     * @throws IllegalArgumentException If there is no mode with this name
+     */
+    public static @NotNull CompileMode fromName(@NotNull String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return The name of the mode as used in the build script
+     */
+    public @NotNull String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,65 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders the programs of a project by the duration of a compile stage that was recorded in the history of the
+ * {@link CompileCostModel}, longest first. Programs without a recorded duration are estimated by the size of their
+ * source, as the copybooks are only known once the sources were analyzed.
+ * <p>
+ * The order is read while the build is configured and is an input of the configuration cache. As it is based on the
+ * binary order of magnitude of the durations, it rarely changes between builds, and only then the cached
+ * configuration is discarded.
+ */
+public abstract class CompileOrderValueSource implements ValueSource<List<String>,
+        CompileOrderValueSource.Parameters> {
+
+    private static final Logger logger = Logging.getLogger(CompileOrderValueSource.class);
+
+    public interface Parameters extends ValueSourceParameters {
+
+        RegularFileProperty getHistoryFile();
+
+        Property<String> getProjectPath();
+
+        /**
+         * @return The stage of the compile, see {@link CompileCostModel#COMPILE}
+         */
+        Property<String> getStage();
+
+        /**
+         * @return The manifest paths of the programs mapped to their sources
+         */
+        MapProperty<String, File> getPrograms();
+    }
+
+    @Override
+    public List<String> obtain() {
+        File historyFile = getParameters().getHistoryFile().get().getAsFile();
+        CompileCostModel costModel;
+        try {
+            costModel = CompileCostModel.read(historyFile);
+        } catch (IOException e) {
+            // The programs are ordered by their size only
+            logger.warn("Unable to read the compile history {}: {}", historyFile, e.getMessage());
+            costModel = new CompileCostModel();
+        }
+        Map<String, Long> work = new LinkedHashMap<>();
+        getParameters().getPrograms().get().forEach((program, source) -> work.put(program,
+                CompileCostModel.estimateWork(source.length(), 0, 0, false, false)));
+        return costModel.orderLongestFirst(getParameters().getProjectPath().get(), getParameters().getStage().get(),
+                work);
+    }
+}
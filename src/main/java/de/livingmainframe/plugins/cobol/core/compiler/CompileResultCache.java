@@ -0,0 +1,218 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A local, content-addressed cache of compiled programs, similar to ccache. The key of a program is the hash of its
+ * preprocessed source, i.e. the program with all copybooks expanded, together with the compiler options, the
+ * environment variables of the compiler and the version of the compiler. A program whose expanded source didn't
+ * change is restored from the cache instead of being compiled, no matter which copybook files or which checkout it was
+ * expanded from.
+ * <p>
+ * Every entry is a directory named like its key that contains the compiled program and the compiler log. Entries are
+ * written to a temporary directory first and moved into place, so several builds, e.g. of different worktrees, can use
+ * the same cache at the same time. Restoring an entry updates its modification time, which {@link #evict(long)} uses
+ * to delete the least recently used entries.
+ */
+public class CompileResultCache {
+
+    private static final String OUTPUT_FILE_NAME = "output";
+    private static final String LOG_FILE_NAME = "log";
+    private static final String TEMPORARY_DIRECTORY_NAME = "tmp";
+
+    // Line directives like #line 12 "/home/user/project/src/copy/CUSTREC.cpy" name the file a line was expanded from
+    private static final Pattern LINE_DIRECTIVE_PATH = Pattern.compile("\"([^\"]*)\"");
+
+    private final Path cacheDirectory;
+
+    public CompileResultCache(@NotNull Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Computes the key of a program. Line directives of the preprocessor only contribute the names of the files, not
+     * their directories, so that the same program expanded in different checkouts has the same key
+     *
+     * @param preprocessedSource   The output of the preprocessor
+     * @param compilerOptions      The compiler options that affect the compiled program, without any paths
+     * @param environmentVariables The environment variables the compiler runs with, e.g. COB_CFLAGS, which affect
+     *                             the compiled program like the options
+     * @param compilerVersion      The version of the compiler
+     * @return The key as a hexadecimal string
+     * @throws IOException If the preprocessed source can't be read
+     */
+    public static @NotNull String computeKey(@NotNull Path preprocessedSource, @NotNull List<String> compilerOptions,
+                                             @NotNull Map<String, String> environmentVariables,
+                                             @NotNull String compilerVersion) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+        digest.update(compilerVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        for (String compilerOption : compilerOptions) {
+            digest.update(compilerOption.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        // Sorted by name, so the order in which the variables were configured doesn't matter
+        for (Map.Entry<String, String> environmentVariable : new TreeMap<>(environmentVariables).entrySet()) {
+            digest.update((environmentVariable.getKey() + '=' + environmentVariable.getValue())
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        // The preprocessor writes in the charset of the sources, ISO-8859-1 maps every byte to a character and back
+        try (BufferedReader reader = Files.newBufferedReader(preprocessedSource, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    Matcher matcher = LINE_DIRECTIVE_PATH.matcher(line);
+                    line = matcher.replaceAll(result -> Matcher.quoteReplacement('"' +
+                            FilenameUtils.getName(result.group(1)) + '"'));
+                }
+                digest.update(line.getBytes(StandardCharsets.ISO_8859_1));
+                digest.update((byte) '\n');
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Restores a compiled program and its compiler log from the cache
+     *
+     * @param key        The key of the program
+     * @param outputFile The file the compiled program is restored to
+     * @param logFile    The file the compiler log is restored to
+     * @return True if the cache contained the program, false otherwise
+     */
+    public boolean restore(@NotNull String key, @NotNull Path outputFile, @NotNull Path logFile) {
+        Path entry = getEntry(key);
+        if (!Files.isDirectory(entry)) {
+            return false;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            Files.createDirectories(outputFile.getParent());
+            Files.copy(entry.resolve(OUTPUT_FILE_NAME), outputFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.COPY_ATTRIBUTES);
+            Files.copy(entry.resolve(LOG_FILE_NAME), logFile, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (NoSuchFileException e) {
+            // The entry was evicted by another build in the meantime
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stores a compiled program and its compiler log in the cache. If another build stored the same key in the
+     * meantime, its entry is kept
+     *
+     * @param key        The key of the program
+     * @param outputFile The compiled program
+     * @param logFile    The compiler log
+     */
+    public void store(@NotNull String key, @NotNull Path outputFile, @NotNull Path logFile) {
+        Path entry = getEntry(key);
+        if (Files.isDirectory(entry) || !Files.isRegularFile(outputFile)) {
+            return;
+        }
+        Path temporaryEntry = cacheDirectory.resolve(TEMPORARY_DIRECTORY_NAME).resolve(UUID.randomUUID().toString());
+        try {
+            Files.createDirectories(temporaryEntry);
+            Files.copy(outputFile, temporaryEntry.resolve(OUTPUT_FILE_NAME), StandardCopyOption.COPY_ATTRIBUTES);
+            if (Files.isRegularFile(logFile)) {
+                Files.copy(logFile, temporaryEntry.resolve(LOG_FILE_NAME));
+            } else {
+                Files.createFile(temporaryEntry.resolve(LOG_FILE_NAME));
+            }
+            Files.createDirectories(entry.getParent());
+            Files.move(temporaryEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | AtomicMoveNotSupportedException e) {
+            // Another build stored the same key at the same time
+        } catch (IOException e) {
+            if (!Files.isDirectory(entry)) {
+                throw new UncheckedIOException(e);
+            }
+        } finally {
+            FileUtils.deleteQuietly(temporaryEntry.toFile());
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is not larger than the given size
+     *
+     * @param maxSize The maximum size of the cache in bytes
+     * @return The number of bytes that were deleted
+     */
+    public long evict(long maxSize) {
+        record Entry(Path directory, long lastModified, long size) {
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long totalSize = 0;
+        if (!Files.isDirectory(cacheDirectory)) {
+            return 0;
+        }
+        try (Stream<Path> prefixes = Files.list(cacheDirectory)) {
+            for (Path prefix : prefixes.filter(Files::isDirectory)
+                    .filter(path -> !path.getFileName().toString().equals(TEMPORARY_DIRECTORY_NAME)).toList()) {
+                try (Stream<Path> directories = Files.list(prefix)) {
+                    for (Path directory : directories.toList()) {
+                        long size = FileUtils.sizeOfDirectory(directory.toFile());
+                        entries.add(new Entry(directory, directory.toFile().lastModified(), size));
+                        totalSize += size;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long deletedSize = 0;
+        entries.sort(Comparator.comparingLong(Entry::lastModified));
+        for (Entry entry : entries) {
+            if (totalSize - deletedSize <= maxSize) {
+                break;
+            }
+            File directory = entry.directory().toFile();
+            if (FileUtils.deleteQuietly(directory)) {
+                deletedSize += entry.size();
+            }
+        }
+        return deletedSize;
+    }
+
+    private Path getEntry(String key) {
+        return cacheDirectory.resolve(key.substring(0, 2)).resolve(key);
+    }
+}
@@ -0,0 +1,58 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A session on the machine that runs the compiler, e.g. a remote shell on z/OS UNIX System Services. The programs and
+ * copybooks are transferred into a workspace directory on that machine, compiled there, and the compiled programs are
+ * transferred back.
+ * <p>
+ * All paths of the workspace are relative to its root and use '/' as separator. A session runs one operation at a
+ * time, it must not be shared between threads.
+ */
+public interface CompileTransport extends Closeable {
+
+    /**
+     * @return The absolute path of the workspace on the machine of the compiler
+     */
+    @NotNull String getWorkspace();
+
+    /**
+     * Writes a file into the workspace and creates its parent directories. An existing file is replaced atomically
+     *
+     * @param path      The path in the workspace
+     * @param localFile The file to transfer
+     * @throws IOException If the file can't be read or written
+     */
+    void upload(@NotNull String path, @NotNull Path localFile) throws IOException;
+
+    /**
+     * Transfers a file from the workspace to the local machine
+     *
+     * @param path      The path in the workspace
+     * @param localFile The file to write
+     * @return False if the workspace doesn't contain the file
+     * @throws IOException If the file can't be read or written
+     */
+    boolean download(@NotNull String path, @NotNull Path localFile) throws IOException;
+
+    /**
+     * Runs a command in the workspace. The standard and error output of the command are written to the output while
+     * the command runs
+     *
+     * @param command              The command and its arguments
+     * @param environmentVariables Additional environment variables of the command
+     * @param output               Receives the output of the command
+     * @return The exit value of the command
+     * @throws IOException If the session failed
+     */
+    int execute(@NotNull List<String> command, @NotNull Map<String, String> environmentVariables,
+                @NotNull OutputStream output) throws IOException;
+}
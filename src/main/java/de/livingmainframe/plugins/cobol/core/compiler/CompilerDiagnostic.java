@@ -0,0 +1,90 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.gradle.api.problems.Severity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A message of the compiler that refers to a line of a program or copybook
+ *
+ * @param file     The file as printed by the compiler, may be null if the compiler didn't print it
+ * @param line     The line in the file, 0 if unknown
+ * @param severity The severity of the message
+ * @param code     The message number of the compiler (e.g. IGYPS2121), empty if the compiler doesn't use them
+ * @param message  The text of the message
+ */
+public record CompilerDiagnostic(@Nullable String file, int line, @NotNull Severity severity, @NotNull String code,
+                                 @NotNull String message) {
+
+    // cobc: "prog.cbl:12: error: 'X' is not defined"
+    private static final Pattern GNU_DIAGNOSTIC =
+            Pattern.compile("^(.+?):(\\d+):\\s*(error|warning|note):\\s*(.*)$", Pattern.CASE_INSENSITIVE);
+    // cob2: "\"prog.cbl\", line 12.20: IGYPS2121-S \"X\" was not defined as a data-name."
+    private static final Pattern IBM_FILE_DIAGNOSTIC =
+            Pattern.compile("^\"(.+?)\", line (\\d+)(?:\\.\\d+)?:\\s*(IGY[A-Z]{2}\\d{4})-([IWESU])\\s+(.*)$");
+    // Listing: "    12  IGYPS2121-S   \"X\" was not defined as a data-name."
+    private static final Pattern IBM_DIAGNOSTIC =
+            Pattern.compile("^\\s*(?:(\\d+)\\s+)?(IGY[A-Z]{2}\\d{4})-([IWESU])\\s+(.*)$");
+
+    /**
+     * Parses a line of the compiler output
+     *
+     * @param line The line without the line terminator
+     * @return The diagnostic or null if the line doesn't contain one
+     */
+    public static @Nullable CompilerDiagnostic parse(@NotNull String line) {
+        // Most lines of a listing don't contain a diagnostic, checking for the characters is cheaper than matching
+        if (line.indexOf(':') >= 0) {
+            Matcher matcher = GNU_DIAGNOSTIC.matcher(line);
+            if (matcher.matches()) {
+                Severity severity = switch (matcher.group(3).toLowerCase()) {
+                    case "error" -> Severity.ERROR;
+                    case "warning" -> Severity.WARNING;
+                    default -> Severity.ADVICE;
+                };
+                return new CompilerDiagnostic(matcher.group(1), Integer.parseInt(matcher.group(2)), severity, "",
+                        matcher.group(4).strip());
+            }
+        }
+        if (line.contains("IGY")) {
+            Matcher matcher = IBM_FILE_DIAGNOSTIC.matcher(line);
+            if (matcher.matches()) {
+                return new CompilerDiagnostic(matcher.group(1), Integer.parseInt(matcher.group(2)),
+                        getIbmSeverity(matcher.group(4)), matcher.group(3), matcher.group(5).strip());
+            }
+            matcher = IBM_DIAGNOSTIC.matcher(line);
+            if (matcher.matches()) {
+                int lineNumber = matcher.group(1) == null ? 0 : Integer.parseInt(matcher.group(1));
+                return new CompilerDiagnostic(null, lineNumber, getIbmSeverity(matcher.group(3)), matcher.group(2),
+                        matcher.group(4).strip());
+            }
+        }
+        return null;
+    }
+
+    private static Severity getIbmSeverity(String severityCode) {
+        return switch (severityCode) {
+            case "I" -> Severity.ADVICE;
+            case "W" -> Severity.WARNING;
+            default -> Severity.ERROR;
+        };
+    }
+
+    @Override
+    public @NotNull String toString() {
+        StringBuilder text = new StringBuilder();
+        if (file != null) {
+            text.append(file).append(':').append(line).append(": ");
+        } else if (line > 0) {
+            text.append("line ").append(line).append(": ");
+        }
+        text.append(severity.name().toLowerCase()).append(": ");
+        if (!code.isEmpty()) {
+            text.append(code).append(' ');
+        }
+        return text.append(message).toString();
+    }
+}
@@ -0,0 +1,213 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import de.livingmainframe.plugins.cobol.core.CobolPlugin;
+import org.gradle.api.problems.ProblemId;
+import org.gradle.api.problems.ProblemReporter;
+import org.gradle.api.problems.Severity;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Captures the output of a compiler process. The output is written to a log file through a small buffer and parsed
+ * line by line for diagnostics while the compiler runs, so the memory used doesn't depend on the size of the output.
+ * <p>
+ * Standard output and error output are captured through separate streams, which are written to the log file line by
+ * line. Only the first MAX_DIAGNOSTICS diagnostics are kept, all of them are counted.
+ */
+public class CompilerOutputCapture implements AutoCloseable {
+
+    public static final int MAX_LINE_LENGTH = 1024;
+    public static final int MAX_DIAGNOSTICS = 100;
+
+    private static final ProblemId COMPILER_DIAGNOSTIC = ProblemId.create("compiler-diagnostic", "The compiler " +
+            "reported a diagnostic", CobolPlugin.PROBLEM_GROUP);
+
+    private final File logFile;
+    private final Charset charset;
+    private final OutputStream log;
+    private final List<CompilerDiagnostic> diagnostics = new ArrayList<>();
+    private final LineOutputStream standardOutput = new LineOutputStream();
+    private final LineOutputStream errorOutput = new LineOutputStream();
+    private long outputSize;
+    private int errors;
+    private int warnings;
+
+    public CompilerOutputCapture(@NotNull File logFile, @NotNull Charset charset) throws IOException {
+        Files.createDirectories(logFile.toPath().getParent());
+        this.logFile = logFile;
+        this.charset = charset;
+        this.log = new BufferedOutputStream(Files.newOutputStream(logFile.toPath()), 8192);
+    }
+
+    public OutputStream getStandardOutput() {
+        return standardOutput;
+    }
+
+    public OutputStream getErrorOutput() {
+        return errorOutput;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    public synchronized List<CompilerDiagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(new ArrayList<>(diagnostics));
+    }
+
+    public synchronized int getErrors() {
+        return errors;
+    }
+
+    public synchronized int getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * @return The number of bytes the compiler wrote to both streams
+     */
+    public synchronized long getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Reports the kept diagnostics to the Problems API
+     *
+     * @param reporter The reporter of the task or work action
+     */
+    public void report(@NotNull ProblemReporter reporter) {
+        for (CompilerDiagnostic diagnostic : getDiagnostics()) {
+            reporter.report(COMPILER_DIAGNOSTIC, problemSpec -> {
+                if (diagnostic.file() != null) {
+                    problemSpec.lineInFileLocation(diagnostic.file(), Math.max(diagnostic.line(), 1));
+                }
+                problemSpec.details(diagnostic.toString());
+                problemSpec.severity(diagnostic.severity());
+            });
+        }
+    }
+
+    /**
+     * A short summary for the console: the number of errors and warnings, the first diagnostics and the log file
+     *
+     * @param name           The name of the program or batch that was compiled
+     * @param maxDiagnostics The maximum number of diagnostics to include
+     * @return The summary
+     */
+    public synchronized String getSummary(@NotNull String name, int maxDiagnostics) {
+        StringBuilder summary = new StringBuilder(String.format("%s: %d errors, %d warnings", name, errors,
+                warnings));
+        diagnostics.stream().filter(diagnostic -> diagnostic.severity() != Severity.ADVICE).limit(maxDiagnostics)
+                .forEach(diagnostic -> summary.append(System.lineSeparator()).append("  ").append(diagnostic));
+        if (errors + warnings > maxDiagnostics) {
+            summary.append(System.lineSeparator()).append("  ...");
+        }
+        return summary.append(System.lineSeparator()).append("  See ").append(logFile).toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        standardOutput.flushLine();
+        errorOutput.flushLine();
+        log.close();
+    }
+
+    private synchronized void acceptLine(byte[] line, int length, boolean terminated) throws IOException {
+        log.write(line, 0, length);
+        outputSize += length;
+        if (terminated) {
+            log.write('\n');
+            outputSize++;
+        }
+
+        CompilerDiagnostic diagnostic = CompilerDiagnostic.parse(new String(line, 0, length, charset).stripTrailing());
+        if (diagnostic == null) {
+            return;
+        }
+        if (diagnostic.severity() == Severity.ERROR) {
+            errors++;
+        } else if (diagnostic.severity() == Severity.WARNING) {
+            warnings++;
+        }
+        if (diagnostics.size() < MAX_DIAGNOSTICS) {
+            diagnostics.add(diagnostic);
+        }
+    }
+
+    private synchronized void acceptOverflow(byte[] bytes, int offset, int length) throws IOException {
+        log.write(bytes, offset, length);
+        outputSize += length;
+    }
+
+    /*
+    Collects the bytes of the current line. Only the first MAX_LINE_LENGTH bytes of a line are parsed, the rest is
+    written to the log directly
+     */
+    private class LineOutputStream extends OutputStream {
+
+        private static final byte[] LINE_TERMINATOR = {'\n'};
+
+        private final byte[] line = new byte[MAX_LINE_LENGTH];
+        private int length;
+        private boolean overflowing;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte @NotNull [] bytes, int offset, int count) throws IOException {
+            int end = offset + count;
+            int i = offset;
+            while (i < end) {
+                byte b = bytes[i];
+                if (b == '\n') {
+                    endLine();
+                    i++;
+                } else if (length < MAX_LINE_LENGTH) {
+                    line[length++] = b;
+                    i++;
+                } else {
+                    if (!overflowing) {
+                        acceptLine(line, length, false);
+                        overflowing = true;
+                    }
+                    int lineEnd = i;
+                    while (lineEnd < end && bytes[lineEnd] != '\n') {
+                        lineEnd++;
+                    }
+                    acceptOverflow(bytes, i, lineEnd - i);
+                    i = lineEnd;
+                }
+            }
+        }
+
+        private void endLine() throws IOException {
+            if (overflowing) {
+                acceptOverflow(LINE_TERMINATOR, 0, 1);
+            } else {
+                acceptLine(line, length, true);
+            }
+            length = 0;
+            overflowing = false;
+        }
+
+        private void flushLine() throws IOException {
+            if (length > 0 && !overflowing) {
+                acceptLine(line, length, false);
+            }
+            length = 0;
+            overflowing = false;
+        }
+    }
+}
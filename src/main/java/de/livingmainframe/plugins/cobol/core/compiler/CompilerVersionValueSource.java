@@ -0,0 +1,57 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Determines the version of the COBOL compiler by calling it with --version. The version is an input of the build
+ * tasks, so that outputs from the build cache are not reused after the compiler has been upgraded.
+ * <p>
+ * Not every compiler supports --version (e.g. cob2 on z/OS). In that case the version is reported as unknown and only
+ * the other inputs are used for the cache key.
+ */
+public abstract class CompilerVersionValueSource implements ValueSource<String,
+        CompilerVersionValueSource.Parameters> {
+
+    public static final String UNKNOWN_VERSION = "unknown";
+
+    public interface Parameters extends ValueSourceParameters {
+
+        /**
+         * @return The name or full path of the compiler executable
+         */
+        Property<String> getCompilerExecutable();
+    }
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @Override
+    public String obtain() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ExecResult result = getExecOperations().exec(execSpec -> {
+                execSpec.commandLine(getParameters().getCompilerExecutable().get(), "--version");
+                execSpec.setStandardOutput(output);
+                execSpec.setErrorOutput(ByteArrayOutputStream.nullOutputStream());
+                execSpec.setIgnoreExitValue(true);
+            });
+            if (result.getExitValue() != 0) {
+                return UNKNOWN_VERSION;
+            }
+        } catch (RuntimeException e) {
+            // The compiler isn't installed on this machine, the build tasks will fail with a proper error message
+            return UNKNOWN_VERSION;
+        }
+        // The whole output is used, as some compilers (e.g. cobc) also print the date the compiler was built on
+        String version = output.toString(StandardCharsets.UTF_8).strip();
+        return version.isEmpty() ? UNKNOWN_VERSION : version;
+    }
+}
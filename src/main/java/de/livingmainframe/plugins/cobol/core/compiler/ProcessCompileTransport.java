@@ -0,0 +1,79 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Runs the compiler as a local process in a workspace directory on the same machine. The files are copied into the
+ * workspace, e.g. a directory that a container with the compiler mounts.
+ */
+public class ProcessCompileTransport implements CompileTransport {
+
+    private final Path workspace;
+
+    public ProcessCompileTransport(@NotNull Path workspace) throws IOException {
+        this.workspace = Files.createDirectories(workspace.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public @NotNull String getWorkspace() {
+        return workspace.toString();
+    }
+
+    @Override
+    public void upload(@NotNull String path, @NotNull Path localFile) throws IOException {
+        Path file = workspace.resolve(path);
+        Files.createDirectories(file.getParent());
+        Path temporaryFile = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(localFile, temporaryFile);
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    @Override
+    public boolean download(@NotNull String path, @NotNull Path localFile) throws IOException {
+        Path file = workspace.resolve(path);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        Files.createDirectories(localFile.toAbsolutePath().getParent());
+        Files.copy(file, localFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        return true;
+    }
+
+    @Override
+    public int execute(@NotNull List<String> command, @NotNull Map<String, String> environmentVariables,
+                       @NotNull OutputStream output) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command).directory(workspace.toFile())
+                .redirectErrorStream(true);
+        processBuilder.environment().putAll(environmentVariables);
+        Process process = processBuilder.start();
+        // The compiler doesn't read any input
+        process.getOutputStream().close();
+        try (InputStream processOutput = process.getInputStream()) {
+            processOutput.transferTo(output);
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + command.getFirst(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // The processes end with every command, there is no session to close
+    }
+}
@@ -0,0 +1,327 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles programs through the sessions of a {@link CompileTransport}. The sessions are opened when they are first
+ * needed and reused for all following compiles, so a build opens at most maxSessions connections instead of one per
+ * program.
+ * <p>
+ * The workspace keeps the programs and copybooks between compiles and builds. A file is only transferred if its
+ * content differs from the content the workspace is known to hold, so most copybooks are transferred once instead of
+ * once per program that uses them. What the workspace holds is recorded in an index file in the workspace. It is read
+ * by the first session and replaced with an empty file, so a build that fails before it writes the index back can't
+ * leave a stale index behind. A workspace must therefore not be shared by builds that run at the same time.
+ * <p>
+ * A workspace directory mirrors the local directory of its files. Before a directory is first used by a build, the
+ * files that no longer exist locally are deleted from it, so a removed or moved copybook isn't found by the compiler.
+ */
+public class RemoteCompiler implements AutoCloseable {
+
+    public static final String INDEX_FILE = ".gradle-cobol/files.tsv";
+
+    private static final Logger logger = Logging.getLogger(RemoteCompiler.class);
+
+    // Directories are recorded in the index with a trailing '/' and this value instead of a hash
+    private static final String DIRECTORY = "directory";
+
+    /**
+     * Opens a new session on the machine of the compiler
+     */
+    @FunctionalInterface
+    public interface TransportFactory {
+        @NotNull CompileTransport open() throws IOException;
+    }
+
+    private final TransportFactory transportFactory;
+    private final Semaphore sessions;
+    private final BlockingQueue<CompileTransport> idleSessions = new LinkedBlockingQueue<>();
+    private final ConcurrentMap<String, String> workspaceFiles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, String> localHashes = new ConcurrentHashMap<>();
+    private final Set<String> prunedDirectories = ConcurrentHashMap.newKeySet();
+    private final AtomicLong transferredFiles = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private boolean indexLoaded;
+
+    /**
+     * @param transportFactory Opens the sessions
+     * @param maxSessions      The maximum number of sessions that are open at the same time
+     */
+    public RemoteCompiler(@NotNull TransportFactory transportFactory, int maxSessions) {
+        this.transportFactory = transportFactory;
+        this.sessions = new Semaphore(Math.max(maxSessions, 1), true);
+    }
+
+    /**
+     * Transfers the changed inputs into the workspace, runs the command and transfers the outputs back if the command
+     * succeeded. The local files must not change while the compiler is used, their hashes are only computed once
+     *
+     * @param inputs               The paths in the workspace mapped to the local files, e.g. the program and its
+     *                             copybooks
+     * @param command              The command, with the paths of the files in the workspace
+     * @param environmentVariables Additional environment variables of the command
+     * @param output               Receives the output of the command while it runs
+     * @param outputs              The paths in the workspace mapped to the local files they are transferred to
+     * @return The exit value of the command
+     * @throws IOException If a session failed or the command succeeded without writing an output
+     */
+    public int compile(@NotNull Map<String, Path> inputs, @NotNull List<String> command,
+                       @NotNull Map<String, String> environmentVariables, @NotNull OutputStream output,
+                       @NotNull Map<String, Path> outputs) throws IOException {
+        CompileTransport session = acquire();
+        boolean failed = true;
+        try {
+            loadIndex(session);
+            prune(session, inputs);
+            for (Map.Entry<String, Path> input : inputs.entrySet()) {
+                transfer(session, input.getKey(), input.getValue());
+            }
+            for (String outputPath : outputs.keySet()) {
+                createParentDirectory(session, outputPath);
+            }
+            int exitValue = session.execute(command, environmentVariables, output);
+            if (exitValue == 0) {
+                for (Map.Entry<String, Path> outputFile : outputs.entrySet()) {
+                    if (!session.download(outputFile.getKey(), outputFile.getValue())) {
+                        throw new IOException(String.format("%s exited with 0 but didn't write %s",
+                                command.getFirst(), outputFile.getKey()));
+                    }
+                }
+            }
+            failed = false;
+            return exitValue;
+        } finally {
+            release(session, failed);
+        }
+    }
+
+    /**
+     * @return The number of files that were transferred into the workspace
+     */
+    public long getTransferredFiles() {
+        return transferredFiles.get();
+    }
+
+    /**
+     * @return The number of bytes that were transferred into the workspace
+     */
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    /**
+     * Writes the index of the workspace and closes all sessions
+     */
+    @Override
+    public void close() throws IOException {
+        CompileTransport session = idleSessions.poll();
+        if (session != null) {
+            try {
+                writeIndex(session);
+            } catch (IOException e) {
+                // The workspace keeps the empty index, so the next build transfers all files again
+                logger.warn("Unable to write the index of the workspace {}: {}", session.getWorkspace(),
+                        e.getMessage());
+            } finally {
+                session.close();
+            }
+        }
+        while ((session = idleSessions.poll()) != null) {
+            session.close();
+        }
+    }
+
+    /*
+    A failed upload may have left a partial file, so the path is only recorded once the upload finished. Two compiles
+    that need the same new copybook may both transfer it, which is harmless as the content is the same
+     */
+    private void transfer(CompileTransport session, String path, Path localFile) throws IOException {
+        String hash = localHashes.get(localFile);
+        if (hash == null) {
+            hash = hash(localFile);
+            localHashes.put(localFile, hash);
+        }
+        if (hash.equals(workspaceFiles.get(path))) {
+            return;
+        }
+        session.upload(path, localFile);
+        workspaceFiles.put(path, hash);
+        transferredFiles.incrementAndGet();
+        transferredBytes.addAndGet(Files.size(localFile));
+    }
+
+    /*
+    Holds the lock while a directory is pruned, so that no other compile uses the directory before its stale files are
+    deleted. Every directory is only pruned once per build
+     */
+    private synchronized void prune(CompileTransport session, Map<String, Path> inputs) throws IOException {
+        Map<String, Path> directories = new TreeMap<>();
+        for (Map.Entry<String, Path> input : inputs.entrySet()) {
+            String directory = input.getKey().substring(0, input.getKey().lastIndexOf('/') + 1);
+            directories.putIfAbsent(directory, input.getValue().toAbsolutePath().getParent());
+        }
+        for (Map.Entry<String, Path> directory : directories.entrySet()) {
+            String prefix = directory.getKey();
+            if (prunedDirectories.contains(prefix)) {
+                continue;
+            }
+            List<String> staleFiles = new ArrayList<>();
+            workspaceFiles.forEach((path, hash) -> {
+                // Subdirectories and the files in them are pruned with the subdirectory
+                if (path.startsWith(prefix) && path.indexOf('/', prefix.length()) < 0 && !DIRECTORY.equals(hash) &&
+                        !Files.exists(directory.getValue().resolve(path.substring(prefix.length())))) {
+                    staleFiles.add(path);
+                }
+            });
+            if (!staleFiles.isEmpty()) {
+                List<String> command = new ArrayList<>(List.of("rm", "-f", "--"));
+                command.addAll(staleFiles);
+                int exitValue = session.execute(command, Map.of(), OutputStream.nullOutputStream());
+                if (exitValue != 0) {
+                    throw new IOException(String.format("Unable to delete %d removed files from the workspace, rm " +
+                            "exited with %d", staleFiles.size(), exitValue));
+                }
+                staleFiles.forEach(workspaceFiles::remove);
+                logger.info("Deleted {} removed files from {} in the workspace {}", staleFiles.size(), prefix,
+                        session.getWorkspace());
+            }
+            prunedDirectories.add(prefix);
+        }
+    }
+
+    private void createParentDirectory(CompileTransport session, String path) throws IOException {
+        int separator = path.lastIndexOf('/');
+        if (separator <= 0 || DIRECTORY.equals(workspaceFiles.get(path.substring(0, separator + 1)))) {
+            return;
+        }
+        String directory = path.substring(0, separator);
+        int exitValue = session.execute(List.of("mkdir", "-p", directory), Map.of(), OutputStream.nullOutputStream());
+        if (exitValue != 0) {
+            throw new IOException(String.format("Unable to create the directory %s, mkdir exited with %d", directory,
+                    exitValue));
+        }
+        workspaceFiles.put(directory + '/', DIRECTORY);
+    }
+
+    /*
+    A session is taken from the idle sessions or opened if there is none. As every open session is either idle or
+    held by a permit, no more than maxSessions sessions are ever open
+     */
+    private CompileTransport acquire() throws IOException {
+        try {
+            sessions.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a compile session");
+        }
+        CompileTransport session = idleSessions.poll();
+        if (session != null) {
+            return session;
+        }
+        try {
+            session = transportFactory.open();
+            logger.info("Opened a compile session in {}", session.getWorkspace());
+            return session;
+        } catch (IOException | RuntimeException e) {
+            sessions.release();
+            throw e;
+        }
+    }
+
+    /*
+    The state of a session that failed is unknown, e.g. it may still send the output of an interrupted command. It is
+    closed and the next compile opens a new one
+     */
+    private void release(CompileTransport session, boolean failed) throws IOException {
+        try {
+            if (failed) {
+                session.close();
+            } else {
+                idleSessions.add(session);
+            }
+        } finally {
+            sessions.release();
+        }
+    }
+
+    private synchronized void loadIndex(CompileTransport session) throws IOException {
+        if (indexLoaded) {
+            return;
+        }
+        Path indexFile = Files.createTempFile("gradle-cobol-workspace", ".tsv");
+        try {
+            if (session.download(INDEX_FILE, indexFile)) {
+                for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                    int separator = line.indexOf('\t');
+                    if (separator > 0) {
+                        workspaceFiles.put(line.substring(0, separator), line.substring(separator + 1));
+                    }
+                }
+            }
+            Files.writeString(indexFile, "");
+            session.upload(INDEX_FILE, indexFile);
+        } finally {
+            Files.deleteIfExists(indexFile);
+        }
+        indexLoaded = true;
+        logger.info("The workspace {} contains {} known files", session.getWorkspace(), workspaceFiles.size());
+    }
+
+    private synchronized void writeIndex(CompileTransport session) throws IOException {
+        if (!indexLoaded) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(workspaceFiles.size());
+        workspaceFiles.forEach((path, hash) -> lines.add(path + '\t' + hash));
+        Path indexFile = Files.createTempFile("gradle-cobol-workspace", ".tsv");
+        try {
+            Files.write(indexFile, lines, StandardCharsets.UTF_8);
+            session.upload(INDEX_FILE, indexFile);
+        } finally {
+            Files.deleteIfExists(indexFile);
+        }
+        logger.info("Transferred {} files with {} bytes into the workspace {}", transferredFiles.get(),
+                transferredBytes.get(), session.getWorkspace());
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
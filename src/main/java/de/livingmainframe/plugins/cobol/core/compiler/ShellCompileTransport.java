@@ -0,0 +1,270 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the compiler through a POSIX shell that stays open for the whole session, e.g. {@code ssh -T user@host} to
+ * z/OS UNIX System Services. Opening the connection once instead of once per program avoids most of the latency of
+ * remote compiles.
+ * <p>
+ * The shell reads the operations from its standard input, one line per operation. Every operation ends with a line
+ * that contains a marker, which is unique to the session, and the exit value of the operation. Files are transferred
+ * as raw bytes with their size, so the connection must not convert between character sets. The same protocol runs
+ * against a local {@code sh} ({@link #loopback(Path)}), which stands in for the remote machine in tests.
+ */
+public class ShellCompileTransport implements CompileTransport {
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final String workspace;
+    private final String marker = "__gradle_cobol_" + UUID.randomUUID().toString().replace("-", "") + "__";
+    private final Process shell;
+    private final OutputStream shellInput;
+    private final InputStream shellOutput;
+
+    /**
+     * Opens the shell and changes into the workspace, which is created if it doesn't exist
+     *
+     * @param shellCommand The command that opens the shell, e.g. ["ssh", "-T", "user@host"]
+     * @param workspace    The absolute path of the workspace on the machine of the shell
+     * @throws IOException If the shell can't be started or the workspace can't be created
+     */
+    public ShellCompileTransport(@NotNull List<String> shellCommand, @NotNull String workspace) throws IOException {
+        this.workspace = workspace;
+        this.shell = new ProcessBuilder(shellCommand).redirectErrorStream(true).start();
+        this.shellInput = shell.getOutputStream();
+        this.shellOutput = new BufferedInputStream(shell.getInputStream());
+        try {
+            // Anything the shell prints before the first marker, e.g. a login banner, is skipped
+            int exitValue = run("mkdir -p " + quote(workspace) + " && cd " + quote(workspace),
+                    OutputStream.nullOutputStream());
+            if (exitValue != 0) {
+                throw new IOException(String.format("Unable to change into the workspace %s, the shell returned %d",
+                        workspace, exitValue));
+            }
+        } catch (IOException e) {
+            shell.destroyForcibly();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a local shell as a stand-in for a remote machine
+     *
+     * @param workspace The local directory of the workspace
+     * @return The transport
+     * @throws IOException If the shell can't be started
+     */
+    public static @NotNull ShellCompileTransport loopback(@NotNull Path workspace) throws IOException {
+        return new ShellCompileTransport(List.of("sh"), workspace.toAbsolutePath().normalize().toString());
+    }
+
+    @Override
+    public @NotNull String getWorkspace() {
+        return workspace;
+    }
+
+    /*
+    Shells may read ahead of the current command line on a pipe, so the bytes of the file are only sent once the shell
+    announced that it is about to run head. head only reads the announced number of bytes, so the file can't swallow a
+    command. The shell's PID makes the temporary file unique per session
+     */
+    @Override
+    public void upload(@NotNull String path, @NotNull Path localFile) throws IOException {
+        long size = Files.size(localFile);
+        String temporaryFile = quote(path + ".") + "$$.tmp";
+        send("mkdir -p \"$(dirname " + quote(path) + ")\" && printf '%s\\n' " + marker + " && head -c " + size +
+                " > " + temporaryFile + " && mv " + temporaryFile + " " + quote(path));
+        String line;
+        while (!(line = new String(readLine(), StandardCharsets.ISO_8859_1)).equals(marker)) {
+            if (line.startsWith(marker + " ")) {
+                throw new IOException(String.format("Unable to create the directory of %s, the shell returned %s",
+                        path, line.substring(marker.length() + 1)));
+            }
+        }
+        Files.copy(localFile, shellInput);
+        shellInput.flush();
+        int exitValue = readResult(OutputStream.nullOutputStream());
+        if (exitValue != 0) {
+            throw new IOException(String.format("Unable to upload %s to %s, the shell returned %d", localFile, path,
+                    exitValue));
+        }
+    }
+
+    /*
+    The size of the file precedes its bytes, -1 if the file doesn't exist. An x before the size marks an executable,
+    e.g. a linked program, as the bytes alone don't carry its permissions. wc pads its output on some systems
+     */
+    @Override
+    public boolean download(@NotNull String path, @NotNull Path localFile) throws IOException {
+        send("if [ -f " + quote(path) + " ]; then if [ -x " + quote(path) + " ]; then printf x; fi; wc -c < " +
+                quote(path) + " && cat " + quote(path) + "; else echo -1; fi");
+        String header = new String(readLine(), StandardCharsets.ISO_8859_1).trim();
+        boolean executable = header.startsWith("x");
+        long size;
+        try {
+            size = Long.parseLong((executable ? header.substring(1) : header).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(String.format("Unexpected response while downloading %s", path), e);
+        }
+        if (size < 0) {
+            readResult(OutputStream.nullOutputStream());
+            return false;
+        }
+        Files.createDirectories(localFile.toAbsolutePath().getParent());
+        Path temporaryFile = localFile.resolveSibling(localFile.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporaryFile)) {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = size;
+            while (remaining > 0) {
+                int read = shellOutput.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException(String.format("The session ended while downloading %s", path));
+                }
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        readResult(OutputStream.nullOutputStream());
+        if (executable) {
+            setExecutable(temporaryFile);
+        }
+        Files.move(temporaryFile, localFile, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /*
+    Everyone who may read the file may execute it, like chmod +x with the default umask
+     */
+    private static void setExecutable(Path file) throws IOException {
+        PosixFileAttributeView attributeView = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        if (attributeView == null) {
+            if (!file.toFile().setExecutable(true)) {
+                throw new IOException(String.format("Unable to make %s executable", file));
+            }
+            return;
+        }
+        Set<PosixFilePermission> permissions = new HashSet<>(attributeView.readAttributes().permissions());
+        if (permissions.contains(PosixFilePermission.OWNER_READ)) {
+            permissions.add(PosixFilePermission.OWNER_EXECUTE);
+        }
+        if (permissions.contains(PosixFilePermission.GROUP_READ)) {
+            permissions.add(PosixFilePermission.GROUP_EXECUTE);
+        }
+        if (permissions.contains(PosixFilePermission.OTHERS_READ)) {
+            permissions.add(PosixFilePermission.OTHERS_EXECUTE);
+        }
+        attributeView.setPermissions(permissions);
+    }
+
+    /*
+    The command runs in a subshell, so that its environment variables don't leak into the next command. Its input is
+    redirected, otherwise it could read the following operations
+     */
+    @Override
+    public int execute(@NotNull List<String> command, @NotNull Map<String, String> environmentVariables,
+                       @NotNull OutputStream output) throws IOException {
+        StringBuilder commandLine = new StringBuilder("(");
+        for (Map.Entry<String, String> environmentVariable : environmentVariables.entrySet()) {
+            commandLine.append(environmentVariable.getKey()).append('=').append(quote(environmentVariable.getValue()))
+                    .append("; export ").append(environmentVariable.getKey()).append("; ");
+        }
+        commandLine.append("exec");
+        for (String argument : command) {
+            commandLine.append(' ').append(quote(argument));
+        }
+        commandLine.append(") < /dev/null 2>&1");
+        return run(commandLine.toString(), output);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            shellInput.write("exit 0\n".getBytes(StandardCharsets.UTF_8));
+            shellInput.close();
+            if (!shell.waitFor(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                shell.destroyForcibly();
+            }
+        } catch (IOException e) {
+            // The session already ended
+            shell.destroyForcibly();
+        } catch (InterruptedException e) {
+            shell.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int run(String commandLine, OutputStream output) throws IOException {
+        send(commandLine);
+        return readResult(output);
+    }
+
+    /*
+    The marker is printed on a line of its own. printf starts it with a newline, in case the output of the operation
+    doesn't end with one. That newline isn't part of the output
+     */
+    private void send(String commandLine) throws IOException {
+        String line = commandLine + "; printf '\\n%s %d\\n' " + marker + " $?\n";
+        shellInput.write(line.getBytes(StandardCharsets.UTF_8));
+        shellInput.flush();
+    }
+
+    /*
+    The output is streamed line by line. A line is only written once the next line was read, because the line before
+    the marker ends with the newline that printf added
+     */
+    private int readResult(OutputStream output) throws IOException {
+        byte[] pendingLine = null;
+        while (true) {
+            byte[] line = readLine();
+            String text = new String(line, StandardCharsets.ISO_8859_1);
+            if (text.startsWith(marker + " ")) {
+                if (pendingLine != null) {
+                    output.write(pendingLine);
+                }
+                output.flush();
+                return Integer.parseInt(text.substring(marker.length() + 1).trim());
+            }
+            if (pendingLine != null) {
+                output.write(pendingLine);
+                output.write('\n');
+            }
+            pendingLine = line;
+        }
+    }
+
+    private byte[] readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = shellOutput.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("The session ended unexpectedly");
+            }
+            line.write(b);
+        }
+        return line.toByteArray();
+    }
+
+    private static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+}
@@ -0,0 +1,84 @@
+package de.livingmainframe.plugins.cobol.core.compiler;
+
+import org.apache.commons.io.FilenameUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hashes the C sources that GnuCOBOL translates a program to, so that a translation that only differs in when and
+ * where it ran doesn't make the C compile out of date:
+ * <ul>
+ *     <li>Single-line comments are ignored. cobc writes the time of the translation, its own build date and the
+ *     command line into comments at the top of every file</li>
+ *     <li>The COB_MODULE_FORMATTED_DATE, COB_MODULE_DATE and COB_MODULE_TIME defines are ignored. They hold the time of
+ *     the translation, which the program returns for the WHEN-COMPILED register. A program whose C source didn't
+ *     change otherwise keeps the time of its previous compile</li>
+ *     <li>Line directives only contribute the names of the files, not their directories</li>
+ * </ul>
+ * All files of the directory are hashed together with their names, except compiler logs.
+ */
+public final class TranslatedSourceNormalizer {
+
+    private static final Pattern MODULE_DATE_DEFINE = Pattern.compile("\\s*#define\\s+COB_MODULE_(FORMATTED_DATE|DATE" +
+            "|TIME)\\b.*");
+    private static final Pattern LINE_DIRECTIVE_PATH = Pattern.compile("\"([^\"]*)\"");
+
+    private TranslatedSourceNormalizer() {
+    }
+
+    /**
+     * @param translatedSourceDirectory The directory that contains the C source and its headers
+     * @return The SHA-256 hash of the normalized files as a hexadecimal string
+     * @throws IOException If the directory or a file can't be read
+     */
+    public static @NotNull String hash(@NotNull File translatedSourceDirectory) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+
+        File[] files = translatedSourceDirectory.listFiles(file -> file.isFile() && !file.getName().endsWith(".log"));
+        if (files == null) {
+            throw new IOException(String.format("Unable to list %s", translatedSourceDirectory));
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (File file : files) {
+            digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            // ISO-8859-1 maps every byte to a character and back, so the charset of the literals doesn't matter
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.ISO_8859_1)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String trimmedLine = line.trim();
+                    // Only lines that consist of a single comment, code after a comment is still hashed
+                    if (trimmedLine.startsWith("/*") && trimmedLine.indexOf("*/") == trimmedLine.length() - 2
+                            || MODULE_DATE_DEFINE.matcher(line).matches()) {
+                        continue;
+                    }
+                    if (trimmedLine.startsWith("#line")) {
+                        line = LINE_DIRECTIVE_PATH.matcher(line).replaceAll(result -> Matcher.quoteReplacement('"' +
+                                FilenameUtils.getName(result.group(1)) + '"'));
+                    }
+                    digest.update(line.getBytes(StandardCharsets.ISO_8859_1));
+                    digest.update((byte) '\n');
+                }
+            }
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -2,7 +2,6 @@ package de.livingmainframe.plugins.cobol.core.dsl;
 
 import org.gradle.api.Action;
 import org.gradle.api.Named;
-import org.gradle.api.Project;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.model.ObjectFactory;
 import org.jetbrains.annotations.NotNull;
@@ -20,9 +19,9 @@ public class ModuleGroup implements Named {
     private ConfigurableFileCollection modules;
 
     @Inject
-    public ModuleGroup(Project project, ObjectFactory objectFactory, String name) {
+    public ModuleGroup(ObjectFactory objectFactory, String name) {
         this.name = name;
-        this.modules = project.files();
+        this.modules = objectFactory.fileCollection();
         this.options = new ModuleOptions(objectFactory);
     }
 
@@ -10,6 +10,7 @@ import java.util.List;
 public class ModuleOptions {
     private final Property<Boolean> db2;
     private final Property<Boolean> cics;
+    private final Property<String> sourceEncoding;
     private List<String> compilerOptions = new ArrayList<>();
 
     @Inject
@@ -18,6 +19,7 @@ public class ModuleOptions {
         this.db2.convention(false);
         this.cics = objectFactory.property(Boolean.class);
         this.cics.convention(false);
+        this.sourceEncoding = objectFactory.property(String.class);
     }
 
     public List<String> getCompilerOptions() {
@@ -44,4 +46,17 @@ public class ModuleOptions {
         this.db2.set(db2);
     }
 
+    /**
+     * The charset of the modules if it differs from the charset that is configured for the whole project
+     *
+     * @return The name of the charset or null if the project's charset is used
+     */
+    public String getSourceEncoding() {
+        return sourceEncoding.getOrNull();
+    }
+
+    public void setSourceEncoding(String sourceEncoding) {
+        this.sourceEncoding.set(sourceEncoding);
+    }
+
 }
@@ -0,0 +1,237 @@
+package de.livingmainframe.plugins.cobol.core.services;
+
+import org.gradle.api.Task;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects how long the analysis and the compile of every program take while the build runs and writes them to a
+ * JSON and a CSV report when the build finishes. The report also contains the totals of the build and the slowest
+ * programs, which usually dominate the critical path.
+ * <p>
+ * The service is shared by all projects of a build, the programs are identified by the path of their project and
+ * their manifest path. Phases that didn't run in a build, e.g. the configuration when it is loaded from the
+ * configuration cache, are reported as -1.
+ */
+public abstract class BuildMetricsService implements BuildService<BuildMetricsService.Parameters>, AutoCloseable {
+
+    public static final String NAME = "cobolBuildMetrics";
+    public static final int SLOWEST_PROGRAMS = 10;
+
+    private static final Logger logger = Logging.getLogger(BuildMetricsService.class);
+
+    public interface Parameters extends BuildServiceParameters {
+
+        DirectoryProperty getReportDirectory();
+    }
+
+    private final long startTime = System.nanoTime();
+    private final Map<String, Long> configurationDurations = new ConcurrentHashMap<>();
+    private final Map<ProgramKey, ProgramMetrics> programs = new ConcurrentHashMap<>();
+
+    /**
+     * The metrics of a single program. Durations are in nanoseconds, -1 means that the phase didn't run
+     *
+     * @param projectPath      The path of the project, e.g. ":"
+     * @param program          The manifest path of the program
+     * @param analysisDuration How long it took to scan the program and resolve its copybooks
+     * @param dependencies     The number of copybooks the program depends on
+     * @param compileDuration  The wall time of the compiler processes of the program
+     * @param exitCode         The exit code of the last compiler process
+     * @param outputSize       The number of bytes the compiler wrote to its standard and error output
+     */
+    public record ProgramMetrics(String projectPath, String program, long analysisDuration, int dependencies,
+                                 long compileDuration, int exitCode, long outputSize) {
+
+        private static ProgramMetrics empty(ProgramKey key) {
+            return new ProgramMetrics(key.projectPath(), key.program(), -1, -1, -1, -1, -1);
+        }
+
+        /*
+        A program is compiled by the build task and by compileCobol if both are run, the durations add up
+         */
+        private ProgramMetrics withCompile(long duration, int exitCode, long outputSize) {
+            return new ProgramMetrics(projectPath, program, analysisDuration, dependencies,
+                    Math.max(compileDuration, 0) + duration, exitCode, Math.max(this.outputSize, 0) + outputSize);
+        }
+
+        private ProgramMetrics withAnalysis(long duration, int dependencies) {
+            return new ProgramMetrics(projectPath, program, duration, dependencies, compileDuration, exitCode,
+                    outputSize);
+        }
+    }
+
+    private record ProgramKey(String projectPath, String program) {
+    }
+
+    /**
+     * Returns the path of the project of a task without accessing the project, which isn't allowed while the task
+     * is executed
+     *
+     * @param task The task
+     * @return The path of the project, e.g. ":" or ":sub"
+     */
+    public static @NotNull String getProjectPath(@NotNull Task task) {
+        int separator = task.getPath().lastIndexOf(':');
+        return separator <= 0 ? ":" : task.getPath().substring(0, separator);
+    }
+
+    public void recordConfiguration(@NotNull String projectPath, long duration) {
+        configurationDurations.put(projectPath, duration);
+    }
+
+    public void recordAnalysis(@NotNull String projectPath, @NotNull String program, long duration, int dependencies) {
+        programs.compute(new ProgramKey(projectPath, program), (key, metrics) ->
+                (metrics == null ? ProgramMetrics.empty(key) : metrics).withAnalysis(duration, dependencies));
+    }
+
+    public void recordCompile(@NotNull String projectPath, @NotNull String program, long duration, int exitCode,
+                              long outputSize) {
+        programs.compute(new ProgramKey(projectPath, program), (key, metrics) ->
+                (metrics == null ? ProgramMetrics.empty(key) : metrics).withCompile(duration, exitCode, outputSize));
+    }
+
+    /**
+     * @return The metrics of all programs, sorted by project and program
+     */
+    public @NotNull List<ProgramMetrics> getPrograms() {
+        return programs.values().stream().sorted(Comparator.comparing(ProgramMetrics::projectPath)
+                .thenComparing(ProgramMetrics::program)).toList();
+    }
+
+    /**
+     * @return The programs with the longest analysis and compile, the slowest first
+     */
+    public @NotNull List<ProgramMetrics> getSlowestPrograms() {
+        return programs.values().stream().filter(metrics -> metrics.compileDuration() >= 0)
+                .sorted(Comparator.comparingLong((ProgramMetrics metrics) -> getTotalDuration(metrics)).reversed()
+                        .thenComparing(ProgramMetrics::program)).limit(SLOWEST_PROGRAMS).toList();
+    }
+
+    /**
+     * Quotes a field of the CSV report as described in RFC 4180 if it contains a comma, a double quote or a line
+     * break, e.g. a program in a directory with a comma in its name
+     *
+     * @param value The value of the field
+     * @return The field as it is written to the report
+     */
+    public static @NotNull String toCsvField(@NotNull String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    @Override
+    public void close() {
+        if (programs.isEmpty() && configurationDurations.isEmpty()) {
+            return;
+        }
+        File reportDirectory = getParameters().getReportDirectory().get().getAsFile();
+        try {
+            Files.createDirectories(reportDirectory.toPath());
+            writeJson(new File(reportDirectory, "build-metrics.json"));
+            writeCsv(new File(reportDirectory, "build-metrics.csv"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        logger.info("Wrote the metrics of {} programs to {}", programs.size(), reportDirectory);
+    }
+
+    private void writeJson(File reportFile) throws IOException {
+        List<ProgramMetrics> programMetrics = getPrograms();
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("{\n  \"totals\": {\n");
+            writer.write(String.format(Locale.ROOT, "    \"buildDurationMs\": %.3f,\n",
+                    toMillis(System.nanoTime() - startTime)));
+            writer.write(String.format(Locale.ROOT, "    \"configurationMs\": %.3f,\n",
+                    configurationDurations.isEmpty() ? -1 : toMillis(configurationDurations.values().stream()
+                            .mapToLong(Long::longValue).sum())));
+            writer.write(String.format(Locale.ROOT, "    \"analysisMs\": %.3f,\n",
+                    toMillis(programMetrics.stream().mapToLong(ProgramMetrics::analysisDuration)
+                            .filter(duration -> duration > 0).sum())));
+            writer.write(String.format(Locale.ROOT, "    \"compileMs\": %.3f,\n",
+                    toMillis(programMetrics.stream().mapToLong(ProgramMetrics::compileDuration)
+                            .filter(duration -> duration > 0).sum())));
+            writer.write(String.format(Locale.ROOT, "    \"programs\": %d,\n", programMetrics.size()));
+            writer.write(String.format(Locale.ROOT, "    \"compiledPrograms\": %d,\n",
+                    programMetrics.stream().filter(metrics -> metrics.compileDuration() >= 0).count()));
+            writer.write(String.format(Locale.ROOT, "    \"failedPrograms\": %d,\n",
+                    programMetrics.stream().filter(metrics -> metrics.exitCode() > 0).count()));
+            writer.write(String.format(Locale.ROOT, "    \"outputBytes\": %d\n",
+                    programMetrics.stream().mapToLong(ProgramMetrics::outputSize).filter(size -> size > 0).sum()));
+            writer.write("  },\n  \"configuration\": {");
+            String separator = "\n";
+            for (Map.Entry<String, Long> configuration : new TreeMap<>(configurationDurations).entrySet()) {
+                writer.write(String.format(Locale.ROOT, "%s    %s: %.3f", separator, quote(configuration.getKey()),
+                        toMillis(configuration.getValue())));
+                separator = ",\n";
+            }
+            writer.write("\n  },\n  \"slowestPrograms\": [");
+            writePrograms(writer, getSlowestPrograms());
+            writer.write("],\n  \"programs\": [");
+            writePrograms(writer, programMetrics);
+            writer.write("]\n}\n");
+        }
+    }
+
+    private static void writePrograms(BufferedWriter writer, List<ProgramMetrics> programMetrics) throws IOException {
+        String separator = "\n";
+        for (ProgramMetrics metrics : programMetrics) {
+            writer.write(separator);
+            writer.write(String.format(Locale.ROOT, "    {\"project\": %s, \"program\": %s, \"analysisMs\": %.3f, " +
+                            "\"dependencies\": %d, \"compileMs\": %.3f, \"exitCode\": %d, \"outputBytes\": %d}",
+                    quote(metrics.projectPath()), quote(metrics.program()), toMillis(metrics.analysisDuration()),
+                    metrics.dependencies(), toMillis(metrics.compileDuration()), metrics.exitCode(),
+                    metrics.outputSize()));
+            separator = ",\n";
+        }
+        if (!programMetrics.isEmpty()) {
+            writer.write("\n  ");
+        }
+    }
+
+    /*
+    RFC 4180 separates the records with CRLF on every platform
+     */
+    private void writeCsv(File reportFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("project,program,analysis_ms,dependencies,compile_ms,exit_code,output_bytes\r\n");
+            for (ProgramMetrics metrics : getPrograms()) {
+                writer.write(String.format(Locale.ROOT, "%s,%s,%.3f,%d,%.3f,%d,%d\r\n",
+                        toCsvField(metrics.projectPath()), toCsvField(metrics.program()),
+                        toMillis(metrics.analysisDuration()), metrics.dependencies(),
+                        toMillis(metrics.compileDuration()), metrics.exitCode(), metrics.outputSize()));
+            }
+        }
+    }
+
+    private static long getTotalDuration(ProgramMetrics metrics) {
+        return Math.max(metrics.analysisDuration(), 0) + Math.max(metrics.compileDuration(), 0);
+    }
+
+    private static double toMillis(long duration) {
+        return duration < 0 ? -1 : duration / 1_000_000.0;
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
@@ -0,0 +1,122 @@
+package de.livingmainframe.plugins.cobol.core.services;
+
+import de.livingmainframe.plugins.cobol.core.CobolSourceNormalizer;
+import de.livingmainframe.plugins.cobol.core.CopybookDependencyGraph;
+import de.livingmainframe.plugins.cobol.core.CopybookIndex;
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
+import de.livingmainframe.plugins.cobol.core.SourceScanCache;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Build-wide holder of copybook indexes. Listing the include directories is done at most once per build and per
+ * distinct list of include directories. All source analyses that use the same include directories share the same
+ * index.
+ * <p>
+ * The same applies to the dependency graphs between copybooks, so that every copybook is only scanned once per build,
+ * and to the dependency manifests, which are read once per build no matter how many build tasks use them. The semantic
+ * hashes of copybooks are also shared, as a copybook is part of the fingerprint of every program that uses it.
+ * <p>
+ * The scan results and copybook indexes are also kept between builds in a {@link SourceScanCache}, which lives as long
+ * as the plugin classes. Gradle loads them once per daemon as long as the classpath of the build scripts doesn't
+ * change, so a build in a warm daemon only scans the files that changed since the last build, even if the analysis
+ * task isn't incremental, e.g. after a clean build.
+ */
+public abstract class CobolAnalysisService implements BuildService<BuildServiceParameters.None> {
+
+    public static final String NAME = "cobolAnalysis";
+
+    private static final int MAX_CACHED_SCANS = 500_000;
+    private static final SourceScanCache scanCache = new SourceScanCache(MAX_CACHED_SCANS);
+
+    private final ConcurrentMap<List<File>, CopybookIndex> copybookIndexes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<DependencyGraphKey, CopybookDependencyGraph> dependencyGraphs =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<ManifestKey, DependencyManifest> dependencyManifests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SemanticHashKey, SemanticHash> semanticHashes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the index for the given include directories and creates it if it doesn't exist yet
+     *
+     * @param sourceIncludeDirectories Absolute paths of the include directories, the order is significant
+     * @return The shared, immutable copybook index
+     */
+    public @NotNull CopybookIndex getCopybookIndex(@NotNull List<File> sourceIncludeDirectories) {
+        return copybookIndexes.computeIfAbsent(List.copyOf(sourceIncludeDirectories), scanCache::getCopybookIndex);
+    }
+
+    /**
+     * Returns the dependency graph for the given include directories and creates it if it doesn't exist yet
+     *
+     * @param sourceIncludeDirectories Absolute paths of the include directories, the order is significant
+     * @param charset                  The charset the copybooks are encoded in
+     * @return The shared dependency graph, which memoizes the analysis of each copybook
+     */
+    public @NotNull CopybookDependencyGraph getDependencyGraph(@NotNull List<File> sourceIncludeDirectories,
+                                                               @NotNull Charset charset) {
+        return dependencyGraphs.computeIfAbsent(new DependencyGraphKey(List.copyOf(sourceIncludeDirectories), charset),
+                key -> new CopybookDependencyGraph(getCopybookIndex(key.sourceIncludeDirectories()), key.charset(),
+                        scanCache));
+    }
+
+    /**
+     * Reads a dependency manifest. The manifest is only read again if the file changed in the meantime
+     *
+     * @param manifestFile The manifest file written by the analysis task
+     * @return The parsed manifest
+     */
+    public @NotNull DependencyManifest getDependencyManifest(@NotNull File manifestFile) {
+        ManifestKey key = new ManifestKey(manifestFile, manifestFile.lastModified(), manifestFile.length());
+        return dependencyManifests.computeIfAbsent(key, k -> {
+            try {
+                return DependencyManifest.read(k.manifestFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the hash of the semantic content of a source, see {@link CobolSourceNormalizer}. The hash is only
+     * computed again if the file changed in the meantime
+     *
+     * @param file    The program or copybook
+     * @param charset The charset of the file
+     * @return The hash as a hexadecimal string
+     */
+    public @NotNull String getSemanticHash(@NotNull File file, @NotNull Charset charset) {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        return semanticHashes.compute(new SemanticHashKey(file, charset), (key, semanticHash) -> {
+            if (semanticHash != null && semanticHash.lastModified() == lastModified && semanticHash.length() == length) {
+                return semanticHash;
+            }
+            try {
+                return new SemanticHash(lastModified, length, CobolSourceNormalizer.hash(file, charset));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).hash();
+    }
+
+    private record DependencyGraphKey(List<File> sourceIncludeDirectories, Charset charset) {
+    }
+
+    private record ManifestKey(File manifestFile, long lastModified, long length) {
+    }
+
+    private record SemanticHashKey(File file, Charset charset) {
+    }
+
+    private record SemanticHash(long lastModified, long length, String hash) {
+    }
+}
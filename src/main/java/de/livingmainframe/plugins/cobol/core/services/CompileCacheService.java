@@ -0,0 +1,59 @@
+package de.livingmainframe.plugins.cobol.core.services;
+
+import de.livingmainframe.plugins.cobol.core.compiler.CompileResultCache;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * Provides the {@link CompileResultCache} to the build tasks and keeps its size bounded. The least recently used
+ * entries are deleted when the build finishes, if any build task used the cache. Evicting once per build instead of
+ * after every stored program keeps the cache directory from being listed thousands of times.
+ * <p>
+ * The service is shared by all projects of a build, the cache directory and size of the first project that registers
+ * it apply.
+ */
+public abstract class CompileCacheService implements BuildService<CompileCacheService.Parameters>, AutoCloseable {
+
+    public static final String NAME = "cobolCompileCache";
+
+    private static final Logger logger = Logging.getLogger(CompileCacheService.class);
+
+    public interface Parameters extends BuildServiceParameters {
+
+        DirectoryProperty getCacheDirectory();
+
+        /**
+         * @return The maximum size of the cache in bytes
+         */
+        Property<Long> getMaxSize();
+    }
+
+    private volatile boolean used;
+
+    /**
+     * @return The directory of the cache, which may be shared with other builds on the same machine
+     */
+    public @NotNull File getCacheDirectory() {
+        used = true;
+        return getParameters().getCacheDirectory().get().getAsFile();
+    }
+
+    @Override
+    public void close() {
+        if (!used) {
+            return;
+        }
+        File cacheDirectory = getParameters().getCacheDirectory().get().getAsFile();
+        long deletedSize = new CompileResultCache(cacheDirectory.toPath()).evict(getParameters().getMaxSize().get());
+        if (deletedSize > 0) {
+            logger.info("Deleted {} bytes of least recently used programs from {}", deletedSize, cacheDirectory);
+        }
+    }
+}
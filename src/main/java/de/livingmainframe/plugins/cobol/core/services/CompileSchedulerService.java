@@ -0,0 +1,131 @@
+package de.livingmainframe.plugins.cobol.core.services;
+
+import de.livingmainframe.plugins.cobol.core.compiler.CompileAdmissionQueue;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileCostModel;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Admits the compiles of all projects through a {@link CompileAdmissionQueue}, which starts the compile with the
+ * longest estimated duration first, so a long program doesn't start last and keep a single worker busy while all
+ * others are idle. Without a memory budget at most maxParallelCompiles compiles run at the same time, with a memory
+ * budget as many as their estimated memory fits into it.
+ * <p>
+ * The service can only reorder compiles that wait, which they only do if Gradle runs more compiles than may run at the
+ * same time. The order in which Gradle starts the build tasks is therefore set while the build is configured, see
+ * {@link de.livingmainframe.plugins.cobol.core.compiler.CompileOrderValueSource}. The durations of the compiles are
+ * recorded in the history file of the {@link CompileCostModel} when the build finishes.
+ * <p>
+ * The service is shared by all projects of a build, the history file and the limits of the first project that
+ * registers it apply.
+ */
+public abstract class CompileSchedulerService implements BuildService<CompileSchedulerService.Parameters>,
+        AutoCloseable {
+
+    public static final String NAME = "cobolCompileScheduler";
+
+    private static final Logger logger = Logging.getLogger(CompileSchedulerService.class);
+
+    public interface Parameters extends BuildServiceParameters {
+
+        RegularFileProperty getHistoryFile();
+
+        Property<Integer> getMaxParallelCompiles();
+
+        /**
+         * @return The memory available to the compilers in bytes, or no value to limit the number of compiles instead
+         */
+        Property<Long> getMemoryBudget();
+    }
+
+    private CompileAdmissionQueue admissionQueue;
+    private CompileCostModel costModel;
+    private boolean recorded;
+
+    /**
+     * @param projectPath The path of the project of the program
+     * @param program     The manifest path of the program
+     * @param stage       The stage of the compile, see {@link CompileCostModel#COMPILE}
+     * @param work        The estimated work of the compile, see {@link CompileCostModel#estimateWork}
+     * @return The estimated duration of the compile in nanoseconds
+     */
+    public long estimateDuration(@NotNull String projectPath, @NotNull String program, @NotNull String stage,
+                                 long work) {
+        return getCostModel().estimateDuration(projectPath, program, stage, work);
+    }
+
+    /**
+     * Records the duration of a successful compile
+     */
+    public void recordCompile(@NotNull String projectPath, @NotNull String program, @NotNull String stage, long work,
+                              long duration) {
+        getCostModel().record(projectPath, program, stage, work, duration);
+        synchronized (this) {
+            recorded = true;
+        }
+    }
+
+    /**
+     * Waits until the compile may start, see {@link CompileAdmissionQueue#admit}
+     *
+     * @param name     The name of the compile for the log
+     * @param duration The estimated duration of the compile in nanoseconds
+     * @param memory   The estimated memory of the compile in bytes
+     * @return The admission, which has to be closed when the compile finished
+     * @throws InterruptedException If the build was cancelled while the compile waited
+     */
+    public @NotNull CompileAdmissionQueue.Admission admit(@NotNull String name, long duration, long memory)
+            throws InterruptedException {
+        return getAdmissionQueue().admit(name, duration, memory);
+    }
+
+    /**
+     * @return Whether the compiles are limited by their memory instead of their number
+     */
+    public boolean isMemoryLimited() {
+        return getParameters().getMemoryBudget().isPresent();
+    }
+
+    private synchronized CompileAdmissionQueue getAdmissionQueue() {
+        if (admissionQueue == null) {
+            admissionQueue = new CompileAdmissionQueue(getParameters().getMaxParallelCompiles().get(),
+                    getParameters().getMemoryBudget().getOrNull());
+        }
+        return admissionQueue;
+    }
+
+    private synchronized CompileCostModel getCostModel() {
+        if (costModel == null) {
+            File historyFile = getParameters().getHistoryFile().get().getAsFile();
+            try {
+                costModel = CompileCostModel.read(historyFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Unable to read the compile history %s", historyFile), e);
+            }
+        }
+        return costModel;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!recorded) {
+            return;
+        }
+        File historyFile = getParameters().getHistoryFile().get().getAsFile();
+        try {
+            costModel.write(historyFile);
+        } catch (IOException e) {
+            // The next build estimates the programs without the durations of this build
+            logger.warn("Unable to write the compile history {}: {}", historyFile, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.livingmainframe.plugins.cobol.core.services;
+
+import de.livingmainframe.plugins.cobol.core.compiler.CompileTransport;
+import de.livingmainframe.plugins.cobol.core.compiler.ProcessCompileTransport;
+import de.livingmainframe.plugins.cobol.core.compiler.RemoteCompiler;
+import de.livingmainframe.plugins.cobol.core.compiler.ShellCompileTransport;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Holds the {@link RemoteCompiler} of a build, so that the sessions it opens are reused by all build tasks and closed
+ * when the build finishes. The compiler is only created when the first build task compiles a program, an up-to-date
+ * build doesn't open a session.
+ * <p>
+ * The service is shared by all projects of a build, the transport of the first project that registers it applies.
+ */
+public abstract class CompileSessionService implements BuildService<CompileSessionService.Parameters>,
+        AutoCloseable {
+
+    public static final String NAME = "cobolCompileSessions";
+
+    public interface Parameters extends BuildServiceParameters {
+
+        /**
+         * @return "local" for a local workspace directory or "shell" for a remote shell
+         */
+        Property<String> getTransport();
+
+        /**
+         * @return The command that opens the remote shell, e.g. ["ssh", "-T", "user@host"]
+         */
+        ListProperty<String> getShellCommand();
+
+        /**
+         * @return The absolute path of the workspace on the machine of the compiler
+         */
+        Property<String> getWorkspace();
+
+        Property<Integer> getMaxSessions();
+    }
+
+    private RemoteCompiler remoteCompiler;
+
+    public synchronized @NotNull RemoteCompiler getRemoteCompiler() {
+        if (remoteCompiler == null) {
+            remoteCompiler = new RemoteCompiler(this::openTransport, getParameters().getMaxSessions().get());
+        }
+        return remoteCompiler;
+    }
+
+    private CompileTransport openTransport() throws IOException {
+        String workspace = getParameters().getWorkspace().get();
+        if (getParameters().getTransport().get().equals("shell")) {
+            return new ShellCompileTransport(getParameters().getShellCommand().get(), workspace);
+        }
+        return new ProcessCompileTransport(Path.of(workspace));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (remoteCompiler != null) {
+            remoteCompiler.close();
+        }
+    }
+}
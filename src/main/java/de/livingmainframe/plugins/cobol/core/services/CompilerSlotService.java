@@ -0,0 +1,16 @@
+package de.livingmainframe.plugins.cobol.core.services;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Limits the number of compiler processes that run at the same time. The service holds no state, the limit is
+ * enforced by Gradle through the maximum number of parallel usages. The build tasks only use the service if they
+ * compile in worker processes, which can't reach the {@link CompileSchedulerService}.
+ * <p>
+ * The service is shared by all projects of a build, the limit of the first project that registers it applies.
+ */
+public abstract class CompilerSlotService implements BuildService<BuildServiceParameters.None> {
+
+    public static final String NAME = "cobolCompilerSlots";
+}
@@ -0,0 +1,283 @@
+package de.livingmainframe.plugins.cobol.core.tasks;
+
+import de.livingmainframe.plugins.cobol.core.CobolPlugin;
+import de.livingmainframe.plugins.cobol.core.CobolSourceAnalyzer;
+import de.livingmainframe.plugins.cobol.core.CopybookDependencyGraph;
+import de.livingmainframe.plugins.cobol.core.CopybookUsageIndex;
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
+import de.livingmainframe.plugins.cobol.core.SourceCodeAnalysisResult;
+import de.livingmainframe.plugins.cobol.core.services.BuildMetricsService;
+import de.livingmainframe.plugins.cobol.core.services.CobolAnalysisService;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.problems.ProblemId;
+import org.gradle.api.problems.Problems;
+import org.gradle.api.problems.Severity;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.ServiceReference;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.LocalState;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Analyzes all COBOL programs of a project and writes the dependency manifest, which contains the copybooks every
+ * program depends on and whether the program uses Db2 or CICS. The build tasks read their inputs lazily from the
+ * manifest, so that no source file has to be read while the build is configured.
+ * <p>
+ * The task is incremental: the results of scanning each file are kept as local state, and only the programs and
+ * copybooks that changed since the last execution are scanned again. The copybooks are always resolved again because
+ * adding or removing a copybook can change which file a name refers to. If the task isn't incremental, e.g. after a
+ * clean build, the scan results that the {@link CobolAnalysisService} kept from earlier builds in the same daemon are
+ * reused instead.
+ */
+@CacheableTask
+public abstract class AnalyzeSourcesTask extends DefaultTask {
+
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @IgnoreEmptyDirectories
+    public abstract ConfigurableFileCollection getSources();
+
+    /**
+     * The directories which contain the copybooks. Any change in these directories is an input for the analysis
+     *
+     * @return The include directories
+     */
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @IgnoreEmptyDirectories
+    public abstract ConfigurableFileCollection getSourceIncludes();
+
+    /**
+     * The include directories relative to the project directory in the order in which copybooks are searched
+     *
+     * @return The paths of the include directories
+     */
+    @Input
+    public abstract ListProperty<String> getSourceIncludePaths();
+
+    @Input
+    public abstract Property<String> getSourceEncoding();
+
+    /**
+     * Charsets of programs that differ from the source encoding
+     *
+     * @return The manifest paths of the programs mapped to the name of their charset
+     */
+    @Input
+    public abstract MapProperty<String, String> getProgramEncodings();
+
+    @Internal
+    public abstract DirectoryProperty getProjectDirectory();
+
+    @OutputFile
+    public abstract RegularFileProperty getManifestFile();
+
+    /**
+     * The reverse of the manifest, which maps every copybook to the programs that depend on it
+     *
+     * @return The copybook usage index
+     */
+    @OutputFile
+    public abstract RegularFileProperty getUsageIndexFile();
+
+    /**
+     * The usage index of the previous execution, which still contains the copybooks that were deleted since. It is
+     * empty after the first execution
+     *
+     * @return The previous copybook usage index
+     */
+    @OutputFile
+    public abstract RegularFileProperty getPreviousUsageIndexFile();
+
+    @LocalState
+    public abstract RegularFileProperty getScanStateFile();
+
+    @ServiceReference(CobolAnalysisService.NAME)
+    public abstract Property<CobolAnalysisService> getAnalysisService();
+
+    @ServiceReference(BuildMetricsService.NAME)
+    public abstract Property<BuildMetricsService> getMetricsService();
+
+    @Inject
+    protected abstract Problems getProblems();
+
+    @TaskAction
+    public void analyzeSources(InputChanges inputChanges) throws IOException {
+        Logger logger = getLogger();
+        Path projectDirectory = getProjectDirectory().get().getAsFile().toPath().toAbsolutePath().normalize();
+        List<File> sourceIncludeDirectories =
+                getSourceIncludePaths().get().stream().map(path -> projectDirectory.resolve(path).toFile()).toList();
+        Charset sourceCharset = Charset.forName(getSourceEncoding().get());
+        CopybookDependencyGraph dependencyGraph =
+                getAnalysisService().get().getDependencyGraph(sourceIncludeDirectories, sourceCharset);
+
+        File scanStateFile = getScanStateFile().get().getAsFile();
+        if (inputChanges.isIncremental() && scanStateFile.exists()) {
+            Set<File> changedFiles = new HashSet<>();
+            for (FileChange fileChange : inputChanges.getFileChanges(getSources())) {
+                changedFiles.add(fileChange.getFile());
+            }
+            for (FileChange fileChange : inputChanges.getFileChanges(getSourceIncludes())) {
+                changedFiles.add(fileChange.getFile());
+            }
+
+            int reusedScans = 0;
+            for (DependencyManifest.Program scan : readScanState(scanStateFile)) {
+                File scannedFile = DependencyManifest.fromManifestPath(projectDirectory, scan.path());
+                if (!changedFiles.contains(scannedFile)) {
+                    dependencyGraph.addAnalysisResult(scannedFile, scan.db2(), scan.cics(), scan.calledPrograms(),
+                            scan.sourceDependencies());
+                    reusedScans++;
+                }
+            }
+            logger.info("{} files changed, reusing the scan results of {} files", changedFiles.size(), reusedScans);
+        }
+
+        Map<String, File> programs = new HashMap<>();
+        for (File program : getSources().getFiles()) {
+            programs.put(DependencyManifest.toManifestPath(projectDirectory, program), program);
+        }
+        List<String> programPaths = programs.keySet().stream().sorted().toList();
+        List<File> buildFiles = programPaths.stream().map(programs::get).toList();
+
+        Map<String, String> programEncodings = getProgramEncodings().get();
+        List<SourceCodeAnalysisResult> analysisResults = CobolSourceAnalyzer.analyzeSources(buildFiles,
+                dependencyGraph, buildFile -> {
+                    String programEncoding =
+                            programEncodings.get(DependencyManifest.toManifestPath(projectDirectory, buildFile));
+                    return programEncoding == null ? sourceCharset : Charset.forName(programEncoding);
+                }, Runtime.getRuntime().availableProcessors());
+        // The graph is shared by the analysis tasks of all projects with the same include directories
+        logger.info("Scanned {} files in this build, the other files were unchanged since an earlier scan",
+                dependencyGraph.getScannedFiles());
+
+        List<DependencyManifest.Program> manifestPrograms = new ArrayList<>();
+        Map<File, String> scannedFiles = new LinkedHashMap<>();
+        BuildMetricsService metricsService = getMetricsService().getOrNull();
+        String projectPath = BuildMetricsService.getProjectPath(this);
+        for (int i = 0; i < buildFiles.size(); i++) {
+            SourceCodeAnalysisResult analysisResult = analysisResults.get(i);
+            logger.info("Identified {} to use Db2: {}, CICS: {}, calls: {}", programPaths.get(i),
+                    analysisResult.isDb2(), analysisResult.isCics(), analysisResult.getCalledPrograms());
+            if (metricsService != null) {
+                metricsService.recordAnalysis(projectPath, programPaths.get(i), analysisResult.getAnalysisDuration(),
+                        analysisResult.getSourceDependencies().size());
+            }
+
+            manifestPrograms.add(new DependencyManifest.Program(programPaths.get(i), analysisResult.isDb2(),
+                    analysisResult.isCics(), analysisResult.getCalledPrograms(),
+                    analysisResult.getSourceDependencies().stream()
+                            .map(file -> DependencyManifest.toManifestPath(projectDirectory, file)).toList()));
+
+            scannedFiles.put(buildFiles.get(i), programPaths.get(i));
+            for (File copybook : analysisResult.getSourceDependencies()) {
+                scannedFiles.computeIfAbsent(copybook,
+                        file -> DependencyManifest.toManifestPath(projectDirectory, file));
+            }
+        }
+
+        new DependencyManifest(manifestPrograms).write(getManifestFile().get().getAsFile());
+        File usageIndexFile = getUsageIndexFile().get().getAsFile();
+        File previousUsageIndexFile = getPreviousUsageIndexFile().get().getAsFile();
+        if (usageIndexFile.exists()) {
+            Files.copy(usageIndexFile.toPath(), previousUsageIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            CopybookUsageIndex.of(List.of()).write(previousUsageIndexFile);
+        }
+        CopybookUsageIndex.of(manifestPrograms).write(usageIndexFile);
+        writeScanState(scanStateFile, scannedFiles, dependencyGraph);
+
+        for (List<File> cycle : dependencyGraph.getCycles()) {
+            ProblemId problemId = ProblemId.create("copybook-cycle", "Copybooks include each other",
+                    CobolPlugin.PROBLEM_GROUP);
+            getProblems().getReporter().report(problemId, problemSpec -> {
+                problemSpec.details(String.format("The copybooks %s include each other in a cycle", cycle));
+                problemSpec.solution("Remove one of the COPY or EXEC SQL INCLUDE statements that form the cycle");
+                problemSpec.severity(Severity.WARNING);
+            });
+        }
+    }
+
+    /*
+    The scan state has the same layout as the dependency manifest, but contains the names of the directly included
+    copybooks instead of the resolved paths and only the calls of the file itself
+     */
+    private static List<DependencyManifest.Program> readScanState(File scanStateFile) throws IOException {
+        List<DependencyManifest.Program> scans = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(scanStateFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length >= 3) {
+                    scans.add(new DependencyManifest.Program(fields[0], fields[1].indexOf('D') >= 0,
+                            fields[1].indexOf('C') >= 0, DependencyManifest.parseCalledPrograms(fields[2]),
+                            List.of(Arrays.copyOfRange(fields, 3, fields.length))));
+                }
+            }
+        }
+        return scans;
+    }
+
+    private static void writeScanState(File scanStateFile, Map<File, String> scannedFiles,
+                                       CopybookDependencyGraph dependencyGraph) throws IOException {
+        Files.createDirectories(scanStateFile.toPath().getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(scanStateFile.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<File, String> scannedFile : scannedFiles.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder())).toList()) {
+                SourceCodeAnalysisResult scan = dependencyGraph.getScannedAnalysisResult(scannedFile.getKey());
+                if (scan == null) {
+                    continue;
+                }
+                writer.write(scannedFile.getValue());
+                writer.write('\t');
+                writer.write(scan.isDb2() ? 'D' : '-');
+                writer.write(scan.isCics() ? 'C' : '-');
+                writer.write('\t');
+                writer.write(DependencyManifest.formatCalledPrograms(scan.getCalledPrograms()));
+                for (String sourceDependencyName : scan.getSourceDependencyNames()) {
+                    writer.write('\t');
+                    writer.write(sourceDependencyName);
+                }
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package de.livingmainframe.plugins.cobol.core.tasks;
+
+import de.livingmainframe.plugins.cobol.core.CobolPlugin;
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
+import de.livingmainframe.plugins.cobol.core.ProgramCallGraph;
+import de.livingmainframe.plugins.cobol.core.compiler.CobolCompilerExecutable;
+import de.livingmainframe.plugins.cobol.core.dsl.ModuleOptions;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.problems.ProblemId;
+import org.gradle.api.problems.Problems;
+import org.gradle.api.problems.Severity;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds only the programs that are reachable from a set of entry points through static calls, e.g. the programs of
+ * one batch job. Every entry point is compiled together with all programs it calls into a single executable, whose
+ * calls are resolved when it is linked instead of when it runs.
+ * <p>
+ * The call trees are determined from the dependency manifest. Only the reachable programs and their copybooks are
+ * inputs of the task, so a change to any other program of the project doesn't make it out of date.
+ */
+@CacheableTask
+public abstract class BuildReachableTask extends DefaultTask {
+
+    private final WorkerExecutor workerExecutor;
+    private final ObjectFactory objectFactory;
+
+    @Inject
+    public BuildReachableTask(WorkerExecutor workerExecutor, ObjectFactory objectFactory) {
+        this.workerExecutor = workerExecutor;
+        this.objectFactory = objectFactory;
+    }
+
+    /**
+     * @return The names of the programs that are started, e.g. from -Pentry=PAYROLL,INVOICE
+     */
+    @Input
+    public abstract ListProperty<String> getEntryPoints();
+
+    /**
+     * The programs of every call tree, as determined by the {@link ProgramCallGraph}. Entry points that aren't
+     * programs of the project have no call tree
+     *
+     * @return The names of the entry points mapped to the manifest paths of their programs, the entry point first
+     */
+    @Input
+    public abstract MapProperty<String, List<String>> getCallTrees();
+
+    /**
+     * @return The programs of all call trees
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSources();
+
+    /**
+     * @return The copybooks of all programs of the call trees as they are passed to the compiler
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSourceIncludeDependencies();
+
+    /**
+     * The manifest written by the analysis task, which contains whether the programs use Db2 or CICS. It isn't an
+     * input, a program whose Db2 or CICS usage changed is an input that changed itself
+     *
+     * @return The dependency manifest
+     */
+    @Internal
+    public abstract RegularFileProperty getDependencyManifest();
+
+    @Internal
+    public abstract DirectoryProperty getProjectDirectory();
+
+    @Input
+    public abstract Property<String> getCobolCompilerClassName();
+
+    @Input
+    public abstract MapProperty<String, String> getEnvironmentVariables();
+
+    @Input
+    public abstract Property<String> getCompilerVersion();
+
+    /**
+     * @return The absolute path of the directory that contains the compiler executable or an empty property
+     */
+    @Internal
+    public abstract Property<String> getCompilerDirectory();
+
+    /**
+     * The compiler options of the programs that belong to a module group. The options of the entry point apply to
+     * its whole call tree
+     *
+     * @return The manifest paths of the programs mapped to their compiler options
+     */
+    @Input
+    public abstract MapProperty<String, List<String>> getCompilerOptions();
+
+    /**
+     * @return The directory that contains one executable per entry point
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @Inject
+    protected abstract Problems getProblems();
+
+    public void setCobolCompilerExecutable(Class<?> cobolCompilerExecutableClass) {
+        getCobolCompilerClassName().set(cobolCompilerExecutableClass.getName());
+    }
+
+    @TaskAction
+    public void buildReachable() throws IOException {
+        List<String> entryPoints = getEntryPoints().get();
+        Map<String, List<String>> callTrees = getCallTrees().get();
+        if (entryPoints.isEmpty()) {
+            ProblemId problemId = ProblemId.create("missing-entry-point", "No entry point is configured",
+                    CobolPlugin.PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new GradleException("No entry point is configured"), problemId,
+                    problemSpec -> {
+                        problemSpec.details("The programs to build are determined from the entry points, but none " +
+                                "are configured");
+                        problemSpec.solution("Pass the entry points with -Pentry=PROGRAM or set entryPoints in the " +
+                                "cobol extension");
+                        problemSpec.severity(Severity.ERROR);
+                    });
+        }
+        List<String> unknownEntryPoints = entryPoints.stream()
+                .filter(entryPoint -> !callTrees.containsKey(ProgramCallGraph.getProgramName(entryPoint))).toList();
+        if (!unknownEntryPoints.isEmpty()) {
+            ProblemId problemId = ProblemId.create("unknown-entry-point", "The entry point is not a program of the " +
+                    "project", CobolPlugin.PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new GradleException("The entry point is not a program of the " +
+                    "project"), problemId, problemSpec -> {
+                problemSpec.details(String.format("The entry points %s aren't programs of the project",
+                        unknownEntryPoints));
+                problemSpec.solution("Pass the name of a program without its extension");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+
+        Path projectDirectory = getProjectDirectory().get().getAsFile().toPath().toAbsolutePath().normalize();
+        DependencyManifest dependencyManifest = DependencyManifest.read(getDependencyManifest().get().getAsFile());
+        ProgramCallGraph callGraph = new ProgramCallGraph(dependencyManifest);
+        File outputDirectory = getOutputDirectory().get().getAsFile();
+        FileUtils.cleanDirectory(outputDirectory);
+        List<Path> sourceIncludePaths = getSourceIncludeDependencies().getFiles().stream()
+                .map(file -> file.getParentFile().toPath()).distinct().toList();
+
+        WorkQueue workQueue = workerExecutor.noIsolation();
+        for (Map.Entry<String, List<String>> callTree : callTrees.entrySet()) {
+            List<DependencyManifest.Program> programs = callTree.getValue().stream()
+                    .map(dependencyManifest::getProgram).toList();
+            List<Path> buildFiles = callTree.getValue().stream()
+                    .map(path -> DependencyManifest.fromManifestPath(projectDirectory, path).toPath()).toList();
+            Set<String> unresolvedCalls = callGraph.getUnresolvedCalls(programs);
+            getLogger().info("Linking {} statically with {} called programs, calls outside of the project: {}",
+                    callTree.getKey(), buildFiles.size() - 1, unresolvedCalls);
+
+            CobolCompilerExecutable compilerExecutable = CobolCompilerExecutable.newInstance(
+                    getCobolCompilerClassName().get(), buildFiles.getFirst(), outputDirectory.toPath());
+            ModuleOptions moduleOptions = new ModuleOptions(objectFactory);
+            moduleOptions.setCompilerOptions(getCompilerOptions().get().getOrDefault(callTree.getValue().getFirst(),
+                    List.of()));
+            moduleOptions.setDb2(programs.stream().anyMatch(program -> program != null && program.db2()));
+            moduleOptions.setCics(programs.stream().anyMatch(program -> program != null && program.cics()));
+            compilerExecutable.setModuleOptions(moduleOptions);
+            compilerExecutable.setSourceIncludePaths(sourceIncludePaths);
+            if (getCompilerDirectory().isPresent()) {
+                compilerExecutable.setPathOfCompilerExecutable(Path.of(getCompilerDirectory().get()));
+            }
+            compilerExecutable.setEnvironmentVariables(getEnvironmentVariables().get());
+            List<String> command = compilerExecutable.getStaticLinkCommand(buildFiles.subList(1, buildFiles.size()));
+
+            workQueue.submit(CompileWorkAction.class, parameters -> {
+                parameters.getProgramName().set(callTree.getKey());
+                parameters.getLogFile().set(new File(getTemporaryDir(), callTree.getKey() + ".log"));
+                parameters.getCommand().set(command);
+                parameters.getEnvironmentVariables().set(compilerExecutable.getEnvironmentVariables());
+            });
+        }
+        workQueue.await();
+        getLogger().info("Built {} entry points with {} reachable programs into {}", callTrees.size(),
+                getSources().getFiles().size(), outputDirectory);
+    }
+}
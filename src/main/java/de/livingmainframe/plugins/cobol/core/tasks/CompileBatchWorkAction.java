@@ -0,0 +1,290 @@
+package de.livingmainframe.plugins.cobol.core.tasks;
+
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
+import de.livingmainframe.plugins.cobol.core.compiler.CobolCompilerExecutable;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileAdmissionQueue;
+import de.livingmainframe.plugins.cobol.core.compiler.CompilerOutputCapture;
+import de.livingmainframe.plugins.cobol.core.dsl.ModuleOptions;
+import de.livingmainframe.plugins.cobol.core.services.BuildMetricsService;
+import de.livingmainframe.plugins.cobol.core.services.CompileSchedulerService;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.problems.Problems;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a batch of programs of the {@link CompileCobolTask} with a single compiler process and links each program
+ * into its own output directory. If the compile fails, the batch is split in half and both halves are compiled again,
+ * until the failing programs are isolated.
+ * <p>
+ * A work item can't return a result, the programs that failed are written to a file instead, which the task reads
+ * when all batches finished. Like the compiles of the build tasks the batch waits until the
+ * {@link CompileSchedulerService} admits it.
+ */
+public abstract class CompileBatchWorkAction implements WorkAction<CompileBatchWorkAction.Parameters> {
+
+    private static final Logger logger = Logging.getLogger(CompileBatchWorkAction.class);
+
+    public interface Parameters extends WorkParameters {
+
+        /**
+         * @return The absolute paths of the programs, which all share the same options
+         */
+        ListProperty<String> getBuildFiles();
+
+        ListProperty<String> getCompilerOptions();
+
+        Property<Boolean> getDb2();
+
+        Property<Boolean> getCics();
+
+        Property<String> getCobolCompilerClassName();
+
+        MapProperty<String, String> getEnvironmentVariables();
+
+        /**
+         * @return The directory of the compiler executable or an empty property to search it on the PATH
+         */
+        Property<String> getCompilerDirectory();
+
+        ListProperty<String> getSourceIncludePaths();
+
+        /**
+         * @return The directory the object files are written to, it is cleaned before every compile
+         */
+        DirectoryProperty getWorkDirectory();
+
+        /**
+         * @return The directory that contains one directory per program
+         */
+        DirectoryProperty getOutputDirectory();
+
+        /**
+         * @return The name of the batch, which the log of each compile of the batch or of one of its halves starts with
+         */
+        Property<String> getBatchName();
+
+        /**
+         * @return The directory the logs of the batch compiles are written to
+         */
+        DirectoryProperty getLogDirectory();
+
+        /**
+         * @return The file the absolute paths of the programs that failed are written to, one per line
+         */
+        RegularFileProperty getFailedProgramsFile();
+
+        DirectoryProperty getProjectDirectory();
+
+        Property<String> getProjectPath();
+
+        Property<BuildMetricsService> getMetricsService();
+
+        Property<CompileSchedulerService> getSchedulerService();
+
+        /**
+         * @return The estimated duration of the batch in nanoseconds
+         */
+        Property<Long> getEstimatedDuration();
+
+        /**
+         * @return The estimated memory of the batch in bytes
+         */
+        Property<Long> getEstimatedMemory();
+    }
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @Inject
+    protected abstract ObjectFactory getObjectFactory();
+
+    @Inject
+    protected abstract Problems getProblems();
+
+    @Override
+    public void execute() {
+        List<Path> buildFiles = getParameters().getBuildFiles().get().stream().map(Path::of).toList();
+        List<Path> failedPrograms = new ArrayList<>();
+        CompileAdmissionQueue.Admission admission = admit(buildFiles.size());
+        try {
+            compileBatch(buildFiles, failedPrograms, getParameters().getBatchName().get());
+        } finally {
+            if (admission != null) {
+                admission.close();
+            }
+        }
+        try {
+            Files.write(getParameters().getFailedProgramsFile().get().getAsFile().toPath(),
+                    failedPrograms.stream().map(Path::toString).toList(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+    Returns null without a scheduler. The durations of batches aren't recorded, the history only holds the durations of
+    single programs
+     */
+    private CompileAdmissionQueue.@Nullable Admission admit(int programs) {
+        if (!getParameters().getSchedulerService().isPresent()) {
+            return null;
+        }
+        try {
+            return getParameters().getSchedulerService().get().admit(String.format("Batch of %d programs", programs),
+                    getParameters().getEstimatedDuration().get(), getParameters().getEstimatedMemory().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while a batch waited to be compiled", e);
+        }
+    }
+
+    /*
+    The work directory is cleaned for every compile, the halves of a failed batch are logged next to the batch, e.g. the
+    first half of batch-0 to batch-0-1.log
+     */
+    private void compileBatch(List<Path> buildFiles, List<Path> failedPrograms, String logName) {
+        File workDirectory = getParameters().getWorkDirectory().get().getAsFile();
+        try {
+            FileUtils.forceMkdir(workDirectory);
+            FileUtils.cleanDirectory(workDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        CobolCompilerExecutable compilerExecutable = newCompilerExecutable(buildFiles.getFirst());
+        compilerExecutable.setSourceIncludePaths(getParameters().getSourceIncludePaths().get().stream()
+                .map(Path::of).toList());
+        String batchName = buildFiles.size() == 1 ? FilenameUtils.getBaseName(buildFiles.getFirst().toString()) :
+                String.format("Batch of %d programs", buildFiles.size());
+        CompileResult compileResult = exec(compilerExecutable, compilerExecutable.getBatchCompileCommand(buildFiles),
+                workDirectory, new File(getParameters().getLogDirectory().get().getAsFile(), logName + ".log"),
+                batchName);
+        // The compile of a batch can't be split by program, every program is attributed an equal share
+        for (Path buildFile : buildFiles) {
+            recordCompile(buildFile, compileResult.duration() / buildFiles.size(), compileResult.exitValue(),
+                    compileResult.outputSize() / buildFiles.size());
+        }
+        if (compileResult.exitValue() != 0) {
+            if (buildFiles.size() == 1) {
+                failedPrograms.add(buildFiles.getFirst());
+                return;
+            }
+            logger.info("Compiling a batch of {} programs failed, compiling both halves separately",
+                    buildFiles.size());
+            int half = buildFiles.size() / 2;
+            compileBatch(buildFiles.subList(0, half), failedPrograms, logName + "-1");
+            compileBatch(buildFiles.subList(half, buildFiles.size()), failedPrograms, logName + "-2");
+            return;
+        }
+
+        for (Path buildFile : buildFiles) {
+            CobolCompilerExecutable linkExecutable = newCompilerExecutable(buildFile);
+            Path objectFile = workDirectory.toPath().resolve(CobolCompilerExecutable.getObjectFileName(buildFile));
+            String programName = FilenameUtils.getBaseName(buildFile.toString());
+            File logFile = new File(getProgramOutputDirectory(buildFile), programName + ".log");
+            CompileResult linkResult = exec(linkExecutable, linkExecutable.getLinkCommand(objectFile), workDirectory,
+                    logFile, programName);
+            recordCompile(buildFile, linkResult.duration(), linkResult.exitValue(), linkResult.outputSize());
+            if (linkResult.exitValue() != 0) {
+                failedPrograms.add(buildFile);
+            }
+        }
+    }
+
+    private File getProgramOutputDirectory(Path buildFile) {
+        return new File(getParameters().getOutputDirectory().get().getAsFile(),
+                FilenameUtils.getBaseName(buildFile.toString()));
+    }
+
+    private CobolCompilerExecutable newCompilerExecutable(Path buildFile) {
+        File programOutputDirectory = getProgramOutputDirectory(buildFile);
+        if (!programOutputDirectory.isDirectory() && !programOutputDirectory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Unable to create " + programOutputDirectory));
+        }
+
+        CobolCompilerExecutable compilerExecutable =
+                CobolCompilerExecutable.newInstance(getParameters().getCobolCompilerClassName().get(), buildFile,
+                        programOutputDirectory.toPath());
+        ModuleOptions moduleOptions = new ModuleOptions(getObjectFactory());
+        moduleOptions.setCompilerOptions(getParameters().getCompilerOptions().get());
+        moduleOptions.setDb2(getParameters().getDb2().get());
+        moduleOptions.setCics(getParameters().getCics().get());
+        compilerExecutable.setModuleOptions(moduleOptions);
+        compilerExecutable.setEnvironmentVariables(getParameters().getEnvironmentVariables().get());
+        if (getParameters().getCompilerDirectory().isPresent()) {
+            compilerExecutable.setPathOfCompilerExecutable(Path.of(getParameters().getCompilerDirectory().get()));
+        }
+        return compilerExecutable;
+    }
+
+    /*
+    The output is written to the log file and only summarized on the console if the compiler reported any warnings or
+    errors, the batches run in parallel
+     */
+    private CompileResult exec(CobolCompilerExecutable compilerExecutable, List<String> command, File workDirectory,
+                               File logFile, String name) {
+        CompilerOutputCapture outputCapture;
+        ExecResult result;
+        long startTime = System.nanoTime();
+        try (CompilerOutputCapture capture = new CompilerOutputCapture(logFile, Charset.defaultCharset())) {
+            outputCapture = capture;
+            result = getExecOperations().exec(execSpec -> {
+                execSpec.commandLine(command);
+                execSpec.setWorkingDir(workDirectory);
+                // Make sure to not use setEnvironment() as it will override all other variables that are set
+                // automatically
+                execSpec.environment(compilerExecutable.getEnvironmentVariables());
+                execSpec.setStandardOutput(capture.getStandardOutput());
+                execSpec.setErrorOutput(capture.getErrorOutput());
+                execSpec.setIgnoreExitValue(true);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long duration = System.nanoTime() - startTime;
+
+        outputCapture.report(getProblems().getReporter());
+        if (result.getExitValue() != 0 || outputCapture.getErrors() + outputCapture.getWarnings() > 0) {
+            logger.warn(outputCapture.getSummary(name, CompileWorkAction.MAX_CONSOLE_DIAGNOSTICS));
+        }
+        return new CompileResult(result.getExitValue(), duration, outputCapture.getOutputSize());
+    }
+
+    private void recordCompile(Path buildFile, long duration, int exitValue, long outputSize) {
+        if (getParameters().getMetricsService().isPresent()) {
+            Path projectDirectory = getParameters().getProjectDirectory().get().getAsFile().toPath().toAbsolutePath()
+                    .normalize();
+            getParameters().getMetricsService().get().recordCompile(getParameters().getProjectPath().get(),
+                    DependencyManifest.toManifestPath(projectDirectory, buildFile.toFile()), duration, exitValue,
+                    outputSize);
+        }
+    }
+
+    private record CompileResult(int exitValue, long duration, long outputSize) {
+    }
+}
@@ -0,0 +1,427 @@
+package de.livingmainframe.plugins.cobol.core.tasks;
+
+import de.livingmainframe.plugins.cobol.core.CobolPlugin;
+import de.livingmainframe.plugins.cobol.core.CopybookUsageIndex;
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileCostModel;
+import de.livingmainframe.plugins.cobol.core.services.BuildMetricsService;
+import de.livingmainframe.plugins.cobol.core.services.CompileSchedulerService;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.problems.ProblemId;
+import org.gradle.api.problems.Problems;
+import org.gradle.api.problems.Severity;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.ServiceReference;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.LocalState;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Compiles all programs of a project with as few compiler processes as possible. Programs that share the same options
+ * are compiled in batches into object files, which are then linked into one output directory per program.
+ * <p>
+ * If the compile of a batch fails, the batch is split in half and both halves are compiled again, until the failing
+ * programs are isolated. The other programs of the batch are compiled nevertheless.
+ * <p>
+ * The task is incremental: it keeps an index of the copybooks each program depends on and only compiles the programs
+ * that changed or depend on a changed copybook. The outputs of removed programs are deleted.
+ * <p>
+ * Every batch is compiled by a {@link CompileBatchWorkAction}. The batches with the longest estimated duration are
+ * submitted first, and every batch waits until the {@link CompileSchedulerService} admits it, so the batches share the
+ * limits with the build tasks.
+ * <p>
+ * The object files and the output directories are named like the programs, so the names of the programs must be
+ * unique.
+ */
+@CacheableTask
+public abstract class CompileCobolTask extends DefaultTask {
+
+    /**
+     * The directory in the output directory that contains the logs of the batch compiles. Program names can't start
+     * with an underscore, so it doesn't collide with the directory of a program
+     */
+    public static final String BATCH_LOG_DIRECTORY = "_batches";
+
+    private final WorkerExecutor workerExecutor;
+
+    @Inject
+    public CompileCobolTask(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSources();
+
+    /**
+     * The copybooks as they are passed to the compiler. Changes are detected through the analyzed copybooks instead,
+     * as plugins may replace these files with processed copies
+     *
+     * @return The copybooks the compiler reads
+     */
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSourceIncludeDependencies();
+
+    /**
+     * The copybooks found by the analysis of the programs, which are looked up in the usage index when they change
+     *
+     * @return The copybooks of all programs
+     */
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getAnalyzedSourceIncludes();
+
+    /**
+     * The manifest written by the analysis task, which contains whether the programs use Db2 or CICS. Programs whose
+     * entry changed are compiled again
+     *
+     * @return The dependency manifest
+     */
+    @Incremental
+    @InputFile
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract RegularFileProperty getDependencyManifest();
+
+    @Internal
+    public abstract DirectoryProperty getProjectDirectory();
+
+    @Input
+    public abstract Property<String> getCobolCompilerClassName();
+
+    @Input
+    public abstract MapProperty<String, String> getEnvironmentVariables();
+
+    @Input
+    public abstract Property<String> getCompilerVersion();
+
+    /**
+     * The absolute path of the directory that contains the compiler executable. The compiler is searched on the PATH
+     * if it isn't set. The version of the compiler is an input, so the directory itself isn't
+     *
+     * @return The directory of the compiler executable
+     */
+    @Internal
+    public abstract Property<String> getCompilerDirectory();
+
+    /**
+     * The compiler options of the programs that belong to a module group
+     *
+     * @return The manifest paths of the programs mapped to their compiler options
+     */
+    @Input
+    public abstract MapProperty<String, List<String>> getCompilerOptions();
+
+    /**
+     * The maximum number of programs that are passed to a single compiler process
+     *
+     * @return The batch size
+     */
+    @Input
+    public abstract Property<Integer> getBatchSize();
+
+    /**
+     * The directory that contains one directory per program, named like the program
+     *
+     * @return The output directory
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    /**
+     * The usage index of the programs that were compiled successfully by the last execution
+     *
+     * @return The usage index file
+     */
+    @LocalState
+    public abstract RegularFileProperty getUsageIndexFile();
+
+    @ServiceReference(BuildMetricsService.NAME)
+    public abstract Property<BuildMetricsService> getMetricsService();
+
+    @ServiceReference(CompileSchedulerService.NAME)
+    public abstract Property<CompileSchedulerService> getCompileSchedulerService();
+
+    @Inject
+    protected abstract Problems getProblems();
+
+    public void setCobolCompilerExecutable(Class<?> cobolCompilerExecutableClass) {
+        getCobolCompilerClassName().set(cobolCompilerExecutableClass.getName());
+    }
+
+    @TaskAction
+    public void compileCobol(InputChanges inputChanges) throws IOException {
+        Path projectDirectory = getProjectDirectory().get().getAsFile().toPath().toAbsolutePath().normalize();
+        DependencyManifest dependencyManifest = DependencyManifest.read(getDependencyManifest().get().getAsFile());
+        CopybookUsageIndex usageIndex = CopybookUsageIndex.of(dependencyManifest);
+        File outputDirectory = getOutputDirectory().get().getAsFile();
+        File usageIndexFile = getUsageIndexFile().get().getAsFile();
+
+        Map<String, Path> programs = new TreeMap<>();
+        for (File buildFile : getSources().getFiles()) {
+            programs.put(DependencyManifest.toManifestPath(projectDirectory, buildFile), buildFile.toPath());
+        }
+        checkProgramNames(programs.keySet());
+
+        Set<String> outOfDatePrograms;
+        if (inputChanges.isIncremental() && usageIndexFile.exists()) {
+            outOfDatePrograms = getOutOfDatePrograms(inputChanges, projectDirectory, CopybookUsageIndex.read(usageIndexFile),
+                    usageIndex);
+            outOfDatePrograms.retainAll(programs.keySet());
+        } else {
+            FileUtils.cleanDirectory(outputDirectory);
+            outOfDatePrograms = new TreeSet<>(programs.keySet());
+        }
+
+        List<Path> sourceIncludePaths =
+                getSourceIncludeDependencies().getFiles().stream().map(file -> file.getParentFile().toPath()).distinct().toList();
+
+        List<Batch> batches = getBatches(outOfDatePrograms.stream().map(programs::get).toList(), projectDirectory,
+                dependencyManifest);
+        getLogger().info("Compiling {} of {} programs in {} batches", outOfDatePrograms.size(), programs.size(),
+                batches.size());
+
+        // The batches are submitted longest first, the scheduler admits them in the same order
+        WorkQueue workQueue = workerExecutor.noIsolation();
+        File batchLogDirectory = new File(outputDirectory, BATCH_LOG_DIRECTORY);
+        FileUtils.deleteDirectory(batchLogDirectory);
+        String projectPath = BuildMetricsService.getProjectPath(this);
+        List<File> failedProgramsFiles = new ArrayList<>();
+        for (int i = 0; i < batches.size(); i++) {
+            Batch batch = batches.get(i);
+            File failedProgramsFile = new File(getTemporaryDir(), "batch-" + i + ".failed");
+            FileUtils.deleteQuietly(failedProgramsFile);
+            failedProgramsFiles.add(failedProgramsFile);
+            String batchName = "batch-" + i;
+            File workDirectory = new File(getTemporaryDir(), batchName);
+            workQueue.submit(CompileBatchWorkAction.class, parameters -> {
+                parameters.getBuildFiles().set(batch.buildFiles().stream().map(Path::toString).toList());
+                parameters.getCompilerOptions().set(batch.options().compilerOptions());
+                parameters.getDb2().set(batch.options().db2());
+                parameters.getCics().set(batch.options().cics());
+                parameters.getCobolCompilerClassName().set(getCobolCompilerClassName());
+                parameters.getEnvironmentVariables().set(getEnvironmentVariables());
+                parameters.getCompilerDirectory().set(getCompilerDirectory());
+                parameters.getSourceIncludePaths().set(sourceIncludePaths.stream().map(Path::toString).toList());
+                parameters.getWorkDirectory().set(workDirectory);
+                parameters.getOutputDirectory().set(outputDirectory);
+                parameters.getBatchName().set(batchName);
+                parameters.getLogDirectory().set(batchLogDirectory);
+                parameters.getFailedProgramsFile().set(failedProgramsFile);
+                parameters.getProjectDirectory().set(getProjectDirectory());
+                parameters.getProjectPath().set(projectPath);
+                parameters.getMetricsService().set(getMetricsService());
+                parameters.getSchedulerService().set(getCompileSchedulerService());
+                parameters.getEstimatedDuration().set(batch.estimatedDuration());
+                parameters.getEstimatedMemory().set(batch.estimatedMemory());
+            });
+        }
+        workQueue.await();
+
+        // Failed programs are left out of the index, so that they are compiled again by the next execution even if
+        // they don't change
+        Set<String> failedProgramPaths = new TreeSet<>();
+        for (File failedProgramsFile : failedProgramsFiles) {
+            for (String failedProgram : Files.readAllLines(failedProgramsFile.toPath(), StandardCharsets.UTF_8)) {
+                failedProgramPaths.add(DependencyManifest.toManifestPath(projectDirectory, new File(failedProgram)));
+                deleteFailedProgramOutput(failedProgram);
+            }
+        }
+        CopybookUsageIndex.of(usageIndex.getPrograms().stream()
+                .filter(program -> programs.containsKey(program.path()) && !failedProgramPaths.contains(program.path()))
+                .toList()).write(usageIndexFile);
+
+        if (!failedProgramPaths.isEmpty()) {
+            ProblemId problemId = ProblemId.create("compile-failed", "Programs failed to compile",
+                    CobolPlugin.PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new GradleException(String.format("%d programs failed to " +
+                    "compile", failedProgramPaths.size())), problemId, problemSpec -> {
+                problemSpec.details(String.format("The programs %s failed to compile", failedProgramPaths));
+                problemSpec.solution(String.format("Check the logs in %s and the logs of the programs for the errors",
+                        batchLogDirectory));
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+    }
+
+    /*
+    The object files of a batch and the output directories are named like the programs, two programs with the same name
+    would overwrite each other's outputs
+     */
+    private void checkProgramNames(Set<String> programPaths) {
+        Map<String, List<String>> programsByName = new TreeMap<>();
+        for (String programPath : programPaths) {
+            programsByName.computeIfAbsent(FilenameUtils.getBaseName(programPath), name -> new ArrayList<>())
+                    .add(programPath);
+        }
+        List<String> duplicates = programsByName.values().stream().filter(paths -> paths.size() > 1)
+                .map(List::toString).toList();
+        if (!duplicates.isEmpty()) {
+            ProblemId problemId = ProblemId.create("duplicate-program-name", "Programs have the same name",
+                    CobolPlugin.PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new GradleException(String.format("%d program names are " +
+                    "used more than once", duplicates.size())), problemId, problemSpec -> {
+                problemSpec.details(String.format("The programs %s have the same name",
+                        String.join(", ", duplicates)));
+                problemSpec.solution("Rename the programs, their outputs are named like the programs");
+                problemSpec.severity(Severity.ERROR);
+            });
+        }
+    }
+
+    /*
+    A program is out of date if it changed, if one of the copybooks it depends on now or depended on before changed,
+    if its flags or copybooks in the manifest changed, or if it wasn't compiled successfully before. The outputs of
+    removed programs are deleted
+     */
+    private Set<String> getOutOfDatePrograms(InputChanges inputChanges, Path projectDirectory,
+                                             CopybookUsageIndex previousUsageIndex, CopybookUsageIndex usageIndex) {
+        Set<String> outOfDatePrograms = new TreeSet<>();
+        for (FileChange fileChange : inputChanges.getFileChanges(getSources())) {
+            String programPath = DependencyManifest.toManifestPath(projectDirectory, fileChange.getFile());
+            if (fileChange.getChangeType() == ChangeType.REMOVED) {
+                deleteProgramOutput(programPath);
+            } else {
+                outOfDatePrograms.add(programPath);
+            }
+        }
+
+        int changedCopybooks = 0;
+        for (FileChange fileChange : inputChanges.getFileChanges(getAnalyzedSourceIncludes())) {
+            String copybookPath = DependencyManifest.toManifestPath(projectDirectory, fileChange.getFile());
+            outOfDatePrograms.addAll(previousUsageIndex.getPrograms(copybookPath));
+            outOfDatePrograms.addAll(usageIndex.getPrograms(copybookPath));
+            changedCopybooks++;
+        }
+
+        for (DependencyManifest.Program program : usageIndex.getPrograms()) {
+            if (!program.equals(previousUsageIndex.getProgram(program.path()))) {
+                outOfDatePrograms.add(program.path());
+            }
+        }
+        for (DependencyManifest.Program previousProgram : previousUsageIndex.getPrograms()) {
+            if (usageIndex.getProgram(previousProgram.path()) == null) {
+                deleteProgramOutput(previousProgram.path());
+            }
+        }
+
+        getLogger().info("{} copybooks changed, {} programs are out of date", changedCopybooks,
+                outOfDatePrograms.size());
+        return outOfDatePrograms;
+    }
+
+    /*
+    Only the log of the link is kept, it contains the errors if the program failed to link
+     */
+    private void deleteFailedProgramOutput(String programPath) {
+        String programName = FilenameUtils.getBaseName(programPath);
+        File[] files = new File(getOutputDirectory().get().getAsFile(), programName)
+                .listFiles(file -> !file.getName().equals(programName + ".log"));
+        if (files != null) {
+            for (File file : files) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    private void deleteProgramOutput(String programPath) {
+        File programOutputDirectory = new File(getOutputDirectory().get().getAsFile(),
+                FilenameUtils.getBaseName(programPath));
+        FileUtils.deleteQuietly(programOutputDirectory);
+    }
+
+    /*
+    Groups the programs by their options and splits the groups into batches. The programs are sorted by their path, so
+    that the batches are the same on every machine. The batches are then sorted by their estimated duration, longest
+    first
+     */
+    private List<Batch> getBatches(List<Path> buildFiles, Path projectDirectory, DependencyManifest dependencyManifest) {
+        Map<String, List<String>> compilerOptions = getCompilerOptions().get();
+        Map<BatchOptions, List<Path>> programsByOptions = new LinkedHashMap<>();
+        buildFiles.stream().sorted().forEach(buildFile -> {
+            String manifestPath = DependencyManifest.toManifestPath(projectDirectory, buildFile.toFile());
+            DependencyManifest.Program program = dependencyManifest.getProgram(manifestPath);
+            BatchOptions options = new BatchOptions(compilerOptions.getOrDefault(manifestPath, List.of()),
+                    program != null && program.db2(), program != null && program.cics());
+            programsByOptions.computeIfAbsent(options, key -> new ArrayList<>()).add(buildFile);
+        });
+
+        int batchSize = Math.max(1, getBatchSize().get());
+        List<Batch> batches = new ArrayList<>();
+        for (Map.Entry<BatchOptions, List<Path>> programs : programsByOptions.entrySet()) {
+            List<Path> groupBuildFiles = programs.getValue();
+            for (int i = 0; i < groupBuildFiles.size(); i += batchSize) {
+                List<Path> batchBuildFiles = groupBuildFiles.subList(i, Math.min(i + batchSize,
+                        groupBuildFiles.size()));
+                long duration = 0;
+                long memory = 0;
+                for (Path buildFile : batchBuildFiles) {
+                    String manifestPath = DependencyManifest.toManifestPath(projectDirectory, buildFile.toFile());
+                    long work = estimateWork(buildFile, dependencyManifest.getProgram(manifestPath), projectDirectory);
+                    duration += getCompileSchedulerService().isPresent() ? getCompileSchedulerService().get()
+                            .estimateDuration(BuildMetricsService.getProjectPath(this), manifestPath,
+                                    CompileCostModel.COMPILE, work) :
+                            work * CompileCostModel.DEFAULT_NANOS_PER_UNIT;
+                    // The compiler processes the programs of a batch one after the other
+                    memory = Math.max(memory, CompileCostModel.estimateMemory(work));
+                }
+                batches.add(new Batch(programs.getKey(), batchBuildFiles, duration, memory));
+            }
+        }
+        batches.sort(Comparator.comparingLong(Batch::estimatedDuration).reversed());
+        return batches;
+    }
+
+    private static long estimateWork(Path buildFile, DependencyManifest.Program program, Path projectDirectory) {
+        if (program == null) {
+            return CompileCostModel.estimateWork(buildFile.toFile(), List.of(), false, false);
+        }
+        List<File> sourceIncludes = program.sourceDependencies().stream()
+                .map(path -> DependencyManifest.fromManifestPath(projectDirectory, path)).toList();
+        return CompileCostModel.estimateWork(buildFile.toFile(), sourceIncludes, program.db2(), program.cics());
+    }
+
+    private record BatchOptions(List<String> compilerOptions, boolean db2, boolean cics) {
+    }
+
+    private record Batch(BatchOptions options, List<Path> buildFiles, long estimatedDuration, long estimatedMemory) {
+    }
+}
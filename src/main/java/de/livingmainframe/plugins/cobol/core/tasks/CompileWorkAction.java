@@ -0,0 +1,308 @@
+package de.livingmainframe.plugins.cobol.core.tasks;
+
+import de.livingmainframe.plugins.cobol.core.CobolPlugin;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileAdmissionQueue;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileCostModel;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileResultCache;
+import de.livingmainframe.plugins.cobol.core.compiler.CompilerOutputCapture;
+import de.livingmainframe.plugins.cobol.core.services.BuildMetricsService;
+import de.livingmainframe.plugins.cobol.core.services.CompileSchedulerService;
+import de.livingmainframe.plugins.cobol.core.services.CompileSessionService;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.problems.ProblemId;
+import org.gradle.api.problems.Problems;
+import org.gradle.api.problems.Severity;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs the compiler for a single program. The build tasks submit their compile as a work item, which allows Gradle to
+ * run the build tasks of the same project in parallel.
+ * <p>
+ * The output of the compiler is written to a log file instead of the console, so that the output of parallel compiles
+ * doesn't interleave. The diagnostics are reported as problems and summarized on the console.
+ * <p>
+ * If a compile cache directory is set, the program is preprocessed first and looked up in the
+ * {@link CompileResultCache}. On a hit the compiled program and its log are restored instead of compiling it.
+ * <p>
+ * If a session service is set, the program is compiled in the workspace of a {@link CompileSessionService} instead of
+ * a local process. The command then contains the paths of the workspace.
+ * <p>
+ * If a scheduler service is set, the compile waits until the {@link CompileSchedulerService} admits it, after the
+ * compile cache was checked, and its duration is recorded in the compile history.
+ */
+public abstract class CompileWorkAction implements WorkAction<CompileWorkAction.Parameters> {
+
+    public static final int MAX_CONSOLE_DIAGNOSTICS = 10;
+
+    private static final Logger logger = Logging.getLogger(CompileWorkAction.class);
+
+    public interface Parameters extends WorkParameters {
+
+        Property<String> getProgramName();
+
+        ListProperty<String> getCommand();
+
+        MapProperty<String, String> getEnvironmentVariables();
+
+        RegularFileProperty getLogFile();
+
+        /**
+         * The service the compile duration is recorded in. Build services can't be passed to a worker process, so
+         * the service is only set when the compile isn't isolated
+         *
+         * @return The metrics service or an empty property
+         */
+        Property<BuildMetricsService> getMetricsService();
+
+        Property<String> getProjectPath();
+
+        /**
+         * @return The manifest path of the program, under which its analysis was recorded
+         */
+        Property<String> getProgramPath();
+
+        /**
+         * The directory of the {@link CompileResultCache}. The program is always compiled if it isn't set
+         *
+         * @return The cache directory or an empty property
+         */
+        DirectoryProperty getCacheDirectory();
+
+        /**
+         * @return The command that writes the expanded program to the standard output
+         */
+        ListProperty<String> getPreprocessCommand();
+
+        /**
+         * @return The file the expanded program is written to while its key is computed
+         */
+        RegularFileProperty getPreprocessedFile();
+
+        ListProperty<String> getCompileOptions();
+
+        Property<String> getCompilerVersion();
+
+        /**
+         * @return The file the command writes the compiled program to
+         */
+        RegularFileProperty getOutputFile();
+
+        /**
+         * The service that compiles the program in a workspace, e.g. on a remote machine. The program is compiled by
+         * a local process if it isn't set
+         *
+         * @return The session service or an empty property
+         */
+        Property<CompileSessionService> getSessionService();
+
+        /**
+         * @return The paths in the workspace mapped to the program and its copybooks
+         */
+        MapProperty<String, File> getWorkspaceInputs();
+
+        /**
+         * @return The paths in the workspace mapped to the files the compiled program is transferred to
+         */
+        MapProperty<String, File> getWorkspaceOutputs();
+
+        /**
+         * The service that decides when the compile starts. Like the metrics service it is only set when the compile
+         * isn't isolated
+         *
+         * @return The scheduler service or an empty property
+         */
+        Property<CompileSchedulerService> getSchedulerService();
+
+        /**
+         * @return The estimated work of the compile, see {@link CompileCostModel#estimateWork}
+         */
+        Property<Long> getEstimatedWork();
+
+        /**
+         * @return The stage of the compile, under which its duration is recorded, see {@link CompileCostModel#COMPILE}
+         */
+        Property<String> getCompileStage();
+    }
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @Inject
+    protected abstract Problems getProblems();
+
+    @Override
+    public void execute() {
+        long startTime = System.nanoTime();
+        CompileResultCache cache = null;
+        String cacheKey = null;
+        if (getParameters().getCacheDirectory().isPresent()) {
+            cache = new CompileResultCache(getParameters().getCacheDirectory().get().getAsFile().toPath());
+            cacheKey = preprocess();
+            if (cacheKey != null && cache.restore(cacheKey, getParameters().getOutputFile().get().getAsFile().toPath(),
+                    getParameters().getLogFile().get().getAsFile().toPath())) {
+                if (getParameters().getMetricsService().isPresent()) {
+                    getParameters().getMetricsService().get().recordCompile(getParameters().getProjectPath().get(),
+                            getParameters().getProgramPath().get(), System.nanoTime() - startTime, 0, 0);
+                }
+                logger.info("Restored {} from the compile cache", getParameters().getProgramName().get());
+                return;
+            }
+        }
+
+        CompilerOutputCapture outputCapture;
+        int exitValue;
+        long waitTime;
+        long compileStartTime;
+        try (CompileAdmissionQueue.Admission admission = admit();
+             CompilerOutputCapture capture = new CompilerOutputCapture(getParameters().getLogFile().get().getAsFile(),
+                     Charset.defaultCharset())) {
+            waitTime = admission == null ? 0 : admission.getWaitTime();
+            compileStartTime = System.nanoTime();
+            outputCapture = capture;
+            if (getParameters().getSessionService().isPresent()) {
+                exitValue = compileInWorkspace(capture);
+            } else {
+                ExecResult result = getExecOperations().exec(execSpec -> {
+                    execSpec.commandLine(getParameters().getCommand().get());
+                    // Make sure to not use setEnvironment() as it will override all other variables that are set
+                    // automatically
+                    execSpec.environment(getParameters().getEnvironmentVariables().get());
+                    execSpec.setStandardOutput(capture.getStandardOutput());
+                    execSpec.setErrorOutput(capture.getErrorOutput());
+                    execSpec.setIgnoreExitValue(true);
+                });
+                exitValue = result.getExitValue();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long endTime = System.nanoTime();
+        // The time the compile waited for its admission isn't part of its duration
+        if (getParameters().getMetricsService().isPresent()) {
+            getParameters().getMetricsService().get().recordCompile(getParameters().getProjectPath().get(),
+                    getParameters().getProgramPath().get(), endTime - startTime - waitTime, exitValue,
+                    outputCapture.getOutputSize());
+        }
+        if (getParameters().getSchedulerService().isPresent() && exitValue == 0) {
+            getParameters().getSchedulerService().get().recordCompile(getParameters().getProjectPath().get(),
+                    getParameters().getProgramPath().get(), getParameters().getCompileStage().get(),
+                    getParameters().getEstimatedWork().get(), endTime - compileStartTime);
+        }
+
+        if (cacheKey != null && exitValue == 0) {
+            cache.store(cacheKey, getParameters().getOutputFile().get().getAsFile().toPath(),
+                    outputCapture.getLogFile().toPath());
+        }
+
+        outputCapture.report(getProblems().getReporter());
+        String summary = outputCapture.getSummary(getParameters().getProgramName().get(), MAX_CONSOLE_DIAGNOSTICS);
+        if (exitValue != 0) {
+            ProblemId problemId = ProblemId.create("compile-failed", "Programs failed to compile",
+                    CobolPlugin.PROBLEM_GROUP);
+            throw getProblems().getReporter().throwing(new GradleException(summary), problemId, problemSpec -> {
+                problemSpec.details(String.format("The compiler exited with %d", exitValue));
+                problemSpec.solution(String.format("Check %s for the errors", outputCapture.getLogFile()));
+                problemSpec.severity(Severity.ERROR);
+            });
+        } else if (outputCapture.getWarnings() > 0) {
+            logger.warn(summary);
+        } else {
+            logger.info(summary);
+        }
+    }
+
+    /*
+    Returns null without a scheduler, which try-with-resources skips when it closes the resources
+     */
+    private CompileAdmissionQueue.@Nullable Admission admit() {
+        if (!getParameters().getSchedulerService().isPresent()) {
+            return null;
+        }
+        CompileSchedulerService scheduler = getParameters().getSchedulerService().get();
+        long work = getParameters().getEstimatedWork().get();
+        long duration = scheduler.estimateDuration(getParameters().getProjectPath().get(),
+                getParameters().getProgramPath().get(), getParameters().getCompileStage().get(), work);
+        try {
+            return scheduler.admit(getParameters().getProgramName().get(), duration,
+                    CompileCostModel.estimateMemory(work));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException(String.format("Interrupted while %s waited to be compiled",
+                    getParameters().getProgramName().get()), e);
+        }
+    }
+
+    /*
+    The workspace merges the error output into the standard output, like a terminal would
+     */
+    private int compileInWorkspace(CompilerOutputCapture capture) throws IOException {
+        Map<String, Path> inputs = new LinkedHashMap<>();
+        getParameters().getWorkspaceInputs().get().forEach((path, file) -> inputs.put(path, file.toPath()));
+        Map<String, Path> outputs = new LinkedHashMap<>();
+        getParameters().getWorkspaceOutputs().get().forEach((path, file) -> outputs.put(path, file.toPath()));
+        return getParameters().getSessionService().get().getRemoteCompiler().compile(inputs,
+                getParameters().getCommand().get(), getParameters().getEnvironmentVariables().get(),
+                capture.getStandardOutput(), outputs);
+    }
+
+    /*
+    Returns the key of the program in the compile cache or null if the program can't be preprocessed. In that case it
+    is compiled, which reports the errors
+     */
+    private @Nullable String preprocess() {
+        Path preprocessedFile = getParameters().getPreprocessedFile().get().getAsFile().toPath();
+        try {
+            Files.createDirectories(preprocessedFile.getParent());
+            ExecResult result;
+            try (OutputStream preprocessedSource = Files.newOutputStream(preprocessedFile)) {
+                result = getExecOperations().exec(execSpec -> {
+                    execSpec.commandLine(getParameters().getPreprocessCommand().get());
+                    execSpec.environment(getParameters().getEnvironmentVariables().get());
+                    execSpec.setStandardOutput(preprocessedSource);
+                    execSpec.setErrorOutput(OutputStream.nullOutputStream());
+                    execSpec.setIgnoreExitValue(true);
+                });
+            }
+            if (result.getExitValue() != 0) {
+                logger.info("Unable to preprocess {}, the compiler exited with {}",
+                        getParameters().getProgramName().get(), result.getExitValue());
+                return null;
+            }
+            // All programs would have the same key if the compiler doesn't write the expanded program
+            if (Files.size(preprocessedFile) == 0) {
+                logger.info("Unable to preprocess {}, the compiler didn't write the expanded program",
+                        getParameters().getProgramName().get());
+                return null;
+            }
+            return CompileResultCache.computeKey(preprocessedFile, getParameters().getCompileOptions().get(),
+                    getParameters().getEnvironmentVariables().get(), getParameters().getCompilerVersion().get());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            FileUtils.deleteQuietly(preprocessedFile.toFile());
+        }
+    }
+}
@@ -1,46 +1,346 @@
 package de.livingmainframe.plugins.cobol.core.tasks;
 
+import de.livingmainframe.plugins.cobol.core.CobolSourceNormalizer;
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
 import de.livingmainframe.plugins.cobol.core.compiler.CobolCompilerExecutable;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileCostModel;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileMode;
+import de.livingmainframe.plugins.cobol.core.compiler.TranslatedSourceNormalizer;
 import de.livingmainframe.plugins.cobol.core.dsl.ModuleOptions;
+import de.livingmainframe.plugins.cobol.core.services.BuildMetricsService;
+import de.livingmainframe.plugins.cobol.core.services.CobolAnalysisService;
+import de.livingmainframe.plugins.cobol.core.services.CompileCacheService;
+import de.livingmainframe.plugins.cobol.core.services.CompileSchedulerService;
+import de.livingmainframe.plugins.cobol.core.services.CompileSessionService;
+import org.apache.commons.io.FilenameUtils;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.logging.Logger;
-import org.gradle.api.tasks.InputFile;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.ServiceReference;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
-import org.gradle.process.ExecOperations;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+import org.jetbrains.annotations.Nullable;
 
 import javax.inject.Inject;
-import java.lang.reflect.InvocationTargetException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
+/**
+ * Compiles a single COBOL program. All state of the task is held in managed properties, so that the task can be
+ * stored in the configuration cache and doesn't access the project when it is executed.
+ * <p>
+ * The outputs are stored in the build cache. All files are fingerprinted relative to their root, so checkouts in
+ * different directories share the same cache entries
+ * <p>
+ * By default, the program and its copybooks are not fingerprinted as files but by a hash of their semantic content
+ * (see {@link CobolSourceNormalizer}). Renumbering the sequence areas or editing comment lines therefore neither makes
+ * the task out of date nor changes its build cache key.
+ * <p>
+ * If the program is translated to C by a separate {@link TranslateCobolTask}, this task compiles the C source. It is
+ * then only out of date if the C source changed.
+ * <p>
+ * When the task is out of date anyway, the local compile cache can still avoid the compile if the expanded source of
+ * the program didn't change, e.g. after a change to a copybook that only moved code between copybooks.
+ * <p>
+ * With a compile transport, the program is compiled in the workspace of the {@link CompileSessionService}, e.g. on a
+ * remote machine. The program and its copybooks are stored in the workspace under their paths relative to the root
+ * project directory, so the build tasks of all projects share the copybooks in the workspace.
+ * <p>
+ * Unless the compile is isolated in a worker process, the {@link CompileSchedulerService} decides when it starts,
+ * based on the size of the program and its copybooks.
+ */
+@CacheableTask
 public abstract class DynamicBuildTask extends DefaultTask {
 
-    private final ExecOperations execOperations;
-    private Class<?> cobolCompilerExecutableClass;
-    private Map<String, String> environmentVariables;
-    private ModuleOptions moduleOptions;
+    private final WorkerExecutor workerExecutor;
+    private final ObjectFactory objectFactory;
 
     @Inject
-    public DynamicBuildTask(ExecOperations execOperations) {
-        this.execOperations = execOperations;
+    public DynamicBuildTask(WorkerExecutor workerExecutor, ObjectFactory objectFactory) {
+        this.workerExecutor = workerExecutor;
+        this.objectFactory = objectFactory;
     }
 
-    @InputFile
+    /**
+     * The program. It is an input through {@link #getSourceFingerprint()} or {@link #getSourceFiles()}
+     *
+     * @return The source file of the program
+     */
+    @Internal
     abstract public RegularFileProperty getBuildFile();
 
-    @InputFiles
+    /**
+     * The copybooks of the program. They are an input through {@link #getSourceFingerprint()} or
+     * {@link #getSourceFiles()}
+     *
+     * @return The copybook files
+     */
+    @Internal
     public abstract ConfigurableFileCollection getSourceIncludeDependencies();
 
+    /**
+     * Whether the program and its copybooks are fingerprinted by their semantic content instead of their bytes. Only
+     * applies to programs in fixed format, see {@link CobolSourceNormalizer}
+     *
+     * @return True to ignore changes of the sequence and identification areas and of comment lines
+     */
+    @Input
+    public abstract Property<Boolean> getSemanticFingerprints();
+
+    /**
+     * The charset of the program and its copybooks
+     *
+     * @return The name of the charset
+     */
+    @Internal
+    public abstract Property<String> getProgramEncoding();
+
+    @ServiceReference(CobolAnalysisService.NAME)
+    public abstract Property<CobolAnalysisService> getAnalysisService();
+
+    /**
+     * The directory that contains the C source of the program, created by a {@link TranslateCobolTask}. If it is set,
+     * the task compiles and links the C source instead of the program. The C source is an input through
+     * {@link #getSourceFingerprint()}
+     *
+     * @return The directory of the translated program or an empty property
+     */
+    @Internal
+    public abstract DirectoryProperty getTranslatedSourceDirectory();
+
+    /**
+     * The program and its copybooks as files, if they are not fingerprinted by their semantic content
+     *
+     * @return The source files or an empty collection
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getSourceFiles() {
+        if (usesSemanticFingerprints() || getTranslatedSourceDirectory().isPresent()) {
+            return objectFactory.fileCollection();
+        }
+        return objectFactory.fileCollection().from(getBuildFile(), getSourceIncludeDependencies());
+    }
+
+    /**
+     * The hash of the semantic content of the program and its copybooks, together with their names. The hashes of the
+     * single files are memoized by the analysis service, as most copybooks are used by many programs. If one of the
+     * files selects its format with a directive, which may also apply to the other files, all files are hashed byte by
+     * byte
+     *
+     * If the task compiles a translated program, the fingerprint is the hash of its C source, see
+     * {@link TranslatedSourceNormalizer}. A change to the program that results in the same C source therefore doesn't
+     * make the task out of date
+     *
+     * @return The fingerprint or null if the files are fingerprinted as files
+     */
+    @Input
+    @Optional
+    public @Nullable String getSourceFingerprint() {
+        if (getTranslatedSourceDirectory().isPresent()) {
+            try {
+                return "translated\t" + TranslatedSourceNormalizer.hash(getTranslatedSourceDirectory().get()
+                        .getAsFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (!usesSemanticFingerprints()) {
+            return null;
+        }
+        File buildFile = getBuildFile().get().getAsFile();
+        Charset programCharset = Charset.forName(getProgramEncoding().get());
+
+        // Only the names are used, the same as a relative path sensitivity for the copybooks in their directories
+        List<File> sourceIncludes = getSourceIncludeDependencies().getFiles().stream()
+                .sorted(Comparator.comparing(file -> file.getParentFile().getName() + "/" + file.getName())).toList();
+        Map<String, File> files = new LinkedHashMap<>();
+        files.put(buildFile.getName(), buildFile);
+        for (File sourceInclude : sourceIncludes) {
+            files.put(sourceInclude.getParentFile().getName() + "/" + sourceInclude.getName(), sourceInclude);
+        }
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            hashes.put(file.getKey(), getSemanticHash(file.getValue(), programCharset));
+        }
+        if (hashes.values().stream().anyMatch(hash -> hash.startsWith(CobolSourceNormalizer.BYTES_PREFIX))) {
+            for (Map.Entry<String, File> file : files.entrySet()) {
+                try {
+                    hashes.put(file.getKey(), CobolSourceNormalizer.hashBytes(file.getValue()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+        hashes.forEach((name, hash) -> fingerprint.append(name).append('\t').append(hash).append('\n'));
+        return fingerprint.toString();
+    }
+
+    /*
+    In free or variable format the sequence and identification areas contain code, which the semantic hash ignores
+     */
+    private boolean usesSemanticFingerprints() {
+        return getSemanticFingerprints().getOrElse(false) &&
+                CobolSourceNormalizer.isFixedFormat(getCompilerOptions().getOrElse(List.of()));
+    }
+
+    private String getSemanticHash(File file, Charset charset) {
+        if (getAnalysisService().isPresent()) {
+            return getAnalysisService().get().getSemanticHash(file, charset);
+        }
+        try {
+            return CobolSourceNormalizer.hash(file, charset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Whether the program uses Db2. The value is read from the dependency manifest when the task is executed
+     *
+     * @return True if the program or one of its copybooks contains EXEC SQL
+     */
+    @Input
+    public abstract Property<Boolean> getDb2();
+
+    /**
+     * Whether the program uses CICS. The value is read from the dependency manifest when the task is executed
+     *
+     * @return True if the program or one of its copybooks contains EXEC CICS
+     */
+    @Input
+    public abstract Property<Boolean> getCics();
+
+    /**
+     * The fully qualified name of the class that extends CobolCompilerExecutable. The class is loaded when the task is
+     * executed, because a class can't be stored in the configuration cache
+     *
+     * @return The name of the compiler implementation class
+     */
+    @Input
+    public abstract Property<String> getCobolCompilerClassName();
+
+    @Input
+    public abstract MapProperty<String, String> getEnvironmentVariables();
+
+    /**
+     * The compiler options of the module group the program belongs to
+     *
+     * @return The additional compiler options
+     */
+    @Input
+    public abstract ListProperty<String> getCompilerOptions();
+
+    /**
+     * The output of the compiler when it is called with --version, so that a different compiler doesn't reuse outputs
+     * from the build cache
+     *
+     * @return The version of the compiler
+     */
+    @Input
+    public abstract Property<String> getCompilerVersion();
+
+    /**
+     * What the task creates: "executable", "module" or "object", see {@link CompileMode}
+     *
+     * @return The name of the compile mode
+     */
+    @Input
+    public abstract Property<String> getCompileMode();
+
+    /**
+     * The absolute path of the directory that contains the compiler executable. The compiler is searched on the PATH
+     * if it isn't set. The version of the compiler is an input, so the directory itself isn't
+     *
+     * @return The directory of the compiler executable
+     */
+    @Internal
+    public abstract Property<String> getCompilerDirectory();
+
+    /**
+     * Whether the compiler is started from the Gradle daemon ("none") or from a separate worker process ("process")
+     *
+     * @return The isolation mode of the compile
+     */
+    @Internal
+    public abstract Property<String> getCompileIsolation();
+
+    /**
+     * The path of the program relative to the project directory, as it is stored in the dependency manifest
+     *
+     * @return The manifest path of the program
+     */
+    @Internal
+    public abstract Property<String> getProgramPath();
+
     @OutputDirectory
-    abstract public RegularFileProperty getOutputDirectory();
+    abstract public DirectoryProperty getOutputDirectory();
+
+    @ServiceReference(BuildMetricsService.NAME)
+    public abstract Property<BuildMetricsService> getMetricsService();
+
+    /**
+     * Whether the program is looked up in the local compile cache before it is compiled. The cache only restores
+     * outputs of the same expanded source, options and compiler version, so it isn't an input
+     *
+     * @return True to use the compile cache
+     */
+    @Internal
+    public abstract Property<Boolean> getCompileCache();
+
+    @ServiceReference(CompileCacheService.NAME)
+    public abstract Property<CompileCacheService> getCompileCacheService();
+
+    /**
+     * Where the program is compiled: "none" for a local process, "local" for a workspace directory on this machine or
+     * "shell" for a workspace on a remote machine. The compiled program doesn't depend on where it was compiled, so
+     * the transport isn't an input
+     *
+     * @return The name of the compile transport
+     */
+    @Internal
+    public abstract Property<String> getCompileTransport();
+
+    /**
+     * @return The directory of the root project, which the paths in the workspace are relative to
+     */
+    @Internal
+    public abstract DirectoryProperty getRootDirectory();
+
+    @ServiceReference(CompileSessionService.NAME)
+    public abstract Property<CompileSessionService> getCompileSessionService();
+
+    @ServiceReference(CompileSchedulerService.NAME)
+    public abstract Property<CompileSchedulerService> getCompileSchedulerService();
 
     public void setCobolCompilerExecutable(Class<?> cobolCompilerExecutableClass) {
-        this.cobolCompilerExecutableClass = cobolCompilerExecutableClass;
+        getCobolCompilerClassName().set(cobolCompilerExecutableClass.getName());
     }
 
     @TaskAction
@@ -54,41 +354,137 @@ public abstract class DynamicBuildTask extends DefaultTask {
         // unmaintainable code. It would also be possible to sub-class DynamicBuildTask and instantiate it with the
         // correct CompilerExecutable class. It needs to be modular (to easily implement other compilers) but also
         // should be maintainable.
-        try {
-            compilerExecutable =
-                    (CobolCompilerExecutable) cobolCompilerExecutableClass.getDeclaredConstructor(Path.class,
-                            Path.class).newInstance(getBuildFile().get().getAsFile().toPath(),
-                            getOutputDirectory().get().getAsFile().toPath());
-        } catch (InvocationTargetException | NoSuchMethodException | IllegalAccessException |
-                 InstantiationException e) {
-            throw new RuntimeException(e);
+        File buildFile = getBuildFile().get().getAsFile();
+        File outputDirectory = getOutputDirectory().get().getAsFile();
+        boolean remote = !"none".equals(getCompileTransport().getOrElse("none")) &&
+                getCompileSessionService().isPresent();
+        Map<String, File> workspaceInputs = new LinkedHashMap<>();
+        List<Path> sourceIncludePaths;
+        if (remote) {
+            workspaceInputs.put(getWorkspacePath(buildFile), buildFile);
+            for (File sourceInclude : getSourceIncludeDependencies().getFiles()) {
+                workspaceInputs.put(getWorkspacePath(sourceInclude), sourceInclude);
+            }
+            compilerExecutable = CobolCompilerExecutable.newInstance(getCobolCompilerClassName().get(),
+                    Path.of(getWorkspacePath(buildFile)), Path.of(getWorkspacePath(outputDirectory)));
+            // The commands run in the root of the workspace, so copybooks without a directory are found there
+            sourceIncludePaths = workspaceInputs.keySet().stream().skip(1)
+                    .map(path -> Objects.requireNonNullElse(Path.of(path).getParent(), Path.of("."))).distinct()
+                    .toList();
+        } else {
+            compilerExecutable = CobolCompilerExecutable.newInstance(getCobolCompilerClassName().get(),
+                    buildFile.toPath(), outputDirectory.toPath());
+            // Calculate the paths that we want included for the compiler based on the dependencies that we found, use
+            // the parent directories
+            // Make sure this list is distinct to avoid passing the same directory multiple times to the compiler
+            sourceIncludePaths = getSourceIncludeDependencies().getFiles().stream()
+                    .map(file -> file.getParentFile().toPath()).distinct().toList();
         }
 
-        // Calculate the paths that we want included for the compiler based on the dependencies that we found, use
-        // the parent directories
-        // Make sure this list is distinct to avoid passing the same directory multiple times to the compiler
-        List<Path> sourceIncludePaths =
-                getSourceIncludeDependencies().getFiles().stream().map(file -> file.getParentFile().toPath()).distinct().toList();
-
+        if (getCompilerDirectory().isPresent()) {
+            compilerExecutable.setPathOfCompilerExecutable(Path.of(getCompilerDirectory().get()));
+        }
         compilerExecutable.setSourceIncludePaths(sourceIncludePaths);
-        compilerExecutable.setEnvironmentVariables(environmentVariables);
-        compilerExecutable.setModuleOptions(moduleOptions);
-        List<String> command = compilerExecutable.getBuildCommand();
-
-        execOperations.exec(execSpec -> {
-            execSpec.commandLine(command);
-            // Make sure to not use setEnvironment() as it will override all other variables that are set automatically
-            execSpec.environment(compilerExecutable.getEnvironmentVariables());
-            execSpec.setStandardOutput(System.out);
-            execSpec.setErrorOutput(System.err);
+        compilerExecutable.setEnvironmentVariables(getEnvironmentVariables().get());
+        compilerExecutable.setModuleOptions(getEffectiveModuleOptions());
+        compilerExecutable.setCompileMode(CompileMode.fromName(getCompileMode().getOrElse("executable")));
+        List<String> command = getCompileCommand(compilerExecutable);
+        List<String> preprocessCommand = compilerExecutable.getPreprocessCommand();
+        // The program is preprocessed by a local process, which the workspace may not have
+        boolean compileCache = getCompileCache().getOrElse(false) && getCompileCacheService().isPresent() &&
+                !preprocessCommand.isEmpty() && !getTranslatedSourceDirectory().isPresent() && !remote;
+
+        // The compile is submitted as a work item, so that other build tasks of the project can run at the same time.
+        // The session service can't be passed to a worker process
+        boolean processIsolation = "process".equals(getCompileIsolation().getOrElse("none")) && !remote;
+        WorkQueue workQueue = processIsolation ? workerExecutor.processIsolation() : workerExecutor.noIsolation();
+        String programName = FilenameUtils.getBaseName(buildFile.getName());
+        String projectPath = BuildMetricsService.getProjectPath(this);
+        long estimatedWork = CompileCostModel.estimateWork(buildFile, getSourceIncludeDependencies().getFiles(),
+                getDb2().getOrElse(false), getCics().getOrElse(false));
+        workQueue.submit(CompileWorkAction.class, parameters -> {
+            parameters.getProgramName().set(programName);
+            if (!processIsolation) {
+                parameters.getProjectPath().set(projectPath);
+                parameters.getProgramPath().set(getProgramPath());
+                parameters.getMetricsService().set(getMetricsService());
+                parameters.getSchedulerService().set(getCompileSchedulerService());
+                parameters.getEstimatedWork().set(estimatedWork);
+                parameters.getCompileStage().set(compileStage());
+            }
+            parameters.getLogFile().set(getOutputDirectory().file(programName + ".log"));
+            parameters.getCommand().set(command);
+            parameters.getEnvironmentVariables().set(compilerExecutable.getEnvironmentVariables());
+            if (compileCache) {
+                parameters.getCacheDirectory().set(getCompileCacheService().get().getCacheDirectory());
+                parameters.getPreprocessCommand().set(preprocessCommand);
+                parameters.getPreprocessedFile().set(new File(getTemporaryDir(), programName + ".i"));
+                parameters.getCompileOptions().set(compilerExecutable.getCompileOptions());
+                parameters.getCompilerVersion().set(getCompilerVersion());
+                parameters.getOutputFile().set(compilerExecutable.getOutputFile().toFile());
+            }
+            if (remote) {
+                Path workspaceOutputFile = compilerExecutable.getOutputFile();
+                parameters.getSessionService().set(getCompileSessionService());
+                parameters.getWorkspaceInputs().set(workspaceInputs);
+                parameters.getWorkspaceOutputs().set(Map.of(workspaceOutputFile.toString(),
+                        new File(outputDirectory, workspaceOutputFile.getFileName().toString())));
+            }
         });
     }
 
-    public void setEnvironmentVariables(Map<String, String> environmentVariables) {
-        this.environmentVariables = environmentVariables;
+    /*
+    Files outside the root project, e.g. shared copybooks, are stored under their absolute path in the external
+    directory of the workspace
+     */
+    private String getWorkspacePath(File file) {
+        Path rootDirectory = getRootDirectory().get().getAsFile().toPath().toAbsolutePath().normalize();
+        String path = DependencyManifest.toManifestPath(rootDirectory, file);
+        if (Path.of(path).isAbsolute()) {
+            return "external" + path.replace(File.separatorChar, '/');
+        }
+        return path;
     }
 
+    /**
+     * @return The stage of the compile that the task runs, under which its duration is recorded
+     */
+    protected String compileStage() {
+        return getTranslatedSourceDirectory().isPresent() ? CompileCostModel.COMPILE_TRANSLATED :
+                CompileCostModel.COMPILE;
+    }
+
+    /**
+     * Builds the command that the task runs. It compiles the program or, if the program was translated by a separate
+     * task, its C source
+     *
+     * @param compilerExecutable The compiler of the program
+     * @return The command
+     */
+    protected List<String> getCompileCommand(CobolCompilerExecutable compilerExecutable) {
+        if (getTranslatedSourceDirectory().isPresent()) {
+            Path buildFile = getBuildFile().get().getAsFile().toPath();
+            return compilerExecutable.getLinkCommand(getTranslatedSourceDirectory().get().getAsFile().toPath()
+                    .resolve(CobolCompilerExecutable.getTranslatedSourceFileName(buildFile)));
+        }
+        return compilerExecutable.getBuildCommand();
+    }
+
+    /**
+     * Copies the options of a module group into the task. Db2 and CICS are detected per program and are therefore
+     * not taken from the module group
+     *
+     * @param moduleOptions The options of the module group
+     */
     public void setModuleOptions(ModuleOptions moduleOptions) {
-        this.moduleOptions = moduleOptions;
+        getCompilerOptions().set(List.copyOf(moduleOptions.getCompilerOptions()));
+    }
+
+    private ModuleOptions getEffectiveModuleOptions() {
+        ModuleOptions effectiveModuleOptions = new ModuleOptions(objectFactory);
+        effectiveModuleOptions.setCompilerOptions(getCompilerOptions().get());
+        effectiveModuleOptions.setDb2(getDb2().get());
+        effectiveModuleOptions.setCics(getCics().get());
+        return effectiveModuleOptions;
     }
 }
@@ -0,0 +1,132 @@
+package de.livingmainframe.plugins.cobol.core.tasks;
+
+import de.livingmainframe.plugins.cobol.core.ChangeImpact;
+import de.livingmainframe.plugins.cobol.core.CopybookUsageIndex;
+import org.apache.commons.io.FilenameUtils;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Determines which programs are affected by a set of changed files, e.g. to only build these programs in CI. The
+ * changed files are either passed with --changed or determined with git from a revision range passed with --git-range.
+ * <p>
+ * The task reads the copybook usage index written by the analysis task, so a query only costs reading the index. The
+ * affected programs and the paths of their build tasks are printed and written to the report file, one per line.
+ * <p>
+ * The programs that used a deleted copybook are found through the index of the previous analysis, see
+ * {@link ChangeImpact}.
+ */
+public abstract class ImpactAnalysisTask extends DefaultTask {
+
+    private final ExecOperations execOperations;
+
+    @Inject
+    public ImpactAnalysisTask(ExecOperations execOperations) {
+        this.execOperations = execOperations;
+    }
+
+    @InputFile
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract RegularFileProperty getUsageIndexFile();
+
+    /**
+     * The usage index of the previous execution of the analysis task, which still contains the copybooks that were
+     * deleted since
+     *
+     * @return The previous usage index file
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract RegularFileProperty getPreviousUsageIndexFile();
+
+    @Option(option = "changed", description = "A changed file, relative to the project directory. Can be repeated")
+    @Input
+    @Optional
+    public abstract ListProperty<String> getChangedFiles();
+
+    @Option(option = "git-range", description = "A git revision range, e.g. origin/main...HEAD, whose changed files " +
+            "are analyzed")
+    @Input
+    @Optional
+    public abstract Property<String> getGitRange();
+
+    @Internal
+    public abstract DirectoryProperty getProjectDirectory();
+
+    /**
+     * The prefix of the build tasks, i.e. the path of the project followed by "build-"
+     *
+     * @return The prefix of the build task paths
+     */
+    @Input
+    public abstract Property<String> getBuildTaskPrefix();
+
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    @TaskAction
+    public void analyzeImpact() throws IOException {
+        Path projectDirectory = getProjectDirectory().get().getAsFile().toPath().toAbsolutePath().normalize();
+        CopybookUsageIndex usageIndex = CopybookUsageIndex.read(getUsageIndexFile().get().getAsFile());
+        CopybookUsageIndex previousUsageIndex = CopybookUsageIndex.read(getPreviousUsageIndexFile().get().getAsFile());
+
+        List<String> changedFiles = new ArrayList<>(getChangedFiles().getOrElse(List.of()));
+        if (getGitRange().isPresent()) {
+            changedFiles.addAll(getGitChangedFiles(projectDirectory.toFile(), getGitRange().get()));
+        }
+        List<String> changedPaths = changedFiles.stream()
+                .map(changedFile -> ChangeImpact.toManifestPath(projectDirectory, changedFile))
+                .filter(Objects::nonNull).toList();
+
+        Set<String> affectedPrograms = ChangeImpact.getAffectedPrograms(usageIndex, previousUsageIndex,
+                changedPaths);
+
+        List<String> lines = new ArrayList<>();
+        for (String affectedProgram : affectedPrograms) {
+            String buildTaskPath = getBuildTaskPrefix().get() + FilenameUtils.getBaseName(affectedProgram);
+            lines.add(affectedProgram + "\t" + buildTaskPath);
+            getLogger().lifecycle("{} ({})", affectedProgram, buildTaskPath);
+        }
+        getLogger().lifecycle("{} changed files affect {} programs", changedPaths.size(), affectedPrograms.size());
+        Files.write(getReportFile().get().getAsFile().toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /*
+    --relative makes git print the paths relative to the project directory and omit files outside of it. Without
+    --no-renames a renamed copybook would only be listed with its new path
+     */
+    private List<String> getGitChangedFiles(File projectDirectory, String gitRange) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        execOperations.exec(execSpec -> {
+            execSpec.commandLine("git", "diff", "--name-only", "--relative", "--no-renames", "-z", gitRange);
+            execSpec.setWorkingDir(projectDirectory);
+            execSpec.setStandardOutput(output);
+        });
+        return ChangeImpact.parseGitChangedFiles(output.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,187 @@
+package de.livingmainframe.plugins.cobol.core.tasks;
+
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
+import de.livingmainframe.plugins.cobol.core.compiler.CobolCompilerExecutable;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileMode;
+import de.livingmainframe.plugins.cobol.core.dsl.ModuleOptions;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The link stage of the "object" and "module" compile modes. The build tasks compile every program into an object file
+ * or a module, this task collects them into one directory:
+ * <ul>
+ *     <li>Object files are linked into one executable per program. The links run in parallel as work items</li>
+ *     <li>Modules are copied into the directory, so that it can be put on the COB_LIBRARY_PATH and the runtime loads
+ *     all programs from it</li>
+ * </ul>
+ * The task is incremental: only the programs whose object file or module changed are linked or copied again, and the
+ * outputs of removed programs are deleted.
+ */
+@CacheableTask
+public abstract class LinkCobolTask extends DefaultTask {
+
+    private final WorkerExecutor workerExecutor;
+    private final ObjectFactory objectFactory;
+
+    @Inject
+    public LinkCobolTask(WorkerExecutor workerExecutor, ObjectFactory objectFactory) {
+        this.workerExecutor = workerExecutor;
+        this.objectFactory = objectFactory;
+    }
+
+    /**
+     * The object files or modules created by the build tasks
+     *
+     * @return The compiled programs
+     */
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getCompiledPrograms();
+
+    /**
+     * "object" to link the object files into executables, "module" to copy the modules
+     *
+     * @return The name of the compile mode of the build tasks
+     */
+    @Input
+    public abstract Property<String> getCompileMode();
+
+    /**
+     * @return The fully qualified name of the class that extends CobolCompilerExecutable
+     */
+    @Input
+    public abstract Property<String> getCobolCompilerClassName();
+
+    @Input
+    public abstract MapProperty<String, String> getEnvironmentVariables();
+
+    @Input
+    public abstract Property<String> getCompilerVersion();
+
+    /**
+     * The compiler options of the module groups by the name of the program
+     *
+     * @return The additional compiler options of every program that has any
+     */
+    @Input
+    public abstract MapProperty<String, List<String>> getCompilerOptions();
+
+    /**
+     * The manifest written by the analysis task, which contains whether the programs use Db2 or CICS. It isn't an
+     * input, a program whose Db2 or CICS usage changed is compiled into a different object file, which is linked again
+     *
+     * @return The dependency manifest
+     */
+    @Internal
+    public abstract RegularFileProperty getDependencyManifest();
+
+    /**
+     * @return The absolute path of the directory that contains the compiler executable or an empty property
+     */
+    @Internal
+    public abstract Property<String> getCompilerDirectory();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    public void setCobolCompilerExecutable(Class<?> cobolCompilerExecutableClass) {
+        getCobolCompilerClassName().set(cobolCompilerExecutableClass.getName());
+    }
+
+    @TaskAction
+    public void link(InputChanges inputChanges) throws IOException {
+        File outputDirectory = getOutputDirectory().get().getAsFile();
+        if (!inputChanges.isIncremental()) {
+            FileUtils.cleanDirectory(outputDirectory);
+        }
+        boolean link = CompileMode.fromName(getCompileMode().get()) == CompileMode.OBJECT;
+
+        Map<String, DependencyManifest.Program> programs = new HashMap<>();
+        if (link) {
+            for (DependencyManifest.Program program : DependencyManifest.read(getDependencyManifest().get().getAsFile())
+                    .getPrograms()) {
+                programs.put(FilenameUtils.getBaseName(program.path()), program);
+            }
+        }
+
+        WorkQueue workQueue = workerExecutor.noIsolation();
+        int linkedPrograms = 0;
+        for (FileChange fileChange : inputChanges.getFileChanges(getCompiledPrograms())) {
+            File compiledProgram = fileChange.getFile();
+            // Executables are named like the program, modules keep their name and extension
+            File outputFile = new File(outputDirectory, link ? FilenameUtils.getBaseName(compiledProgram.getName())
+                    : compiledProgram.getName());
+            if (fileChange.getChangeType() == ChangeType.REMOVED) {
+                Files.deleteIfExists(outputFile.toPath());
+                getLogger().info("Removed {}", outputFile);
+            } else if (link) {
+                submitLink(workQueue, compiledProgram.toPath(), outputDirectory.toPath(), programs);
+                linkedPrograms++;
+            } else {
+                Files.copy(compiledProgram.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.COPY_ATTRIBUTES);
+                linkedPrograms++;
+            }
+        }
+        getLogger().info("{} {} programs into {}", link ? "Linked" : "Copied", linkedPrograms, outputDirectory);
+    }
+
+    private void submitLink(WorkQueue workQueue, Path objectFile, Path outputDirectory,
+                            Map<String, DependencyManifest.Program> programs) {
+        String programName = FilenameUtils.getBaseName(objectFile.toString());
+        // The build file is only used for the name of the executable
+        CobolCompilerExecutable compilerExecutable = CobolCompilerExecutable.newInstance(
+                getCobolCompilerClassName().get(), objectFile.resolveSibling(programName + ".cbl"), outputDirectory);
+        DependencyManifest.Program program = programs.get(programName);
+        ModuleOptions moduleOptions = new ModuleOptions(objectFactory);
+        moduleOptions.setCompilerOptions(getCompilerOptions().get().getOrDefault(programName, List.of()));
+        moduleOptions.setDb2(program != null && program.db2());
+        moduleOptions.setCics(program != null && program.cics());
+        compilerExecutable.setModuleOptions(moduleOptions);
+        if (getCompilerDirectory().isPresent()) {
+            compilerExecutable.setPathOfCompilerExecutable(Path.of(getCompilerDirectory().get()));
+        }
+        compilerExecutable.setEnvironmentVariables(getEnvironmentVariables().get());
+        List<String> command = compilerExecutable.getLinkCommand(objectFile);
+
+        workQueue.submit(CompileWorkAction.class, parameters -> {
+            parameters.getProgramName().set(programName);
+            parameters.getLogFile().set(new File(getTemporaryDir(), programName + ".log"));
+            parameters.getCommand().set(command);
+            parameters.getEnvironmentVariables().set(compilerExecutable.getEnvironmentVariables());
+        });
+    }
+}
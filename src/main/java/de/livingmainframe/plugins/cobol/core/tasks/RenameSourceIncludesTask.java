@@ -1,40 +1,184 @@
 package de.livingmainframe.plugins.cobol.core.tasks;
 
+import de.livingmainframe.plugins.cobol.core.CobolPlugin;
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.problems.ProblemId;
+import org.gradle.api.problems.Problems;
+import org.gradle.api.problems.Severity;
 import org.gradle.api.tasks.InputFiles;
-import org.gradle.api.tasks.OutputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.jetbrains.annotations.NotNull;
 
+import javax.inject.Inject;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
- * This task copies and renames all dependent source includes into a temporary folder. This is a workaround because the
- * COBOL compiler (at least from IBM) doesn't support finding lower-case copybooks. This isn't ideal but a valid
- * workaround because it uses Gradle's dependency tracking system. This task is only executed if any of the
- * dependencies change
+ * This task stages all dependent source includes of a project in a temporary folder, with uppercase names. This is a
+ * workaround because the COBOL compiler (at least from IBM) doesn't support finding lower-case copybooks. This isn't
+ * ideal but a valid workaround because it uses Gradle's dependency tracking system. This task is only executed if any
+ * of the dependencies change
+ * <p>
+ * Each copybook is staged under the path of its parent directory relative to the project directory, with an uppercase
+ * name and without its extension. Copybooks outside the project directory are staged under their absolute path in the
+ * directory "external". A single task stages the copybooks of all programs, the compile tasks only use the staged
+ * files of the copybooks they depend on. The staged files are hard links to the copybooks if the file system supports
+ * them, otherwise symbolic links or copies.
+ * <p>
+ * The task is incremental: only added or changed copybooks are staged again, and the staged files of copybooks that
+ * are no longer included are deleted, so the compiler can't find them anymore.
+ * <p>
+ * Copybooks in the same directory whose names only differ in case or extension are staged at the same path. Only the
+ * first of them in the order of their paths is staged, the collision is reported as a warning.
  */
 public abstract class RenameSourceIncludesTask extends DefaultTask {
 
+    private enum StagingMode {HARD_LINK, SYMBOLIC_LINK, COPY}
+
+    private StagingMode stagingMode;
+
+    @Incremental
     @InputFiles
     public abstract ConfigurableFileCollection getLowerCaseSourceIncludes();
 
-    @OutputFiles
-    public abstract ConfigurableFileCollection getUpperCaseTemporarySourceIncludes();
+    @OutputDirectory
+    public abstract DirectoryProperty getTemporarySourceIncludeDirectory();
+
+    /**
+     * @return The directory the paths of the staged copybooks are relative to
+     */
+    @Internal
+    public abstract DirectoryProperty getProjectDirectory();
+
+    @Inject
+    protected abstract Problems getProblems();
+
+    /**
+     * Returns the path a copybook is staged at
+     *
+     * @param temporarySourceIncludeDirectory The directory the copybooks are staged in
+     * @param projectDirectory                The project directory
+     * @param lowerCaseSourceInclude          The copybook
+     * @return The staged copybook
+     */
+    public static @NotNull File getUpperCaseSourceInclude(@NotNull File temporarySourceIncludeDirectory,
+                                                          @NotNull File projectDirectory,
+                                                          @NotNull File lowerCaseSourceInclude) {
+        String directory = DependencyManifest.toManifestPath(projectDirectory.toPath().toAbsolutePath().normalize(),
+                lowerCaseSourceInclude.getParentFile());
+        if (Path.of(directory).isAbsolute()) {
+            directory = "external" + directory.replace(File.separatorChar, '/');
+        }
+        String upperCaseName = FilenameUtils.getBaseName(lowerCaseSourceInclude.getName()).toUpperCase(Locale.ROOT);
+        return new File(new File(temporarySourceIncludeDirectory, directory), upperCaseName);
+    }
 
     @TaskAction
-    public void renameSourceIncludes() {
+    public void renameSourceIncludes(InputChanges inputChanges) throws IOException {
+        File temporarySourceIncludeDirectory = getTemporarySourceIncludeDirectory().get().getAsFile();
+        stagingMode = StagingMode.HARD_LINK;
+        if (!inputChanges.isIncremental()) {
+            FileUtils.cleanDirectory(temporarySourceIncludeDirectory);
+        }
 
-        for (int i = 0; i < getLowerCaseSourceIncludes().getFiles().size(); i++) {
+        // The first copybook in the order of the paths is staged if several copybooks are staged at the same path
+        File projectDirectory = getProjectDirectory().get().getAsFile();
+        Map<File, List<File>> sourceIncludesByStagedFile = new TreeMap<>();
+        for (File lowerCaseSourceInclude : getLowerCaseSourceIncludes().getFiles().stream().sorted().toList()) {
+            sourceIncludesByStagedFile.computeIfAbsent(getUpperCaseSourceInclude(temporarySourceIncludeDirectory,
+                    projectDirectory, lowerCaseSourceInclude), file -> new ArrayList<>()).add(lowerCaseSourceInclude);
+        }
+        reportCollisions(sourceIncludesByStagedFile);
+
+        int stagedSourceIncludes = 0;
+        for (FileChange fileChange : inputChanges.getFileChanges(getLowerCaseSourceIncludes())) {
+            File lowerCaseSourceInclude = fileChange.getFile();
+            File upperCaseSourceInclude = getUpperCaseSourceInclude(temporarySourceIncludeDirectory,
+                    projectDirectory, lowerCaseSourceInclude);
+            List<File> sourceIncludes = sourceIncludesByStagedFile.getOrDefault(upperCaseSourceInclude, List.of());
+            if (fileChange.getChangeType() == ChangeType.REMOVED) {
+                if (sourceIncludes.isEmpty()) {
+                    Files.deleteIfExists(upperCaseSourceInclude.toPath());
+                    getLogger().info("Removed {}", upperCaseSourceInclude);
+                } else {
+                    // Another copybook is staged at the same path
+                    stage(sourceIncludes.getFirst().toPath(), upperCaseSourceInclude.toPath());
+                    stagedSourceIncludes++;
+                }
+            } else if (sourceIncludes.getFirst().equals(lowerCaseSourceInclude)) {
+                stage(lowerCaseSourceInclude.toPath(), upperCaseSourceInclude.toPath());
+                stagedSourceIncludes++;
+            }
+        }
+        getLogger().info("Staged {} copybooks in {} using {}", stagedSourceIncludes, temporarySourceIncludeDirectory,
+                stagingMode);
+    }
+
+    private void reportCollisions(Map<File, List<File>> sourceIncludesByStagedFile) {
+        for (Map.Entry<File, List<File>> stagedFile : sourceIncludesByStagedFile.entrySet()) {
+            List<File> sourceIncludes = stagedFile.getValue();
+            if (sourceIncludes.size() < 2) {
+                continue;
+            }
+            ProblemId problemId = ProblemId.create("copybook-name-collision", "Copybooks are staged at the same path",
+                    CobolPlugin.PROBLEM_GROUP);
+            getProblems().getReporter().report(problemId, problemSpec -> {
+                problemSpec.details(String.format("The copybooks %s are all staged at %s, only %s is used",
+                        sourceIncludes, stagedFile.getKey(), sourceIncludes.getFirst()));
+                problemSpec.solution("Rename the copybooks, so that their names differ without the extension and " +
+                        "regardless of the case");
+                problemSpec.severity(Severity.WARNING);
+            });
+        }
+    }
+
+    /*
+    A changed copybook may have been replaced by a new file, which an existing hard link doesn't point to. The staged
+    file is therefore always replaced. Once a mode fails, e.g. because the build directory is on a different file
+    system, the remaining copybooks are staged with the next mode
+     */
+    private void stage(Path lowerCaseSourceInclude, Path upperCaseSourceInclude) throws IOException {
+        Files.createDirectories(upperCaseSourceInclude.getParent());
+        Files.deleteIfExists(upperCaseSourceInclude);
+        if (stagingMode == StagingMode.HARD_LINK) {
+            try {
+                Files.createLink(upperCaseSourceInclude, lowerCaseSourceInclude);
+                return;
+            } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                getLogger().info("Unable to create a hard link to {}, using symbolic links", lowerCaseSourceInclude,
+                        e);
+                stagingMode = StagingMode.SYMBOLIC_LINK;
+            }
+        }
+        if (stagingMode == StagingMode.SYMBOLIC_LINK) {
             try {
-                FileUtils.copyFile(getLowerCaseSourceIncludes().getFiles().stream().toList().get(i),
-                        getUpperCaseTemporarySourceIncludes().getFiles().stream().toList().get(i));
-                getLogger().info("Copied {} to {}", getLowerCaseSourceIncludes().getFiles().stream().toList().get(i),
-                        getUpperCaseTemporarySourceIncludes().getFiles().stream().toList().get(i));
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                Files.createSymbolicLink(upperCaseSourceInclude, lowerCaseSourceInclude.toAbsolutePath());
+                return;
+            } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                getLogger().info("Unable to create a symbolic link to {}, copying the copybooks",
+                        lowerCaseSourceInclude, e);
+                stagingMode = StagingMode.COPY;
             }
         }
+        Files.copy(lowerCaseSourceInclude, upperCaseSourceInclude, StandardCopyOption.REPLACE_EXISTING);
     }
 }
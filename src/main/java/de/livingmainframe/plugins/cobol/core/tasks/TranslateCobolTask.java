@@ -0,0 +1,40 @@
+package de.livingmainframe.plugins.cobol.core.tasks;
+
+import de.livingmainframe.plugins.cobol.core.compiler.CobolCompilerExecutable;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileCostModel;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Translates a single COBOL program to C, the first stage of a GnuCOBOL compile. The C source and its headers are
+ * written to the output directory, from where the build task of the program compiles and links them.
+ * <p>
+ * The task has the same inputs as a build task and is up-to-date checked and cached the same way. Splitting the stages
+ * lets Gradle run the translation of one program while the C source of another one is compiled, and skips the C
+ * compile if the translation didn't change the C source.
+ */
+@CacheableTask
+public abstract class TranslateCobolTask extends DynamicBuildTask {
+
+    @Inject
+    public TranslateCobolTask(WorkerExecutor workerExecutor, ObjectFactory objectFactory) {
+        super(workerExecutor, objectFactory);
+    }
+
+    @Override
+    protected String compileStage() {
+        return CompileCostModel.TRANSLATE;
+    }
+
+    @Override
+    protected List<String> getCompileCommand(CobolCompilerExecutable compilerExecutable) {
+        Path buildFile = getBuildFile().get().getAsFile().toPath();
+        return compilerExecutable.getTranslateCommand(getOutputDirectory().get().getAsFile().toPath()
+                .resolve(CobolCompilerExecutable.getTranslatedSourceFileName(buildFile)));
+    }
+}
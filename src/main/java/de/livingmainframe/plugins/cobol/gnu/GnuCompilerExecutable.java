@@ -1,6 +1,7 @@
 package de.livingmainframe.plugins.cobol.gnu;
 
 import de.livingmainframe.plugins.cobol.core.compiler.CobolCompilerExecutable;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileMode;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -30,8 +31,37 @@ public class GnuCompilerExecutable extends CobolCompilerExecutable {
         return List.of();
     }
 
+    @Override
+    protected List<String> getPreprocessOptions() {
+        return List.of("-E");
+    }
+
+    @Override
+    protected List<String> getTranslateOptions() {
+        return List.of("-C");
+    }
+
+    @Override
+    protected List<String> getStaticCallOptions() {
+        return List.of("-fstatic-call");
+    }
+
+    @Override
+    public boolean supportsCompileMode(CompileMode compileMode) {
+        return true;
+    }
+
+    /**
+     * Object files are compiled with -x as well, so that they contain the main function of the executable they are
+     * linked into
+     */
+    @Override
+    protected List<String> getProgramTypeOptions() {
+        return getCompileMode() == CompileMode.MODULE ? List.of("-m") : List.of("-x");
+    }
+
     @Override
     public List<String> getCustomCompilerOptions() {
-        return List.of("-x", "-std=ibm");
+        return List.of("-std=ibm");
     }
 }
@@ -3,12 +3,15 @@ package de.livingmainframe.plugins.cobol.ibmenterprise;
 import de.livingmainframe.plugins.cobol.core.CobolExtensionInterface;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 public abstract class IbmEnterpriseCobolExtension implements CobolExtensionInterface {
 
@@ -16,6 +19,18 @@ public abstract class IbmEnterpriseCobolExtension implements CobolExtensionInter
 
     private final ListProperty<Path> sourcePaths;
     private final ListProperty<Path> sourceIncludePaths;
+    private final Property<String> sourceEncoding;
+    private final Property<Integer> maxParallelCompiles;
+    private final Property<String> compileIsolation;
+    private final Property<Integer> compileBatchSize;
+    private final Property<Boolean> semanticFingerprints;
+    private final Property<Boolean> compileCache;
+    private final Property<Integer> compileCacheSize;
+    private final Property<Boolean> separateTranslation;
+    private final Property<String> compileMode;
+    private final ListProperty<String> entryPoints;
+    private final Property<String> compileTransport;
+    private final Property<Integer> compileSessions;
 
     @Inject
     public IbmEnterpriseCobolExtension(ObjectFactory objectFactory) {
@@ -26,6 +41,42 @@ public abstract class IbmEnterpriseCobolExtension implements CobolExtensionInter
         this.sourceIncludePaths = objectFactory.listProperty(Path.class);
         Collection<Path> defaultSourceIncludePaths = Collections.singletonList(new File("src/copy").toPath());
         this.sourceIncludePaths.convention(defaultSourceIncludePaths);
+
+        this.sourceEncoding = objectFactory.property(String.class);
+        this.sourceEncoding.convention(Charset.defaultCharset().name());
+
+        this.maxParallelCompiles = objectFactory.property(Integer.class);
+        this.maxParallelCompiles.convention(Runtime.getRuntime().availableProcessors());
+
+        this.compileIsolation = objectFactory.property(String.class);
+        this.compileIsolation.convention("none");
+
+        this.compileBatchSize = objectFactory.property(Integer.class);
+        this.compileBatchSize.convention(50);
+
+        this.semanticFingerprints = objectFactory.property(Boolean.class);
+        this.semanticFingerprints.convention(true);
+
+        this.compileCache = objectFactory.property(Boolean.class);
+        this.compileCache.convention(false);
+
+        this.compileCacheSize = objectFactory.property(Integer.class);
+        this.compileCacheSize.convention(1024);
+
+        this.separateTranslation = objectFactory.property(Boolean.class);
+        this.separateTranslation.convention(false);
+
+        this.compileMode = objectFactory.property(String.class);
+        this.compileMode.convention("executable");
+
+        this.entryPoints = objectFactory.listProperty(String.class);
+        this.entryPoints.convention(List.of());
+
+        this.compileTransport = objectFactory.property(String.class);
+        this.compileTransport.convention("none");
+
+        this.compileSessions = objectFactory.property(Integer.class);
+        this.compileSessions.convention(4);
     }
 
     @Override
@@ -38,6 +89,66 @@ public abstract class IbmEnterpriseCobolExtension implements CobolExtensionInter
         return sourceIncludePaths;
     }
 
+    @Override
+    public Property<String> getSourceEncoding() {
+        return sourceEncoding;
+    }
+
+    @Override
+    public Property<Integer> getMaxParallelCompiles() {
+        return maxParallelCompiles;
+    }
+
+    @Override
+    public Property<Integer> getCompileBatchSize() {
+        return compileBatchSize;
+    }
+
+    @Override
+    public Property<String> getCompileIsolation() {
+        return compileIsolation;
+    }
+
+    @Override
+    public Property<Boolean> getSemanticFingerprints() {
+        return semanticFingerprints;
+    }
+
+    @Override
+    public Property<Boolean> getCompileCache() {
+        return compileCache;
+    }
+
+    @Override
+    public Property<Integer> getCompileCacheSize() {
+        return compileCacheSize;
+    }
+
+    @Override
+    public Property<Boolean> getSeparateTranslation() {
+        return separateTranslation;
+    }
+
+    @Override
+    public Property<String> getCompileMode() {
+        return compileMode;
+    }
+
+    @Override
+    public ListProperty<String> getEntryPoints() {
+        return entryPoints;
+    }
+
+    @Override
+    public Property<String> getCompileTransport() {
+        return compileTransport;
+    }
+
+    @Override
+    public Property<Integer> getCompileSessions() {
+        return compileSessions;
+    }
+
     @Override
     public ListProperty<Path> getSourcePaths() {
         return sourcePaths;
@@ -47,4 +158,9 @@ public abstract class IbmEnterpriseCobolExtension implements CobolExtensionInter
     public Class<?> getCobolCompilerClass() {
         return IbmEnterpriseCompilerExecutable.class;
     }
+
+    @Override
+    public String getCobolCompilerExecutableName() {
+        return "cob2";
+    }
 }
@@ -1,11 +1,14 @@
 package de.livingmainframe.plugins.cobol.ibmenterprise;
 
 import de.livingmainframe.plugins.cobol.core.CobolPlugin;
+import de.livingmainframe.plugins.cobol.core.tasks.BuildReachableTask;
+import de.livingmainframe.plugins.cobol.core.tasks.CompileCobolTask;
 import de.livingmainframe.plugins.cobol.core.tasks.DynamicBuildTask;
 import de.livingmainframe.plugins.cobol.core.tasks.RenameSourceIncludesTask;
-import org.apache.commons.io.FilenameUtils;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.file.Directory;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.TaskProvider;
 import org.jetbrains.annotations.NotNull;
 
@@ -15,29 +18,36 @@ import java.util.List;
 @SuppressWarnings("unused")
 public abstract class IbmEnterpriseCobolPlugin implements Plugin<Project> {
 
+    public static final String STAGE_TASK_NAME = "stageCobolCopybooks";
+
     @Override
     public void apply(@NotNull Project project) {
         project.getExtensions().create("cobol", IbmEnterpriseCobolExtension.class);
 
         project.getPluginManager().apply(CobolPlugin.class);
 
+        CobolPlugin cobolPlugin = project.getPlugins().getPlugin(CobolPlugin.class);
         project.afterEvaluate(target -> {
             // This is the workaround we use to rename the source includes to uppercase. Two things are happening here
-            // 1. Register the RenameSourceIncludesTask for each build task that handles the renaming
-            // 2. Wire both tasks to be dependent on each other by changing the inputs of the build task to the outputs
-            //    from the RenameSourceIncludeTask
-            // TODO: Check if any of this introduces eager configuration and whether this can be improved
-            for (DynamicBuildTask task : project.getTasks().withType(DynamicBuildTask.class)) {
-                List<File> lowerCaseDependencyFiles = task.getSourceIncludeDependencies().getFiles().stream().toList();
-                List<File> upperCaseDependencyFiles =
-                        transformUppercaseDependencyPaths(project.getLayout().getBuildDirectory().getAsFile().get(),
-                                lowerCaseDependencyFiles);
-                TaskProvider<RenameSourceIncludesTask> renameTask = project.getTasks().register(String.format("rename"
-                        + "-dependencies-%s", task.getName().substring(6)), RenameSourceIncludesTask.class,
-                        renameSourceIncludesTask -> {
-                    renameSourceIncludesTask.getLowerCaseSourceIncludes().setFrom(lowerCaseDependencyFiles);
-                    renameSourceIncludesTask.getUpperCaseTemporarySourceIncludes().setFrom(upperCaseDependencyFiles);
-                });
+            // 1. Register a single RenameSourceIncludesTask that stages the copybooks of all programs
+            // 2. Wire the compile tasks to the staging task by changing their inputs to the staged copybooks they
+            //    depend on. The build tasks don't use the whole staged tree, so that a changed copybook only
+            //    invalidates the programs that use it
+            // The copybooks are only known after the analysis task ran, so the tasks are configured lazily. Neither
+            // task references the other one, which the configuration cache doesn't allow
+            TaskProvider<RenameSourceIncludesTask> stageTask = project.getTasks().register(STAGE_TASK_NAME,
+                    RenameSourceIncludesTask.class, renameSourceIncludesTask -> {
+                renameSourceIncludesTask.getLowerCaseSourceIncludes().from(cobolPlugin.getAnalyzedSourceIncludes(CobolPlugin.COMPILE_TASK_NAME));
+                renameSourceIncludesTask.getTemporarySourceIncludeDirectory().set(project.getLayout().getBuildDirectory().dir("temporarySourceIncludes"));
+                renameSourceIncludesTask.getProjectDirectory().set(project.getLayout().getProjectDirectory());
+            });
+            File projectDirectory = project.getLayout().getProjectDirectory().getAsFile();
+            Provider<Directory> temporarySourceIncludeDirectory =
+                    stageTask.flatMap(RenameSourceIncludesTask::getTemporarySourceIncludeDirectory);
+
+            for (String buildTaskName : project.getTasks().withType(DynamicBuildTask.class).getNames()) {
+                Provider<List<File>> upperCaseSourceIncludes = getUpperCaseSourceIncludes(temporarySourceIncludeDirectory,
+                        projectDirectory, cobolPlugin.getAnalyzedSourceIncludes(buildTaskName));
 
                 // This wires the outputs from the RenameSourceIncludeTask to the DynamicBuildTask. I don't know
                 // exactly why this works, but it was suggested over at the Gradle forums to me
@@ -45,28 +55,34 @@ public abstract class IbmEnterpriseCobolPlugin implements Plugin<Project> {
                 // I thought it should simply be possible by declaring my ConfigurableFileCollections as @InputFiles
                 // and @OutputFiles. This doesn't work and an issue was opened over at GitHub which may implement
                 // this in the future: https://github.com/gradle/gradle/issues/32311
-                task.getSourceIncludeDependencies().setFrom(renameTask.map(RenameSourceIncludesTask::getUpperCaseTemporarySourceIncludes));
+                project.getTasks().named(buildTaskName, DynamicBuildTask.class).configure(task -> task.getSourceIncludeDependencies().setFrom(upperCaseSourceIncludes));
             }
+
+            // The aggregate compile task uses the copybooks of all programs
+            Provider<List<File>> upperCaseSourceIncludes = getUpperCaseSourceIncludes(temporarySourceIncludeDirectory,
+                    projectDirectory, cobolPlugin.getAnalyzedSourceIncludes(CobolPlugin.COMPILE_TASK_NAME));
+            project.getTasks().named(CobolPlugin.COMPILE_TASK_NAME, CompileCobolTask.class).configure(task -> task.getSourceIncludeDependencies().setFrom(upperCaseSourceIncludes));
+
+            // The reachability build only uses the copybooks of the reachable programs
+            Provider<List<File>> reachableSourceIncludes = getUpperCaseSourceIncludes(temporarySourceIncludeDirectory,
+                    projectDirectory, cobolPlugin.getAnalyzedSourceIncludes(CobolPlugin.REACHABLE_TASK_NAME));
+            project.getTasks().named(CobolPlugin.REACHABLE_TASK_NAME, BuildReachableTask.class).configure(task -> task.getSourceIncludeDependencies().setFrom(reachableSourceIncludes));
         });
     }
 
     /**
-     * Changes the list of files to a temporary location in Gradle's build directory. This is necessary because the
-     * IBM COBOL compiler can't be told to search for lowercase copybooks
+     * Maps copybooks to the files they are staged at. The returned provider carries the dependency on the staging task
      *
-     * @param buildDirectory Gradle's base build directory
-     * @param originalFiles  The list of files that are still lowercase and include the extension
-     * @return A transformed list of files with a different path, uppercase filenames, removed extension
+     * @param temporarySourceIncludeDirectory The output directory of the staging task
+     * @param projectDirectory                The project directory
+     * @param sourceIncludes                  The copybooks of a compile task
+     * @return The staged copybooks
      */
-    private List<File> transformUppercaseDependencyPaths(File buildDirectory, @NotNull List<File> originalFiles) {
-
-        return originalFiles.stream().map(file -> {
-            String newName = FilenameUtils.getBaseName(file.getAbsolutePath());
-            newName = newName.toUpperCase();
-            String parentDirectory = file.getParentFile().getName();
-            File temporarySourceIncludeDirectory = new File(buildDirectory.getAbsolutePath(),
-                    "temporarySourceIncludes");
-            return new File(temporarySourceIncludeDirectory, new File(parentDirectory, newName).toString());
-        }).toList();
+    private static Provider<List<File>> getUpperCaseSourceIncludes(Provider<Directory> temporarySourceIncludeDirectory,
+                                                                   File projectDirectory,
+                                                                   Provider<List<File>> sourceIncludes) {
+        return temporarySourceIncludeDirectory.zip(sourceIncludes, (directory, files) -> files.stream()
+                .map(file -> RenameSourceIncludesTask.getUpperCaseSourceInclude(directory.getAsFile(),
+                        projectDirectory, file)).toList());
     }
 }
@@ -25,6 +25,15 @@ public class IbmEnterpriseCompilerExecutable extends CobolCompilerExecutable {
         return List.of();
     }
 
+    /**
+     * Programs that are compiled with DYNAM load the programs they call at run time, even if they are called with a
+     * literal
+     */
+    @Override
+    protected List<String> getStaticCallOptions() {
+        return List.of("-qNODYNAM");
+    }
+
     @Override
     public List<String> getCicsCompilerOptions() {
         if (getModuleOptions().getCics()) {
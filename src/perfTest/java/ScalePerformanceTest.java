@@ -0,0 +1,174 @@
+import de.livingmainframe.plugins.cobol.jmh.CobolCorpusGenerator;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Builds a generated project with thousands of programs through Gradle TestKit, using a stub compiler that only
+ * sleeps and writes its output files. The time Gradle and the plugin need around the compiler is measured and appended
+ * to build/reports/perf/scale.csv, so that the numbers of different plugin versions can be compared.
+ * <p>
+ * The number of programs is set with -Pperf.programs (default 10000) and the time the stub compiler sleeps with
+ * -Pperf.compileSeconds (default 0.01).
+ */
+public class ScalePerformanceTest {
+
+    private static final String CSV_HEADER = "timestamp,programs,configuration_ms,task_graph_size,full_build_ms," +
+            "up_to_date_ms,incremental_build_ms,incremental_tasks";
+
+    @TempDir
+    Path projectDirectory;
+
+    @Test
+    public void testScaleWithCompilerOnPath() throws IOException {
+        int programs = Integer.getInteger("perf.programs", 10_000);
+        CobolCorpusGenerator.Corpus corpus = CobolCorpusGenerator.ofSize(programs).generate(projectDirectory);
+        // The perfTest task puts this directory on the PATH of the test, which the TestKit daemon inherits. The JVM
+        // searches executables on the PATH it was started with, so the PATH can't be set per build
+        writeStubCompiler(Path.of(System.getProperty("perf.pathDirectory", "build/perf/bin")));
+        writeBuildScript("");
+
+        // The first build starts the daemon and compiles the build script, which isn't measured
+        run("help");
+
+        long configurationTime = time(() -> run("help"));
+
+        BuildResult dryRun = run("buildAll", "--dry-run");
+        long taskGraphSize = dryRun.getOutput().lines().filter(line -> line.endsWith(" SKIPPED")).count();
+
+        long[] buildTimes = new long[3];
+        BuildResult[] results = new BuildResult[3];
+        buildTimes[0] = time(() -> results[0] = run("buildAll"));
+        buildTimes[1] = time(() -> results[1] = run("buildAll"));
+
+        // A change to a copybook only requires the programs that use it to be compiled again. A field is added to the
+        // record, as a comment line wouldn't change the semantic fingerprints of the programs
+        Path copybook = corpus.includeDirectory().toPath().resolve(corpus.copybookNames().getFirst() + ".cpy");
+        List<String> lines = new ArrayList<>(Files.readAllLines(copybook, StandardCharsets.US_ASCII));
+        lines.add(2, "000000         05  FIELD-CHANGED PIC X(8).");
+        Files.write(copybook, lines, StandardCharsets.US_ASCII);
+        buildTimes[2] = time(() -> results[2] = run("buildAll"));
+
+        assertEquals(programs, countBuildTasks(results[0], TaskOutcome.SUCCESS));
+        assertEquals(programs, countBuildTasks(results[1], TaskOutcome.UP_TO_DATE));
+        long incrementalTasks = countBuildTasks(results[2], TaskOutcome.SUCCESS);
+        assertTrue(incrementalTasks > 0 && incrementalTasks < programs);
+
+        String row = String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%d,%d", Instant.now(), programs,
+                configurationTime, taskGraphSize, buildTimes[0], buildTimes[1], buildTimes[2], incrementalTasks);
+        appendToReport(row);
+    }
+
+    @Test
+    public void testCompilerDirectory() throws IOException {
+        CobolCorpusGenerator.ofSize(20).generate(projectDirectory);
+        writeStubCompiler(projectDirectory.resolve("bin"));
+        writeBuildScript("    compilerDirectory = java.nio.file.Path.of('bin')\n");
+
+        BuildResult result = run("buildAll");
+
+        assertEquals(20, countBuildTasks(result, TaskOutcome.SUCCESS));
+        assertTrue(Files.exists(projectDirectory.resolve("build/PGM00000/PGM00000")));
+    }
+
+    /*
+    The stub understands the options of the plugin's commands: --version, -o <output>, -c <programs...>, which
+    writes an object file per program into the working directory, and -E, which writes the program to the standard
+    output
+     */
+    private static Path writeStubCompiler(Path binDirectory) throws IOException {
+        Files.createDirectories(binDirectory);
+        String script = String.join("\n",
+                "#!/bin/sh",
+                "if [ \"$1\" = \"--version\" ]; then echo \"stub-cobc 1.0\"; exit 0; fi",
+                "output=\"\"",
+                "compile=false",
+                "preprocess=false",
+                "while [ $# -gt 0 ]; do",
+                "  case \"$1\" in",
+                "    -o) output=\"$2\"; shift ;;",
+                "    -c) compile=true ;;",
+                "    -E) preprocess=true ;;",
+                "    *.cbl) if $preprocess; then cat \"$1\"; exit 0; fi",
+                "      if $compile; then name=$(basename \"$1\" .cbl); : > \"$name.o\"; fi ;;",
+                "  esac",
+                "  shift",
+                "done",
+                "sleep " + System.getProperty("perf.compileSeconds", "0.01"),
+                "if [ -n \"$output\" ]; then echo stub > \"$output\"; fi",
+                "exit 0",
+                "");
+        for (String compiler : List.of("cobc", "cob2")) {
+            Path stub = binDirectory.resolve(compiler);
+            Files.writeString(stub, script, StandardCharsets.US_ASCII);
+            Files.setPosixFilePermissions(stub, PosixFilePermissions.fromString("rwxr-xr-x"));
+        }
+        return binDirectory;
+    }
+
+    private void writeBuildScript(String additionalConfiguration) throws IOException {
+        Files.writeString(projectDirectory.resolve("settings.gradle"), "rootProject.name = 'scale'\n");
+        Files.writeString(projectDirectory.resolve("build.gradle"), String.join("\n",
+                "plugins {",
+                "    id 'de.living-mainframe.gnu-cobol'",
+                "}",
+                "",
+                "cobol {",
+                "    sourcePaths = [java.nio.file.Path.of('src')]",
+                "    sourceIncludePaths = [java.nio.file.Path.of('copy')]",
+                additionalConfiguration + "}",
+                "",
+                "tasks.register('buildAll') {",
+                "    dependsOn tasks.matching { it.name.startsWith('build-') }",
+                "}",
+                ""));
+    }
+
+    private BuildResult run(String... arguments) {
+        List<String> allArguments = new ArrayList<>(List.of(arguments));
+        allArguments.add("--stacktrace");
+        return GradleRunner.create().withProjectDir(projectDirectory.toFile()).withPluginClasspath()
+                .withTestKitDir(new File(System.getProperty("perf.testKitDirectory", "build/perf/testkit")))
+                .withArguments(allArguments).forwardStdError(new PrintWriter(System.err)).build();
+    }
+
+    private static long countBuildTasks(BuildResult result, TaskOutcome outcome) {
+        return result.tasks(outcome).stream().map(BuildTask::getPath).filter(path -> path.startsWith(":build-"))
+                .count();
+    }
+
+    private static long time(Runnable build) {
+        long startTime = System.nanoTime();
+        build.run();
+        return (System.nanoTime() - startTime) / 1_000_000;
+    }
+
+    private static void appendToReport(String row) throws IOException {
+        Path reportFile = Path.of(System.getProperty("perf.reportDirectory", "build/reports/perf")).resolve("scale.csv");
+        Files.createDirectories(reportFile.getParent());
+        if (!Files.exists(reportFile)) {
+            Files.writeString(reportFile, CSV_HEADER + System.lineSeparator(), StandardCharsets.UTF_8);
+        }
+        Files.writeString(reportFile, row + System.lineSeparator(), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,52 @@
+import de.livingmainframe.plugins.cobol.core.services.BuildMetricsService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BuildMetricsServiceTest {
+
+    @Test
+    public void testMergeAnalysisAndCompile() {
+        BuildMetricsService metricsService = newMetricsService();
+        metricsService.recordAnalysis(":", "src/fast.cbl", 1_000, 2);
+        metricsService.recordAnalysis(":", "src/slow.cbl", 2_000, 5);
+        metricsService.recordAnalysis(":", "src/skipped.cbl", 9_000, 1);
+        metricsService.recordCompile(":", "src/fast.cbl", 10_000, 0, 100);
+        metricsService.recordCompile(":", "src/slow.cbl", 50_000, 0, 20);
+        // A batch compile and a link add up
+        metricsService.recordCompile(":", "src/slow.cbl", 5_000, 1, 30);
+
+        List<BuildMetricsService.ProgramMetrics> programs = metricsService.getPrograms();
+        assertEquals(List.of("src/fast.cbl", "src/skipped.cbl", "src/slow.cbl"),
+                programs.stream().map(BuildMetricsService.ProgramMetrics::program).toList());
+
+        BuildMetricsService.ProgramMetrics slow = programs.get(2);
+        assertEquals(5, slow.dependencies());
+        assertEquals(55_000, slow.compileDuration());
+        assertEquals(1, slow.exitCode());
+        assertEquals(50, slow.outputSize());
+        // Programs that weren't compiled are not ranked
+        assertEquals(-1, programs.get(1).compileDuration());
+        assertEquals(List.of("src/slow.cbl", "src/fast.cbl"), metricsService.getSlowestPrograms().stream()
+                .map(BuildMetricsService.ProgramMetrics::program).toList());
+    }
+
+    @Test
+    public void testCsvField() {
+        assertEquals("src/fast.cbl", BuildMetricsService.toCsvField("src/fast.cbl"));
+        assertEquals("\"src/a,b/fast.cbl\"", BuildMetricsService.toCsvField("src/a,b/fast.cbl"));
+        assertEquals("\"src/\"\"fast\"\".cbl\"", BuildMetricsService.toCsvField("src/\"fast\".cbl"));
+        assertEquals("\"src/fast\r\n.cbl\"", BuildMetricsService.toCsvField("src/fast\r\n.cbl"));
+    }
+
+    private static BuildMetricsService newMetricsService() {
+        return new BuildMetricsService() {
+            @Override
+            public Parameters getParameters() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+import de.livingmainframe.plugins.cobol.core.ChangeImpact;
+import de.livingmainframe.plugins.cobol.core.CopybookUsageIndex;
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ChangeImpactTest {
+
+    private static final Path PROJECT_DIRECTORY = Path.of("/project").toAbsolutePath().normalize();
+
+    private static final CopybookUsageIndex PREVIOUS_INDEX = CopybookUsageIndex.of(List.of(
+            new DependencyManifest.Program("src/A.cbl", false, false, List.of("copy/CUSTREC.cpy", "copy/ADDR.cpy")),
+            new DependencyManifest.Program("src/B.cbl", false, false, List.of("copy/ADDR.cpy")),
+            new DependencyManifest.Program("src/C.cbl", false, false, List.of("copy/OLDREC.cpy")),
+            new DependencyManifest.Program("src/D.cbl", false, false, List.of("copy/OLDREC.cpy"))));
+
+    // OLDREC.cpy was deleted and D.cbl with it, C.cbl no longer resolves the copybook
+    private static final CopybookUsageIndex INDEX = CopybookUsageIndex.of(List.of(
+            new DependencyManifest.Program("src/A.cbl", false, false, List.of("copy/CUSTREC.cpy", "copy/ADDR.cpy")),
+            new DependencyManifest.Program("src/B.cbl", false, false, List.of("copy/ADDR.cpy")),
+            new DependencyManifest.Program("src/C.cbl", false, false, List.of())));
+
+    @Test
+    public void testChangedCopybook() {
+        assertEquals(Set.of("src/A.cbl", "src/B.cbl"), ChangeImpact.getAffectedPrograms(INDEX, PREVIOUS_INDEX,
+                List.of("copy/ADDR.cpy")));
+        assertEquals(Set.of("src/A.cbl"), ChangeImpact.getAffectedPrograms(INDEX, null,
+                List.of("copy/CUSTREC.cpy")));
+    }
+
+    @Test
+    public void testChangedProgram() {
+        assertEquals(Set.of("src/B.cbl"), ChangeImpact.getAffectedPrograms(INDEX, PREVIOUS_INDEX,
+                List.of("src/B.cbl", "README.md")));
+    }
+
+    @Test
+    public void testDeletedCopybook() {
+        assertEquals(Set.of("src/C.cbl"), ChangeImpact.getAffectedPrograms(INDEX, PREVIOUS_INDEX,
+                List.of("copy/OLDREC.cpy")));
+        assertEquals(Set.of(), ChangeImpact.getAffectedPrograms(INDEX, null, List.of("copy/OLDREC.cpy")));
+    }
+
+    @Test
+    public void testChangedFileOption() {
+        assertEquals("copy/ADDR.cpy", ChangeImpact.toManifestPath(PROJECT_DIRECTORY, "copy/ADDR.cpy"));
+        assertEquals("copy/ADDR.cpy", ChangeImpact.toManifestPath(PROJECT_DIRECTORY, " ./src/../copy/ADDR.cpy "));
+        assertEquals("copy/ADDR.cpy", ChangeImpact.toManifestPath(PROJECT_DIRECTORY,
+                PROJECT_DIRECTORY.resolve("copy/ADDR.cpy").toString()));
+        assertNull(ChangeImpact.toManifestPath(PROJECT_DIRECTORY, " "));
+    }
+
+    @Test
+    public void testGitOutput() {
+        assertEquals(List.of("copy/ADDR.cpy", "src/my program.cbl", "src/Ä.cbl"),
+                ChangeImpact.parseGitChangedFiles("copy/ADDR.cpy\0src/my program.cbl\0src/Ä.cbl\0"));
+        assertEquals(List.of(), ChangeImpact.parseGitChangedFiles(""));
+    }
+}
@@ -1,4 +1,7 @@
+import de.livingmainframe.plugins.cobol.core.compiler.CobolCompilerExecutable;
+import de.livingmainframe.plugins.cobol.core.compiler.CompileMode;
 import de.livingmainframe.plugins.cobol.gnu.GnuCompilerExecutable;
+import de.livingmainframe.plugins.cobol.ibmenterprise.IbmEnterpriseCompilerExecutable;
 import org.apache.commons.io.FilenameUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,6 +13,7 @@ import java.nio.file.Path;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 /**
  * This class tests both implementations of CobolCompilerExecutable that currently exist because the class itself is
@@ -86,4 +90,73 @@ public class CobolCompilerExecutableTest {
         // When adding an empty list, no additional arguments should be added
         assertEquals(6, command.size());
     }
+
+    @Test
+    public void testBatchCompileAndLinkCommand() {
+        Path secondBuildFilePath = tempDirectory.toPath().resolve("second.cbl");
+
+        List<String> compileCommand = gnuCompilerExecutable.getBatchCompileCommand(List.of(buildFilePath,
+                secondBuildFilePath));
+
+        // All programs are compiled into object files, the output is only specified when linking
+        assertEquals(List.of("-c", buildFilePath.toString(), secondBuildFilePath.toString()),
+                compileCommand.subList(compileCommand.size() - 3, compileCommand.size()));
+        assertFalse(compileCommand.contains("-o"));
+
+        Path objectFile = tempDirectory.toPath().resolve(CobolCompilerExecutable.getObjectFileName(buildFilePath));
+        List<String> linkCommand = gnuCompilerExecutable.getLinkCommand(objectFile);
+
+        assertEquals(objectFile.toString(), linkCommand.getLast());
+        assertEquals(outputDirectoryPath.resolve(FilenameUtils.getBaseName(buildFilePath.toString())).toString(),
+                linkCommand.get(linkCommand.indexOf("-o") + 1));
+    }
+
+    @Test
+    public void testTranslateCommand() {
+        Path translatedSource = tempDirectory.toPath().resolve(CobolCompilerExecutable.getTranslatedSourceFileName(
+                buildFilePath));
+
+        List<String> translateCommand = gnuCompilerExecutable.getTranslateCommand(translatedSource);
+
+        // The program is only translated to C, the C source is compiled by the link command
+        assertEquals(List.of("-C", "-o", translatedSource.toString(), buildFilePath.toString()),
+                translateCommand.subList(translateCommand.size() - 4, translateCommand.size()));
+        assertEquals(translatedSource.toString(), gnuCompilerExecutable.getLinkCommand(translatedSource).getLast());
+        assertEquals(List.of(), new IbmEnterpriseCompilerExecutable(buildFilePath, outputDirectoryPath)
+                .getTranslateCommand(translatedSource));
+    }
+
+    @Test
+    public void testCompileModes() {
+        String programName = FilenameUtils.getBaseName(buildFilePath.toString());
+
+        gnuCompilerExecutable.setCompileMode(CompileMode.MODULE);
+        List<String> moduleCommand = gnuCompilerExecutable.getBuildCommand();
+        assertEquals("-m", moduleCommand.get(1));
+        assertEquals(outputDirectoryPath.resolve(programName + ".so").toString(),
+                moduleCommand.get(moduleCommand.indexOf("-o") + 1));
+
+        // Object files still contain the main function of the executable they are linked into
+        gnuCompilerExecutable.setCompileMode(CompileMode.OBJECT);
+        List<String> objectCommand = gnuCompilerExecutable.getBuildCommand();
+        assertEquals("-x", objectCommand.get(1));
+        assertEquals("-c", objectCommand.get(objectCommand.indexOf("-o") - 1));
+        assertEquals(outputDirectoryPath.resolve(programName + ".o"), gnuCompilerExecutable.getOutputFile());
+
+        assertFalse(new IbmEnterpriseCompilerExecutable(buildFilePath, outputDirectoryPath)
+                .supportsCompileMode(CompileMode.MODULE));
+    }
+
+    @Test
+    public void testStaticLinkCommand() {
+        Path calledBuildFilePath = tempDirectory.toPath().resolve("called.cbl");
+
+        List<String> command = gnuCompilerExecutable.getStaticLinkCommand(List.of(calledBuildFilePath));
+
+        // The main program precedes the programs it calls
+        assertEquals(List.of("-fstatic-call", "-o", gnuCompilerExecutable.getOutputFile().toString(),
+                buildFilePath.toString(), calledBuildFilePath.toString()), command.subList(command.size() - 5,
+                command.size()));
+        assertEquals("-x", command.get(1));
+    }
 }
@@ -1,5 +1,10 @@
 import de.livingmainframe.plugins.cobol.core.SourceCodeAnalysisResult;
 import de.livingmainframe.plugins.cobol.core.CobolSourceAnalyzer;
+import de.livingmainframe.plugins.cobol.core.CopybookDependencyGraph;
+import de.livingmainframe.plugins.cobol.core.CopybookIndex;
+import de.livingmainframe.plugins.cobol.core.CopybookUsageIndex;
+import de.livingmainframe.plugins.cobol.core.DependencyManifest;
+import de.livingmainframe.plugins.cobol.core.ProgramCallGraph;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -8,8 +13,13 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -112,4 +122,173 @@ public class CobolSourceAnalyzerTest {
         assertFalse(sourceDependencies.contains(copybookFiles.get(2)));
         assertEquals(2, sourceDependencies.size());
     }
+
+    @Test
+    public void testSharedCopybookIndex() throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(sourceFile))) {
+            writer.write("       COPY TESTCOPY\n");
+            writer.write("       COPY ANOTHER1\n");
+        } catch (IOException e) {
+            throw new IOException(String.format("Couldn't write to %s", sourceFile));
+        }
+
+        CopybookIndex copybookIndex = CopybookIndex.of(includeDirectories);
+        // another1.cpy exists twice but only the one from the first directory is indexed
+        assertEquals(2, copybookIndex.size());
+        assertEquals(copybookFiles.get(1), copybookIndex.find("ANOTHER1"));
+
+        // The same index can be used for any number of analyses
+        for (int i = 0; i < 2; i++) {
+            SourceCodeAnalysisResult analysisResult = new CobolSourceAnalyzer(sourceFile).analyzeSource(copybookIndex);
+            assertEquals(List.of(copybookFiles.get(0), copybookFiles.get(1)), analysisResult.getSourceDependencies());
+        }
+    }
+
+    @Test
+    public void testParallelAnalysisKeepsOrder() throws IOException {
+        List<File> sourceFiles = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            File parallelSourceFile = new File(testRootDirectory, String.format("prog%02d.cbl", i));
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(parallelSourceFile))) {
+                // Every other program uses a copybook, the others use Db2
+                writer.write(i % 2 == 0 ? "       COPY TESTCOPY\n" : "       EXEC SQL SELECT 1 END-EXEC\n");
+            }
+            sourceFiles.add(parallelSourceFile);
+        }
+
+        List<SourceCodeAnalysisResult> analysisResults = CobolSourceAnalyzer.analyzeSources(sourceFiles,
+                new CopybookDependencyGraph(CopybookIndex.of(includeDirectories)), 4);
+
+        assertEquals(sourceFiles.size(), analysisResults.size());
+        for (int i = 0; i < sourceFiles.size(); i++) {
+            assertEquals(i % 2 != 0, analysisResults.get(i).isDb2());
+            assertEquals(i % 2 == 0 ? List.of(copybookFiles.getFirst()) : List.of(),
+                    analysisResults.get(i).getSourceDependencies());
+        }
+    }
+
+    @Test
+    public void testTransitiveCopybookDependencies() throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(sourceFile))) {
+            writer.write("       COPY TESTCOPY\n");
+        }
+        // testcopy includes another1 (from the first directory), which includes testcopy again
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(copybookFiles.get(0)))) {
+            writer.write("       EXEC SQL INCLUDE ANOTHER1 END-EXEC\n");
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(copybookFiles.get(1)))) {
+            writer.write("       COPY TESTCOPY.\n");
+        }
+
+        CopybookDependencyGraph dependencyGraph = new CopybookDependencyGraph(CopybookIndex.of(includeDirectories));
+        SourceCodeAnalysisResult analysisResult = dependencyGraph.resolve(sourceFile);
+
+        assertEquals(List.of(copybookFiles.get(0), copybookFiles.get(1)), analysisResult.getSourceDependencies());
+        // The EXEC SQL statement only exists in the copybook, but the program still uses Db2
+        assertTrue(analysisResult.isDb2());
+        assertEquals(List.of(copybookFiles.get(1)), dependencyGraph.getCopybookDependencies(copybookFiles.get(0)));
+        assertEquals(1, dependencyGraph.getCycles().size());
+    }
+
+    @Test
+    public void testCycleIsReportedOnce() throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(sourceFile))) {
+            writer.write("       COPY TESTCOPY\n");
+        }
+        File secondSourceFile = new File(testRootDirectory, "second.cbl");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(secondSourceFile))) {
+            writer.write("       COPY ANOTHER1\n");
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(copybookFiles.get(0)))) {
+            writer.write("       COPY ANOTHER1.\n");
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(copybookFiles.get(1)))) {
+            writer.write("       COPY TESTCOPY.\n");
+        }
+
+        CopybookDependencyGraph dependencyGraph = new CopybookDependencyGraph(CopybookIndex.of(includeDirectories));
+        dependencyGraph.resolve(sourceFile);
+        dependencyGraph.resolve(secondSourceFile);
+
+        // Both programs enter the cycle through a different copybook, it starts with the smallest one either way
+        assertEquals(Set.of(List.of(copybookFiles.get(1), copybookFiles.get(0))), dependencyGraph.getCycles());
+    }
+
+    @Test
+    public void testReuseScanResultsAndManifest() throws IOException {
+        // The source file is empty, the result of a previous scan is used instead of reading it
+        CopybookDependencyGraph dependencyGraph = new CopybookDependencyGraph(CopybookIndex.of(includeDirectories));
+        dependencyGraph.addAnalysisResult(sourceFile, true, false, List.of("TESTCOPY"));
+        SourceCodeAnalysisResult analysisResult = dependencyGraph.resolve(sourceFile);
+
+        assertTrue(analysisResult.isDb2());
+        assertEquals(List.of(copybookFiles.get(0)), analysisResult.getSourceDependencies());
+
+        Path projectDirectory = testRootDirectory.toPath();
+        String copybookPath = DependencyManifest.toManifestPath(projectDirectory, copybookFiles.get(0));
+        File manifestFile = new File(testRootDirectory, "dependencies.tsv");
+        new DependencyManifest(List.of(new DependencyManifest.Program("src/PROG1.cbl", true, false,
+                List.of(copybookPath)))).write(manifestFile);
+        DependencyManifest.Program program = DependencyManifest.read(manifestFile).getProgram("src/PROG1.cbl");
+
+        assertNotNull(program);
+        assertTrue(program.db2());
+        assertFalse(program.cics());
+        assertEquals(copybookFiles.get(0), DependencyManifest.fromManifestPath(projectDirectory,
+                program.sourceDependencies().get(0)));
+    }
+
+    @Test
+    public void testProgramCharsetAppliesToCopybooks() throws IOException {
+        Charset ebcdic = Charset.forName("IBM-1047");
+        Files.write(sourceFile.toPath(), "       COPY TESTCOPY.\n".getBytes(ebcdic));
+        Files.write(copybookFiles.get(0).toPath(), "           EXEC SQL SELECT 1 END-EXEC.\n".getBytes(ebcdic));
+
+        CopybookDependencyGraph dependencyGraph = new CopybookDependencyGraph(CopybookIndex.of(includeDirectories),
+                StandardCharsets.UTF_8);
+        SourceCodeAnalysisResult analysisResult = dependencyGraph.resolve(sourceFile, ebcdic);
+
+        assertEquals(List.of(copybookFiles.get(0)), analysisResult.getSourceDependencies());
+        assertTrue(analysisResult.isDb2());
+        // The scans of the charset of the graph aren't affected
+        assertFalse(dependencyGraph.resolve(copybookFiles.get(0)).isDb2());
+    }
+
+    @Test
+    public void testCopybookUsageIndex() throws IOException {
+        CopybookUsageIndex usageIndex = CopybookUsageIndex.of(List.of(
+                new DependencyManifest.Program("src/PROG1.cbl", true, false, List.of("copy/A.cpy", "copy/B.cpy")),
+                new DependencyManifest.Program("src/PROG2.cbl", false, true, List.of("copy/B.cpy"))));
+        File indexFile = new File(testRootDirectory, "copybook-usage.bin");
+        usageIndex.write(indexFile);
+        CopybookUsageIndex readUsageIndex = CopybookUsageIndex.read(indexFile);
+
+        assertEquals(Set.of("src/PROG1.cbl"), readUsageIndex.getPrograms("copy/A.cpy"));
+        assertEquals(Set.of("src/PROG1.cbl", "src/PROG2.cbl"), readUsageIndex.getPrograms("copy/B.cpy"));
+        assertTrue(readUsageIndex.getPrograms("copy/C.cpy").isEmpty());
+        assertEquals(usageIndex.getProgram("src/PROG2.cbl"), readUsageIndex.getProgram("src/PROG2.cbl"));
+    }
+
+    @Test
+    public void testProgramCallGraph() throws IOException {
+        File manifestFile = new File(testRootDirectory, "dependencies.tsv");
+        new DependencyManifest(List.of(
+                new DependencyManifest.Program("src/PAYROLL.cbl", false, false, List.of("TAXCALC", "CBL_TOUPPER"),
+                        List.of()),
+                new DependencyManifest.Program("src/TAXCALC.cbl", true, false, List.of("payroll", "RATES"),
+                        List.of("copy/A.cpy")),
+                new DependencyManifest.Program("src/RATES.cbl", false, false, List.of(), List.of()),
+                new DependencyManifest.Program("src/INVOICE.cbl", false, false, List.of("RATES"), List.of())))
+                .write(manifestFile);
+        ProgramCallGraph callGraph = new ProgramCallGraph(DependencyManifest.read(manifestFile));
+
+        // Recursive calls are only followed once, calls of programs outside of the project can't be followed
+        List<DependencyManifest.Program> callTree = callGraph.getCallTree("payroll");
+        assertEquals(List.of("src/PAYROLL.cbl", "src/TAXCALC.cbl", "src/RATES.cbl"),
+                callTree.stream().map(DependencyManifest.Program::path).toList());
+        assertEquals(List.of("copy/A.cpy"), callTree.get(1).sourceDependencies());
+        assertEquals(Set.of("CBL_TOUPPER"), callGraph.getUnresolvedCalls(callTree));
+        assertEquals(List.of("src/INVOICE.cbl", "src/RATES.cbl"), callGraph.getReachablePrograms(List.of("INVOICE",
+                "UNKNOWN")).stream().map(DependencyManifest.Program::path).toList());
+    }
 }
@@ -0,0 +1,76 @@
+import de.livingmainframe.plugins.cobol.core.CobolSourceNormalizer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CobolSourceNormalizerTest {
+
+    private static String hash(Charset charset, String... lines) {
+        return CobolSourceNormalizer.hash(String.join("\n", lines).getBytes(charset), charset);
+    }
+
+    private static String hash(String... lines) {
+        return hash(StandardCharsets.US_ASCII, lines);
+    }
+
+    @Test
+    public void testSequenceAndIdentificationArea() {
+        String original = hash("000100 IDENTIFICATION DIVISION.",
+                "000200 PROGRAM-ID. TEST1.                                                 V1");
+        String renumbered = hash("001000 IDENTIFICATION DIVISION.   ",
+                "001010 PROGRAM-ID. TEST1.                                                 V2\r");
+
+        assertEquals(original, renumbered);
+    }
+
+    @Test
+    public void testCommentLines() {
+        String original = hash("000100* OLD COMMENT", "000200 PROGRAM-ID. TEST1.");
+        String changedComment = hash("000100/ A NEW AND LONGER COMMENT", "000200 PROGRAM-ID. TEST1.");
+        String changedCode = hash("000100* OLD COMMENT", "000200 PROGRAM-ID. TEST2.");
+        String insertedComment = hash("000100* OLD COMMENT", "000150* NEW COMMENT", "000200 PROGRAM-ID. TEST1.");
+
+        assertEquals(original, changedComment);
+        assertNotEquals(original, changedCode);
+        // The line numbers of the following lines change, which is visible in the listings of the compiler
+        assertNotEquals(original, insertedComment);
+    }
+
+    @Test
+    public void testEbcdic() {
+        Charset ebcdic = Charset.forName("IBM1047");
+        String[] lines = {"000100 PROGRAM-ID. TEST1.", "000200* COMMENT"};
+
+        assertEquals(hash(ebcdic, lines), hash(ebcdic, "999999 PROGRAM-ID. TEST1.", "999999* OTHER"));
+        assertNotEquals(hash(ebcdic, lines), hash(ebcdic, "000100 PROGRAM-ID. TEST2.", "000200* COMMENT"));
+    }
+
+    @Test
+    public void testFreeFormatIsHashedByteByByte() {
+        // In free format the first six columns contain code
+        String original = hash("      >>SOURCE FORMAT IS FREE", "MOVE 1 TO A.");
+        String changedCode = hash("      >>SOURCE FORMAT IS FREE", "MOVE 2 TO A.");
+        assertNotEquals(original, changedCode);
+        assertTrue(original.startsWith(CobolSourceNormalizer.BYTES_PREFIX));
+        assertNotEquals(hash("       $SET SOURCEFORMAT\"FREE\"", "ADD 1 TO B."),
+                hash("       $set sourceformat\"free\"", "ADD 2 TO B."));
+        assertFalse(hash("000100 PROGRAM-ID. TEST1.").startsWith(CobolSourceNormalizer.BYTES_PREFIX));
+    }
+
+    @Test
+    public void testFixedFormatOptions() {
+        assertTrue(CobolSourceNormalizer.isFixedFormat(List.of("-x", "-std=ibm")));
+        assertTrue(CobolSourceNormalizer.isFixedFormat(List.of("-fformat=fixed")));
+        assertFalse(CobolSourceNormalizer.isFixedFormat(List.of("-free")));
+        assertFalse(CobolSourceNormalizer.isFixedFormat(List.of("-F")));
+        assertFalse(CobolSourceNormalizer.isFixedFormat(List.of("-fformat=variable")));
+        assertFalse(CobolSourceNormalizer.isFixedFormat(List.of("-fformat", "free")));
+    }
+}
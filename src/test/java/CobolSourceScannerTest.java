@@ -0,0 +1,128 @@
+import de.livingmainframe.plugins.cobol.core.CobolSourceScanner;
+import de.livingmainframe.plugins.cobol.core.SourceCodeAnalysisResult;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CobolSourceScannerTest {
+
+    private final SourceCodeAnalysisResult analysisResult = new SourceCodeAnalysisResult();
+    private final List<String> includeNames = new ArrayList<>();
+
+    private void scan(String... lines) {
+        String source = String.join("\n", lines);
+        new CobolSourceScanner(true, true).scan(ByteBuffer.wrap(source.getBytes(StandardCharsets.US_ASCII)),
+                analysisResult, includeNames);
+    }
+
+    @Test
+    public void testSequenceAndIdentificationArea() {
+        scan("000100 COPY FIRST.                                                      COPY X",
+                "COPY01 copy second",
+                "000300*COPY THIRD",
+                "000400/COPY FOURTH");
+
+        // Neither the sequence number area nor the identification area or comment lines contain statements
+        assertEquals(List.of("FIRST", "second"), includeNames);
+    }
+
+    @Test
+    public void testMultiLineExecSqlInclude() {
+        scan("       EXEC SQL",
+                "      * The name of the include is on the next line",
+                "           INCLUDE",
+                "             DCLTAB1",
+                "       END-EXEC.",
+                "       EXEC SQL INCLUDE DCLTAB2 END-EXEC.");
+
+        assertEquals(List.of("DCLTAB1", "DCLTAB2"), includeNames);
+        assertTrue(analysisResult.isDb2());
+        assertFalse(analysisResult.isCics());
+    }
+
+    @Test
+    public void testLiteralsAndInlineComments() {
+        scan("       DISPLAY 'COPY NOTACOPY' \"EXEC CICS\".",
+                "       MOVE 1 TO X *> COPY NOTACOPY",
+                "       COPY 'LITCOPY'.",
+                "       EXEC CICS RETURN END-EXEC.");
+
+        assertEquals(List.of("LITCOPY"), includeNames);
+        assertTrue(analysisResult.isCics());
+        assertFalse(analysisResult.isDb2());
+    }
+
+    @Test
+    public void testContinuationLines() {
+        scan("       COPY LONGCOPY",
+                "      -        BOOK.",
+                "       DISPLAY 'CONTINUED COPY",
+                "      -    ' NOTACOPY'.");
+
+        assertEquals(List.of("LONGCOPYBOOK"), includeNames);
+    }
+
+    @Test
+    public void testStaticCalls() {
+        scan("       CALL 'SUBPROG1' USING WS-AREA.",
+                "       CALL WS-PROGRAM-NAME.",
+                "       CALL",
+                "           \"subprog2\".",
+                "      *CALL 'NOTACALL'",
+                "       DISPLAY 'CALL NOTACALL'.",
+                "       CALL 'SUBPROG1'.",
+                "       CALL 'NOT A PROGRAM'.");
+
+        // Calls through an identifier are resolved when the program runs and aren't static
+        assertEquals(List.of("SUBPROG1", "subprog2"), analysisResult.getCalledPrograms());
+        assertTrue(includeNames.isEmpty());
+    }
+
+    @Test
+    public void testNameLength() {
+        scan("       COPY ABCDEFGH.",
+                "       COPY ABCDEFGHI.",
+                "       COPY ABCDEFGHIJKLMNOPQRSTUVWXYZ0123.",
+                "       COPY ABCDEFGHIJKLMNOPQRSTUVWXYZ01234.",
+                "       CALL 'PROGRAMA'.",
+                "       CALL 'PROGRAMAB'.",
+                "       CALL 'PROGRAMABCDEFGHIJKLMNOPQRSTUVW'.",
+                "       CALL 'PROGRAMABCDEFGHIJKLMNOPQRSTUVWX'.");
+
+        // Names of up to 30 characters are recognized, not only the 8 characters of a z/OS member name
+        assertEquals(List.of("ABCDEFGH", "ABCDEFGHI", "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123"), includeNames);
+        assertEquals(List.of("PROGRAMA", "PROGRAMAB", "PROGRAMABCDEFGHIJKLMNOPQRSTUVW"),
+                analysisResult.getCalledPrograms());
+    }
+
+    @Test
+    public void testEbcdicSource() {
+        // z/OS sources use NEL as the line terminator in IBM-1047
+        String source = String.join("\u0085",
+                "       COPY EBCDIC1.",
+                "      *COPY NOTACOPY",
+                "       EXEC SQL INCLUDE EBCDIC2 END-EXEC.");
+        Charset ibm1047 = Charset.forName("IBM-1047");
+
+        new CobolSourceScanner(true, true, ibm1047).scan(ByteBuffer.wrap(source.getBytes(ibm1047)), analysisResult,
+                includeNames);
+
+        assertEquals(List.of("EBCDIC1", "EBCDIC2"), includeNames);
+        assertTrue(analysisResult.isDb2());
+    }
+
+    @Test
+    public void testByteScanningSupport() {
+        assertTrue(CobolSourceScanner.supportsByteScanning(StandardCharsets.UTF_8));
+        assertTrue(CobolSourceScanner.supportsByteScanning(Charset.forName("IBM-037")));
+        assertFalse(CobolSourceScanner.supportsByteScanning(StandardCharsets.UTF_16));
+    }
+}
@@ -0,0 +1,118 @@
+import de.livingmainframe.plugins.cobol.core.compiler.CompileAdmissionQueue;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every compile is admitted from its own thread. The test waits until the compiles are queued before it lets the
+ * running compile finish, so the queue decides the order. Failures of the threads are rethrown once they finished.
+ */
+public class CompileAdmissionQueueTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+    private void compile(CompileAdmissionQueue queue, String name, long duration, long memory,
+                         List<String> admitted, CountDownLatch finish) {
+        Thread thread = new Thread(() -> {
+            try (CompileAdmissionQueue.Admission admission = queue.admit(name, duration, memory)) {
+                admitted.add(name);
+                assertTrue(finish.await(10, TimeUnit.SECONDS), String.format("%s wasn't finished", name));
+                assertTrue(admission.getWaitTime() >= 0);
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        thread.start();
+        threads.add(thread);
+    }
+
+    private void joinCompiles() throws Throwable {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Throwable failure = failures.poll();
+        if (failure != null) {
+            failures.forEach(failure::addSuppressed);
+            throw failure;
+        }
+    }
+
+    private static void awaitQueue(CompileAdmissionQueue queue, int waiting, int running) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (queue.getWaiting() != waiting || queue.getRunning() != running) {
+            assertTrue(System.nanoTime() < deadline, String.format("%d waiting and %d running compiles expected, " +
+                    "but %d wait and %d run", waiting, running, queue.getWaiting(), queue.getRunning()));
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testLongestCompileStartsFirst() throws Throwable {
+        CompileAdmissionQueue queue = new CompileAdmissionQueue(1, null);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finish = new CountDownLatch(0);
+
+        CompileAdmissionQueue.Admission running = queue.admit("RUNNING", 1, MB);
+        compile(queue, "SHORT", 1_000, MB, admitted, finish);
+        awaitQueue(queue, 1, 1);
+        compile(queue, "LONG", 3_000, MB, admitted, finish);
+        awaitQueue(queue, 2, 1);
+        compile(queue, "MEDIUM", 2_000, MB, admitted, finish);
+        awaitQueue(queue, 3, 1);
+        compile(queue, "SECOND_SHORT", 1_000, MB, admitted, finish);
+        awaitQueue(queue, 4, 1);
+        assertEquals(List.of(), admitted);
+
+        running.close();
+        // Closing twice doesn't admit another compile
+        running.close();
+        joinCompiles();
+        // Compiles of the same duration start in the order they arrived
+        assertEquals(List.of("LONG", "MEDIUM", "SHORT", "SECOND_SHORT"), admitted);
+        assertEquals(0, queue.getRunning());
+    }
+
+    @Test
+    public void testMemoryBudget() throws Throwable {
+        CompileAdmissionQueue queue = new CompileAdmissionQueue(1, 100 * MB);
+        assertTrue(queue.isMemoryLimited());
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finish = new CountDownLatch(1);
+
+        // Two compiles run at the same time despite maxParallelCompiles, as they fit into the budget
+        CompileAdmissionQueue.Admission first = queue.admit("FIRST", 1, 40 * MB);
+        CompileAdmissionQueue.Admission second = queue.admit("SECOND", 1, 20 * MB);
+        compile(queue, "LARGE", 3_000, 50 * MB, admitted, finish);
+        awaitQueue(queue, 1, 2);
+        // The small compile would fit, but doesn't overtake the longer one that waits for memory
+        compile(queue, "SMALL", 1_000, 10 * MB, admitted, finish);
+        awaitQueue(queue, 2, 2);
+
+        // With 20 MB in use, the large and the small compile fit
+        first.close();
+        awaitQueue(queue, 0, 3);
+        assertEquals(List.of("LARGE", "SMALL"), admitted);
+        second.close();
+        finish.countDown();
+        joinCompiles();
+
+        // A single compile always runs, even if it exceeds the budget
+        try (CompileAdmissionQueue.Admission huge = queue.admit("HUGE", 1, 200 * MB)) {
+            assertEquals(1, queue.getRunning());
+            assertTrue(huge.getWaitTime() >= 0);
+        }
+        assertEquals(0, queue.getRunning());
+    }
+}
@@ -0,0 +1,129 @@
+import de.livingmainframe.plugins.cobol.core.compiler.CompileCostModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompileCostModelTest {
+
+    @TempDir
+    Path tempDirectory;
+
+    @Test
+    public void testEstimateWork() {
+        long plain = CompileCostModel.estimateWork(10_000, 0, 0, false, false);
+        assertEquals(10_000, plain);
+        assertTrue(CompileCostModel.estimateWork(10_000, 5, 20_000, false, false) > plain);
+        assertTrue(CompileCostModel.estimateWork(10_000, 0, 0, true, false) > plain);
+        assertTrue(CompileCostModel.estimateWork(10_000, 0, 0, true, true) >
+                CompileCostModel.estimateWork(10_000, 0, 0, true, false));
+        assertTrue(CompileCostModel.estimateMemory(20_000) > CompileCostModel.estimateMemory(10_000));
+    }
+
+    @Test
+    public void testEstimateDurationFromHistory() {
+        CompileCostModel costModel = new CompileCostModel();
+        assertEquals(1_000 * CompileCostModel.DEFAULT_NANOS_PER_UNIT, costModel.estimateDuration(":",
+                "src/cobol/NEW.cbl", CompileCostModel.COMPILE, 1_000));
+
+        costModel.record(":", "src/cobol/HELLO.cbl", CompileCostModel.COMPILE, 1_000, 3_000_000);
+        costModel.record(":", "src/cobol/PAYROLL.cbl", CompileCostModel.COMPILE, 3_000, 5_000_000);
+        // A recorded program is estimated by its duration, any other by the average duration per unit of work
+        assertEquals(3_000_000, costModel.estimateDuration(":", "src/cobol/HELLO.cbl",
+                CompileCostModel.COMPILE, 10_000));
+        assertEquals(4_000_000, costModel.estimateDuration(":", "src/cobol/NEW.cbl",
+                CompileCostModel.COMPILE, 2_000));
+
+        // A new duration replaces the previous one
+        costModel.record(":", "src/cobol/HELLO.cbl", CompileCostModel.COMPILE, 1_000, 1_000_000);
+        assertEquals(1_000_000, costModel.estimateDuration(":", "src/cobol/HELLO.cbl",
+                CompileCostModel.COMPILE, 1_000));
+        assertEquals(3_000_000, costModel.estimateDuration(":", "src/cobol/NEW.cbl",
+                CompileCostModel.COMPILE, 2_000));
+    }
+
+    @Test
+    public void testReadAndWrite() throws IOException {
+        File historyFile = tempDirectory.resolve(".gradle/cobol/compile-history.tsv").toFile();
+        CompileCostModel costModel = CompileCostModel.read(historyFile);
+        costModel.record(":app", "src/cobol/HELLO.cbl", CompileCostModel.COMPILE, 1_000, 3_000_000);
+        costModel.write(historyFile);
+        Files.writeString(historyFile.toPath(), "not a compile\n:\tsrc/cobol/BAD.cbl\tcompile\tx\t1\t0\n",
+                StandardOpenOption.APPEND);
+
+        CompileCostModel readCostModel = CompileCostModel.read(historyFile);
+        assertEquals(3_000_000, readCostModel.estimateDuration(":app", "src/cobol/HELLO.cbl",
+                CompileCostModel.COMPILE, 1));
+        assertEquals(3_000.0, readCostModel.getNanosPerUnit(CompileCostModel.COMPILE));
+    }
+
+    @Test
+    public void testStagesAreRecordedSeparately() {
+        CompileCostModel costModel = new CompileCostModel();
+        costModel.record(":", "src/cobol/HELLO.cbl", CompileCostModel.TRANSLATE, 1_000, 1_000_000);
+        costModel.record(":", "src/cobol/HELLO.cbl", CompileCostModel.COMPILE_TRANSLATED, 1_000, 4_000_000);
+
+        assertEquals(1_000_000, costModel.estimateDuration(":", "src/cobol/HELLO.cbl", CompileCostModel.TRANSLATE,
+                1_000));
+        assertEquals(4_000_000, costModel.estimateDuration(":", "src/cobol/HELLO.cbl",
+                CompileCostModel.COMPILE_TRANSLATED, 1_000));
+        assertEquals(1_000.0, costModel.getNanosPerUnit(CompileCostModel.TRANSLATE));
+        assertEquals((double) CompileCostModel.DEFAULT_NANOS_PER_UNIT,
+                costModel.getNanosPerUnit(CompileCostModel.COMPILE));
+    }
+
+    @Test
+    public void testOrderLongestFirst() {
+        CompileCostModel costModel = new CompileCostModel();
+        costModel.record(":", "src/cobol/SLOW.cbl", CompileCostModel.COMPILE, 1_000, 64_000_000);
+        costModel.record(":", "src/cobol/FAST.cbl", CompileCostModel.COMPILE, 100_000, 1_000_000);
+        // Durations of the same binary order of magnitude are ordered by the manifest path
+        costModel.record(":", "src/cobol/B.cbl", CompileCostModel.COMPILE, 1_000, 9_000_000);
+        costModel.record(":", "src/cobol/A.cbl", CompileCostModel.COMPILE, 1_000, 8_500_000);
+        Map<String, Long> work = new LinkedHashMap<>();
+        for (String program : List.of("src/cobol/FAST.cbl", "src/cobol/B.cbl", "src/cobol/A.cbl",
+                "src/cobol/SLOW.cbl", "src/cobol/NEW.cbl")) {
+            work.put(program, 1_000L);
+        }
+
+        // The new program is estimated by its work and the average duration per unit, like the fast one about 0.8 ms
+        assertEquals(List.of("src/cobol/SLOW.cbl", "src/cobol/A.cbl", "src/cobol/B.cbl", "src/cobol/FAST.cbl",
+                "src/cobol/NEW.cbl"), costModel.orderLongestFirst(":", CompileCostModel.COMPILE, work));
+        // Programs of other projects and stages aren't taken into account
+        assertEquals(List.of("src/cobol/A.cbl", "src/cobol/SLOW.cbl"), costModel.orderLongestFirst(":other",
+                CompileCostModel.COMPILE, Map.of("src/cobol/SLOW.cbl", 1L, "src/cobol/A.cbl", 1L)));
+    }
+
+    @Test
+    public void testOrderIgnoresVarianceOfDurations() throws IOException {
+        CompileCostModel costModel = new CompileCostModel();
+        Map<String, Long> work = Map.of("src/cobol/HELLO.cbl", 1L, "src/cobol/PAYROLL.cbl", 1L);
+        costModel.record(":", "src/cobol/HELLO.cbl", CompileCostModel.COMPILE, 1, 10_000_000);
+        costModel.record(":", "src/cobol/PAYROLL.cbl", CompileCostModel.COMPILE, 1, 17_000_000);
+        assertEquals(List.of("src/cobol/PAYROLL.cbl", "src/cobol/HELLO.cbl"),
+                costModel.orderLongestFirst(":", CompileCostModel.COMPILE, work));
+
+        // Both programs take about as long as before, which doesn't change the order
+        costModel.record(":", "src/cobol/HELLO.cbl", CompileCostModel.COMPILE, 1, 18_000_000);
+        costModel.record(":", "src/cobol/PAYROLL.cbl", CompileCostModel.COMPILE, 1, 9_000_000);
+        assertEquals(List.of("src/cobol/PAYROLL.cbl", "src/cobol/HELLO.cbl"),
+                costModel.orderLongestFirst(":", CompileCostModel.COMPILE, work));
+
+        // A program that takes more than twice as long as before moves ahead, also after the history is read again
+        costModel.record(":", "src/cobol/HELLO.cbl", CompileCostModel.COMPILE, 1, 40_000_000);
+        File historyFile = tempDirectory.resolve("compile-history.tsv").toFile();
+        costModel.write(historyFile);
+        assertEquals(List.of("src/cobol/HELLO.cbl", "src/cobol/PAYROLL.cbl"),
+                CompileCostModel.read(historyFile).orderLongestFirst(":", CompileCostModel.COMPILE, work));
+    }
+}
@@ -0,0 +1,97 @@
+import de.livingmainframe.plugins.cobol.core.compiler.CompileResultCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompileResultCacheTest {
+
+    @TempDir
+    Path tempDirectory;
+
+    private String computeKey(String preprocessedSource, List<String> compilerOptions) throws IOException {
+        return computeKey(preprocessedSource, compilerOptions, Map.of());
+    }
+
+    private String computeKey(String preprocessedSource, List<String> compilerOptions,
+                              Map<String, String> environmentVariables) throws IOException {
+        Path preprocessedFile = Files.writeString(tempDirectory.resolve("program.i"), preprocessedSource);
+        return CompileResultCache.computeKey(preprocessedFile, compilerOptions, environmentVariables,
+                "cobc (GnuCOBOL) 3.2.0");
+    }
+
+    @Test
+    public void testKeyIgnoresDirectoriesOfLineDirectives() throws IOException {
+        String key = computeKey("#line 1 \"/home/first/src/cobol/HELLO.cbl\"\n       PROGRAM-ID. HELLO.\n",
+                List.of("cobc", "-x"));
+
+        // The same program expanded in a different checkout
+        assertEquals(key, computeKey("#line 1 \"/home/second/src/cobol/HELLO.cbl\"\n       PROGRAM-ID. HELLO.\n",
+                List.of("cobc", "-x")));
+        assertNotEquals(key, computeKey("#line 1 \"/home/first/src/cobol/HELLO.cbl\"\n       PROGRAM-ID. WORLD.\n",
+                List.of("cobc", "-x")));
+        assertNotEquals(key, computeKey("#line 1 \"/home/first/src/cobol/HELLO.cbl\"\n       PROGRAM-ID. HELLO.\n",
+                List.of("cobc", "-x", "-O2")));
+    }
+
+    @Test
+    public void testKeyDependsOnEnvironmentVariables() throws IOException {
+        String key = computeKey("       PROGRAM-ID. HELLO.\n", List.of("cobc", "-x"),
+                Map.of("COB_CFLAGS", "-O0", "COB_LDFLAGS", "-lm"));
+
+        // The order in which the variables were configured doesn't matter
+        LinkedHashMap<String, String> reordered = new LinkedHashMap<>();
+        reordered.put("COB_LDFLAGS", "-lm");
+        reordered.put("COB_CFLAGS", "-O0");
+        assertEquals(key, computeKey("       PROGRAM-ID. HELLO.\n", List.of("cobc", "-x"), reordered));
+        assertNotEquals(key, computeKey("       PROGRAM-ID. HELLO.\n", List.of("cobc", "-x"),
+                Map.of("COB_CFLAGS", "-O2", "COB_LDFLAGS", "-lm")));
+        assertNotEquals(key, computeKey("       PROGRAM-ID. HELLO.\n", List.of("cobc", "-x"),
+                Map.of("COB_CFLAGS", "-O0")));
+    }
+
+    @Test
+    public void testStoreAndRestore() throws IOException {
+        CompileResultCache cache = new CompileResultCache(tempDirectory.resolve("cache"));
+        Path outputFile = Files.writeString(tempDirectory.resolve("HELLO"), "compiled");
+        Path logFile = Files.writeString(tempDirectory.resolve("HELLO.log"), "warning");
+        String key = computeKey("       PROGRAM-ID. HELLO.\n", List.of("cobc"));
+
+        assertFalse(cache.restore(key, tempDirectory.resolve("restored/HELLO"), tempDirectory.resolve("restored.log")));
+        cache.store(key, outputFile, logFile);
+
+        assertTrue(cache.restore(key, tempDirectory.resolve("restored/HELLO"), tempDirectory.resolve("restored.log")));
+        assertEquals("compiled", Files.readString(tempDirectory.resolve("restored/HELLO")));
+        assertEquals("warning", Files.readString(tempDirectory.resolve("restored.log")));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws IOException {
+        Path cacheDirectory = tempDirectory.resolve("cache");
+        CompileResultCache cache = new CompileResultCache(cacheDirectory);
+        Path logFile = Files.writeString(tempDirectory.resolve("empty.log"), "");
+        String oldKey = computeKey("OLD", List.of());
+        String newKey = computeKey("NEW", List.of());
+        cache.store(oldKey, Files.write(tempDirectory.resolve("OLD"), new byte[100]), logFile);
+        cache.store(newKey, Files.write(tempDirectory.resolve("NEW"), new byte[100]), logFile);
+        Files.setLastModifiedTime(cacheDirectory.resolve(oldKey.substring(0, 2)).resolve(oldKey),
+                FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        assertEquals(0L, cache.evict(200));
+        assertEquals(100L, cache.evict(150));
+
+        assertFalse(cache.restore(oldKey, tempDirectory.resolve("restored"), tempDirectory.resolve("restored.log")));
+        assertTrue(cache.restore(newKey, tempDirectory.resolve("restored"), tempDirectory.resolve("restored.log")));
+    }
+}
@@ -0,0 +1,67 @@
+import de.livingmainframe.plugins.cobol.core.compiler.CompilerDiagnostic;
+import de.livingmainframe.plugins.cobol.core.compiler.CompilerOutputCapture;
+import org.gradle.api.problems.Severity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class CompilerOutputCaptureTest {
+
+    @TempDir
+    public File tempDirectory;
+
+    @Test
+    public void testParseDiagnostics() {
+        CompilerDiagnostic gnuDiagnostic = CompilerDiagnostic.parse("src/cobol/hello.cbl:12: error: 'X' is not " +
+                "defined");
+        assertNotNull(gnuDiagnostic);
+        assertEquals("src/cobol/hello.cbl", gnuDiagnostic.file());
+        assertEquals(12, gnuDiagnostic.line());
+        assertEquals(Severity.ERROR, gnuDiagnostic.severity());
+
+        CompilerDiagnostic ibmDiagnostic = CompilerDiagnostic.parse("\"HELLO.cbl\", line 7.12: IGYPS2121-S \"X\" " +
+                "was not defined as a data-name.");
+        assertNotNull(ibmDiagnostic);
+        assertEquals(7, ibmDiagnostic.line());
+        assertEquals("IGYPS2121", ibmDiagnostic.code());
+        assertEquals(Severity.ERROR, ibmDiagnostic.severity());
+
+        CompilerDiagnostic listingDiagnostic = CompilerDiagnostic.parse("    15  IGYDS1089-W   \"Y\" was " +
+                "truncated.");
+        assertNotNull(listingDiagnostic);
+        assertNull(listingDiagnostic.file());
+        assertEquals(Severity.WARNING, listingDiagnostic.severity());
+
+        assertNull(CompilerDiagnostic.parse("hello.cbl: in paragraph 'MAIN':"));
+    }
+
+    @Test
+    public void testCaptureWritesLogAndBoundsLines() throws IOException {
+        File logFile = new File(tempDirectory, "hello.log");
+        String longLine = "x".repeat(CompilerOutputCapture.MAX_LINE_LENGTH * 3);
+        String output = "hello.cbl:3: warning: unused\n" + longLine + "\nhello.cbl:4: error: broken\n";
+
+        CompilerOutputCapture capture = new CompilerOutputCapture(logFile, StandardCharsets.UTF_8);
+        try (capture) {
+            // Write in small chunks, as the process output arrives
+            byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < bytes.length; i += 100) {
+                capture.getErrorOutput().write(bytes, i, Math.min(100, bytes.length - i));
+            }
+        }
+
+        assertEquals(output, Files.readString(logFile.toPath()));
+        assertEquals(output.length(), capture.getOutputSize());
+        assertEquals(1, capture.getErrors());
+        assertEquals(1, capture.getWarnings());
+        assertEquals(2, capture.getDiagnostics().size());
+    }
+}
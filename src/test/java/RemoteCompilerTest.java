@@ -0,0 +1,124 @@
+import de.livingmainframe.plugins.cobol.core.compiler.RemoteCompiler;
+import de.livingmainframe.plugins.cobol.core.compiler.ShellCompileTransport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the remote compiler against a local shell, which stands in for the remote machine. The "compiler" concatenates
+ * the program and its copybook into the output file.
+ */
+public class RemoteCompilerTest {
+
+    @TempDir
+    Path tempDirectory;
+
+    private int compile(RemoteCompiler remoteCompiler, ByteArrayOutputStream output) throws IOException {
+        return remoteCompiler.compile(
+                Map.of("src/cobol/HELLO.cbl", tempDirectory.resolve("HELLO.cbl"),
+                        "src/copy/CUSTREC.cpy", tempDirectory.resolve("CUSTREC.cpy")),
+                List.of("sh", "-c", "echo \"compiling $PROGRAM\" && cat src/cobol/HELLO.cbl src/copy/CUSTREC.cpy " +
+                        "> build/HELLO/HELLO"),
+                Map.of("PROGRAM", "HELLO's"), output,
+                Map.of("build/HELLO/HELLO", tempDirectory.resolve("output/HELLO")));
+    }
+
+    @Test
+    public void testCompileTransfersOnlyChangedFiles() throws IOException {
+        Path workspace = tempDirectory.resolve("workspace");
+        Files.writeString(tempDirectory.resolve("HELLO.cbl"), "       PROGRAM-ID. HELLO.\n");
+        Files.writeString(tempDirectory.resolve("CUSTREC.cpy"), "       01 CUSTREC.\n");
+
+        try (RemoteCompiler remoteCompiler = new RemoteCompiler(() -> ShellCompileTransport.loopback(workspace), 2)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertEquals(0, compile(remoteCompiler, output));
+            assertEquals("compiling HELLO's\n", output.toString(StandardCharsets.UTF_8));
+            assertEquals("       PROGRAM-ID. HELLO.\n       01 CUSTREC.\n",
+                    Files.readString(tempDirectory.resolve("output/HELLO")));
+            assertEquals(2, remoteCompiler.getTransferredFiles());
+
+            // The session is reused and the workspace already contains both files
+            assertEquals(0, compile(remoteCompiler, new ByteArrayOutputStream()));
+            assertEquals(2, remoteCompiler.getTransferredFiles());
+        }
+
+        // The next build reads the index of the workspace and only transfers the changed copybook
+        Files.writeString(tempDirectory.resolve("CUSTREC.cpy"), "       01 CUSTREC PIC X.\n");
+        try (RemoteCompiler remoteCompiler = new RemoteCompiler(() -> ShellCompileTransport.loopback(workspace), 2)) {
+            assertEquals(0, compile(remoteCompiler, new ByteArrayOutputStream()));
+            assertEquals(1, remoteCompiler.getTransferredFiles());
+            assertEquals("       PROGRAM-ID. HELLO.\n       01 CUSTREC PIC X.\n",
+                    Files.readString(tempDirectory.resolve("output/HELLO")));
+        }
+    }
+
+    @Test
+    public void testRemovedCopybookIsDeletedFromWorkspace() throws IOException {
+        Path workspace = tempDirectory.resolve("workspace");
+        Files.writeString(tempDirectory.resolve("HELLO.cbl"), "       PROGRAM-ID. HELLO.\n");
+        Files.writeString(tempDirectory.resolve("CUSTREC.cpy"), "       01 CUSTREC.\n");
+        Files.writeString(tempDirectory.resolve("ADDRREC.cpy"), "       01 ADDRREC.\n");
+
+        try (RemoteCompiler remoteCompiler = new RemoteCompiler(() -> ShellCompileTransport.loopback(workspace), 1)) {
+            assertEquals(0, remoteCompiler.compile(Map.of("src/copy/ADDRREC.cpy", tempDirectory.resolve("ADDRREC.cpy")),
+                    List.of("true"), Map.of(), new ByteArrayOutputStream(), Map.of()));
+        }
+        assertTrue(Files.isRegularFile(workspace.resolve("src/copy/ADDRREC.cpy")));
+
+        // The copybook is removed locally, the next build deletes it from the workspace and its index
+        Files.delete(tempDirectory.resolve("ADDRREC.cpy"));
+        try (RemoteCompiler remoteCompiler = new RemoteCompiler(() -> ShellCompileTransport.loopback(workspace), 1)) {
+            assertEquals(0, compile(remoteCompiler, new ByteArrayOutputStream()));
+            assertEquals(2, remoteCompiler.getTransferredFiles());
+        }
+        assertFalse(Files.exists(workspace.resolve("src/copy/ADDRREC.cpy")));
+        assertTrue(Files.isRegularFile(workspace.resolve("src/copy/CUSTREC.cpy")));
+        assertFalse(Files.readString(workspace.resolve(RemoteCompiler.INDEX_FILE)).contains("ADDRREC"));
+    }
+
+    @Test
+    public void testDownloadKeepsExecutable() throws IOException {
+        try (RemoteCompiler remoteCompiler = new RemoteCompiler(
+                () -> ShellCompileTransport.loopback(tempDirectory.resolve("workspace")), 1)) {
+            assertEquals(0, remoteCompiler.compile(Map.of(), List.of("sh", "-c", "mkdir -p build && echo 'exit 0' " +
+                    "> build/HELLO && chmod +x build/HELLO && echo '01 CUSTREC.' > build/HELLO.lst"), Map.of(),
+                    new ByteArrayOutputStream(), Map.of("build/HELLO", tempDirectory.resolve("output/HELLO"),
+                            "build/HELLO.lst", tempDirectory.resolve("output/HELLO.lst"))));
+        }
+        assertEquals("exit 0\n", Files.readString(tempDirectory.resolve("output/HELLO")));
+        assertTrue(Files.isExecutable(tempDirectory.resolve("output/HELLO")));
+        assertFalse(Files.isExecutable(tempDirectory.resolve("output/HELLO.lst")));
+    }
+
+    @Test
+    public void testFailedCompileDoesNotTransferOutputs() throws IOException {
+        Files.writeString(tempDirectory.resolve("HELLO.cbl"), "       PROGRAM-ID. HELLO.\n");
+
+        try (RemoteCompiler remoteCompiler = new RemoteCompiler(
+                () -> ShellCompileTransport.loopback(tempDirectory.resolve("workspace")), 1)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            int exitValue = remoteCompiler.compile(Map.of("src/cobol/HELLO.cbl", tempDirectory.resolve("HELLO.cbl")),
+                    List.of("sh", "-c", "echo 'HELLO.cbl:1: error: syntax error' >&2; exit 3"), Map.of(), output,
+                    Map.of("build/HELLO/HELLO", tempDirectory.resolve("output/HELLO")));
+
+            assertEquals(3, exitValue);
+            assertEquals("HELLO.cbl:1: error: syntax error\n", output.toString(StandardCharsets.UTF_8));
+            assertFalse(Files.exists(tempDirectory.resolve("output/HELLO")));
+            // The session is still usable after a failed compile
+            assertEquals(0, remoteCompiler.compile(Map.of(), List.of("true"), Map.of(), new ByteArrayOutputStream(),
+                    Map.of()));
+        }
+        assertTrue(Files.isRegularFile(tempDirectory.resolve("workspace").resolve(RemoteCompiler.INDEX_FILE)));
+    }
+}
@@ -0,0 +1,108 @@
+import de.livingmainframe.plugins.cobol.core.CopybookDependencyGraph;
+import de.livingmainframe.plugins.cobol.core.CopybookIndex;
+import de.livingmainframe.plugins.cobol.core.SourceCodeAnalysisResult;
+import de.livingmainframe.plugins.cobol.core.SourceScanCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every dependency graph stands in for a build in the same daemon. The files are dated back, as files that were
+ * modified within the resolution of the modification time are always scanned again.
+ */
+public class SourceScanCacheTest {
+
+    @TempDir
+    Path tempDirectory;
+
+    private File write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        backdate(file.toFile());
+        return file.toFile();
+    }
+
+    private static void backdate(File file) {
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 60_000));
+    }
+
+    private CopybookDependencyGraph newBuild(SourceScanCache scanCache, File copyDirectory) {
+        return new CopybookDependencyGraph(scanCache.getCopybookIndex(List.of(copyDirectory)), StandardCharsets.UTF_8,
+                scanCache);
+    }
+
+    @Test
+    public void testOnlyChangedFilesAreScannedAgain() throws IOException {
+        File program = write(tempDirectory.resolve("src/HELLO.cbl"), "       COPY CUSTREC.\n       COPY ADDRREC.\n");
+        write(tempDirectory.resolve("copy/CUSTREC.cpy"), "       01 CUSTREC.\n");
+        write(tempDirectory.resolve("copy/ADDRREC.cpy"), "       01 ADDRREC.\n");
+        File copyDirectory = tempDirectory.resolve("copy").toFile();
+        backdate(copyDirectory);
+        SourceScanCache scanCache = new SourceScanCache(100);
+
+        CopybookDependencyGraph firstBuild = newBuild(scanCache, copyDirectory);
+        assertEquals(2, firstBuild.resolve(program).getSourceDependencies().size());
+        assertEquals(3, firstBuild.getScannedFiles());
+
+        CopybookDependencyGraph secondBuild = newBuild(scanCache, copyDirectory);
+        assertSame(firstBuild.getCopybookIndex(), secondBuild.getCopybookIndex());
+        assertEquals(2, secondBuild.resolve(program).getSourceDependencies().size());
+        assertEquals(0, secondBuild.getScannedFiles());
+
+        write(tempDirectory.resolve("copy/CUSTREC.cpy"),
+                "       01 CUSTREC.\n       EXEC SQL INCLUDE SQLCA END-EXEC.\n");
+        CopybookDependencyGraph thirdBuild = newBuild(scanCache, copyDirectory);
+        SourceCodeAnalysisResult analysisResult = thirdBuild.resolve(program);
+        assertEquals(1, thirdBuild.getScannedFiles());
+        assertTrue(analysisResult.isDb2());
+    }
+
+    @Test
+    public void testNewCopybookIsResolvedWithoutScanningAgain() throws IOException {
+        File program = write(tempDirectory.resolve("src/HELLO.cbl"), "       COPY CUSTREC.\n");
+        File copyDirectory = tempDirectory.resolve("copy").toFile();
+        Files.createDirectories(copyDirectory.toPath());
+        backdate(copyDirectory);
+        SourceScanCache scanCache = new SourceScanCache(100);
+
+        CopybookDependencyGraph firstBuild = newBuild(scanCache, copyDirectory);
+        assertEquals(List.of(), firstBuild.resolve(program).getSourceDependencies());
+
+        // Adding the copybook changes the modification time of the directory, which is listed again
+        File copybook = write(tempDirectory.resolve("copy/CUSTREC.cpy"), "       01 CUSTREC.\n");
+        CopybookIndex copybookIndex = scanCache.getCopybookIndex(List.of(copyDirectory));
+        assertNotSame(firstBuild.getCopybookIndex(), copybookIndex);
+
+        CopybookDependencyGraph secondBuild = new CopybookDependencyGraph(copybookIndex, StandardCharsets.UTF_8,
+                scanCache);
+        assertEquals(List.of(copybook), secondBuild.resolve(program).getSourceDependencies());
+        // Only the new copybook is scanned, the program is resolved again through the new index
+        assertEquals(1, secondBuild.getScannedFiles());
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIsScannedAgain() throws IOException {
+        File copyDirectory = tempDirectory.resolve("copy").toFile();
+        Files.createDirectories(copyDirectory.toPath());
+        backdate(copyDirectory);
+        File program = tempDirectory.resolve("HELLO.cbl").toFile();
+        Files.writeString(program.toPath(), "       PROGRAM-ID. HELLO.\n");
+        SourceScanCache scanCache = new SourceScanCache(100);
+
+        newBuild(scanCache, copyDirectory).resolve(program);
+        CopybookDependencyGraph secondBuild = newBuild(scanCache, copyDirectory);
+        secondBuild.resolve(program);
+        assertEquals(1, secondBuild.getScannedFiles());
+    }
+}
@@ -0,0 +1,48 @@
+import de.livingmainframe.plugins.cobol.core.compiler.TranslatedSourceNormalizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class TranslatedSourceNormalizerTest {
+
+    @TempDir
+    Path tempDirectory;
+
+    private String hash(String directory, String source) throws IOException {
+        Path translatedSourceDirectory = Files.createDirectories(tempDirectory.resolve(directory));
+        Files.writeString(translatedSourceDirectory.resolve("HELLO.c"), source);
+        return TranslatedSourceNormalizer.hash(translatedSourceDirectory.toFile());
+    }
+
+    @Test
+    public void testTimeOfTranslation() throws IOException {
+        String first = hash("first", """
+                /* Generated at            Oct 18 2026 09:00:00 */
+                #define  COB_MODULE_FORMATTED_DATE	"Oct 18 2026 09:00:00"
+                #define  COB_MODULE_TIME		90000
+                #line 12 "/home/first/src/cobol/HELLO.cbl"
+                  cob_display (0, 1, 1, &c_1);
+                """);
+        String second = hash("second", """
+                /* Generated at            Oct 18 2026 10:30:00 */
+                #define  COB_MODULE_FORMATTED_DATE	"Oct 18 2026 10:30:00"
+                #define  COB_MODULE_TIME		103000
+                #line 12 "/home/second/src/cobol/HELLO.cbl"
+                  cob_display (0, 1, 1, &c_1);
+                """);
+        String changed = hash("changed", """
+                /* Generated at            Oct 18 2026 09:00:00 */
+                #line 12 "/home/first/src/cobol/HELLO.cbl"
+                  cob_display (0, 1, 1, &c_2);
+                """);
+
+        assertEquals(first, second);
+        assertNotEquals(first, changed);
+    }
+}